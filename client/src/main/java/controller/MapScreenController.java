@@ -13,6 +13,7 @@ import com.lynden.gmapsfx.javascript.object.GoogleMap;
 import com.lynden.gmapsfx.javascript.object.InfoWindow;
 import com.lynden.gmapsfx.javascript.object.InfoWindowOptions;
 import com.lynden.gmapsfx.javascript.object.LatLong;
+import com.lynden.gmapsfx.javascript.object.LatLongBounds;
 import com.lynden.gmapsfx.javascript.object.MapOptions;
 import com.lynden.gmapsfx.javascript.object.MapTypeIdEnum;
 import com.lynden.gmapsfx.javascript.object.Marker;
@@ -28,6 +29,7 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.ToggleButton;
 import lib.Debug;
 import model.QualityReport;
+import model.Region;
 import model.ReportManager;
 import model.UserManager;
 import model.WaterReport;
@@ -130,7 +132,20 @@ public class MapScreenController implements Initializable, MapComponentInitializ
                 .mapType(MapTypeIdEnum.HYBRID);
 
         map = mapView.createMap(options);
-        map.addStateEventHandler(MapStateEventType.center_changed, () -> activeUser.setLastCoords(map.getCenter()));
+        map.addStateEventHandler(MapStateEventType.center_changed, () -> {
+            LatLong c = map.getCenter();
+            activeUser.setLastCoords(c.getLatitude(), c.getLongitude());
+        });
+        //idle fires once the user stops panning/zooming, so only ask for updates in the area they settled on
+        map.addStateEventHandler(MapStateEventType.idle, () -> {
+            LatLongBounds bounds = map.getBounds();
+            if (bounds != null) {
+                LatLong sw = bounds.getSouthWest();
+                LatLong ne = bounds.getNorthEast();
+                ReportManager.subscribeToRegion(new Region(sw.getLatitude(), sw.getLongitude(),
+                        ne.getLatitude(), ne.getLongitude()));
+            }
+        });
         map.addUIEventHandler(UIEventType.click, (JSObject e) -> {
             if (addingAReport) {
                 JSObject clicked = (JSObject) e.getMember("latLng");
@@ -6,7 +6,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -32,6 +35,9 @@ import model.UserManager;
  */
 public class ProfileScreenController implements Initializable {
 
+    //username -> picture, they're only kept while the app is open
+    private static final Map<String, Image> profilePictures = new ConcurrentHashMap<>();
+
     private boolean editing = false;
 
     private User activeUser = null;
@@ -146,12 +152,12 @@ public class ProfileScreenController implements Initializable {
         accountTypeProfileBox.setValue(activeUser.getUserLevel());
         pwProfileField.setText("");
         pwConfProfileField.setText("");
-        userProfileImage = activeUser.getProfilePicture();
+        userProfileImage = profilePictures.get(activeUser.getUsername());
         if (userProfileImage == null) {
             try {
                 InputStream profileImageIS = this.getClass().getResourceAsStream("/img/defaultProfilePicture.png");
                 userProfileImage = new Image(profileImageIS);
-                activeUser.setProfilePicture(userProfileImage);
+                profilePictures.put(activeUser.getUsername(), userProfileImage);
             } catch (Exception e) {
                 Debug.error("Error while loading default profile image! Reason: %s", e.toString());
                 return;
@@ -163,7 +169,7 @@ public class ProfileScreenController implements Initializable {
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        accountTypeProfileBox.setItems(UserLevel.getAllObservableList());
+        accountTypeProfileBox.setItems(FXCollections.observableArrayList(UserLevel.values()));
         fileChooser.getExtensionFilters().add(imageFilter);
         fileChooser.getExtensionFilters().add(allFilter);
     }
@@ -276,7 +282,7 @@ public class ProfileScreenController implements Initializable {
             return;
         }
         userProfileImage = newUserProfileImage;
-        activeUser.setProfilePicture(newUserProfileImage);
+        profilePictures.put(activeUser.getUsername(), newUserProfileImage);
         profileImageView.setImage(newUserProfileImage);
     }
 
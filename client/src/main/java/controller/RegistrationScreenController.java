@@ -3,6 +3,7 @@ package controller;
 import java.net.URL;
 import java.util.ResourceBundle;
 
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -152,7 +153,7 @@ public class RegistrationScreenController implements Initializable {
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        accountTypeBox.setItems(UserLevel.getAllObservableList());
+        accountTypeBox.setItems(FXCollections.observableArrayList(UserLevel.values()));
         accountTypeBox.setValue(UserLevel.USER);
     }    
     
@@ -2,6 +2,7 @@ package controller;
 
 import java.net.URL;
 import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -189,7 +190,7 @@ public class WaterQualityReportScreenController implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        safetyComboBox.setItems(WaterSafety.getAllObservableList());
+        safetyComboBox.setItems(FXCollections.observableArrayList(WaterSafety.values()));
 
         reportNumTextField.setTextFormatter(TextFormatterFactory.integerOnlyTextFormatter());
 
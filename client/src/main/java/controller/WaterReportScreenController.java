@@ -13,6 +13,7 @@ import java.util.Set;
 import java.util.ResourceBundle;
 import java.util.SortedSet;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -473,55 +474,56 @@ public class WaterReportScreenController implements Initializable {
     public void initialize(URL url, ResourceBundle rb) {
         root = new TreeItem<>();
         reportTreeTable.setShowRoot(false);
+        //the reports are plain objects, the rows are rebuilt when they change
         
         reportNumberColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, Number> param)
-                -> (param.getValue().getValue().getReportNumProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getReportNum()))
         );
         
         reportDateColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, LocalDateTime> param)
-                -> (param.getValue().getValue().getDateTimeProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getDateTime()))
         );
 
         reportLattitudeColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, Number> param)
-                -> (param.getValue().getValue().getLatitudeProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getLatitude()))
         );
  
         reportLongitudeColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, Number> param)
-                -> (param.getValue().getValue().getLongitudeProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getLongitude()))
         );
 
         reportReporterColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, String> param)
-                -> param.getValue().getValue().getAuthorUsernameProperty()
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getAuthor()))
         );
 
         reportTypeColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, WaterType> param)
-                -> (param.getValue().getValue().getWaterTypeProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getWaterType()))
         );
 
         reportConditionColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, WaterCondition> param)
-                -> (param.getValue().getValue().getWaterConditionProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getWaterCondition()))
         );
 
         reportSafetyColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, WaterSafety> param)
-                -> (param.getValue().getValue().getWaterSafetyProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getWaterSafety()))
         );
 
         reportVppmColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, Number> param)
-                -> (param.getValue().getValue().getVppmProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getVirusPPM()))
         );
 
         reportCppmColumn.setCellValueFactory(
             (TreeTableColumn.CellDataFeatures<DisplayableReport, Number> param)
-                -> (param.getValue().getValue().getCppmProperty())
+                -> (new ReadOnlyObjectWrapper<>(param.getValue().getValue().getContaminantPPM()))
         );
 
         reportTreeTable.setRoot(root);
@@ -2,6 +2,7 @@ package controller;
 
 import java.net.URL;
 import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -165,8 +166,8 @@ public class WaterSourceReportScreenController implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        typeComboBox.setItems(WaterType.getAllObservableList());
-        conditionComboBox.setItems(WaterCondition.getAllObservableList());
+        typeComboBox.setItems(FXCollections.observableArrayList(WaterType.values()));
+        conditionComboBox.setItems(FXCollections.observableArrayList(WaterCondition.values()));
 
         latTextField.setTextFormatter(TextFormatterFactory.decimalOnlyTextFormatter());
         longTextField.setTextFormatter(TextFormatterFactory.decimalOnlyTextFormatter());
@@ -6,7 +6,9 @@ import javafx.stage.Stage;
 import persistence.PersistenceInterface;
 import persistence.json.PersistentJsonFile;
 import java.io.IOException;
-import persistence.json.net.PersistentJsonNetwork;
+import persistence.json.net.Command;
+import persistence.json.net.PersistentJsonCachedNetwork;
+import persistence.json.net.ReportCache;
 
 /**
  * Tyler Brown
@@ -15,7 +17,11 @@ public class Thirsty extends Application {
 
 
     //private final PersistenceInterface persist = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
-    private final PersistenceInterface persist = new PersistentJsonNetwork("ttt222.org", 9988);
+    //point -Dthirsty.host/-Dthirsty.port at a replica to read from it, writes are sent on to the main server
+    private final PersistenceInterface persist = new PersistentJsonCachedNetwork(
+            System.getProperty("thirsty.host", "ttt222.org"), Integer.getInteger("thirsty.port", 9988),
+            Command.Encoding.valueOf(System.getProperty("thirsty.encoding", "JSON")),
+            System.getProperty("thirsty.cacheDir", ReportCache.DEFAULT_PATH));
 
     @Override
     public void start(Stage stage) throws Exception {
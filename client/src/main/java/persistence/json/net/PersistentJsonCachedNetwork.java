@@ -0,0 +1,650 @@
+package persistence.json.net;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lib.Debug;
+import model.Credential;
+import model.QualityReport;
+import model.Region;
+import model.ReportManager;
+import model.User;
+import model.UserManager;
+import model.WaterReport;
+import persistence.json.net.ReportCache.QueuedWrite;
+
+/**
+ * A network persistence layer which keeps working without the server.
+ * Starts from the reports cached on disk right away, and only asks the server for what changed since.
+ * Reports saved or deleted while the server is unreachable are applied locally and queued on disk, then sent
+ * in order once logged in to the server again. Before sending a queued write it is checked against the server's
+ * current copy of the report: a new report whose number was taken meanwhile gets the next free number, while
+ * a change to a report someone else changed (or deleted) meanwhile is dropped in favour of the server's version.
+ * Every such conflict is logged and kept in getConflicts()
+ *
+ * @author tybrown
+ */
+public class PersistentJsonCachedNetwork extends PersistentJsonNetwork {
+
+    //while the server was unreachable at startup: first retry after CONNECT_MIN_MS, doubling up to CONNECT_MAX_MS
+    private static final long CONNECT_MIN_MS = 1000;
+    private static final long CONNECT_MAX_MS = 60000;
+
+    private final ReportCache cache;
+    //the reports the server sent since we last logged in, so a full snapshot can drop the ones it no longer has
+    private final Set<Integer> seen = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final List<String> conflicts = new CopyOnWriteArrayList<>();
+    //set while logged in against the cached login only, until we get to log in to the server
+    private volatile Credential offlineLogin;
+    private volatile String username;
+    //a region subscribed to before we ever reached the server
+    private volatile Region pendingRegion;
+    private volatile boolean regionPending = false;
+    //set once the snapshot after logging in was applied, so the cache matches the server for checking queued writes
+    private volatile boolean synced = false;
+    //true from starting without the server until first reaching it
+    private volatile boolean startedOffline = false;
+    private volatile boolean terminated = false;
+    private ConnectThread connectThread;
+
+    /**
+     * Constructs a cached network persistence layer
+     * @param hostname The hostname of the server to connect to
+     * @param port The port of the server to connect to
+     * @param preferredEncoding The encoding to request. The server may refuse and keep using JSON
+     * @param cachePath The folder to keep the cache in
+     */
+    public PersistentJsonCachedNetwork(String hostname, int port, Command.Encoding preferredEncoding, String cachePath) {
+        super(hostname, port, preferredEncoding);
+        cache = new ReportCache(cachePath, this);
+    }
+
+    /**
+     * Loads the cache into the model, then connects. If the server can't be reached, keeps trying in the
+     * background instead of failing
+     * @throws IOException If the cache couldn't be read
+     */
+    @Override
+    public void initialize() throws IOException {
+        cache.load();
+        setSyncPosition(cache.getEpoch(), cache.getSequence());
+        if (cache.getUser() != null) {
+            UserManager.addUser(cache.getUser().cloneIt());
+        }
+        ReportManager.addWaterReports(cache.getReports());
+        List<QueuedWrite> queued = cache.getQueue();
+        for (QueuedWrite w : queued) {
+            applyLocally(w);
+        }
+        try {
+            super.initialize();
+        } catch (IOException e) {
+            Debug.log("Server unreachable, working offline with the cached reports and %d queued writes: %s",
+                    queued.size(), e.toString());
+            startedOffline = true;
+            connectThread = new ConnectThread();
+            connectThread.start();
+        }
+    }
+
+    @Override
+    public void terminate() throws IOException {
+        terminated = true;
+        if (connectThread != null) {
+            connectThread.interrupt();
+        }
+        cache.close(getSyncEpoch(), getSyncSequence());
+        super.terminate();
+    }
+
+    /**
+     * Logs in to the server, or against the cached login of the last user while the server is unreachable
+     * @param c The credential to log in with
+     * @return The user, or null if the credential was wrong
+     * @throws IOException Never while offline
+     */
+    @Override
+    public User authenticateUser(Credential c) throws IOException {
+        if (isConnected()) {
+            try {
+                return (logInToServer(c));
+            } catch (IOException e) {
+                Debug.debug("Logging in offline, lost the server: %s", e.toString());
+            }
+        }
+        User cached = cache.getUser();
+        if (cached == null || !c.equals(cache.getCredential())) {
+            return (null);
+        }
+        offlineLogin = c;
+        username = c.getUsername();
+        return (cached.cloneIt());
+    }
+
+    private User logInToServer(Credential c) throws IOException {
+        seen.clear();
+        synced = false;
+        User u = super.authenticateUser(c);
+        if (u != null) {
+            cache.saveLogin(c, u);
+            offlineLogin = null;
+            username = c.getUsername();
+            if (regionPending) {
+                regionPending = false;
+                super.subscribeToRegion(pendingRegion);
+            }
+            //in case the snapshot was applied before we got here
+            startFlush();
+        }
+        return (u);
+    }
+
+    @Override
+    public void deauthenticateUser(String username) throws IOException {
+        offlineLogin = null;
+        this.username = null;
+        if (isConnected()) {
+            super.deauthenticateUser(username);
+        }
+    }
+
+    @Override
+    public boolean isUserAuthenticated(String username) throws IOException {
+        return (offlineLogin != null || super.isUserAuthenticated(username));
+    }
+
+    @Override
+    protected Command resumeCommand() {
+        seen.clear();
+        synced = false;
+        return (super.resumeCommand());
+    }
+
+    @Override
+    protected void resumed(Command response) throws IOException {
+        super.resumed(response);
+        Credential c = cache.getCredential();
+        if (!response.isSuccessful() && c != null && c.getUsername().equals(username)) {
+            //the session expired while we were gone. this runs on the reader, which has to read the answer
+            Debug.debug("Session expired while offline, logging in again with the cached login");
+            new Thread(() -> {
+                try {
+                    logInToServer(c);
+                } catch (IOException e) {
+                    Debug.debug("Failed to log in again: %s", e.toString());
+                }
+            }).start();
+        }
+    }
+
+    @Override
+    public void subscribeToRegion(Region region) throws IOException {
+        if (startedOffline) {
+            //nothing would send it again once we get through, so it goes out after logging in to the server
+            pendingRegion = region;
+            regionPending = true;
+            return;
+        }
+        super.subscribeToRegion(region);
+    }
+
+    @Override
+    public WaterReport saveWaterReport(WaterReport wr) throws IOException {
+        if (canSendNow()) {
+            try {
+                return (super.saveWaterReport(wr));
+            } catch (IOException e) {
+                Debug.debug("Queueing water report %d, lost the server: %s", wr.getReportNum(), e.toString());
+            }
+        }
+        String data = toJson(wr);
+        queue(Command.CommandType.SAVE_WATER_REPORT, data, cache.getReportJson(wr.getReportNum()));
+        //what the server would have answered, so the copy it pushes later replaces this one
+        WaterReport saved = fromJson(data, WaterReport.class);
+        ReportManager.addWaterReport(saved);
+        return (saved);
+    }
+
+    @Override
+    public void deleteWaterReport(WaterReport wr) throws IOException {
+        if (canSendNow()) {
+            try {
+                super.deleteWaterReport(wr);
+                return;
+            } catch (IOException e) {
+                Debug.debug("Queueing the delete of water report %d, lost the server: %s", wr.getReportNum(), e.toString());
+            }
+        }
+        queue(Command.CommandType.DELETE_WATER_REPORT, toJson(wr), cache.getReportJson(wr.getReportNum()));
+    }
+
+    @Override
+    public QualityReport saveQualityReport(QualityReport qr) throws IOException {
+        if (canSendNow()) {
+            try {
+                return (super.saveQualityReport(qr));
+            } catch (IOException e) {
+                Debug.debug("Queueing quality report %d, lost the server: %s", qr.getReportNum(), e.toString());
+            }
+        }
+        WaterReport parent = ReportManager.filterWaterReportByNumber(qr.getParentReportNum());
+        if (parent == null) {
+            return (null);
+        }
+        String data = toJson(qr);
+        queue(Command.CommandType.SAVE_QUALITY_REPORT, data, cache.getReportJson(qr.getParentReportNum()));
+        QualityReport saved = fromJson(data, QualityReport.class);
+        ReportManager.addQualityReport(parent, saved);
+        return (saved);
+    }
+
+    @Override
+    public void deleteQualityReport(QualityReport qr) throws IOException {
+        if (canSendNow()) {
+            try {
+                super.deleteQualityReport(qr);
+                return;
+            } catch (IOException e) {
+                Debug.debug("Queueing the delete of quality report %d, lost the server: %s", qr.getReportNum(), e.toString());
+            }
+        }
+        queue(Command.CommandType.DELETE_QUALITY_REPORT, toJson(qr), cache.getReportJson(qr.getParentReportNum()));
+    }
+
+    /**
+     * Gets the conflicts found while sending queued writes
+     * @return a description of each conflict and how it was resolved, oldest first
+     */
+    public List<String> getConflicts() {
+        return (Collections.unmodifiableList(conflicts));
+    }
+
+    /**
+     * Gets the number of writes still waiting for the server
+     * @return the number of queued writes
+     */
+    public int getQueuedWriteCount() {
+        return (cache.getQueue().size());
+    }
+
+    @Override
+    public void addWaterReport(WaterReport wr) {
+        super.addWaterReport(wr);
+        seen.add(wr.getReportNum());
+        cache.putReports(Collections.singletonList(wr), getSyncEpoch(), getSyncSequence());
+    }
+
+    @Override
+    public void addWaterReports(Collection<WaterReport> wrs) {
+        super.addWaterReports(wrs);
+        for (WaterReport wr : wrs) {
+            seen.add(wr.getReportNum());
+        }
+        cache.putReports(wrs, getSyncEpoch(), getSyncSequence());
+    }
+
+    @Override
+    public void removeWaterReports(Collection<Integer> reportNums) {
+        super.removeWaterReports(reportNums);
+        seen.removeAll(reportNums);
+        cache.removeReports(reportNums, getSyncEpoch(), getSyncSequence());
+    }
+
+    @Override
+    public void addQualityReport(QualityReport qr) {
+        super.addQualityReport(qr);
+        cache.putQualityReport(qr, getSyncEpoch(), getSyncSequence());
+    }
+
+    @Override
+    protected void snapshotApplied(boolean delta) {
+        if (!delta) {
+            //the whole report set: anything cached which wasn't in it is gone from the server
+            List<Integer> gone = cache.retainReports(seen);
+            if (!gone.isEmpty()) {
+                Debug.debug("Dropping %d cached reports the server no longer has", gone.size());
+                ReportManager.removeWaterReports(gone);
+            }
+        }
+        //the cache now matches the server, so queued writes can be checked against it
+        synced = true;
+        startFlush();
+    }
+
+    /**
+     * Checks if a write can go straight to the server: connected, logged in there, and not behind queued writes
+     */
+    private boolean canSendNow() {
+        return (readyToFlush() && cache.getQueue().isEmpty());
+    }
+
+    private boolean readyToFlush() {
+        return (isConnected() && synced && offlineLogin == null && username != null && getSession() != null);
+    }
+
+    private void queue(Command.CommandType type, String data, String base) throws IOException {
+        QueuedWrite w = cache.enqueue(username, type, data, base);
+        Debug.debug("Queued %s", w);
+        if (readyToFlush()) {
+            startFlush();
+        }
+    }
+
+    /**
+     * Applies a queued write to the model, like on startup
+     * @param w The queued write
+     */
+    private void applyLocally(QueuedWrite w) {
+        switch (w.getCommand()) {
+            case SAVE_WATER_REPORT:
+                ReportManager.addWaterReport(fromJson(w.getData(), WaterReport.class));
+                break;
+            case DELETE_WATER_REPORT:
+                ReportManager.removeWaterReports(Collections.singletonList(
+                        fromJson(w.getData(), WaterReport.class).getReportNum()));
+                break;
+            case SAVE_QUALITY_REPORT: {
+                QualityReport qr = fromJson(w.getData(), QualityReport.class);
+                WaterReport parent = ReportManager.filterWaterReportByNumber(qr.getParentReportNum());
+                if (parent != null) {
+                    ReportManager.addQualityReport(parent, qr);
+                }
+                break;
+            }
+            case DELETE_QUALITY_REPORT: {
+                QualityReport qr = fromJson(w.getData(), QualityReport.class);
+                WaterReport parent = ReportManager.filterWaterReportByNumber(qr.getParentReportNum());
+                if (parent != null) {
+                    parent.removeQualityReport(qr.getReportNum());
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private void startFlush() {
+        if (flushing.compareAndSet(false, true)) {
+            new FlushThread().start();
+        }
+    }
+
+    /**
+     * Sends the queued writes of the logged in user, oldest first
+     * @return false if it stopped because the connection broke, so the rest wait for the next reconnect
+     */
+    private boolean flushQueue() {
+        int sent = 0;
+        for (QueuedWrite w : cache.getQueue()) {
+            if (!readyToFlush()) {
+                return (false);
+            }
+            if (w.getUsername() != null && !w.getUsername().equals(username)) {
+                continue;
+            }
+            try {
+                if (!flush(w)) {
+                    return (false);
+                }
+                sent++;
+            } catch (IOException e) {
+                Debug.debug("Stopped sending queued writes: %s", e.toString());
+                return (false);
+            }
+        }
+        if (sent > 0) {
+            Debug.log("Sent %d queued writes, %d conflicts so far", sent, conflicts.size());
+            refreshReportScreen();
+        }
+        return (true);
+    }
+
+    /**
+     * Checks one queued write against the server's copy, sends it if it still applies, and takes it off the queue
+     * @param w The queued write
+     * @return false if waiting for the response was interrupted, or the connection went away while the server was busy
+     * @throws IOException If the connection broke, the write stays queued
+     */
+    private boolean flush(QueuedWrite w) throws IOException {
+        String data = w.getData();
+        switch (w.getCommand()) {
+            case SAVE_WATER_REPORT: {
+                WaterReport wr = fromJson(data, WaterReport.class);
+                String current = cache.getReportJson(wr.getReportNum());
+                if (data.equals(current)) {
+                    //it made it to the server before the connection broke
+                    cache.remove(w);
+                    return (true);
+                }
+                if (w.getBase() == null && current != null) {
+                    //someone else created a report with our number meanwhile, so ours gets a new one
+                    int old = wr.getReportNum();
+                    int num = ReportManager.nextWaterReportNumber();
+                    renumber(wr, num);
+                    data = toJson(wr);
+                    cache.update(w, data);
+                    renumberQueued(w, old, num);
+                    ReportManager.addWaterReport(wr);
+                    conflict("Water report %d was taken by another report meanwhile, saved ours as %d", old, num);
+                } else if (w.getBase() != null && !w.getBase().equals(current)) {
+                    conflict("Water report %d was changed on the server meanwhile, kept the server's version", wr.getReportNum());
+                    restore(wr.getReportNum(), current);
+                    cache.remove(w);
+                    return (true);
+                }
+                break;
+            }
+            case DELETE_WATER_REPORT: {
+                WaterReport wr = fromJson(data, WaterReport.class);
+                String current = cache.getReportJson(wr.getReportNum());
+                if (w.getBase() != null && current == null) {
+                    cache.remove(w);
+                    return (true);
+                }
+                if (w.getBase() != null && !w.getBase().equals(current)) {
+                    conflict("Water report %d was changed on the server meanwhile, kept it instead of deleting it", wr.getReportNum());
+                    restore(wr.getReportNum(), current);
+                    cache.remove(w);
+                    return (true);
+                }
+                break;
+            }
+            case SAVE_QUALITY_REPORT: {
+                QualityReport qr = fromJson(data, QualityReport.class);
+                String current = cache.getReportJson(qr.getParentReportNum());
+                if (w.getBase() != null && current == null) {
+                    conflict("Water report %d was deleted on the server meanwhile, dropped quality report %d",
+                            qr.getParentReportNum(), qr.getReportNum());
+                    cache.remove(w);
+                    return (true);
+                }
+                if (current != null) {
+                    WaterReport parent = fromJson(current, WaterReport.class);
+                    QualityReport taken = null;
+                    int max = 0;
+                    for (QualityReport other : parent.getQualityReportList()) {
+                        max = Math.max(max, other.getReportNum());
+                        if (other.getReportNum() == qr.getReportNum()) {
+                            taken = other;
+                        }
+                    }
+                    if (taken != null && toJson(taken).equals(data)) {
+                        cache.remove(w);
+                        return (true);
+                    }
+                    if (taken != null) {
+                        int old = qr.getReportNum();
+                        qr.setReportNum(max + 1);
+                        data = toJson(qr);
+                        cache.update(w, data);
+                        conflict("Quality report %d of water report %d was taken by another report meanwhile, saved ours as %d",
+                                old, qr.getParentReportNum(), max + 1);
+                    }
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        Command resp;
+        while ((resp = sendCommandAndAwaitResponse(w.getCommand(), data, null)) != null && resp.getRetryAfter() > 0) {
+            //still busy after the retries; it stays queued until the server takes it
+            if (!readyToFlush()) {
+                return (false);
+            }
+            try {
+                Thread.sleep(resp.getRetryAfter());
+            } catch (InterruptedException e) {
+                return (false);
+            }
+        }
+        if (resp == null) {
+            return (false);
+        }
+        if (!resp.isSuccessful()) {
+            conflict("The server refused queued %s: %s", w.getCommand(), resp.getMessage());
+        }
+        cache.remove(w);
+        return (true);
+    }
+
+    /**
+     * Gives a report which wasn't sent yet a new number, along with the quality reports in it
+     */
+    private static void renumber(WaterReport wr, int num) {
+        wr.setReportNum(num);
+        for (QualityReport qr : wr.getQualityReportList()) {
+            qr.setParentReportNum(num);
+        }
+    }
+
+    /**
+     * Moves the queued writes after a renumbered report which refer to it over to its new number
+     * @param renumbered The queued write of the renumbered report
+     * @param old The number it was queued with
+     * @param num Its new number
+     * @throws IOException If the queue couldn't be written
+     */
+    private void renumberQueued(QueuedWrite renumbered, int old, int num) throws IOException {
+        for (QueuedWrite w : cache.getQueue()) {
+            //a base means the write was made against the server's report with that number, not ours
+            if (w.getId() <= renumbered.getId() || w.getBase() != null) {
+                continue;
+            }
+            switch (w.getCommand()) {
+                case SAVE_WATER_REPORT:
+                case DELETE_WATER_REPORT: {
+                    WaterReport wr = fromJson(w.getData(), WaterReport.class);
+                    if (wr.getReportNum() == old) {
+                        renumber(wr, num);
+                        cache.update(w, toJson(wr));
+                    }
+                    break;
+                }
+                case SAVE_QUALITY_REPORT:
+                case DELETE_QUALITY_REPORT: {
+                    QualityReport qr = fromJson(w.getData(), QualityReport.class);
+                    if (qr.getParentReportNum() == old) {
+                        qr.setParentReportNum(num);
+                        cache.update(w, toJson(qr));
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Puts the server's copy of a report back into the model, after dropping a conflicting local change
+     * @param reportNum The number of the report
+     * @param current The json of the server's copy, null if the server doesn't have it
+     */
+    private void restore(int reportNum, String current) {
+        if (current == null) {
+            ReportManager.removeWaterReports(Collections.singletonList(reportNum));
+        } else {
+            ReportManager.addWaterReport(fromJson(current, WaterReport.class));
+        }
+    }
+
+    private void conflict(String format, Object... args) {
+        String message = String.format(format, args);
+        conflicts.add(message);
+        Debug.log("Queued write conflict: %s", message);
+    }
+
+    /**
+     * Sends the queued writes in the background, since waiting for their responses can't block the reader
+     */
+    private class FlushThread extends Thread {
+        @Override
+        public void run() {
+            boolean done;
+            try {
+                done = flushQueue();
+            } finally {
+                flushing.set(false);
+            }
+            //catch a write queued while this one was finishing
+            if (done && readyToFlush() && hasOwnQueuedWrites()) {
+                startFlush();
+            }
+        }
+    }
+
+    private boolean hasOwnQueuedWrites() {
+        for (QueuedWrite w : cache.getQueue()) {
+            if (w.getUsername() == null || w.getUsername().equals(username)) {
+                return (true);
+            }
+        }
+        return (false);
+    }
+
+    /**
+     * Keeps trying to reach the server after starting offline, then logs in with the offline login, if any
+     */
+    private class ConnectThread extends Thread {
+        @Override
+        public void run() {
+            long delay = CONNECT_MIN_MS;
+            while (!terminated) {
+                try {
+                    Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    PersistentJsonCachedNetwork.super.initialize();
+                } catch (IOException e) {
+                    Debug.debug("Still offline: %s", e.toString());
+                    delay = Math.min(delay * 2, CONNECT_MAX_MS);
+                    continue;
+                }
+                Debug.log("Reached the server, leaving offline mode");
+                startedOffline = false;
+                Credential c = offlineLogin;
+                try {
+                    if (c != null && logInToServer(c) == null) {
+                        Debug.log("The server refused the cached login of %s, queued writes wait for the next login",
+                                c.getUsername());
+                    }
+                } catch (IOException e) {
+                    //lost it again right away, the reconnect takes over from here
+                    Debug.debug("Failed to log in with the cached login: %s", e.toString());
+                }
+                return;
+            }
+        }
+    }
+}
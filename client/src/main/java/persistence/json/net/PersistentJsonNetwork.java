@@ -0,0 +1,327 @@
+package persistence.json.net;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+
+import lib.Debug;
+import model.Credential;
+import model.QualityReport;
+import model.Region;
+import model.ReportManager;
+import model.ReportQuery;
+import model.User;
+import model.UserManager;
+import model.WaterReport;
+import persistence.json.PersistentJsonInterface;
+
+
+/**
+ */
+public class PersistentJsonNetwork extends PersistentJsonNetworkInterface {
+
+    private volatile boolean authed = false;
+    private final Command.Encoding preferredEncoding;
+    //the last SUBSCRIBE, sent again after a reconnect
+    private volatile boolean subscribed = false;
+    private volatile Region region;
+
+    public PersistentJsonNetwork(String hostname, int port) {
+        this(hostname, port, Command.Encoding.JSON);
+    }
+
+    /**
+     * Constructs a network persistence layer which asks the server for a wire encoding when authenticating
+     * @param hostname The hostname of the server to connect to
+     * @param port The port of the server to connect to
+     * @param preferredEncoding The encoding to request. The server may refuse and keep using JSON
+     */
+    public PersistentJsonNetwork(String hostname, int port, Command.Encoding preferredEncoding) {
+        super(hostname, port);
+        this.preferredEncoding = preferredEncoding;
+    }
+
+    @Override
+    public void terminate() throws IOException {
+        disconnect();
+    }
+
+    @Override
+    public User authenticateUser(Credential c) throws IOException {
+        Command resp = sendCommandAndAwaitResponse(newAuthenticate(toJson(c)));
+        applyAuthenticate(resp);
+        return (resp.isSuccessful() ? readPayload(resp, User.class).cloneIt() : null);
+    }
+
+    @Override
+    protected Command resumeCommand() {
+        if (!authed || getSession() == null) {
+            return (null);
+        }
+        Command auth = newAuthenticate(null);
+        auth.setSession(getSession());
+        return (auth);
+    }
+
+    @Override
+    protected void resumed(Command response) throws IOException {
+        applyAuthenticate(response);
+        if (response.isSuccessful() && subscribed) {
+            subscribeToRegion(region);
+        }
+    }
+
+    /**
+     * Builds an AUTHENTICATE command asking for our preferred encoding, compression, and a delta snapshot if we can
+     * @param credential The json credential, null when resuming a session
+     * @return The command
+     */
+    private Command newAuthenticate(String credential) {
+        Command auth = new Command(Command.CommandType.AUTHENTICATE, credential, null);
+        auth.setEncoding(preferredEncoding);
+        if (preferredEncoding == Command.Encoding.BINARY) {
+            auth.setSchemaVersion(BinaryCodec.SCHEMA_VERSION);
+        }
+        auth.setAcceptsCompression(true);
+        auth.setFrameCompression(true);
+        if (getSyncEpoch() != 0) {
+            //we already have the reports up to here, so the server can send only what changed since
+            auth.setEpoch(getSyncEpoch());
+            auth.setSequence(getSyncSequence());
+        }
+        return (auth);
+    }
+
+    /**
+     * Switches to what the server agreed to in its AUTHENTICATE response
+     * @param resp The response
+     */
+    private void applyAuthenticate(Command resp) {
+        if (!resp.isSuccessful()) {
+            Debug.debug("Unsuccessful authentication: %s", resp.getMessage());
+            //maybe throw an exception so the message can be displayed to the user?
+            setSession(null);
+        } else {
+            setSession(resp.getSession());
+            if (resp.getEncoding() != null) {
+                //the server switched over after its response, so everything we send from now on can follow
+                setWireEncoding(resp.getEncoding(), resp.getSchemaVersion());
+            }
+            setFrameCompression(resp.isFrameCompression());
+            Debug.debug("user authenticated: %s", readPayload(resp, User.class));
+        }
+        authed = resp.isSuccessful();
+    }
+
+    @Override
+    public void deauthenticateUser(String username) throws IOException {
+        authed = false;
+        Command resp = sendCommandAndAwaitResponse(Command.CommandType.DEAUTHENTICATE, null, null);
+        setSession(null);
+
+        if (!resp.isSuccessful()) {
+            Debug.debug("Unsuccessful deauthentication: %s", resp.getMessage());
+            //maybe throw an exception so the message can be displayed to the user?
+        } else {
+            Debug.debug("Successful deauthentication");
+            //maybe throw an exception so the message can be displayed to the user?
+        }
+    }
+
+    @Override
+    public boolean isUserAuthenticated(String username) throws IOException {
+        return (authed);
+    }
+
+    @Override
+    public void saveUserCredential(Credential c) throws IOException {
+        sendCommandAndAwaitResponse(Command.CommandType.SAVE_CREDENTIAL, toJson(c), null);
+    }
+
+    public boolean userExists(String username) throws IOException {
+        // user manager should already be loaded with users
+        return UserManager.userExists(username);
+    }
+
+    public User saveUser(User u) throws IOException {
+        Command resp = sendCommandAndAwaitResponse(Command.CommandType.SAVE_USER, toJson(u), null);
+        if (resp.isSuccessful()) {
+            Debug.debug("Sucessfully saved user");
+            return (readPayload(resp, User.class).cloneIt());
+        } else {
+            Debug.debug("Failed to save user: %s", resp.getMessage());
+            return (null);
+        }
+
+    }
+
+    public void deleteUser(User u) throws IOException {
+        Command resp = sendCommandAndAwaitResponse(Command.CommandType.DELETE_USER, toJson(u), null);
+        
+        if (!resp.isSuccessful()) {
+            Debug.debug("Unsuccessful user delete: %s", resp.getMessage());
+            //maybe throw an exception so the message can be displayed to the user?
+        } else {
+            Debug.debug("Sucessfully deleted user");
+        }
+    }
+
+    @Override
+    public void deleteUser(String username) throws IOException {
+        User u = UserManager.getUser(username);
+        if (u != null) {
+            deleteUser(u);
+        }
+    }
+
+    @Override
+    public WaterReport saveWaterReport(WaterReport wr) throws IOException {
+        Command resp = sendCommandAndAwaitResponse(Command.CommandType.SAVE_WATER_REPORT, toJson(wr), null);
+        if (resp.isSuccessful()) {
+            return (readPayload(resp, WaterReport.class).cloneIt());
+        } else {
+            Debug.debug("Failed to save water report: %s", resp.getMessage());
+            return (null);
+        }
+    }
+
+    /**
+     * Saves many water reports, sending them all before waiting for any of the responses
+     * @param wrs The water reports to save
+     * @return The saved reports, in the same order. null entries for reports the server failed to save
+     * @throws IOException If there was a problem with the socket
+     */
+    public List<WaterReport> saveWaterReports(Collection<WaterReport> wrs) throws IOException {
+        List<Command> saves = new ArrayList<>(wrs.size());
+        List<CompletableFuture<Command>> responses = new ArrayList<>(wrs.size());
+        for (WaterReport wr : wrs) {
+            Command save = new Command(Command.CommandType.SAVE_WATER_REPORT, null, null);
+            save.setPayload(wr);
+            saves.add(save);
+            responses.add(sendRequest(save));
+        }
+        List<WaterReport> res = new ArrayList<>(wrs.size());
+        try {
+            for (int i = 0; i < responses.size(); i++) {
+                Command resp = awaitResponse(saves.get(i), responses.get(i));
+                if (resp.isSuccessful()) {
+                    res.add(readPayload(resp, WaterReport.class).cloneIt());
+                } else {
+                    Debug.debug("Failed to save water report: %s", resp.getMessage());
+                    res.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw (new InterruptedIOException("Interrupted while saving water reports"));
+        }
+        return (res);
+    }
+
+    @Override
+    public void deleteWaterReport(WaterReport wr) throws IOException {
+        Command resp = sendCommandAndAwaitResponse(Command.CommandType.DELETE_WATER_REPORT, toJson(wr), null);
+        if (!resp.isSuccessful()) {
+            Debug.debug("Unsuccessful water report delete: %s", resp.getMessage());
+            //maybe throw an exception so the message can be displayed to the user?
+        } else {
+            Debug.debug("Sucessfully deleted water report");
+        }
+    }
+
+    @Override
+    public QualityReport saveQualityReport(QualityReport qr) throws IOException {
+        Command resp = sendCommandAndAwaitResponse(Command.CommandType.SAVE_QUALITY_REPORT, toJson(qr), null);
+        if (resp.isSuccessful()) {
+            return (readPayload(resp, QualityReport.class).cloneIt());
+        } else {
+            Debug.debug("Failed to save user: %s", resp.getMessage());
+            return (null);
+        }
+    }
+
+    @Override
+    public void deleteQualityReport(QualityReport qr) throws IOException {
+        sendCommandAndAwaitResponse(Command.CommandType.DELETE_QUALITY_REPORT, toJson(qr), null);
+    }
+
+    /**
+     * Asks the server for one page of the water reports matching a query, without loading them into the model
+     * @param query The query. Pass the returned page's cursor in setCursor() to get the next page
+     * @return The page, or null if the server refused the query
+     * @throws IOException If there was a problem with the socket
+     */
+    public QueryPage queryWaterReports(ReportQuery query) throws IOException {
+        return (query(Command.CommandType.QUERY_WATER_REPORTS, query));
+    }
+
+    /**
+     * Asks the server for one page of the quality reports matching a query, without loading them into the model
+     * @param query The query. Pass the returned page's cursor in setCursor() to get the next page
+     * @return The page, or null if the server refused the query
+     * @throws IOException If there was a problem with the socket
+     */
+    public QueryPage queryQualityReports(ReportQuery query) throws IOException {
+        return (query(Command.CommandType.QUERY_QUALITY_REPORTS, query));
+    }
+
+    private QueryPage query(Command.CommandType type, ReportQuery query) throws IOException {
+        Command q = new Command(type, null, null);
+        q.setPayload(query);
+        Command resp = sendCommandAndAwaitResponse(q);
+        if (resp == null || !resp.isSuccessful()) {
+            Debug.debug("Failed to query reports: %s", resp == null ? "interrupted" : resp.getMessage());
+            return (null);
+        }
+        return (readPayload(resp, QueryPage.class));
+    }
+
+    @Override
+    public void addUser(User user) {
+        UserManager.addUser(user);
+    }
+
+    @Override
+    public void addWaterReport(WaterReport wr) {
+        Debug.debug("adding water report: %s", wr);
+        ReportManager.addWaterReport(wr);
+    }
+
+    @Override
+    public void addWaterReports(Collection<WaterReport> wrs) {
+        Debug.debug("adding %d water reports", wrs.size());
+        ReportManager.addWaterReports(wrs);
+    }
+
+    @Override
+    public void subscribeToRegion(Region region) throws IOException {
+        Command sub = new Command(Command.CommandType.SUBSCRIBE, region == null ? null : toJson(region), null);
+        sub.setPayload(region);
+        setRegionScoped(region != null);
+        this.region = region;
+        subscribed = true;
+        //the server doesn't answer these, the map moves too often to wait for it
+        sendCommand(sub);
+    }
+
+    @Override
+    public void removeWaterReports(Collection<Integer> reportNums) {
+        if (!reportNums.isEmpty()) {
+            Debug.debug("removing %d water reports", reportNums.size());
+            ReportManager.removeWaterReports(reportNums);
+        }
+    }
+
+    @Override
+    public void addQualityReport(QualityReport qr) {
+        Debug.debug("adding quality report: %s", qr);
+        WaterReport parent = ReportManager.filterWaterReportByNumber(qr.getParentReportNum());
+        if (parent != null) {
+            ReportManager.addQualityReport(parent, qr);
+        }
+    }
+}
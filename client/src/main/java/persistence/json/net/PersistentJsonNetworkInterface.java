@@ -0,0 +1,685 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package persistence.json.net;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import controller.MasterSingleton;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.application.Platform;
+import lib.Debug;
+import model.Credential;
+import model.QualityReport;
+import model.User;
+import model.WaterReport;
+import persistence.json.PersistentJsonInterface;
+import persistence.json.net.Command.CommandType;
+
+/**
+ *
+ * @author tybrown
+ */
+public abstract class PersistentJsonNetworkInterface extends PersistentJsonInterface implements AutoCloseable {
+    //after losing the connection: first retry after RECONNECT_MIN_MS, doubling up to RECONNECT_MAX_MS between tries
+    private static final long RECONNECT_MIN_MS = 250;
+    private static final long RECONNECT_MAX_MS = 30000;
+    //requests wait this long for the connection to come back before they fail
+    private static final long RESUME_TIMEOUT_MS = 30000;
+    //longer than the above, so a request gets the whole chance to be sent again after a reconnect first
+    private static final long REQUEST_TIMEOUT_MS = 60000;
+    //the server sends a HEARTBEAT after 20 quiet seconds, so hearing nothing for this long means the link is dead
+    private static final long SERVER_TIMEOUT_SECONDS = 90;
+    //a request the server refused as busy is sent again after the delay it asked for, this many times at most
+    private static final int BUSY_RETRIES = 3;
+    private static final long BUSY_WAIT_MAX_MS = 10000;
+
+    //replaced on every reconnect
+    private volatile Socket sock;
+    private volatile MessageChannel channel;
+    //set by disconnect(), so losing the connection after that doesn't reconnect
+    private volatile boolean closed = false;
+    //when the current connection was lost, 0 while connected
+    private volatile long lostAt = 0;
+
+    private String serverName;
+    private int serverPort;
+
+    private ReaderThread readerThread;
+    private CommandThread commandThread;
+
+    protected BlockingQueue<Command> inputMessages;
+    protected BlockingQueue<Command> inputCommands;
+
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final ConcurrentNavigableMap<Long, PendingRequest> pendingRequests = new ConcurrentSkipListMap<>();
+    //held while a request is added, and while reconnect() resumes: every request is then either sent again by
+    //reconnect(), or sees the new connection and sends itself
+    private final Object resuming = new Object();
+
+    //how far into the server's change log our reports are, so a reconnect only needs the changes since
+    private volatile long syncEpoch = 0;
+    private volatile long syncSequence = 0;
+    //handed out by the server when we authenticate, and sent with every command from then on instead of the credential
+    private volatile String session;
+    //while subscribed to a region, pushes skip reports outside of it, so they don't prove we're up to date
+    private volatile boolean regionScoped = false;
+
+    @Override
+    public void initialize() throws IOException {
+        closed = false;
+        connect();
+        readerThread = new ReaderThread();
+        readerThread.start();
+        commandThread = new CommandThread();
+        commandThread.start();
+    }
+
+    /**
+     * Constructs a persistent json network interface
+     * @param hostname The hostname of the server to connect to
+     * @param port The port of the server to connect to
+     */
+    public PersistentJsonNetworkInterface(String hostname, int port) {
+        this.serverName = hostname;
+        this.serverPort = port;
+        this.inputMessages = new LinkedBlockingQueue<>();
+        this.inputCommands = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Connects to the server. Should be called from the initialize() method. 
+     * @throws IOException If the connection to the server failed, no host listening on that port, no internet connection, etc
+     */
+    protected void connect() throws IOException {
+        this.sock = new Socket(serverName, serverPort);
+        //-Dthirsty.serverTimeoutSeconds=0 waits forever, like for servers which don't send heartbeats
+        sock.setSoTimeout((int) TimeUnit.SECONDS.toMillis(Long.getLong("thirsty.serverTimeoutSeconds", SERVER_TIMEOUT_SECONDS)));
+        this.channel = new MessageChannel(sock, this);
+    }
+
+    /**
+     * Disconnects from the server.
+     * @throws IOException If there was a problem during disconnection
+     */
+    public void disconnect() throws IOException {
+        closed = true;
+        if (sock != null && !sock.isClosed()) {
+            sock.close();
+        }
+        failPendingRequests(new IOException("Disconnected from the server"));
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+        if (commandThread != null) {
+            commandThread.interrupt();
+        }
+    }
+
+    /**
+     * Sets the encoding used for commands sent to the server. Only switch after the server agreed to it
+     * @param encoding The new encoding
+     * @param schemaVersion The newest binary schema version the server said it decodes, null if it didn't say
+     */
+    protected void setWireEncoding(Command.Encoding encoding, Integer schemaVersion) {
+        channel.setEncoding(encoding);
+        channel.setSchemaVersion(schemaVersion);
+    }
+
+    /**
+     * Turns compression of large frames sent to the server on or off. Only turn it on after the server agreed to it
+     * @param compress true to compress
+     */
+    protected void setFrameCompression(boolean compress) {
+        channel.setFrameCompression(compress);
+    }
+
+    /**
+     * Sends the given text to the server as a single message
+     * @param text The text to send
+     * @throws IOException If there was a problem with the socket. Connection must be re-established
+     */
+    public void sendMessage(String text) throws IOException {
+        Debug.debug("Sending message:\n%s", text);
+        channel.sendMessage(text);
+    }
+
+    /**
+     * Sends a command to the server in the negotiated encoding
+     * @param command The command to send
+     * @throws IOException If there was a problem with the socket. Connection must be re-established
+     */
+    public void sendCommand(Command command) throws IOException {
+        //before the check, so a request which waits for the reconnect is sent again with its session
+        if (command.getSession() == null) {
+            command.setSession(session);
+        }
+        if (lostAt != 0) {
+            throw (new IOException("Reconnecting to the server"));
+        }
+        if (channel == null) {
+            throw (new IOException("Not connected to the server"));
+        }
+        channel.sendCommand(command);
+    }
+
+    /**
+     * Checks if commands can be sent to the server right now
+     * @return false before connecting, while reconnecting, and after disconnecting
+     */
+    protected boolean isConnected() {
+        return (channel != null && lostAt == 0 && !closed);
+    }
+
+    /**
+     * Gets the count of the messages which are waiting for processing. 0 means no messages, and that a subsequent call to getNextMessage() will (most likely) block
+     * @return 
+     */
+    public int bufferedMessagesCount() {
+        return (inputMessages.size());
+    }
+
+    /**
+     * Gets the next (oldest) response command on the queue. Blocks if no command is available
+     * @return 
+     */
+    public Command getNextCommand() throws InterruptedException {
+        return (inputCommands.take());
+    }
+
+    /**
+     * Override of autocloseable interface (lets the try-with-resources automatically close the socket when done)
+     * @throws IOException if there was some problem during socket closing
+     */
+    @Override
+    public void close() throws IOException {
+        disconnect();
+    }
+
+    public Command sendCommandAndAwaitResponse(CommandType type, String data, Credential cred) throws IOException {
+        return (sendCommandAndAwaitResponse(new Command(type, data, cred)));
+    }
+
+    /**
+     * Sends a command and blocks until the server answers it. While the server answers that it's too busy,
+     * the command is sent again after the delay the server asked for, a few times
+     * @param command The command to send
+     * @return The response, or null if waiting was interrupted. Still a refusal with a retry delay if the server stayed busy
+     * @throws IOException If there was a problem with the socket, or the connection closed before the response came,
+     *      or the response didn't come in time
+     */
+    public Command sendCommandAndAwaitResponse(Command command) throws IOException {
+        try {
+            Command next = awaitResponse(command, sendRequest(command));
+            for (int i = 0; i < BUSY_RETRIES && !next.isSuccessful() && next.getRetryAfter() > 0; i++) {
+                Debug.debug("Server is busy (%s), sending %s again in %d ms", next.getMessage(), command.getCommand(), next.getRetryAfter());
+                Thread.sleep(Math.min(next.getRetryAfter(), BUSY_WAIT_MAX_MS));
+                next = awaitResponse(command, sendRequest(command));
+            }
+            Debug.debug("Got the response to our query for %s", command.getCommand());
+            return (next);
+        } catch (InterruptedException e) {
+            Debug.debug("getting response was interrupted!");
+            pendingRequests.remove(command.getRequestId());
+            return (null);
+        }
+    }
+
+    /**
+     * Waits for the response to a request made with sendRequest(). Gives up after -Dthirsty.requestTimeoutMs,
+     * so a request whose answer got lost doesn't block the caller forever
+     * @param command The request
+     * @param response Its pending response
+     * @return The response
+     * @throws IOException If the connection closed before the response came, or it didn't come in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    protected Command awaitResponse(Command command, CompletableFuture<Command> response) throws IOException, InterruptedException {
+        try {
+            return (response.get(Long.getLong("thirsty.requestTimeoutMs", REQUEST_TIMEOUT_MS), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            IOException timeout = new IOException(String.format("The server didn't answer %s in time", command.getCommand()));
+            pendingRequests.remove(command.getRequestId());
+            response.completeExceptionally(timeout);
+            throw (timeout);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw ((IOException) e.getCause());
+            }
+            throw (new IOException(e.getCause()));
+        }
+    }
+
+    /**
+     * Sends a command without waiting for the response, so many requests can be in flight over the connection at once.
+     * Responses are matched to their request by id, in whatever order they come back
+     * @param command The command to send. Gets a new request id
+     * @return Completes with the response, or exceptionally with an IOException if the connection closes first
+     * @throws IOException If there was a problem with the socket
+     */
+    public CompletableFuture<Command> sendRequest(Command command) throws IOException {
+        long id = nextRequestId.incrementAndGet();
+        command.setRequestId(id);
+        CompletableFuture<Command> response = new CompletableFuture<>();
+        synchronized (resuming) {
+            if (channel == null || (lostAt != 0 && System.currentTimeMillis() - lostAt > RESUME_TIMEOUT_MS)) {
+                throw (new IOException("Not connected to the server"));
+            }
+            pendingRequests.put(id, new PendingRequest(command, response));
+            if (lostAt != 0) {
+                //reconnect() sends it with the other unanswered requests
+                if (command.getSession() == null) {
+                    command.setSession(session);
+                }
+                Debug.debug("Request %d waits for the reconnect", id);
+                return (response);
+            }
+        }
+        Debug.debug("Sending command:\n%s", command);
+        try {
+            sendCommand(command);
+        } catch (IOException e) {
+            if (closed) {
+                pendingRequests.remove(id);
+                throw (e);
+            }
+            //sent again once reconnected. if the reader hasn't noticed the broken connection yet, make it
+            Debug.debug("Failed to send request %d, it waits for the reconnect: %s", id, e.toString());
+            if (lostAt == 0) {
+                closeSocket();
+            }
+        }
+        return (response);
+    }
+
+    /**
+     * Completes the pending request a response belongs to
+     * @param response The response from the server
+     * @return true if a request was waiting for it
+     */
+    private boolean completeRequest(Command response) {
+        PendingRequest request;
+        if (response.getRequestId() != 0) {
+            request = pendingRequests.remove(response.getRequestId());
+        } else {
+            //servers without request ids answer in order, so it belongs to the oldest request
+            Map.Entry<Long, PendingRequest> oldest = pendingRequests.pollFirstEntry();
+            request = oldest == null ? null : oldest.getValue();
+        }
+        if (request == null) {
+            return (false);
+        }
+        request.response.complete(response);
+        return (true);
+    }
+
+    /**
+     * Fails every request still waiting for a response
+     * @param reason Why the responses will never come
+     */
+    private void failPendingRequests(IOException reason) {
+        Map.Entry<Long, PendingRequest> pending;
+        while ((pending = pendingRequests.pollFirstEntry()) != null) {
+            pending.getValue().response.completeExceptionally(reason);
+        }
+    }
+
+    /**
+     * Builds the command which logs the new connection back in after a reconnect
+     * @return An AUTHENTICATE command resuming our session, or null if we weren't logged in
+     */
+    protected abstract Command resumeCommand();
+
+    /**
+     * Called with the server's answer to resumeCommand(), before any request is sent again
+     * @param response The AUTHENTICATE response. Unsuccessful if the session expired meanwhile
+     * @throws IOException If there was a problem with the socket
+     */
+    protected abstract void resumed(Command response) throws IOException;
+
+    /**
+     * Called by the reader when the connection broke. Reconnects with exponential backoff, logs back in with
+     * our session and sends every unanswered request again; the server answers a request it already handled
+     * from its cache instead of applying it twice (see server.SessionStore). Gives up only after disconnect()
+     */
+    private void reconnect() {
+        lostAt = System.currentTimeMillis();
+        long delay = RECONNECT_MIN_MS;
+        while (!closed) {
+            try {
+                //jitter, so a server restart isn't hit by every client at the same moment
+                Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                connect();
+                Command resume = resumeCommand();
+                Command resp = null;
+                if (resume != null) {
+                    channel.sendCommand(resume);
+                    while ((resp = channel.receiveCommand()) != null
+                            && !(resp.isResponse() && resp.getCommand() == CommandType.AUTHENTICATE)) {
+                        inputMessages.put(resp);
+                    }
+                    if (resp == null) {
+                        throw (new IOException("Connection closed while resuming the session"));
+                    }
+                    if (!resp.isSuccessful()) {
+                        failPendingRequests(new IOException("Could not resume the session: " + resp.getMessage()));
+                    }
+                }
+                List<PendingRequest> unanswered;
+                long downFor;
+                synchronized (resuming) {
+                    //requests made from here on are sent by their own thread, so only these are sent again
+                    unanswered = new ArrayList<>(pendingRequests.values());
+                    downFor = System.currentTimeMillis() - lostAt;
+                    lostAt = 0;
+                    if (resp != null) {
+                        resumed(resp);
+                    }
+                    for (PendingRequest request : unanswered) {
+                        channel.sendCommand(request.command);
+                    }
+                }
+                Debug.log("Reconnected to %s:%d after %d ms, sent %d requests again", serverName, serverPort,
+                        downFor, unanswered.size());
+                return;
+            } catch (IOException e) {
+                Debug.debug("Reconnect failed: %s", e.toString());
+                closeSocket();
+                if (lostAt == 0) {
+                    //broke again while sending the requests
+                    lostAt = System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            delay = Math.min(delay * 2, RECONNECT_MAX_MS);
+            if (System.currentTimeMillis() - lostAt > RESUME_TIMEOUT_MS) {
+                failPendingRequests(new IOException("Lost the connection to the server"));
+            }
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            if (sock != null) {
+                sock.close();
+            }
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * A request waiting for its response, kept so it can be sent again after a reconnect
+     */
+    private static class PendingRequest {
+        private final Command command;
+        private final CompletableFuture<Command> response;
+
+        private PendingRequest(Command command, CompletableFuture<Command> response) {
+            this.command = command;
+            this.response = response;
+        }
+    }
+
+    public abstract void addUser(User u);
+
+    public abstract void addWaterReport(WaterReport wr);
+
+    public abstract void addQualityReport(QualityReport qr);
+
+    public abstract void addWaterReports(Collection<WaterReport> wrs);
+
+    public abstract void removeWaterReports(Collection<Integer> reportNums);
+
+    /**
+     * Gets the epoch of the server change log our reports are synchronized with
+     * @return the epoch, 0 if we haven't been sent any reports yet
+     */
+    protected long getSyncEpoch() {
+        return (syncEpoch);
+    }
+
+    /**
+     * Gets the last server change log sequence our reports include
+     * @return the sequence, 0 if we haven't been sent any reports yet
+     */
+    protected long getSyncSequence() {
+        return (syncSequence);
+    }
+
+    /**
+     * Sets how far into the server's change log our reports already are, like when they were loaded from a cache
+     * @param epoch The change log epoch, 0 if we have no reports
+     * @param sequence The last sequence our reports include
+     */
+    protected synchronized void setSyncPosition(long epoch, long sequence) {
+        syncEpoch = epoch;
+        syncSequence = sequence;
+    }
+
+    /**
+     * Called once the last chunk of a snapshot was applied to the model
+     * @param delta true if the snapshot only held the changes since our sync position,
+     * false if it was the server's whole report set
+     */
+    protected void snapshotApplied(boolean delta) {
+    }
+
+    /**
+     * Gets the session token the server gave us
+     * @return the token, null if not logged in
+     */
+    protected String getSession() {
+        return (session);
+    }
+
+    /**
+     * Sets the session token to send with every command
+     * @param session The token from the AUTHENTICATE response, null once logged out
+     */
+    protected void setSession(String session) {
+        this.session = session;
+    }
+
+    /**
+     * Sets whether the server only pushes changes to reports in a region
+     * @param regionScoped true if subscribed to a region
+     */
+    protected void setRegionScoped(boolean regionScoped) {
+        this.regionScoped = regionScoped;
+    }
+
+    /**
+     * Moves our position in the server's change log forward to that of an applied command
+     * @param c The applied command
+     */
+    private synchronized void advanceSync(Command c) {
+        if (c.getEpoch() == 0 || (regionScoped && c.getCommand() != CommandType.LOAD_SNAPSHOT)) {
+            return;
+        }
+        if (c.getEpoch() != syncEpoch) {
+            //the server restarted, sequences from before mean nothing
+            syncEpoch = c.getEpoch();
+            syncSequence = c.getSequence();
+        } else if (c.getSequence() > syncSequence) {
+            syncSequence = c.getSequence();
+        }
+    }
+
+    /**
+     * Asks the FX thread to redraw the report screen with the current model
+     */
+    protected void refreshReportScreen() {
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                MasterSingleton.updateReportScreen(); //can't do this from a non-FX thread
+            }
+        });
+    }
+
+    /**
+     * Class that handles asynchronous network reading
+     */
+    private class ReaderThread extends Thread {
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    Command in = channel.receiveCommand();
+                    if (in == null) {
+                        Debug.debug("Server closed the connection!");
+                        closeSocket();
+                        reconnect();
+                        continue;
+                    }
+                    if (in.getCommand() == CommandType.HEARTBEAT) {
+                        //answered right here, so a busy command thread doesn't make us look dead
+                        if (!in.isResponse()) {
+                            sendCommand(new Command(CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(in));
+                        }
+                        continue;
+                    }
+                    inputMessages.put(in);
+                    Debug.debug("Put into inputMessages: %s", in);
+                } catch (JsonSyntaxException e) {
+                    Debug.debug("Failed to cast incoming message to command: %s", e.toString());
+                } catch (IOException e) {
+                    //a malformed frame leaves the stream out of sync, so the connection can't be trusted anymore
+                    Debug.debug("Exception: %s", e.toString());
+                    closeSocket();
+                    reconnect();
+                } catch (InterruptedException e) {
+                    Debug.debug("Exception: %s", e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     */
+    private class CommandThread extends Thread {
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    Debug.debug("Taking from inputMessages...");
+                    Command commandIn = inputMessages.take();
+                    Debug.debug("Got a command:\n%s", commandIn);
+                    if (commandIn.getCommand() == Command.CommandType.UNKNOWN) {
+                        Debug.debug("Unknown command type!");
+                        continue;
+                    }
+                    if (commandIn.isResponse()) {
+                        if (!completeRequest(commandIn)) {
+                            inputCommands.put(commandIn);
+                        }
+                    } else {
+                        //this is a new message (push notification), like loading a new user/report. handle adding it to the model by calling the overrideable functions
+                        switch (commandIn.getCommand()) {
+                            case LOAD_USER:
+                                try {
+                                    User u = readPayload(commandIn, User.class);
+                                    addUser(u.cloneIt());
+                                } catch (JsonSyntaxException e) {
+                                    Debug.debug("Failed to cast incoming data to user: %s", e.toString());
+                                }
+                                break;
+                            case LOAD_WATER_REPORT:
+                                try {
+                                    WaterReport wr = readPayload(commandIn, WaterReport.class);
+                                    addWaterReport(wr.cloneIt());
+                                    advanceSync(commandIn);
+                                    refreshReportScreen();
+                                } catch (JsonSyntaxException e) {
+                                    Debug.debug("Failed to cast incoming data to water report: %s", e.toString());
+                                }
+                                break;
+                            case LOAD_QUALITY_REPORT:
+                                try {
+                                    QualityReport qr = readPayload(commandIn, QualityReport.class);
+                                    addQualityReport(qr.cloneIt());
+                                    advanceSync(commandIn);
+                                    refreshReportScreen();
+                                } catch (JsonSyntaxException e) {
+                                    Debug.debug("Failed to cast incoming data to quality report: %s", e.toString());
+                                }
+                                break;
+                            case LOAD_SNAPSHOT:
+                                try {
+                                    ReportBatch batch = readPayload(commandIn, ReportBatch.class);
+                                    List<WaterReport> wrs = new ArrayList<>(batch.getReports().size());
+                                    for (WaterReport wr : batch.getReports()) {
+                                        wrs.add(wr.cloneIt());
+                                    }
+                                    addWaterReports(wrs);
+                                    Debug.debug("Applied %s chunk %d with %d reports", batch.isDelta() ? "delta" : "snapshot",
+                                            batch.getChunk(), wrs.size());
+                                    //one redraw for the whole snapshot instead of one per report
+                                    if (batch.isLast()) {
+                                        removeWaterReports(batch.getDeleted());
+                                        advanceSync(commandIn);
+                                        snapshotApplied(batch.isDelta());
+                                        refreshReportScreen();
+                                    }
+                                } catch (JsonParseException e) {
+                                    Debug.debug("Failed to cast incoming data to snapshot: %s", e.toString());
+                                }
+                                break;
+                            case LOAD_REPORT_BATCH:
+                                try {
+                                    //pushes the server held back and coalesced, applied with a single redraw
+                                    ReportBatch batch = readPayload(commandIn, ReportBatch.class);
+                                    List<WaterReport> wrs = new ArrayList<>(batch.getReports().size());
+                                    for (WaterReport wr : batch.getReports()) {
+                                        wrs.add(wr.cloneIt());
+                                    }
+                                    addWaterReports(wrs);
+                                    removeWaterReports(batch.getDeleted());
+                                    advanceSync(commandIn);
+                                    refreshReportScreen();
+                                } catch (JsonParseException e) {
+                                    Debug.debug("Failed to cast incoming data to report batch: %s", e.toString());
+                                }
+                                break;
+                            case DELETE_WATER_REPORT:
+                                try {
+                                    WaterReport wr = readPayload(commandIn, WaterReport.class);
+                                    removeWaterReports(Collections.singletonList(wr.getReportNum()));
+                                    advanceSync(commandIn);
+                                    refreshReportScreen();
+                                } catch (JsonSyntaxException e) {
+                                    Debug.debug("Failed to cast incoming data to water report: %s", e.toString());
+                                }
+                                break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Debug.debug("Interrupted: %s", e.toString());
+                }
+            }
+        }
+    }
+}
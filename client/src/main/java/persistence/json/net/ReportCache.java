@@ -0,0 +1,535 @@
+package persistence.json.net;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.Expose;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lib.Debug;
+import model.Credential;
+import model.QualityReport;
+import model.User;
+import model.WaterReport;
+import persistence.json.PersistentJsonInterface;
+
+/**
+ * The desktop client's local copy of the server's reports, kept on disk so the client can start (and keep working)
+ * without the server.
+ * Holds the reports as the server last confirmed them, with the change log position they are current up to,
+ * the last user who logged in, and the queue of writes made while offline which still have to reach the server.
+ * The reports are an append-only journal (the last line for a report wins when loading) which is compacted
+ * when it grows too long. The write queue is small and is rewritten and synced on every change, so a write
+ * the user was told about is never lost.
+ * The saved credential logs in to the server as is, so it's as good as the password: the cache folder and
+ * its files are only accessible to the user who owns them (on file systems with POSIX permissions)
+ *
+ * @author tybrown
+ */
+public class ReportCache {
+
+    public static final String DEFAULT_PATH = System.getProperty("user.home") + "/.thirsty/";
+    private static final String FILE_EXTENSION = ".json";
+    public static final String REPORT_FILE_NAME = "reportCache" + FILE_EXTENSION;
+    public static final String QUEUE_FILE_NAME = "writeQueue" + FILE_EXTENSION;
+    public static final String LOGIN_FILE_NAME = "login" + FILE_EXTENSION;
+    //compact once the journal has this many more lines than there are reports, or twice as many lines for
+    //big caches, so compacting costs about the same per appended line however many reports there are
+    private static final int COMPACT_SLACK = 1024;
+    private static final String PRIVATE_FOLDER = "rwx------";
+    private static final String PRIVATE_FILE = "rw-------";
+
+    private final String pathName;
+    private final PersistentJsonInterface json;
+    //report number -> json of the report as the server last sent it
+    private final TreeMap<Integer, String> reports = new TreeMap<>();
+    private final List<QueuedWrite> queue = new ArrayList<>();
+    private long epoch;
+    private long sequence;
+    private long nextWriteId = 1;
+    private int journalLines;
+    private Writer journal;
+    private Credential credential;
+    private User user;
+
+    /**
+     * Constructs a cache. Nothing is read until load()
+     * @param path The folder for the cache files to live in, created if missing
+     * @param json Converts the cached objects to and from json
+     */
+    public ReportCache(String path, PersistentJsonInterface json) {
+        this.pathName = path.endsWith("/") ? path : path + "/";
+        this.json = json;
+    }
+
+    /**
+     * Reads the cache files, and opens the journal for appending
+     * @throws IOException If the cache folder can't be created or the files can't be opened
+     */
+    public synchronized void load() throws IOException {
+        File dir = new File(pathName);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw (new IOException("Failed to create the cache folder " + pathName));
+        }
+        //also tightens the files of caches made before they were kept private
+        restrict(dir, PRIVATE_FOLDER);
+        for (String name : new String[] {REPORT_FILE_NAME, QUEUE_FILE_NAME, LOGIN_FILE_NAME}) {
+            File f = new File(pathName + name);
+            if (f.exists()) {
+                restrict(f, PRIVATE_FILE);
+            }
+        }
+        for (String line : readLines(REPORT_FILE_NAME)) {
+            CacheEntry e = parse(line, CacheEntry.class);
+            if (e == null) {
+                continue;
+            }
+            if (e.report != null) {
+                reports.put(e.report.getReportNum(), json.toJson(e.report));
+            } else if (e.reportNum != 0) {
+                reports.remove(e.reportNum);
+            }
+            epoch = e.epoch;
+            sequence = e.sequence;
+            journalLines++;
+        }
+        for (String line : readLines(QUEUE_FILE_NAME)) {
+            QueuedWrite w = parse(line, QueuedWrite.class);
+            if (w != null) {
+                queue.add(w);
+                nextWriteId = Math.max(nextWriteId, w.id + 1);
+            }
+        }
+        List<String> login = readLines(LOGIN_FILE_NAME);
+        if (login.size() == 2) {
+            credential = parse(login.get(0), Credential.class);
+            user = parse(login.get(1), User.class);
+        }
+        if (oversized()) {
+            compact();
+        } else {
+            openJournal();
+        }
+        Debug.debug("Loaded %d cached reports up to %d/%d, %d queued writes", reports.size(), epoch, sequence, queue.size());
+    }
+
+    /**
+     * Writes the final change log position and closes the journal
+     * @param epoch The change log epoch the client is synchronized with
+     * @param sequence The change log sequence the client is synchronized up to
+     */
+    public synchronized void close(long epoch, long sequence) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            append(new CacheEntry(0, null, epoch, sequence));
+            journal.close();
+        } catch (IOException e) {
+            Debug.debug("Failed to close the report cache: %s", e.toString());
+        }
+        journal = null;
+    }
+
+    /**
+     * Gets the cached reports
+     * @return new copies of every cached report, in report number order
+     */
+    public synchronized List<WaterReport> getReports() {
+        List<WaterReport> res = new ArrayList<>(reports.size());
+        for (String s : reports.values()) {
+            res.add(json.fromJson(s, WaterReport.class));
+        }
+        return (res);
+    }
+
+    /**
+     * Gets a report as the server last confirmed it
+     * @param reportNum The number of the report
+     * @return The report's json, or null if the server doesn't have it (as far as we know)
+     */
+    public synchronized String getReportJson(int reportNum) {
+        return (reports.get(reportNum));
+    }
+
+    public synchronized long getEpoch() {
+        return (epoch);
+    }
+
+    public synchronized long getSequence() {
+        return (sequence);
+    }
+
+    /**
+     * Stores reports the server sent
+     * @param wrs The reports
+     * @param epoch The change log epoch the client is synchronized with
+     * @param sequence The change log sequence the client is synchronized up to. Never ahead of the reports
+     */
+    public synchronized void putReports(Collection<WaterReport> wrs, long epoch, long sequence) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        for (WaterReport wr : wrs) {
+            String s = json.toJson(wr);
+            if (!s.equals(reports.put(wr.getReportNum(), s))) {
+                append(new CacheEntry(wr.getReportNum(), wr, epoch, sequence));
+            }
+        }
+    }
+
+    /**
+     * Stores a quality report the server sent, inside the cached copy of its parent
+     * @param qr The quality report
+     * @param epoch The change log epoch the client is synchronized with
+     * @param sequence The change log sequence the client is synchronized up to
+     */
+    public synchronized void putQualityReport(QualityReport qr, long epoch, long sequence) {
+        String parent = reports.get(qr.getParentReportNum());
+        if (parent != null) {
+            WaterReport wr = json.fromJson(parent, WaterReport.class);
+            wr.addQualityReport(qr.cloneIt());
+            List<WaterReport> changed = new ArrayList<>(1);
+            changed.add(wr);
+            putReports(changed, epoch, sequence);
+        }
+    }
+
+    /**
+     * Forgets reports the server deleted
+     * @param reportNums The numbers of the reports
+     * @param epoch The change log epoch the client is synchronized with
+     * @param sequence The change log sequence the client is synchronized up to
+     */
+    public synchronized void removeReports(Collection<Integer> reportNums, long epoch, long sequence) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        for (Integer num : reportNums) {
+            if (reports.remove(num) != null) {
+                append(new CacheEntry(num, null, epoch, sequence));
+            }
+        }
+    }
+
+    /**
+     * Forgets every report except some, after the server sent its whole report set
+     * @param reportNums The numbers of the reports to keep
+     * @return The numbers of the reports which were forgotten
+     */
+    public synchronized List<Integer> retainReports(Collection<Integer> reportNums) {
+        List<Integer> gone = new ArrayList<>();
+        for (Integer num : reports.keySet()) {
+            if (!reportNums.contains(num)) {
+                gone.add(num);
+            }
+        }
+        removeReports(gone, epoch, sequence);
+        return (gone);
+    }
+
+    /**
+     * Remembers who logged in last, so they can log in again while offline
+     * @param credential The credential they logged in with
+     * @param user The user
+     */
+    public synchronized void saveLogin(Credential credential, User user) {
+        this.credential = credential;
+        this.user = user;
+        try {
+            List<String> lines = new ArrayList<>(2);
+            lines.add(json.toJson(credential));
+            lines.add(json.toJson(user));
+            writeSynced(LOGIN_FILE_NAME, lines);
+        } catch (IOException e) {
+            Debug.debug("Failed to save the login: %s", e.toString());
+        }
+    }
+
+    /**
+     * Gets the credential the last user logged in with
+     * @return the credential, or null if nobody logged in yet
+     */
+    public synchronized Credential getCredential() {
+        return (credential);
+    }
+
+    /**
+     * Gets the last user who logged in
+     * @return the user, or null if nobody logged in yet
+     */
+    public synchronized User getUser() {
+        return (user);
+    }
+
+    /**
+     * Gets the writes still waiting for the server
+     * @return the writes, oldest first
+     */
+    public synchronized List<QueuedWrite> getQueue() {
+        return (new ArrayList<>(queue));
+    }
+
+    /**
+     * Queues a write for the server. On disk before this returns
+     * @param username The user who made the write
+     * @param command The type of the write
+     * @param data The json data of the command
+     * @param base The json of the report as the server last confirmed it when the write was made, null if none
+     * @return The queued write
+     * @throws IOException If the queue couldn't be written, so the write would be lost
+     */
+    public synchronized QueuedWrite enqueue(String username, Command.CommandType command, String data, String base)
+            throws IOException {
+        QueuedWrite w = new QueuedWrite(nextWriteId++, username, command, data, base);
+        queue.add(w);
+        try {
+            saveQueue();
+        } catch (IOException e) {
+            queue.remove(w);
+            throw (e);
+        }
+        return (w);
+    }
+
+    /**
+     * Replaces the data of a queued write, like after giving a new report a different number
+     * @param w The queued write
+     * @param data The new json data
+     * @throws IOException If the queue couldn't be written
+     */
+    public synchronized void update(QueuedWrite w, String data) throws IOException {
+        w.data = data;
+        saveQueue();
+    }
+
+    /**
+     * Takes a write off the queue because the server answered it, or it can never be sent
+     * @param w The queued write
+     * @throws IOException If the queue couldn't be written
+     */
+    public synchronized void remove(QueuedWrite w) throws IOException {
+        if (queue.remove(w)) {
+            saveQueue();
+        }
+    }
+
+    private void saveQueue() throws IOException {
+        List<String> lines = new ArrayList<>(queue.size());
+        for (QueuedWrite w : queue) {
+            lines.add(json.toJson(w));
+        }
+        writeSynced(QUEUE_FILE_NAME, lines);
+    }
+
+    /**
+     * Rewrites the journal with one line per report
+     * @throws IOException If the journal couldn't be written
+     */
+    private void compact() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        List<String> lines = new ArrayList<>(reports.size() + 1);
+        for (Map.Entry<Integer, String> e : reports.entrySet()) {
+            lines.add(json.toJson(new CacheEntry(e.getKey(), json.fromJson(e.getValue(), WaterReport.class), epoch, sequence)));
+        }
+        lines.add(json.toJson(new CacheEntry(0, null, epoch, sequence)));
+        try {
+            writeSynced(REPORT_FILE_NAME, lines);
+            Debug.debug("Compacted the report cache from %d to %d lines", journalLines, lines.size());
+            journalLines = lines.size();
+        } finally {
+            //the old journal if that failed, which is still good
+            openJournal();
+        }
+    }
+
+    private boolean oversized() {
+        return (journalLines > reports.size() + Math.max(COMPACT_SLACK, reports.size()));
+    }
+
+    private void openJournal() throws IOException {
+        File f = new File(pathName + REPORT_FILE_NAME);
+        journal = new BufferedWriter(new FileWriter(f, true));
+        restrict(f, PRIVATE_FILE);
+    }
+
+    private void append(CacheEntry e) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(json.toJson(e)).append('\n');
+            journal.flush();
+            journalLines++;
+            //during the session too, the client may run for days
+            if (oversized()) {
+                compact();
+            }
+        } catch (IOException ex) {
+            //only a cache: the next sync from the server fills in whatever didn't make it to disk
+            Debug.debug("Failed to write to the report cache: %s", ex.toString());
+        }
+    }
+
+    /**
+     * Replaces a file with the given lines, all or nothing, and waits until they are on the disk
+     */
+    private void writeSynced(String filename, List<String> lines) throws IOException {
+        File tmp = new File(pathName + filename + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            //before anything is in it
+            restrict(tmp, PRIVATE_FILE);
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (String line : lines) {
+                w.append(line).append('\n');
+            }
+            w.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(pathName + filename).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Makes a file or folder accessible to its owner only, where the file system supports it
+     * @param f The file or folder
+     * @param permissions The POSIX permissions, like "rw-------"
+     */
+    private void restrict(File f, String permissions) {
+        try {
+            Files.setPosixFilePermissions(f.toPath(), PosixFilePermissions.fromString(permissions));
+        } catch (UnsupportedOperationException e) {
+            //like on Windows, where the folder in the user's home is private already
+        } catch (IOException e) {
+            Debug.debug("Failed to make %s private: %s", f, e.toString());
+        }
+    }
+
+    private List<String> readLines(String filename) throws IOException {
+        List<String> res = new ArrayList<>();
+        File f = new File(pathName + filename);
+        if (!f.exists()) {
+            return (res);
+        }
+        try (BufferedReader rd = new BufferedReader(new FileReader(f))) {
+            String line;
+            while ((line = rd.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    res.add(line);
+                }
+            }
+        }
+        return (res);
+    }
+
+    private <T> T parse(String line, Class<T> c) {
+        try {
+            return (json.fromJson(line, c));
+        } catch (JsonParseException e) {
+            //a line cut short by a crash, everything before it is still good
+            Debug.debug("Skipping a broken line in the cache: %s", e.toString());
+            return (null);
+        }
+    }
+
+    /**
+     * One line of the report journal: a report, the deletion of one (no report), or just the position (number 0)
+     */
+    private static class CacheEntry {
+        @Expose
+        private int reportNum;
+        @Expose
+        private WaterReport report;
+        @Expose
+        private long epoch;
+        @Expose
+        private long sequence;
+
+        private CacheEntry(int reportNum, WaterReport report, long epoch, long sequence) {
+            this.reportNum = reportNum;
+            this.report = report;
+            this.epoch = epoch;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A write made while offline, waiting to be sent to the server
+     */
+    public static class QueuedWrite {
+        @Expose
+        private long id;
+        @Expose
+        private String username;
+        @Expose
+        private Command.CommandType command;
+        @Expose
+        private String data;
+        @Expose
+        private String base;
+
+        private QueuedWrite(long id, String username, Command.CommandType command, String data, String base) {
+            this.id = id;
+            this.username = username;
+            this.command = command;
+            this.data = data;
+            this.base = base;
+        }
+
+        public long getId() {
+            return (id);
+        }
+
+        public String getUsername() {
+            return (username);
+        }
+
+        public Command.CommandType getCommand() {
+            return (command);
+        }
+
+        public String getData() {
+            return (data);
+        }
+
+        /**
+         * Gets the report as the server last confirmed it when the write was made. If the server's copy is
+         * different by the time the write is sent, someone else changed it meanwhile
+         * @return the report's json, or null if the server didn't have it
+         */
+        public String getBase() {
+            return (base);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof QueuedWrite && ((QueuedWrite) obj).id == id);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(id));
+        }
+
+        @Override
+        public String toString() {
+            return (String.format("QueuedWrite: [id: %d; user: %s; command: %s]", id, username, command));
+        }
+    }
+}
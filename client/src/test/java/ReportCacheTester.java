@@ -0,0 +1,166 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import model.Credential;
+import model.QualityReport;
+import model.User;
+import model.UserLevel;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+import persistence.json.net.ReportCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A JUnit test class for the client's on-disk report cache and write queue
+ * @author tybrown
+ */
+public class ReportCacheTester {
+    public static final int TIMEOUT = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PersistentJsonFile json = new PersistentJsonFile("/tmp/none/");
+    private String path;
+    private ReportCache cache;
+
+    @Before
+    public void setup() throws IOException {
+        path = folder.getRoot().getPath();
+        cache = new ReportCache(path, json);
+        cache.load();
+    }
+
+    private ReportCache reload() throws IOException {
+        cache.close(cache.getEpoch(), cache.getSequence());
+        cache = new ReportCache(path, json);
+        cache.load();
+        return (cache);
+    }
+
+    private static WaterReport report(int num) {
+        return (new WaterReport(num, 33.7756, -84.3963, WaterType.LAKE, WaterCondition.CLEAR, "author"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testReportsSurviveReload() throws IOException {
+        cache.putReports(Arrays.asList(report(1), report(2), report(3)), 7, 3);
+        cache.removeReports(Collections.singletonList(2), 7, 4);
+        cache.putQualityReport(new QualityReport(1, "author", WaterSafety.SAFE, 1, 2, 3), 7, 5);
+        cache.close(7, 6);
+        cache = new ReportCache(path, json);
+        cache.load();
+        List<WaterReport> wrs = cache.getReports();
+        assertEquals(2, wrs.size());
+        assertEquals(1, wrs.get(0).getReportNum());
+        assertEquals(3, wrs.get(1).getReportNum());
+        assertEquals(1, wrs.get(1).getQualityReportList().size());
+        assertNull(cache.getReportJson(2));
+        assertEquals(7, cache.getEpoch());
+        assertEquals(6, cache.getSequence());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRetainReports() throws IOException {
+        cache.putReports(Arrays.asList(report(1), report(2), report(3)), 1, 1);
+        assertEquals(Arrays.asList(1, 3), cache.retainReports(Collections.singleton(2)));
+        assertEquals(1, reload().getReports().size());
+        assertNotNull(cache.getReportJson(2));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testQueueSurvivesReload() throws IOException {
+        ReportCache.QueuedWrite a = cache.enqueue("user1", Command.CommandType.SAVE_WATER_REPORT, json.toJson(report(1)), null);
+        String base = json.toJson(report(2));
+        ReportCache.QueuedWrite b = cache.enqueue("user1", Command.CommandType.DELETE_WATER_REPORT, base, base);
+        cache.remove(a);
+        //no close(): the queue has to be on disk as soon as enqueue() returns
+        cache = new ReportCache(path, json);
+        cache.load();
+        List<ReportCache.QueuedWrite> queue = cache.getQueue();
+        assertEquals(1, queue.size());
+        assertEquals(b, queue.get(0));
+        assertEquals(Command.CommandType.DELETE_WATER_REPORT, queue.get(0).getCommand());
+        assertEquals(base, queue.get(0).getBase());
+        assertEquals("user1", queue.get(0).getUsername());
+        assertTrue(cache.enqueue("user1", Command.CommandType.SAVE_WATER_REPORT, "{}", null).getId() > b.getId());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testUpdateQueued() throws IOException {
+        ReportCache.QueuedWrite a = cache.enqueue("user1", Command.CommandType.SAVE_WATER_REPORT, json.toJson(report(1)), null);
+        cache.update(a, json.toJson(report(5)));
+        assertEquals(5, json.fromJson(reload().getQueue().get(0).getData(), WaterReport.class).getReportNum());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLogin() throws IOException {
+        assertNull(cache.getUser());
+        Credential c = new Credential("user1", "password");
+        cache.saveLogin(c, new User("user1", "Name", "Title", "user1@x", UserLevel.WORKER));
+        reload();
+        assertEquals(c, cache.getCredential());
+        assertEquals("user1", cache.getUser().getUsername());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testBrokenLineSkipped() throws IOException {
+        cache.putReports(Collections.singletonList(report(1)), 1, 1);
+        cache.close(1, 1);
+        try (FileWriter w = new FileWriter(new File(path, ReportCache.REPORT_FILE_NAME), true)) {
+            w.write("{\"reportNum\":2,\"report\":{\"reportNumPro\n");
+        }
+        cache = new ReportCache(path, json);
+        cache.load();
+        assertEquals(1, cache.getReports().size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCompaction() throws IOException {
+        File journal = new File(path, ReportCache.REPORT_FILE_NAME);
+        for (int i = 0; i < 3000; i++) {
+            WaterReport wr = report(1);
+            wr.addQualityReport(new QualityReport(i + 1, "author", WaterSafety.SAFE, i, 2, 1));
+            cache.putReports(Collections.singletonList(wr), 1, i);
+            if (i % 100 == 0) {
+                //compacted while running, not only when loaded again
+                assertTrue(Files.readAllLines(journal.toPath()).size() <= 1030);
+            }
+        }
+        reload();
+        assertEquals(1, cache.getReports().size());
+        assertEquals(3000, cache.getReports().get(0).getQualityReportList().first().getReportNum());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFilesArePrivate() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        cache.saveLogin(new Credential("user1", "password"), new User("user1", "Name", "Title", "user1@x", UserLevel.WORKER));
+        cache.putReports(Collections.singletonList(report(1)), 1, 1);
+        cache.enqueue("user1", Command.CommandType.SAVE_WATER_REPORT, json.toJson(report(2)), null);
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(path).toPath())));
+        for (String name : new String[] {ReportCache.LOGIN_FILE_NAME, ReportCache.REPORT_FILE_NAME, ReportCache.QUEUE_FILE_NAME}) {
+            assertEquals(name, "rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(path, name).toPath())));
+        }
+    }
+}
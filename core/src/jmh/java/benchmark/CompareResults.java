@@ -0,0 +1,100 @@
+package benchmark;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares a JMH run with the baseline, both JMH JSON result files (-rf json), and prints every benchmark's change.
+ * A benchmark regressed when it got worse by more than -Dthirsty.regressionPercent (default 10) and by more than
+ * the error margins of both runs together; the exit status is 1 if any did.
+ * The baseline has to come from the same machine and JDK, see gradle jmhBaseline.
+ * Run with: gradle jmh jmhCompare
+ * @author tybrown
+ */
+public final class CompareResults {
+
+    private static final double REGRESSION_PERCENT = 10;
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults baseline.json results.json");
+            System.exit(2);
+        }
+        double limit = Double.parseDouble(System.getProperty("thirsty.regressionPercent", Double.toString(REGRESSION_PERCENT)));
+        Map<String, JsonObject> baseline = read(args[0]);
+        Map<String, JsonObject> results = read(args[1]);
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "Benchmark", "Baseline", "Now", "Change");
+        for (Map.Entry<String, JsonObject> e : results.entrySet()) {
+            JsonObject now = e.getValue().getAsJsonObject("primaryMetric");
+            JsonObject before = baseline.containsKey(e.getKey()) ? baseline.get(e.getKey()).getAsJsonObject("primaryMetric") : null;
+            String unit = now.get("scoreUnit").getAsString();
+            double score = now.get("score").getAsDouble();
+            if (before == null || !unit.equals(before.get("scoreUnit").getAsString())) {
+                System.out.printf("%-60s %14s %14s %9s%n", e.getKey(), "-", format(score, unit), "new");
+                continue;
+            }
+            double old = before.get("score").getAsDouble();
+            double change = (score - old) / old * 100;
+            //throughput should go up, everything else (times) down
+            boolean higherIsBetter = "thrpt".equals(e.getValue().get("mode").getAsString());
+            double worse = higherIsBetter ? -change : change;
+            boolean noise = Math.abs(score - old) <= error(now) + error(before);
+            boolean regressed = worse > limit && !noise;
+            regressions += regressed ? 1 : 0;
+            System.out.printf("%-60s %14s %14s %+8.1f%%%s%n", e.getKey(), format(old, unit), format(score, unit), change,
+                    regressed ? "  REGRESSION" : "");
+        }
+        for (String name : baseline.keySet()) {
+            if (!results.containsKey(name)) {
+                System.out.printf("%-60s %14s %14s %9s%n", name, "", "-", "not run");
+            }
+        }
+        if (regressions > 0) {
+            System.out.printf("%d benchmarks regressed by more than %.0f%%%n", regressions, limit);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH result file
+     * @param file The file
+     * @return benchmark name with its parameters, like "benchmark.ReportManagerBenchmark.add:reports=10000" -> result
+     * @throws IOException if the file can't be read
+     */
+    private static Map<String, JsonObject> read(String file) throws IOException {
+        Map<String, JsonObject> res = new LinkedHashMap<>();
+        try (Reader in = new FileReader(file)) {
+            for (JsonElement el : new JsonParser().parse(in).getAsJsonArray()) {
+                JsonObject result = el.getAsJsonObject();
+                StringBuilder name = new StringBuilder(result.get("benchmark").getAsString());
+                if (result.has("params")) {
+                    for (Map.Entry<String, JsonElement> p : result.getAsJsonObject("params").entrySet()) {
+                        name.append(':').append(p.getKey()).append('=').append(p.getValue().getAsString());
+                    }
+                }
+                res.put(name.toString(), result);
+            }
+        }
+        return (res);
+    }
+
+    private static double error(JsonObject metric) {
+        JsonElement err = metric.get("scoreError");
+        //"NaN" when there were too few iterations to tell
+        return (err == null || !err.isJsonPrimitive() || Double.isNaN(err.getAsDouble()) ? 0 : err.getAsDouble());
+    }
+
+    private static String format(double score, String unit) {
+        return (String.format("%.3f %s", score, unit));
+    }
+}
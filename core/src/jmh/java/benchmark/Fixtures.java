@@ -0,0 +1,47 @@
+package benchmark;
+
+import java.time.LocalDateTime;
+import model.QualityReport;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+
+/**
+ * The reports the benchmarks work on, the same every run so results can be compared with the baseline
+ * @author tybrown
+ */
+final class Fixtures {
+
+    static final LocalDateTime START = LocalDateTime.of(2016, 11, 1, 12, 0);
+
+    private Fixtures() {
+    }
+
+    /**
+     * Makes a water report somewhere around Atlanta
+     * @param num The report number, which also picks where and when it is
+     * @param qualityReports How many quality reports it has
+     * @return the report
+     */
+    static WaterReport waterReport(int num, int qualityReports) {
+        WaterReport wr = new WaterReport(num, START.plusMinutes(num), 33 + (num % 1000) / 1000.0,
+                -84 - (num % 997) / 997.0, WaterType.values()[num % WaterType.values().length],
+                WaterCondition.values()[num % WaterCondition.values().length], "author" + num % 100);
+        for (int q = 1; q <= qualityReports; q++) {
+            wr.addQualityReport(qualityReport(num, q));
+        }
+        return (wr);
+    }
+
+    /**
+     * Makes a quality report
+     * @param parent The number of its water report
+     * @param num The quality report number
+     * @return the report
+     */
+    static QualityReport qualityReport(int parent, int num) {
+        return (new QualityReport(START.plusMinutes(parent).plusHours(num), num, "worker" + num % 10,
+                WaterSafety.values()[num % WaterSafety.values().length], num * 1.5, num * 2.5, parent));
+    }
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import model.QualityReport;
+import model.WaterReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+
+/**
+ * Gson encoding and decoding of what goes over the wire and into the database files: a water report with a few
+ * quality reports, a quality report, and a SAVE_WATER_REPORT command carrying the report
+ * @author tybrown
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private PersistentJsonFile json;
+    private WaterReport waterReport;
+    private QualityReport qualityReport;
+    private Command command;
+    private String waterReportJson;
+    private String qualityReportJson;
+    private String commandJson;
+
+    @Setup
+    public void setup() {
+        json = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
+        waterReport = Fixtures.waterReport(42, 3);
+        qualityReport = Fixtures.qualityReport(42, 7);
+        waterReportJson = json.toJson(waterReport);
+        qualityReportJson = json.toJson(qualityReport);
+        command = new Command(Command.CommandType.SAVE_WATER_REPORT, waterReportJson, null);
+        command.setRequestId(1234);
+        command.setSession("dGhpcy1pcy1hLXRva2Vu");
+        commandJson = json.toJson(command);
+    }
+
+    @Benchmark
+    public String encodeWaterReport() {
+        return (json.toJson(waterReport));
+    }
+
+    @Benchmark
+    public WaterReport decodeWaterReport() {
+        return (json.fromJson(waterReportJson, WaterReport.class));
+    }
+
+    @Benchmark
+    public String encodeQualityReport() {
+        return (json.toJson(qualityReport));
+    }
+
+    @Benchmark
+    public QualityReport decodeQualityReport() {
+        return (json.fromJson(qualityReportJson, QualityReport.class));
+    }
+
+    @Benchmark
+    public String encodeCommand() {
+        return (json.toJson(command));
+    }
+
+    @Benchmark
+    public Command decodeCommand() {
+        return (json.fromJson(commandJson, Command.class));
+    }
+}
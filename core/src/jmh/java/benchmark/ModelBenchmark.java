@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import model.Credential;
+import model.CredentialManager;
+import model.WaterReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Model operations on the hot paths: the deep copy made of every loaded report, and password hashing and
+ * checking on every login
+ * @author tybrown
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+    private WaterReport waterReport;
+    private CredentialManager credentials;
+    private char[] password;
+    private Credential login;
+
+    @Setup
+    public void setup() {
+        waterReport = Fixtures.waterReport(42, 3);
+        credentials = new CredentialManager();
+        for (int i = 0; i < 1000; i++) {
+            credentials.saveCredential(new Credential("user" + i, "password" + i));
+        }
+        password = "correct horse battery staple".toCharArray();
+        login = new Credential("user500", "password500");
+    }
+
+    @Benchmark
+    public WaterReport cloneWaterReport() {
+        return (waterReport.cloneIt());
+    }
+
+    @Benchmark
+    public Integer hashPassword() {
+        //a new String each time, like a password arriving in a login; a String caches its own hash
+        return (Credential.hashPassword(new String(password)));
+    }
+
+    @Benchmark
+    public boolean matchCredential() {
+        return (credentials.matchCredential(login));
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import model.ReportManager;
+import model.UserManager;
+import model.WaterReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import persistence.json.PersistentJsonFile;
+
+/**
+ * The database files: appending one report (encode, write and flush), and loading a whole database the way the
+ * server does when it starts. Works in a temporary directory, never in the real database
+ * @author tybrown
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    private static final int RESTART_EVERY = 50000;
+
+    @Param({"10000"})
+    private int reports;
+
+    private File appendDir;
+    private File loadDir;
+    private PersistentJsonFile appendDb;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        loadDir = Files.createTempDirectory("thirsty-load").toFile();
+        PersistentJsonFile db = open(loadDir);
+        for (int i = 1; i <= reports; i++) {
+            db.saveWaterReport(Fixtures.waterReport(i, 2));
+        }
+        db.terminate();
+        appendDir = Files.createTempDirectory("thirsty-append").toFile();
+        appendDb = open(appendDir);
+    }
+
+    private static PersistentJsonFile open(File dir) {
+        PersistentJsonFile db = new PersistentJsonFile(dir.getPath() + "/");
+        ReportManager.initialize(db);
+        UserManager.initialize(db);
+        db.initialize();
+        return (db);
+    }
+
+    private static void clear(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        appendDb.terminate();
+        clear(appendDir);
+        clear(loadDir);
+        appendDir.delete();
+        loadDir.delete();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public WaterReport append() {
+        //a new report each time, like clients saving. Starts over now and then so the file and the index
+        //don't grow by gigabytes over a run
+        if (++next % RESTART_EVERY == 0) {
+            appendDb.terminate();
+            clear(appendDir);
+            appendDb = open(appendDir);
+        }
+        return (appendDb.saveWaterReport(Fixtures.waterReport(next, 2)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int load() {
+        PersistentJsonFile db = open(loadDir);
+        db.terminate();
+        return (ReportManager.getWaterReportList().size());
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import model.ReportManager;
+import model.WaterReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import persistence.json.PersistentJsonFile;
+
+/**
+ * The in-memory report index: adding (replacing) a report, looking one up by number, and copying the list
+ * the way the UI and the snapshot do
+ * @author tybrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportManagerBenchmark {
+
+    @Param({"10000"})
+    private int reports;
+
+    private WaterReport[] fixtures;
+
+    @Setup
+    public void setup() {
+        //nothing is saved, add and lookup never touch the persistence
+        ReportManager.initialize(new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH));
+        fixtures = new WaterReport[reports];
+        for (int i = 0; i < reports; i++) {
+            fixtures[i] = Fixtures.waterReport(i + 1, 2);
+            ReportManager.addWaterReport(fixtures[i]);
+        }
+    }
+
+    @Benchmark
+    public void add() {
+        ReportManager.addWaterReport(fixtures[ThreadLocalRandom.current().nextInt(reports)]);
+    }
+
+    @Benchmark
+    public WaterReport lookup() {
+        return (ReportManager.filterWaterReportByNumber(ThreadLocalRandom.current().nextInt(reports) + 1));
+    }
+
+    @Benchmark
+    public List<WaterReport> list() {
+        return (ReportManager.getWaterReportList());
+    }
+}
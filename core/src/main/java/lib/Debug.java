@@ -0,0 +1,582 @@
+package lib;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IllegalFormatException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.text.SimpleDateFormat;
+
+/**
+ * The logger. Calls only check the level and put the message in a ring buffer; a background thread finds the
+ * caller, formats the message and writes it to System.out. Strings, numbers and enums are formatted there;
+ * other arguments are turned into strings right away, so the log shows them as they were when logged.
+ * When the buffer is full, messages are dropped (and counted) instead of slowing the caller down, except errors,
+ * which wait for room.
+ * The level is set with -Dthirsty.logLevel=LOG (the default), and per class or package with
+ * -Dthirsty.logLevels=server.ThirstyServer=DEBUG,persistence=ERROR, where the longest matching name wins.
+ * Finding the caller takes a stack capture (about a microsecond, more for deep stacks), and without it only the
+ * most verbose level can be checked. So code logging on every message passes its class, like
+ * Debug.debug(Worker.class, ...): its own level is checked before anything is allocated, and its call sites are
+ * remembered by class and format, so the stack is only captured the first time and now and then to check it
+ * (until a check notices, a format logged from two methods of one class is shown with the first method).
+ *
+ * @author tybrown
+ */
+public class Debug {
+
+    public static final int FATAL = 1;
+
+    public static final int ERROR = 2;
+
+    public static final int LOG = 3;
+
+    public static final int WARN = 4;
+
+    public static final int DEBUG = 5;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    //a remembered call site captures the stack again this often, to notice two sites sharing a format
+    private static final int VERIFY_EVERY = 1024;
+
+    //more formats than this in one class are built at runtime, and not worth remembering
+    private static final int MAX_SITES_PER_CLASS = 512;
+
+    //class -> format -> where it's logged from
+    private static final ClassValue<Map<String, Site>> sites = new ClassValue<Map<String, Site>>() {
+        @Override
+        protected Map<String, Site> computeValue(Class<?> type) {
+            return (new ConcurrentHashMap<>());
+        }
+    };
+
+    //replaced as a whole on every change, so a buffered message is checked against the levels of when it was logged
+    private static volatile Levels levels = new Levels(parseLevel(System.getProperty("thirsty.logLevel"), LOG),
+            new HashMap<>());
+
+    private static final BlockingQueue<Entry> buffer = new ArrayBlockingQueue<>(
+            Integer.getInteger("thirsty.logBufferSize", BUFFER_SIZE));
+
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final AtomicLong submitted = new AtomicLong();
+
+    //guards written, see flush()
+    private static final Object lock = new Object();
+
+    private static long written = 0;
+
+    private static final Thread writer;
+
+    static {
+        String byName = System.getProperty("thirsty.logLevels");
+        if (byName != null) {
+            for (String entry : byName.split(",")) {
+                int eq = entry.indexOf('=');
+                if (eq > 0) {
+                    setLogLevel(entry.substring(0, eq).trim(), parseLevel(entry.substring(eq + 1), levels.defaultLevel));
+                }
+            }
+        }
+        writer = new Thread(Debug::writeLoop, "debug-log");
+        writer.setDaemon(true);
+        writer.start();
+        //whatever is still in the buffer when the program exits
+        Runtime.getRuntime().addShutdownHook(new Thread(Debug::flush, "debug-log-flush"));
+    }
+
+    //these two functions taken from
+    //stackoverflow.com/questions/11306811/how-to-get-the-caller-class-in-java
+
+    /**
+     *
+     * @param stElements The stack of the call to Debug
+     * @return Gets the element of the method which called
+     */
+    private static StackTraceElement getCaller(StackTraceElement[] stElements) {
+        for (int i = 1; i < stElements.length; i++) {
+            StackTraceElement ste = stElements[i];
+            if (!ste.getClassName().equals(Debug.class.getName())
+                    && (ste.getClassName().indexOf("java.lang.Thread") != 0)) {
+                return ste;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @return Gets a String representation of the parent of the caller
+     */
+    public static String getCallerCallerClassName() {
+        StackTraceElement[] stElements = Thread.currentThread().getStackTrace();
+        String callerClassName = null;
+        for (int i = 1; i < stElements.length; i++) {
+            StackTraceElement ste = stElements[i];
+            if (!ste.getClassName().equals(Debug.class.getName())
+                    && (ste.getClassName().indexOf("java.lang.Thread") != 0)) {
+                if (callerClassName == null) {
+                    callerClassName = ste.getClassName();
+                } else if (!callerClassName.equals(ste.getClassName())) {
+                    return ste.getClassName() + "::" + ste.getMethodName();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param level Translates the level to a string representation
+     * @return Returns a String representation of the level
+     */
+    private static String levelToString(int level) {
+        switch (level) {
+        case LOG:
+            return ("- LOG -");
+        case WARN:
+            return ("* WARN *");
+        case ERROR:
+            return ("! ERROR !");
+        case FATAL:
+            return ("!! FATAL !!");
+        case DEBUG:
+            return ("# DEBUG #");
+        default:
+            return (Integer.toString(level));
+        }
+    }
+
+    /**
+     *
+     * @param name A level name like "DEBUG", or its number
+     * @param otherwise The level to use if name is null or unknown
+     * @return The level
+     */
+    private static int parseLevel(String name, int otherwise) {
+        if (name == null) {
+            return (otherwise);
+        }
+        switch (name.trim().toUpperCase()) {
+        case "FATAL":
+            return (FATAL);
+        case "ERROR":
+            return (ERROR);
+        case "LOG":
+            return (LOG);
+        case "WARN":
+            return (WARN);
+        case "DEBUG":
+            return (DEBUG);
+        default:
+            try {
+                return (Integer.parseInt(name.trim()));
+            } catch (NumberFormatException e) {
+                return (otherwise);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param level The level the message is
+     * @param caller The class logging it, null to find it in the stack
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    private static void printf(int level, Class<?> caller, String format,
+                                            Object... args) {
+        Levels l = levels;
+        if (level > l.threshold) {
+            return;
+        }
+        Site site = null;
+        StackTraceElement known = null;
+        if (caller != null) {
+            if (level > l.of(caller.getName())) {
+                return;
+            }
+            Map<String, Site> byFormat = sites.get(caller);
+            site = byFormat.get(format);
+            if (site == null && byFormat.size() < MAX_SITES_PER_CLASS) {
+                site = byFormat.computeIfAbsent(format, f -> new Site());
+            }
+            if (site != null && !site.ambiguous && site.element != null && ++site.calls % VERIFY_EVERY != 0) {
+                known = site.element;
+            }
+        }
+        //only the stack is captured here, finding the caller in it is left to the writer
+        Entry e = new Entry(level, l, System.currentTimeMillis(), format, snapshot(args),
+                known == null ? new Throwable() : null, known, site);
+        if (level <= ERROR) {
+            try {
+                buffer.put(e);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        } else if (!buffer.offer(e)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        submitted.incrementAndGet();
+        if (level == FATAL) {
+            //usually followed by System.exit()
+            flush();
+        }
+    }
+
+    /**
+     *
+     * @param args The arguments of a message
+     * @return The arguments, with the ones which may still change turned into strings
+     */
+    private static Object[] snapshot(Object[] args) {
+        Object[] res = args;
+        for (int i = 0; args != null && i < args.length; i++) {
+            Object a = args[i];
+            if (a == null || a instanceof String || a instanceof Integer || a instanceof Long || a instanceof Double
+                    || a instanceof Boolean || a instanceof Enum || a instanceof Character || a instanceof Float
+                    || a instanceof Short || a instanceof Byte || a instanceof BigInteger || a instanceof BigDecimal
+                    || a instanceof Class) {
+                continue;
+            }
+            if (res == args) {
+                res = args.clone();
+            }
+            try {
+                res[i] = String.valueOf(a);
+            } catch (RuntimeException ex) {
+                res[i] = "(toString() failed: " + ex + ")";
+            }
+        }
+        return (res);
+    }
+
+    private static void writeLoop() {
+        Writer w = new Writer();
+        while (true) {
+            try {
+                Entry e = buffer.take();
+                long count = 0;
+                do {
+                    try {
+                        w.write(e);
+                    } catch (RuntimeException ex) {
+                        //a broken toString() of an argument shouldn't stop the logging
+                        System.out.printf("Failed to log a message: %s%n", ex);
+                    }
+                    count++;
+                } while ((e = buffer.poll()) != null);
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    System.out.printf("[%s] [%s] %s: Dropped %d messages, the log buffer was full%n",
+                            w.date(System.currentTimeMillis()), levelToString(WARN), Debug.class.getName(), lost);
+                }
+                System.out.flush();
+                synchronized (lock) {
+                    written += count;
+                    lock.notifyAll();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until everything logged so far has been written
+     */
+    public static void flush() {
+        long target = submitted.get();
+        synchronized (lock) {
+            while (written < target && writer.isAlive() && Thread.currentThread() != writer) {
+                try {
+                    lock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param level A level like Debug.DEBUG
+     * @return true if messages at this level are logged for at least one class. Callers can check this before
+     *      working out expensive arguments
+     */
+    public static boolean isEnabled(int level) {
+        return (level <= levels.threshold);
+    }
+
+    /**
+     *
+     * @param level A level like Debug.DEBUG
+     * @param caller The class that would log the message
+     * @return true if messages at this level are logged for that class. Callers can check this before working
+     *      out expensive arguments
+     */
+    public static boolean isEnabled(int level, Class<?> caller) {
+        Levels l = levels;
+        return (level <= l.threshold && level <= l.of(caller.getName()));
+    }
+
+    /**
+     *
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void log(String format, Object... args) {
+        printf(LOG, null, format, args);
+    }
+
+    /**
+     *
+     * @param caller The class logging it, see the class doc
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void log(Class<?> caller, String format, Object... args) {
+        printf(LOG, caller, format, args);
+    }
+
+    /**
+     *
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void warn(Object... args) {
+        printf(WARN, null, "Unable to find a TreeItem to map this report to! %s", args);
+    }
+
+    /**
+     *
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void error(String format, Object... args) {
+        printf(ERROR, null, format, args);
+    }
+
+    /**
+     *
+     * @param caller The class logging it, see the class doc
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void error(Class<?> caller, String format, Object... args) {
+        printf(ERROR, caller, format, args);
+    }
+
+    /**
+     *
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void fatal(String format, Object... args) {
+        printf(FATAL, null, format, args);
+    }
+
+    /**
+     *
+     * @param caller The class logging it, see the class doc
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void fatal(Class<?> caller, String format, Object... args) {
+        printf(FATAL, caller, format, args);
+    }
+
+    /**
+     *
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void debug(String format, Object... args) {
+        printf(DEBUG, null, format, args);
+    }
+
+    /**
+     *
+     * @param caller The class logging it, see the class doc
+     * @param format The format of the string to print Same as System.out.printf
+     * @param args Optional args. Similar to System.out.printf
+     */
+    public static void debug(Class<?> caller, String format, Object... args) {
+        printf(DEBUG, caller, format, args);
+    }
+
+    /**
+     *
+     * @param level Sets the default log level. Only messages <= than this
+     *      level will be printed
+     */
+    public static synchronized void setLogLevel(int level) {
+        levels = new Levels(level, levels.byName);
+    }
+
+    /**
+     *
+     * @param name A class or package name, like "server" or "server.ThirstyServer"
+     * @param level Sets the log level of the classes whose name starts with it,
+     *      overriding the default and shorter names
+     */
+    public static synchronized void setLogLevel(String name, int level) {
+        Map<String, Integer> byName = new HashMap<>(levels.byName);
+        byName.put(name, level);
+        levels = new Levels(levels.defaultLevel, byName);
+    }
+
+    /**
+     * The default level and the levels of classes and packages
+     */
+    private static final class Levels {
+        private final int defaultLevel;
+        //class or package name -> its level
+        private final Map<String, Integer> byName;
+        //class name -> the level of its longest matching name, so that's only looked up once per class
+        private final Map<String, Integer> resolved = new ConcurrentHashMap<>();
+        //the most verbose level of any class; anything above it returns without doing anything
+        private final int threshold;
+
+        private Levels(int defaultLevel, Map<String, Integer> byName) {
+            this.defaultLevel = defaultLevel;
+            this.byName = byName;
+            int max = defaultLevel;
+            for (int level : byName.values()) {
+                max = Math.max(max, level);
+            }
+            this.threshold = max;
+        }
+
+        /**
+         *
+         * @param className The name of the calling class
+         * @return The level of the class, see setLogLevel(String, int)
+         */
+        private int of(String className) {
+            if (byName.isEmpty()) {
+                return (defaultLevel);
+            }
+            Integer res = resolved.get(className);
+            if (res == null) {
+                String best = null;
+                for (String name : byName.keySet()) {
+                    if (className.startsWith(name) && (best == null || name.length() > best.length())) {
+                        best = name;
+                    }
+                }
+                res = best == null ? defaultLevel : byName.get(best);
+                resolved.put(className, res);
+            }
+            return (res);
+        }
+    }
+
+    /**
+     * Where one format of a class is logged from, learned by the writer from the stack
+     */
+    private static final class Site {
+        private volatile StackTraceElement element;
+        //the same format is logged from more than one method, so the stack is always needed
+        private volatile boolean ambiguous;
+        //only decides when to check again, so lost updates don't matter
+        private int calls;
+
+        /**
+         * Called by the writer with the caller it found in a stack of this site
+         * @param caller The caller
+         */
+        private void found(StackTraceElement caller) {
+            StackTraceElement e = element;
+            if (e == null) {
+                element = caller;
+            } else if (!e.getClassName().equals(caller.getClassName()) || !e.getMethodName().equals(caller.getMethodName())) {
+                ambiguous = true;
+            }
+        }
+    }
+
+    /**
+     * A message waiting in the buffer
+     */
+    private static final class Entry {
+        private final int level;
+        private final Levels levels;
+        private final long time;
+        private final String format;
+        private final Object[] args;
+        //either the stack to find the caller in, or the caller remembered for the site
+        private final Throwable stack;
+        private final StackTraceElement caller;
+        private final Site site;
+
+        private Entry(int level, Levels levels, long time, String format, Object[] args, Throwable stack,
+                StackTraceElement caller, Site site) {
+            this.level = level;
+            this.levels = levels;
+            this.time = time;
+            this.format = format;
+            this.args = args;
+            this.stack = stack;
+            this.caller = caller;
+            this.site = site;
+        }
+    }
+
+    /**
+     * Formats messages on the logging thread, reusing what it can from one message to the next
+     */
+    private static final class Writer {
+        private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+        private final StringBuilder line = new StringBuilder(256);
+        private long second = -1;
+        private String formattedDate;
+
+        private String date(long time) {
+            if (time / 1000 != second) {
+                second = time / 1000;
+                formattedDate = sdf.format(new Date(time));
+            }
+            return (formattedDate);
+        }
+
+        private void write(Entry e) {
+            StackTraceElement caller = e.caller;
+            if (caller == null) {
+                caller = getCaller(e.stack.getStackTrace());
+                if (caller != null && e.site != null) {
+                    e.site.found(caller);
+                }
+            }
+            if (caller != null && e.level > e.levels.of(caller.getClassName())) {
+                return;
+            }
+            line.setLength(0);
+            line.append('[').append(date(e.time)).append("] [").append(levelToString(e.level)).append("] ");
+            if (caller == null) {
+                line.append("null");
+            } else {
+                line.append(caller.getClassName()).append("::").append(caller.getMethodName());
+            }
+            line.append(": ");
+            try {
+                line.append(String.format(e.format, e.args));
+            } catch (IllegalFormatException ex) {
+                line.append(e.format);
+            }
+            line.append(System.lineSeparator());
+            if (e.level == FATAL) {
+                line.append("Exiting...\n").append(System.lineSeparator());
+            }
+            System.out.print(line);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package lib;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the server's hot paths, so a recording shows command handling, pushes, database
+ * writes and JSON work on one timeline. Record with -XX:StartFlightRecording=filename=thirsty.jfr and look for the
+ * "Thirsty" category in JDK Mission Control, or run: jfr print --categories Thirsty thirsty.jfr.
+ * When nothing is recording, begin() and commit() do nothing, so the events can stay in for good; fields which
+ * take work to fill are only filled when shouldCommit() says the event will be kept.
+ * Stack traces are off, they would cost more than the work being measured
+ *
+ * @author tybrown
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    /**
+     * The command thread running one command, from after it's taken off the queue until it's done
+     */
+    @Name("thirsty.Command")
+    @Label("Command")
+    @Category({"Thirsty", "Server"})
+    @Description("A command run by the command thread")
+    @StackTrace(false)
+    public static class CommandRun extends Event {
+        @Label("Command Type")
+        public String command;
+
+        @Label("Queue Wait")
+        @Description("How long the command waited in the command queue")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueWait;
+
+        @Label("Payload Size")
+        @Description("The JSON data of the command, 0 if it arrived in the binary encoding")
+        @DataAmount
+        public long payloadSize;
+
+        @Label("Replicated")
+        @Description("Sent by the leader rather than a client")
+        public boolean replicated;
+    }
+
+    /**
+     * Sending one change out to the connections interested in it
+     */
+    @Name("thirsty.Broadcast")
+    @Label("Broadcast")
+    @Category({"Thirsty", "Server"})
+    @Description("Pushing a change to the subscribed connections")
+    @StackTrace(false)
+    public static class Broadcast extends Event {
+        @Label("Command Type")
+        public String command;
+
+        @Label("Targets")
+        public int targets;
+
+        @Label("Failed")
+        @Description("Connections which were closed because sending failed")
+        public int failed;
+
+        @Label("Payload Size")
+        @Description("The data sent, of all targets together")
+        @DataAmount
+        public long payloadSize;
+    }
+
+    /**
+     * Appending a line to a database file and flushing it
+     */
+    @Name("thirsty.DatabaseWrite")
+    @Label("Database Write")
+    @Category({"Thirsty", "Persistence"})
+    @StackTrace(false)
+    public static class DatabaseWrite extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /**
+     * One Gson encode or decode. There's one for every message, so only the slow ones are recorded unless the
+     * recording's settings lower the threshold
+     */
+    @Name("thirsty.Json")
+    @Label("JSON")
+    @Category({"Thirsty", "Persistence"})
+    @StackTrace(false)
+    @Threshold("100 us")
+    public static class Json extends Event {
+        @Label("Decode")
+        @Description("true for fromJson, false for toJson")
+        public boolean decode;
+
+        @Label("Class")
+        public String type;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+}
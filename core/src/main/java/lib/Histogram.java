@@ -0,0 +1,120 @@
+package lib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram in the style of HdrHistogram: buckets grow by powers of two, and each power of two is cut
+ * into SUB_BUCKETS linear steps, so any value is counted with about 1/SUB_BUCKETS relative error using a fixed,
+ * small array. Recording is lock-free and doesn't allocate, so it's cheap enough for every command
+ *
+ * @author tybrown
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    //the steps within one power of two
+    private static final int SUB_BUCKETS = 1 << (SUB_BITS - 1);
+    //values below this get their own bucket
+    private static final int LINEAR = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS + LINEAR;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value
+     * @param value The value, like a latency in nanoseconds. Negative values count as 0
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            //someone else raised it meanwhile, try again
+        }
+    }
+
+    /**
+     * Records the time since a start
+     * @param startNanos The System.nanoTime() when the timed work started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the number of recorded values
+     * @return the count
+     */
+    public long getCount() {
+        return (count.get());
+    }
+
+    /**
+     * Gets the largest recorded value
+     * @return the maximum, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return (max.get());
+    }
+
+    /**
+     * Gets the mean of the recorded values
+     * @return the mean, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return (n == 0 ? 0 : (double) sum.get() / n);
+    }
+
+    /**
+     * Gets a percentile of the recorded values. Values recorded while this runs may or may not be counted
+     * @param percentile The percentile, from 0 to 100
+     * @return The highest value in the bucket the percentile falls in, never more than the maximum.
+     *      0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return (0);
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return (Math.min(highestOf(i), max.get()));
+            }
+        }
+        return (max.get());
+    }
+
+    static int indexOf(long v) {
+        if (v < LINEAR) {
+            return ((int) v);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS + 1;
+        //the top SUB_BITS bits of the value, from SUB_BUCKETS to LINEAR - 1
+        int sub = (int) (v >>> shift);
+        return (shift * SUB_BUCKETS + sub);
+    }
+
+    static long highestOf(int index) {
+        if (index < LINEAR) {
+            return (index);
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return (((sub + 1) << shift) - 1);
+    }
+}
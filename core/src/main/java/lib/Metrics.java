@@ -0,0 +1,87 @@
+package lib;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The registry of the process' metrics: counters, gauges and latency histograms, each under a dotted name like
+ * "command.SAVE_WATER_REPORT". Callers look a metric up once and keep it, so recording is just an add.
+ * snapshot() writes all of them as text, which the server serves on its admin port and logs periodically
+ *
+ * @author tybrown
+ */
+public final class Metrics {
+
+    private static final long START = System.nanoTime();
+    private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Gets a counter, creating it the first time
+     * @param name The name of the counter
+     * @return the counter
+     */
+    public static LongAdder counter(String name) {
+        return (counters.computeIfAbsent(name, n -> new LongAdder()));
+    }
+
+    /**
+     * Registers a gauge, a value which is read when a snapshot is taken, replacing any earlier one of that name
+     * @param name The name of the gauge
+     * @param value Reads the current value. Called from whichever thread takes the snapshot
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Gets a latency histogram, creating it the first time. Values are in nanoseconds
+     * @param name The name of the histogram
+     * @return the histogram
+     */
+    public static Histogram histogram(String name) {
+        return (histograms.computeIfAbsent(name, n -> new Histogram()));
+    }
+
+    /**
+     * Writes every metric as text, one per line, sorted by name. Latencies are in microseconds,
+     * and histograms which haven't recorded anything yet are left out
+     * @return the snapshot
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append(String.format("# metrics at %s, up %d s%n", new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date()),
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - START)));
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            sb.append(String.format("counter %s %d%n", e.getKey(), e.getValue().sum()));
+        }
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            long value;
+            try {
+                value = e.getValue().getAsLong();
+            } catch (RuntimeException ex) {
+                continue;
+            }
+            sb.append(String.format("gauge %s %d%n", e.getKey(), value));
+        }
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            Histogram h = e.getValue();
+            if (h.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format("histogram %s count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    e.getKey(), h.getCount(), h.getMean() / 1e3, h.getPercentile(50) / 1e3, h.getPercentile(90) / 1e3,
+                    h.getPercentile(99) / 1e3, h.getPercentile(99.9) / 1e3, h.getMax() / 1e3));
+        }
+        return (sb.toString());
+    }
+}
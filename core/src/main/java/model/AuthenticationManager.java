@@ -1,7 +1,7 @@
 package model;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages authentication and authenticated users
@@ -15,7 +15,8 @@ public class AuthenticationManager {
      * @param cm a credential manager for this authenticator
      */
     public AuthenticationManager(CredentialManager cm) {
-        this.authenticatedUsers = new HashSet<>();
+        //the server authenticates from every connection's thread at once
+        this.authenticatedUsers = ConcurrentHashMap.newKeySet();
         this.credentialManager = cm;
     }
 
@@ -1,6 +1,8 @@
 package model;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -53,4 +55,12 @@ public class CredentialManager {
         return (userExists(username) && credentials.get(username).equals(c));
     }
 
+    /**
+     * Gets every saved credential
+     * @return a copy of the credentials list
+     */
+    public List<Credential> getCredentials() {
+        return (new ArrayList<>(credentials.values()));
+    }
+
 }
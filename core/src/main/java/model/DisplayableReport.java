@@ -0,0 +1,90 @@
+package model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A water or quality report as a row of the reports table, so both kinds of report can be shown in the same columns
+ * @author tybrown
+ */
+public abstract class DisplayableReport {
+
+    /**
+     * Overrideable method to get the latitude
+     * @return  the latitude, NaN if the report has none
+     */
+    public double getLatitude() {
+        return (Double.NaN);
+    }
+
+    /**
+     * Overrideable method to get the longitude
+     * @return the longitude, NaN if the report has none
+     */
+    public double getLongitude() {
+        return (Double.NaN);
+    }
+
+    /**
+     * Overrideable method to get the report number property
+     * @return the report number property
+     */
+    public abstract int getParentReportNum();
+
+    /**
+     * Gets the report number
+     * @return the report number
+     */
+    public abstract int getReportNum();
+
+    /**
+     * Gets the date and time the report was made
+     * @return the date time
+     */
+    public abstract LocalDateTime getDateTime();
+
+    /**
+     * Gets the author's username
+     * @return the author's username
+     */
+    public abstract String getAuthor();
+
+    /**
+     * Overrideable method to get the water type
+     * @return the water type, null if the report has none
+     */
+    public WaterType getWaterType() {
+        return (null);
+    }
+
+    /**
+     * Overrideable method to get the water condition
+     * @return the water condition, null if the report has none
+     */
+    public WaterCondition getWaterCondition() {
+        return (null);
+    }
+
+    /**
+     * Overrideable method to get the water safety
+     * @return the water safety, null if the report has none
+     */
+    public WaterSafety getWaterSafety() {
+        return (null);
+    }
+
+    /**
+     * Overrideable method to get the virus ppm
+     * @return the virus ppm, NaN if the report has none
+     */
+    public double getVirusPPM() {
+        return (Double.NaN);
+    }
+
+    /**
+     * Overrideable method to get the contaminant ppm
+     * @return the contaminant ppm, NaN if the report has none
+     */
+    public double getContaminantPPM() {
+        return (Double.NaN);
+    }
+}
@@ -1,38 +1,38 @@
 package model;
 
 import com.google.gson.annotations.Expose;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleObjectProperty;
+import com.google.gson.annotations.SerializedName;
 
 import java.time.LocalDateTime;
-import java.util.Objects;
 
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Represents a water quality report.
  */
 public final class QualityReport extends DisplayableReport implements Comparable<QualityReport> {
+    //named like WaterReport's, after the JavaFX properties these used to be
     @Expose
-    private final ObjectProperty<LocalDateTime> dateTimeProperty = new SimpleObjectProperty<>();
+    @SerializedName("dateTimeProperty")
+    private LocalDateTime dateTime;
     @Expose
-    private final IntegerProperty reportNumProperty = new SimpleIntegerProperty();
+    @SerializedName("reportNumProperty")
+    private int reportNum;
     @Expose
-    private final StringProperty authorProperty = new SimpleStringProperty();
+    @SerializedName("authorProperty")
+    private String author;
     @Expose
-    private final ObjectProperty<WaterSafety> safetyProperty = new SimpleObjectProperty<>();
+    @SerializedName("safetyProperty")
+    private WaterSafety safety;
     @Expose
-    private final DoubleProperty virusPPMProperty = new SimpleDoubleProperty();
+    @SerializedName("virusPPMProperty")
+    private double virusPPM;
     @Expose
-    private final DoubleProperty contaminantPPMProperty = new SimpleDoubleProperty();
+    @SerializedName("contaminantPPMProperty")
+    private double contaminantPPM;
     @Expose
-    private final IntegerProperty parentReportNumProperty = new SimpleIntegerProperty();
+    @SerializedName("parentReportNumProperty")
+    private int parentReportNum;
 
     /**
      * Constructor for a new water source report.
@@ -75,79 +75,52 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * Gets this water report's number
      * @return the number
      */
+    @Override
     public int getReportNum() {
-        return reportNumProperty.get();
+        return (reportNum);
     }
 
     /**
-     * Sets this water report's number
+     * Sets this quality report's number, like when another report took the number meanwhile
      * @param n the new number to be set
      */
-    private void setReportNum(int n) {
-        reportNumProperty.set(n);
+    public void setReportNum(int n) {
+        reportNum = n;
     }
 
     /**
-     * Gets this water report's number property
-     * @return the number property
+     * Gets the longitude of this report's water report
+     * @return the longitude coordinate, NaN if the water report isn't known
      */
     @Override
-    public IntegerProperty getReportNumProperty() {
-        return reportNumProperty;
-    }
-
-    /**
-     * Gets this water report's longitude property
-     * @return the latitude coordinate property
-     */
-    @Override
-    public DoubleProperty getLongitudeProperty() {
+    public double getLongitude() {
         WaterReport parent = ReportManager.filterWaterReportByNumber(getParentReportNum());
         if (parent == null) {
-            return (null);
+            return (super.getLongitude());
         }
-        return (parent.getLongitudeProperty());
+        return (parent.getLongitude());
     }
 
     /**
-     * Gets this water report's latitude property
-     * @return the latitude coordinate property
+     * Gets the latitude of this report's water report
+     * @return the latitude coordinate, NaN if the water report isn't known
      */
     @Override
-    public DoubleProperty getLatitudeProperty() {
+    public double getLatitude() {
         WaterReport parent = ReportManager.filterWaterReportByNumber(getParentReportNum());
         if (parent == null) {
-            return (null);
+            return (super.getLatitude());
         }
-        return parent.getLatitudeProperty();
+        return (parent.getLatitude());
     }
 
-    /**
-     * Gets this water report's latitude property
-     * @return the latitude coordinate property
-     */
-    @Override
-    public StringProperty getAuthorUsernameProperty() {
-        return (authorProperty);
-    }
-
-
-
     /**
      * Get the report's creation time
      * @return the LocalDateTime of the report's creation
      */
-    public LocalDateTime getDateTime() {
-        return dateTimeProperty.get();
-    }
-
-    /**
-     * Gets this water report's dateTime property
-     * @return the dateTime property
-     */
     @Override
-    public ObjectProperty<LocalDateTime> getDateTimeProperty() {
-        return dateTimeProperty;
+    public LocalDateTime getDateTime() {
+        return (dateTime);
     }
 
     /**
@@ -155,15 +128,16 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @param dt new date time
      */
     private void setDateTime(LocalDateTime dt) {
-        dateTimeProperty.set(dt);
+        dateTime = dt;
     }
 
     /**
      * Gets the water safety safety
      * @return the type
      */
+    @Override
     public WaterSafety getWaterSafety() {
-        return safetyProperty.get();
+        return (safety);
     }
 
     /**
@@ -171,24 +145,16 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @param t the new type of water
      */
     private void setWaterSafety(WaterSafety t) {
-        safetyProperty.set(t);
-    }
-
-    /**
-     * Gets this water report's water safety
-     * @return the water type property
-     */
-    @Override
-    public ObjectProperty<WaterSafety> getWaterSafetyProperty() {
-        return safetyProperty;
+        safety = t;
     }
 
     /**
      * Gets the water report's author
      * @return the author
      */
+    @Override
     public String getAuthor() {
-        return authorProperty.get();
+        return (author);
     }
 
     /**
@@ -196,23 +162,16 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @param user the user of the report
      */
     private void setAuthor(String user) {
-        authorProperty.set(user);
-    }
-
-    /**
-     * Gets the water report's author property
-     * @return the author property
-     */
-    public StringProperty getAuthorProperty() {
-        return authorProperty;
+        author = user;
     }
 
     /**
      * Gets the virus PPM for this water report
      * @return the virus PPM
      */
+    @Override
     public double getVirusPPM() {
-        return virusPPMProperty.get();
+        return (virusPPM);
     }
 
     /**
@@ -220,24 +179,16 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @param virus the new virus PPM
      */
     private void setVirusPPM(double virus) {
-        virusPPMProperty.set(virus);
-    }
-
-    /**
-     * Gets the virus PPM property for this water report
-     * @return the virus PPM property
-     */
-    @Override
-    public DoubleProperty getVppmProperty() {
-        return virusPPMProperty;
+        virusPPM = virus;
     }
 
     /**
      * Gets the contaminant PPM for this water report
      * @return the contaminant PPM
      */
+    @Override
     public double getContaminantPPM() {
-        return contaminantPPMProperty.get();
+        return (contaminantPPM);
     }
 
     /**
@@ -245,16 +196,7 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @param contaminant the new contaminant PPM
      */
     private void setContaminantPPM(double contaminant) {
-        contaminantPPMProperty.set(contaminant);
-    }
-
-    /**
-     * Gets the contaminant PPM property for this water report
-     * @return the contaminant PPM property
-     */
-    @Override
-    public DoubleProperty getCppmProperty() {
-        return contaminantPPMProperty;
+        contaminantPPM = contaminant;
     }
 
     /**
@@ -262,7 +204,7 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @return the water source report
      */
     public int getParentReportNum() {
-        return parentReportNumProperty.get();
+        return (parentReportNum);
     }
 
     /**
@@ -270,7 +212,7 @@ public final class QualityReport extends DisplayableReport implements Comparable
      * @param wr the new water source report attached to this quality report
      */
     public void setParentReportNum(int parentNum) {
-        parentReportNumProperty.set(parentNum);
+        parentReportNum = parentNum;
     }
 
     /**
@@ -315,32 +257,4 @@ public final class QualityReport extends DisplayableReport implements Comparable
         return getDateTime().compareTo(report.getDateTime());
     }
 
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 67 * hash + Objects.hashCode(this.dateTimeProperty);
-        hash = 67 * hash + Objects.hashCode(this.parentReportNumProperty.get());
-        return hash;
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-        if (this == obj) {
-            return true;
-        }
-        if (obj == null) {
-            return false;
-        }
-        if (getClass() != obj.getClass()) {
-            return false;
-        }
-        final QualityReport other = (QualityReport) obj;
-        if (!Objects.equals(this.dateTimeProperty, other.dateTimeProperty)) {
-            return false;
-        }
-        if (!Objects.equals(this.parentReportNumProperty.get(), other.parentReportNumProperty.get())) {
-            return false;
-        }
-        return true;
-    }
 }
@@ -0,0 +1,94 @@
+package model;
+
+import com.google.gson.annotations.Expose;
+
+/**
+ * A latitude/longitude bounding box, like the area visible on the map
+ *
+ * @author tybrown
+ */
+public class Region {
+    @Expose
+    private final double south;
+    @Expose
+    private final double west;
+    @Expose
+    private final double north;
+    @Expose
+    private final double east;
+
+    /**
+     * Constructs a region from its corners
+     * @param south The southern latitude
+     * @param west The western longitude
+     * @param north The northern latitude
+     * @param east The eastern longitude. Less than west if the region crosses the antimeridian
+     */
+    public Region(double south, double west, double north, double east) {
+        this.south = south;
+        this.west = west;
+        this.north = north;
+        this.east = east;
+    }
+
+    /**
+     * Returns the southern latitude
+     * @return the southern latitude
+     */
+    public double getSouth() {
+        return (south);
+    }
+
+    /**
+     * Returns the western longitude
+     * @return the western longitude
+     */
+    public double getWest() {
+        return (west);
+    }
+
+    /**
+     * Returns the northern latitude
+     * @return the northern latitude
+     */
+    public double getNorth() {
+        return (north);
+    }
+
+    /**
+     * Returns the eastern longitude
+     * @return the eastern longitude
+     */
+    public double getEast() {
+        return (east);
+    }
+
+    /**
+     * Checks if the region wraps around the antimeridian
+     * @return true if the region crosses 180 degrees longitude
+     */
+    public boolean crossesAntimeridian() {
+        return (east < west);
+    }
+
+    /**
+     * Checks if a location is inside the region (edges included)
+     * @param lat The latitude of the location
+     * @param lng The longitude of the location
+     * @return true if the location is inside the region
+     */
+    public boolean contains(double lat, double lng) {
+        if (lat < south || lat > north) {
+            return (false);
+        }
+        if (crossesAntimeridian()) {
+            return (lng >= west || lng <= east);
+        }
+        return (lng >= west && lng <= east);
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("[%f,%f - %f,%f]", south, west, north, east));
+    }
+}
@@ -3,6 +3,7 @@ package model;
 //import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 //import java.util.stream.Collectors;
@@ -10,19 +11,29 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import persistence.PersistenceInterface;
 import lib.Debug;
+import lib.Histogram;
+import lib.Metrics;
 
 /**
  * Manager for the Report classes
  */
 public class ReportManager {
     private static SortedSet<WaterReport> waterReports;
+    //sorted, so queries can page through it by report number
+    private static ConcurrentNavigableMap<Integer, WaterReport> waterReportsByNumber;
     private static int reportNumber = 0;
     private static HashMap<WaterReport, Integer> qualityReportNumberMap;
 
     private static PersistenceInterface persist;
+    private static final Histogram addLatency = Metrics.histogram("reports.add");
+    private static final Histogram deleteLatency = Metrics.histogram("reports.delete");
+    private static final Histogram waterQueryLatency = Metrics.histogram("reports.query.water");
+    private static final Histogram qualityQueryLatency = Metrics.histogram("reports.query.quality");
 
     /**
      * Sets up the user manager. This method should only be called once
@@ -31,6 +42,7 @@ public class ReportManager {
     public static void initialize(PersistenceInterface persist) {
         ReportManager.persist = persist;
         waterReports = Collections.synchronizedSortedSet(new TreeSet<WaterReport>());
+        waterReportsByNumber = new ConcurrentSkipListMap<>();
         qualityReportNumberMap = new HashMap<>();
     }
 
@@ -42,6 +54,15 @@ public class ReportManager {
         ReportManager.reportNumber = maxReportNumber;
     }
 
+    /**
+     * Uses up the next water report number, like for a report which has to be renumbered
+     * @return the number
+     */
+    public synchronized static int nextWaterReportNumber() {
+        reportNumber = reportNumber + 1;
+        return (reportNumber);
+    }
+
     /**
      * Sets the max quality report number. Assists with adding full reports from persistence
      * @param wr water report to set max quality report number for
@@ -169,11 +190,13 @@ public class ReportManager {
      * @param report WaterReport object to add to list
      */
     public synchronized static void addWaterReport(WaterReport report) {
+        long start = System.nanoTime();
         if (report.getReportNum() > reportNumber) {
             reportNumber = report.getReportNum();
         }
         waterReports.remove(report);
         waterReports.add(report);
+        waterReportsByNumber.put(report.getReportNum(), report);
         int maxQrn = 0;
         for (QualityReport qr : report.getQualityReportList()) {
             if (qr.getReportNum() > maxQrn) {
@@ -181,6 +204,17 @@ public class ReportManager {
             }
         }
         qualityReportNumberMap.put(report, maxQrn);
+        addLatency.recordSince(start);
+    }
+
+    /**
+     * Adds many existing water reports at once, taking the lock only once
+     * @param reports WaterReport objects to add to list
+     */
+    public synchronized static void addWaterReports(Collection<WaterReport> reports) {
+        for (WaterReport report : reports) {
+            addWaterReport(report);
+        }
     }
 
     /**
@@ -188,12 +222,40 @@ public class ReportManager {
      * @param waterReport to be deleted
      */
     public static void deleteWaterReport(WaterReport waterReport) {
+        long start = System.nanoTime();
         try {
             persist.deleteWaterReport(waterReport);
         } catch (IOException e) {
             Debug.debug("Error in saving water report");
         }
         waterReports.remove(waterReport);
+        waterReportsByNumber.remove(waterReport.getReportNum(), waterReport);
+        deleteLatency.recordSince(start);
+    }
+
+    /**
+     * Limits report updates to those in the given region, like the area visible on the map
+     * @param region the region to keep up to date, or null for everywhere
+     */
+    public static void subscribeToRegion(Region region) {
+        try {
+            persist.subscribeToRegion(region);
+        } catch (IOException e) {
+            Debug.debug("Error in subscribing to region: %s", e.toString());
+        }
+    }
+
+    /**
+     * Removes reports from the list without touching persistence, because they were already deleted elsewhere
+     * @param reportNums the numbers of the reports to remove
+     */
+    public synchronized static void removeWaterReports(Collection<Integer> reportNums) {
+        for (Integer num : reportNums) {
+            WaterReport wr = waterReportsByNumber.remove(num);
+            if (wr != null) {
+                waterReports.remove(wr);
+            }
+        }
     }
 
     /**
@@ -274,13 +336,85 @@ public class ReportManager {
      */
     public static WaterReport filterWaterReportByNumber(int num) {
         if ((num > 0) && (num <= reportNumber)) {
-            for (WaterReport report: waterReports) {
-                if (report.getReportNum() == num) {
-                    return (report);
+            return (waterReportsByNumber.get(num));
+        }
+        return null;
+    }
+
+    /**
+     * Finds the water reports matching a query, in report number order, starting after the query's cursor
+     * @param query The query
+     * @param limit The most reports to return
+     * @return the matching reports
+     */
+    public static List<WaterReport> queryWaterReports(ReportQuery query, int limit) {
+        long start = System.nanoTime();
+        List<WaterReport> res = new ArrayList<>();
+        for (WaterReport wr : candidates(query)) {
+            if (res.size() >= limit) {
+                break;
+            }
+            if (query.matches(wr)) {
+                res.add(wr);
+            }
+        }
+        waterQueryLatency.recordSince(start);
+        return (res);
+    }
+
+    /**
+     * Finds the quality reports matching a query, ordered by parent report number and then their own number,
+     * starting after the query's cursor (see qualityCursor())
+     * @param query The query
+     * @param limit The most quality reports to return
+     * @return the matching quality reports
+     */
+    public static List<QualityReport> queryQualityReports(ReportQuery query, int limit) {
+        long start = System.nanoTime();
+        List<QualityReport> res = new ArrayList<>();
+        int afterParent = (int) (query.getCursor() >>> 32);
+        int afterNum = (int) query.getCursor();
+        //for a single report, start right at it instead of scanning every report before it
+        int from = query.getReportNum() != 0 ? Math.max(afterParent, query.getReportNum()) : afterParent;
+        for (WaterReport wr : waterReportsByNumber.tailMap(from, true).values()) {
+            if (res.size() >= limit || (query.getReportNum() != 0 && wr.getReportNum() > query.getReportNum())) {
+                break;
+            }
+            if (!query.matchesLocation(wr)) {
+                continue;
+            }
+            List<QualityReport> matching = new ArrayList<>();
+            SortedSet<QualityReport> qrs = wr.getQualityReportList();
+            synchronized (qrs) {
+                for (QualityReport qr : qrs) {
+                    if ((wr.getReportNum() != afterParent || qr.getReportNum() > afterNum) && query.matches(qr)) {
+                        matching.add(qr);
+                    }
                 }
             }
+            matching.sort((a, b) -> Integer.compare(a.getReportNum(), b.getReportNum()));
+            res.addAll(matching.subList(0, Math.min(matching.size(), limit - res.size())));
         }
-        return null;
+        qualityQueryLatency.recordSince(start);
+        return (res);
+    }
+
+    /**
+     * Gets the cursor which continues a quality report query after the given quality report
+     * @param qr The last quality report of a page
+     * @return the cursor for the next page
+     */
+    public static long qualityCursor(QualityReport qr) {
+        return (((long) qr.getParentReportNum() << 32) | (qr.getReportNum() & 0xffffffffL));
+    }
+
+    private static Collection<WaterReport> candidates(ReportQuery query) {
+        if (query.getReportNum() != 0) {
+            //a single report, no need to scan
+            WaterReport wr = query.getReportNum() > query.getCursor() ? waterReportsByNumber.get(query.getReportNum()) : null;
+            return (wr == null ? Collections.emptyList() : Collections.singletonList(wr));
+        }
+        return (waterReportsByNumber.tailMap((int) Math.min(Integer.MAX_VALUE, query.getCursor()), false).values());
     }
 
     /**
@@ -0,0 +1,240 @@
+package model;
+
+import com.google.gson.annotations.Expose;
+import java.time.LocalDateTime;
+import java.util.SortedSet;
+
+/**
+ * A filter over water reports and their quality reports, plus how much of each matching report to send back.
+ * Every criterion is optional; unset ones match everything. Results come in report number order, one page
+ * at a time: the cursor of a page is where the next page starts
+ *
+ * @author tybrown
+ */
+public class ReportQuery {
+
+    /**
+     * How much of each matching water report to return
+     */
+    public enum Projection {
+        //the report with all of its quality reports
+        FULL,
+        //just the report, which is enough to put it on the map
+        SUMMARY,
+        //the report with only its most recent quality report
+        LATEST_QUALITY
+    }
+
+    @Expose
+    private Region region;
+    @Expose
+    private LocalDateTime from;
+    @Expose
+    private LocalDateTime to;
+    @Expose
+    private String author;
+    @Expose
+    private WaterType waterType;
+    @Expose
+    private WaterCondition waterCondition;
+    @Expose
+    private WaterSafety waterSafety;
+    //0 = any
+    @Expose
+    private int reportNum;
+    @Expose
+    private Projection projection = Projection.FULL;
+    @Expose
+    private long cursor;
+    @Expose
+    private int limit;
+
+    public Region getRegion() {
+        return region;
+    }
+
+    public ReportQuery setRegion(Region region) {
+        this.region = region;
+        return (this);
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    /**
+     * Limits the query to reports created in a time range
+     * @param from The earliest creation time, inclusive. Null for no limit
+     * @param to The latest creation time, exclusive. Null for no limit
+     * @return this query
+     */
+    public ReportQuery setTimeRange(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        return (this);
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public ReportQuery setAuthor(String author) {
+        this.author = author;
+        return (this);
+    }
+
+    public WaterType getWaterType() {
+        return waterType;
+    }
+
+    public ReportQuery setWaterType(WaterType waterType) {
+        this.waterType = waterType;
+        return (this);
+    }
+
+    public WaterCondition getWaterCondition() {
+        return waterCondition;
+    }
+
+    public ReportQuery setWaterCondition(WaterCondition waterCondition) {
+        this.waterCondition = waterCondition;
+        return (this);
+    }
+
+    public WaterSafety getWaterSafety() {
+        return waterSafety;
+    }
+
+    /**
+     * Limits the query by water safety. For water reports that is the safety of their most recent quality report
+     * @param waterSafety The safety to match, null for any
+     * @return this query
+     */
+    public ReportQuery setWaterSafety(WaterSafety waterSafety) {
+        this.waterSafety = waterSafety;
+        return (this);
+    }
+
+    public int getReportNum() {
+        return reportNum;
+    }
+
+    /**
+     * Limits the query to one water report, or to the quality reports of one water report
+     * @param reportNum The number of the water report, 0 for any
+     * @return this query
+     */
+    public ReportQuery setReportNum(int reportNum) {
+        this.reportNum = reportNum;
+        return (this);
+    }
+
+    public Projection getProjection() {
+        return (projection == null ? Projection.FULL : projection);
+    }
+
+    public ReportQuery setProjection(Projection projection) {
+        this.projection = projection;
+        return (this);
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Sets where the page starts
+     * @param cursor The cursor of the previous page, 0 for the first page
+     * @return this query
+     */
+    public ReportQuery setCursor(long cursor) {
+        this.cursor = cursor;
+        return (this);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the page size. The server may send fewer
+     * @param limit The most results to return, 0 for the server's default
+     * @return this query
+     */
+    public ReportQuery setLimit(int limit) {
+        this.limit = limit;
+        return (this);
+    }
+
+    /**
+     * Checks the criteria which are about the water report itself: region, report number, type and condition
+     * @param wr The water report to check
+     * @return true if they all match
+     */
+    public boolean matchesLocation(WaterReport wr) {
+        return ((region == null || region.contains(wr.getLatitude(), wr.getLongitude()))
+                && (reportNum == 0 || wr.getReportNum() == reportNum)
+                && (waterType == null || wr.getWaterType() == waterType)
+                && (waterCondition == null || wr.getWaterCondition() == waterCondition));
+    }
+
+    /**
+     * Checks if a water report matches every criterion
+     * @param wr The water report to check
+     * @return true if it matches
+     */
+    public boolean matches(WaterReport wr) {
+        if (!matchesLocation(wr) || !matchesCreation(wr.getDateTime(), wr.getAuthor())) {
+            return (false);
+        }
+        if (waterSafety != null) {
+            QualityReport latest = latestQualityReport(wr);
+            return (latest != null && latest.getWaterSafety() == waterSafety);
+        }
+        return (true);
+    }
+
+    /**
+     * Checks if a quality report matches the time range, author and safety.
+     * The location criteria are checked on its parent with matchesLocation()
+     * @param qr The quality report to check
+     * @return true if it matches
+     */
+    public boolean matches(QualityReport qr) {
+        return (matchesCreation(qr.getDateTime(), qr.getAuthor())
+                && (waterSafety == null || qr.getWaterSafety() == waterSafety));
+    }
+
+    /**
+     * Gets the most recent quality report of a water report, safe to call while it is being added to
+     * @param wr The water report
+     * @return the most recent quality report, or null if it has none
+     */
+    public static QualityReport latestQualityReport(WaterReport wr) {
+        SortedSet<QualityReport> qrs = wr.getQualityReportList();
+        synchronized (qrs) {
+            return (qrs.isEmpty() ? null : qrs.last());
+        }
+    }
+
+    private boolean matchesCreation(LocalDateTime dateTime, String author) {
+        if (from != null && (dateTime == null || dateTime.isBefore(from))) {
+            return (false);
+        }
+        if (to != null && (dateTime == null || !dateTime.isBefore(to))) {
+            return (false);
+        }
+        return (this.author == null || this.author.equals(author));
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("ReportQuery: [region: %s; from: %s; to: %s; author: %s; type: %s; condition: %s; "
+                + "safety: %s; report: %d; projection: %s; cursor: %d; limit: %d]", region, from, to, author,
+                waterType, waterCondition, waterSafety, reportNum, getProjection(), cursor, limit));
+    }
+}
@@ -1,14 +1,7 @@
 package model;
 
 import com.google.gson.annotations.Expose;
-import com.lynden.gmapsfx.javascript.object.LatLong;
 import java.util.Objects;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
-import javafx.beans.value.ObservableValue;
-import javafx.scene.image.Image;
 
 /**
  * A class representing a User in the water source application.
@@ -21,16 +14,15 @@ public final class User {
     private double lastCoordsLng;
 
     @Expose
-    private final StringProperty name = new SimpleStringProperty();
+    private String name;
     @Expose
-    private final StringProperty username = new SimpleStringProperty();
+    private String username;
     @Expose
-    private final StringProperty emailAddress = new SimpleStringProperty();
+    private String emailAddress;
     @Expose
-    private final StringProperty title = new SimpleStringProperty();
+    private String title;
     @Expose
-    private final ObjectProperty<UserLevel> level = new SimpleObjectProperty<>();
-    private final ObjectProperty<Image> profilePicture = new SimpleObjectProperty<>();
+    private UserLevel level;
 
     /**
     * No param constructor -- DO NOT CALL NORMALLY.
@@ -63,29 +55,27 @@ public final class User {
      * @param level the authority level of the User
      */
     public User(String username, String name, String emailAddress, UserLevel level) {
-        this(username, name, "Sample Title", emailAddress, level, null);
+        this(username, name, "Sample Title", emailAddress, level);
     }
 
 
     /**
      * Constructor used to create a complete User
-     * object with a title and profile picture
+     * object with a title
      *
      * @param username the username of the User
      * @param name the name of the User
      * @param title the tile of the User
      * @param emailAddress the User's email address
      * @param level the authority level of the User
-     * @param profilePicture the User's profile picture
      */
     public User(String username, String name, String title,
-                String emailAddress, UserLevel level, Image profilePicture) {
+                String emailAddress, UserLevel level) {
         setUsername(username);
         setName(name);
         setEmailAddress(emailAddress);
         setUserLevel(level);
         setTitle(title);
-        setProfilePicture(profilePicture);
         final double defaultLat = 33.7756;
         final double defaultLong = -84.3963;
         setLastCoords(defaultLat, defaultLong);
@@ -97,7 +87,7 @@ public final class User {
      * @return the name of the User
      */
     public String getName() {
-        return name.get();
+        return (name);
     }
 
     /**
@@ -106,15 +96,7 @@ public final class User {
      * @param n the new name
      */
     public void setName(String n) {
-        name.set(n);
-    }
-
-    /**
-     * Gets the name property for this User
-     * @return the name
-     */
-    public ObservableValue getNameProperty() {
-        return name;
+        this.name = n;
     }
 
     /**
@@ -123,7 +105,7 @@ public final class User {
      * @return the username
      */
     public String getUsername() {
-        return username.get();
+        return (username);
     }
 
     /**
@@ -132,24 +114,16 @@ public final class User {
      * @param n the new username
      */
     private void setUsername(String n) {
-        username.set(n);
+        this.username = n;
     }
 
-    /**
-     * Gets the username property for this User
-     *
-     * @return the username property
-     */
-    public StringProperty getUsernameProperty() {
-        return username;
-    }
     /**
      * Gets the User's title
      *
      * @return the title
      */
     public String getTitle() {
-        return title.get();
+        return (title);
     }
 
     /**
@@ -158,43 +132,7 @@ public final class User {
      * @param t the new title
      */
     public void setTitle(String t) {
-        title.set(t);
-    }
-
-    /**
-     * Gets the title property for this User
-     *
-     * @return the title property
-     */
-    public StringProperty getTitleProperty() {
-        return title;
-    }
-    /**
-     * Gets the User's current profile picture
-     *
-     * @return the User's profile picture
-     */
-    public Image getProfilePicture() {
-        return profilePicture.get();
-    }
-
-    /**
-     * Sets the User's profile picture to
-     * a new one
-     *
-     * @param i the new image
-     */
-    public void setProfilePicture(Image i) {
-        profilePicture.set(i);
-    }
-
-    /**
-     * Gets the image property for this User
-     *
-     * @return the image property
-     */
-    public ObjectProperty<Image> getImageProperty() {
-        return profilePicture;
+        this.title = t;
     }
 
     /**
@@ -203,7 +141,7 @@ public final class User {
      * @return the email address
      */
     public String getEmailAddress() {
-        return emailAddress.get();
+        return (emailAddress);
     }
 
     /**
@@ -212,15 +150,7 @@ public final class User {
      * @param n the new email address
      */
     public void setEmailAddress(String n) {
-        emailAddress.set(n);
-    }
-
-    /**
-     * Gets the email address property for this User
-     * @return the email address property
-     */
-    public StringProperty getEmailAddressProperty() {
-        return emailAddress;
+        this.emailAddress = n;
     }
 
     /**
@@ -229,7 +159,7 @@ public final class User {
      * @return the User's level
      */
     public UserLevel getUserLevel() {
-        return level.get();
+        return (level);
     }
 
     /**
@@ -238,16 +168,7 @@ public final class User {
      * @param l the new level to be set
      */
     public void setUserLevel(UserLevel l) {
-        level.set(l);
-    }
-
-    /**
-     * Gets the level property for this User
-     *
-     * @return the level property
-     */
-    public ObjectProperty<UserLevel>  getUserLevelProperty() {
-        return level;
+        this.level = l;
     }
 
     /**
@@ -266,20 +187,12 @@ public final class User {
         return (lastCoordsLng);
     }
 
-    /**
-     * Set the last viewed coordinates
-     * @param newCoords the new coordinates
-     */
-    public void setLastCoords(LatLong newCoords) {
-        setLastCoords(newCoords.getLatitude(), newCoords.getLongitude());
-    }
-
     /**
      * Set the last viewed coordinates
      * @param lat Latitude
      * @param lng Longitude
      */
-    private void setLastCoords(double lat, double lng) {
+    public void setLastCoords(double lat, double lng) {
         lastCoordsLat = lat;
         lastCoordsLng = lng;
     }
@@ -290,7 +203,7 @@ public final class User {
      * @return the clone
      */
     public User cloneIt() {
-        User res = new User(username.get(), name.get(), title.get(), emailAddress.get(), level.get(), profilePicture.get());
+        User res = new User(username, name, title, emailAddress, level);
         res.setLastCoords(lastCoordsLat, lastCoordsLng);
         return (res);
     }
@@ -308,16 +221,16 @@ public final class User {
             return false;
         }
         User u = (User) obj;
-        return username.get().equals(u.getUsername());
+        return username.equals(u.getUsername());
     }
 
     @Override
     public String toString() {
-        return "Name: " + name.get() + "\n"
-                + "Username: " + username.get() + "\n"
-                + "Title: " + title.get() + "\n"
-                + "Email address: " + emailAddress.get() + "\n"
-                + "Authorization level: " + level.get() + "\n"
+        return "Name: " + name + "\n"
+                + "Username: " + username + "\n"
+                + "Title: " + title + "\n"
+                + "Email address: " + emailAddress + "\n"
+                + "Authorization level: " + level + "\n"
                 + "lastViewedLat: " + lastCoordsLat + "\n"
                 + "lastViewedLng: " + lastCoordsLng;
     }
@@ -1,9 +1,5 @@
 package model;
 
-import java.util.Arrays;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-
 /**
  * An enum that represents the four different authority levels of Users
  */
@@ -60,12 +56,4 @@ public enum UserLevel {
             return ("hacker");
         }
     }
-
-    /**
-     * Getter for all observable lists
-     * @return ObservableList of UserLevel
-     */
-    public static ObservableList<UserLevel> getAllObservableList() {
-        return (FXCollections.observableList(Arrays.asList(values())));
-    }
 }
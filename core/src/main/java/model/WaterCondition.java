@@ -1,9 +1,5 @@
 package model;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import java.util.Arrays;
-
 /**
  * Enum that represents the four different water conditions.
  */
@@ -27,12 +23,4 @@ public enum WaterCondition {
     public String getValue() {
         return condition;
     }
-
-    /**
-     * Getter for all observable lists
-     * @return ObservableList of WaterCondition
-     */
-    public static ObservableList<WaterCondition> getAllObservableList() {
-        return (FXCollections.observableList(Arrays.asList(values())));
-    }
 }
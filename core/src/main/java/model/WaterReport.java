@@ -1,22 +1,14 @@
 package model;
 
 import com.google.gson.annotations.Expose;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleDoubleProperty;
+import com.google.gson.annotations.SerializedName;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Objects;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -24,20 +16,28 @@ import org.jetbrains.annotations.NotNull;
  */
 public final class WaterReport extends DisplayableReport implements Comparable<WaterReport> {
 
+    //the names are from when these were JavaFX properties, they're kept so saved reports still load
     @Expose
-    private final IntegerProperty reportNumProperty = new SimpleIntegerProperty();
+    @SerializedName("reportNumProperty")
+    private int reportNum;
     @Expose
-    private final DoubleProperty latitudeProperty = new SimpleDoubleProperty();
+    @SerializedName("latitudeProperty")
+    private double latitude;
     @Expose
-    private final DoubleProperty longitudeProperty = new SimpleDoubleProperty();
+    @SerializedName("longitudeProperty")
+    private double longitude;
     @Expose
-    private final ObjectProperty<LocalDateTime> dateTimeProperty = new SimpleObjectProperty<>();
+    @SerializedName("dateTimeProperty")
+    private LocalDateTime dateTime;
     @Expose
-    private final ObjectProperty<WaterType> typeProperty = new SimpleObjectProperty<>();
+    @SerializedName("typeProperty")
+    private WaterType type;
     @Expose
-    private final ObjectProperty<WaterCondition> conditionProperty = new SimpleObjectProperty<>();
+    @SerializedName("conditionProperty")
+    private WaterCondition condition;
     @Expose
-    private final StringProperty authorProperty = new SimpleStringProperty();
+    @SerializedName("authorProperty")
+    private String author;
     @Expose
     private final SortedSet<QualityReport> qualityReports = Collections.synchronizedSortedSet(new TreeSet<QualityReport>());
 
@@ -83,26 +83,17 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * Gets this water report's number
      * @return the number
      */
+    @Override
     public int getReportNum() {
-        return reportNumProperty.get();
+        return (reportNum);
     }
 
     /**
-     * Sets this water report's number
+     * Sets this water report's number, like when the server took the number meanwhile
      * @param n the new number to be set
      */
-    private void setReportNum(int n) {
-        reportNumProperty.set(n);
-    }
-
-
-    /**
-     * Gets this water report's number property
-     * @return the number property
-     */
-    @Override
-    public IntegerProperty getReportNumProperty() {
-        return reportNumProperty;
+    public void setReportNum(int n) {
+        reportNum = n;
     }
 
 
@@ -110,8 +101,9 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * Gets this water report's longitude coordinate
      * @return the longitude coordinate
      */
+    @Override
     public double getLongitude() {
-        return longitudeProperty.get();
+        return (longitude);
     }
 
     /**
@@ -119,25 +111,16 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * @param l the new longitude to be set
      */
     private void setLongitude(double l) {
-        longitudeProperty.set(l);
+        longitude = l;
     }
 
-    /**
-     * Gets this water report's longitude property
-     * @return the longitude coordinate property
-     */
-    @Override
-    public DoubleProperty getLongitudeProperty() {
-        return longitudeProperty;
-    }
-
-
     /**
      * Gets this water report's latitude coordinate
      * @return the latitude coordinate
      */
+    @Override
     public double getLatitude() {
-        return latitudeProperty.get();
+        return (latitude);
     }
 
     /**
@@ -145,16 +128,7 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * @param l the new latitude to be set
      */
     private void setLatitude(double l) {
-        latitudeProperty.set(l);
-    }
-
-    /**
-     * Gets this water report's latitude property
-     * @return the latitude coordinate property
-     */
-    @Override
-    public DoubleProperty getLatitudeProperty() {
-        return latitudeProperty;
+        latitude = l;
     }
 
     /**
@@ -214,18 +188,9 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * Get the report's creation time
      * @return the LocalDateTime of the report's creation
      */
-    public LocalDateTime getDateTime() {
-        return dateTimeProperty.get();
-    }
-
-
-    /**
-     * Gets this water report's dateTime property
-     * @return the dateTime property
-     */
     @Override
-    public ObjectProperty<LocalDateTime> getDateTimeProperty() {
-        return dateTimeProperty;
+    public LocalDateTime getDateTime() {
+        return (dateTime);
     }
 
 
@@ -234,15 +199,16 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * @param dt report's new date time
      */
     private void setDateTime(LocalDateTime dt) {
-        dateTimeProperty.set(dt);
+        dateTime = dt;
     }
 
     /**
      * Gets the type of the water
      * @return the type
      */
+    @Override
     public WaterType getWaterType() {
-        return typeProperty.get();
+        return (type);
     }
 
     /**
@@ -250,17 +216,7 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * @param t the new type of water
      */
     private void setWaterType(WaterType t) {
-        typeProperty.set(t);
-    }
-
-
-    /**
-     * Gets this water report's water source type
-     * @return the water type property
-     */
-    @Override
-    public ObjectProperty<WaterType> getWaterTypeProperty() {
-        return typeProperty;
+        type = t;
     }
 
 
@@ -268,8 +224,9 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * Gets the water condition
      * @return the condition
      */
+    @Override
     public WaterCondition getWaterCondition() {
-        return conditionProperty.get();
+        return (condition);
     }
 
     /**
@@ -277,24 +234,16 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * @param c the condition
      */
     private void setWaterCondition(WaterCondition c) {
-        conditionProperty.set(c);
-    }
-
-    /**
-     * Gets the water report's water condition property
-     * @return the water condition property
-     */
-    @Override
-    public ObjectProperty<WaterCondition> getWaterConditionProperty() {
-        return conditionProperty;
+        condition = c;
     }
 
     /**
      * Gets the water report's author
      * @return the author
      */
+    @Override
     public String getAuthor() {
-        return authorProperty.get();
+        return (author);
     }
 
     /**
@@ -302,26 +251,16 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
      * @param user the user of the report
      */
     private void setAuthor(String user) {
-        authorProperty.set(user);
+        author = user;
     }
 
 
-    /**
-     * Gets the water report's author property
-     * @return the author property
-     */
-
-    @Override
-    public StringProperty getAuthorUsernameProperty() {
-        return authorProperty;
-    }
-
     /**
      * Adds a quality report to the list of quality reports for this
      * water source.
      * @param qualityReport the quality report to be added to the list
      */
-    protected synchronized void addQualityReport(QualityReport qualityReport) {
+    public synchronized void addQualityReport(QualityReport qualityReport) {
         qualityReport.setParentReportNum(getReportNum());
         qualityReports.remove(qualityReport);
         qualityReports.add(qualityReport);
@@ -384,41 +323,41 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
 
     /**
      * Gets this water report's water safety
-     * @return the water type property
+     * @return the safety of the most recent quality report
      */
     @Override
-    public ObjectProperty<WaterSafety> getWaterSafetyProperty() {
+    public WaterSafety getWaterSafety() {
         QualityReport latestQR = getMostRecentQualityReport();
         if (latestQR == null) {
-            return (super.getWaterSafetyProperty());
+            return (super.getWaterSafety());
         }
-        return (latestQR.getWaterSafetyProperty());
+        return (latestQR.getWaterSafety());
     }
 
     /**
-     * Gets the virus PPM property for the most recent quality report
-     * @return the virus PPM property
+     * Gets the virus PPM for the most recent quality report
+     * @return the virus PPM
      */
     @Override
-    public DoubleProperty getVppmProperty() {
+    public double getVirusPPM() {
         QualityReport latestQR = getMostRecentQualityReport();
         if (latestQR == null) {
-            return (super.getVppmProperty());
+            return (super.getVirusPPM());
         }
-        return (latestQR.getVppmProperty());
+        return (latestQR.getVirusPPM());
     }
 
     /**
-     * Gets the contaminant PPM property for the most recent quality report
-     * @return the contaminant PPM property
+     * Gets the contaminant PPM for the most recent quality report
+     * @return the contaminant PPM
      */
     @Override
-    public DoubleProperty getCppmProperty() {
+    public double getContaminantPPM() {
         QualityReport latestQR = getMostRecentQualityReport();
         if (latestQR == null) {
-            return (super.getCppmProperty());
+            return (super.getContaminantPPM());
         }
-        return (latestQR.getCppmProperty());
+        return (latestQR.getContaminantPPM());
     }
 
     /**
@@ -466,43 +405,6 @@ public final class WaterReport extends DisplayableReport implements Comparable<W
         return getDateTime().compareTo(report.getDateTime());
     }
 
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 37 * hash + Objects.hashCode(this.latitudeProperty);
-        hash = 37 * hash + Objects.hashCode(this.longitudeProperty);
-        hash = 37 * hash + Objects.hashCode(this.dateTimeProperty);
-        hash = 37 * hash + Objects.hashCode(this.typeProperty);
-        return hash;
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-        if (this == obj) {
-            return true;
-        }
-        if (obj == null) {
-            return false;
-        }
-        if (getClass() != obj.getClass()) {
-            return false;
-        }
-        final WaterReport other = (WaterReport) obj;
-        if (!Objects.equals(this.latitudeProperty, other.latitudeProperty)) {
-            return false;
-        }
-        if (!Objects.equals(this.longitudeProperty, other.longitudeProperty)) {
-            return false;
-        }
-        if (!Objects.equals(this.dateTimeProperty, other.dateTimeProperty)) {
-            return false;
-        }
-        if (!Objects.equals(this.typeProperty, other.typeProperty)) {
-            return false;
-        }
-        return true;
-    }
-
     @Override
     public int getParentReportNum() {
         return (getReportNum());
@@ -1,9 +1,5 @@
 package model;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import java.util.Arrays;
-
 /**
  * Enum that represents the four different water conditions.
  */
@@ -28,12 +24,4 @@ public enum WaterSafety {
     public String getValue() {
         return condition;
     }
-
-    /**
-     * Getter for all observable lists
-     * @return ObservableList of WaterCondition
-     */
-    public static ObservableList<WaterSafety> getAllObservableList() {
-        return (FXCollections.observableList(Arrays.asList(values())));
-    }
 }
@@ -1,9 +1,5 @@
 package model;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import java.util.Arrays;
-
 /**
  * Enum that represents the six different water types
  */
@@ -27,12 +23,4 @@ public enum WaterType {
     public String getValue() {
         return type;
     }
-
-    /**
-     * Getter for all observable lists
-     * @return ObservableList of WaterType
-     */
-    public static ObservableList<WaterType> getAllObservableList() {
-        return (FXCollections.observableList(Arrays.asList(values())));
-    }
 }
@@ -3,6 +3,7 @@ package persistence;
 import java.io.IOException;
 import model.Credential;
 import model.QualityReport;
+import model.Region;
 import model.User;
 import model.WaterReport;
 
@@ -103,4 +104,11 @@ public interface PersistenceInterface {
      */
     void deleteQualityReport(QualityReport wr) throws IOException;
 
+    /**
+     * Tells the persistence layer which part of the map the user is looking at,
+     * so it only needs to keep reports in that region up to date
+     * @param region The region the user is looking at, or null for everywhere
+     */
+    void subscribeToRegion(Region region) throws IOException;
+
 }
@@ -17,10 +17,14 @@ import java.util.ArrayList;
 import java.util.SortedSet;
 
 import lib.Debug;
+import lib.FlightEvents;
+import lib.Histogram;
+import lib.Metrics;
 import model.AuthenticationManager;
 import model.Credential;
 import model.CredentialManager;
 import model.QualityReport;
+import model.Region;
 import model.ReportManager;
 import model.User;
 import model.UserManager;
@@ -44,6 +48,9 @@ public class PersistentJsonFile extends PersistentJsonInterface {
     public static final String CREDENTIAL_FILE_NAME = "credentials" + FILE_EXTENSION;
     public static final String WR_FILE_NAME = "waterReports" + FILE_EXTENSION;
 
+    private static final Histogram writeLatency = Metrics.histogram("db.write");
+    private static final Histogram loadLatency = Metrics.histogram("db.load");
+
     /**
      * Constructor that sets the pathname for json files
      * @param path The path folder for the database files to live in
@@ -66,6 +73,7 @@ public class PersistentJsonFile extends PersistentJsonInterface {
      * @return list of objects of class c
      */
     private <T> List<T> loadAll(String filename, Class<T> c) {
+        long start = System.nanoTime();
         List<T> res = new ArrayList<>();
         try (BufferedReader rd = new BufferedReader(new FileReader(filename))) {
             String line;
@@ -75,6 +83,7 @@ public class PersistentJsonFile extends PersistentJsonInterface {
                     res.add(t);
                 }
             }
+            loadLatency.recordSince(start);
             return res;
         } catch (FileNotFoundException e) {
             Debug.debug("File does not exist: %s", filename);
@@ -182,15 +191,37 @@ public class PersistentJsonFile extends PersistentJsonInterface {
         }
     }
 
+    /**
+     * Gets the sizes of the database files, which only ever grow since every change is appended
+     * @return file name -> size in bytes, 0 for a file which doesn't exist yet
+     */
+    public Map<String, Long> getFileSizes() {
+        Map<String, Long> res = new HashMap<>();
+        for (String name : new String[] {USER_FILE_NAME, CREDENTIAL_FILE_NAME, WR_FILE_NAME}) {
+            res.put(name, new File(pathName + name).length());
+        }
+        return (res);
+    }
+
     /**
      * Writes a string to a file
      * @param writer The open Writer to write with
      * @param s The string which shall be written
      */
     private void writeToFile(Writer writer, CharSequence s) {
+        long start = System.nanoTime();
+        FlightEvents.DatabaseWrite event = new FlightEvents.DatabaseWrite();
+        event.begin();
         try {
             writer.append(s);
             writer.flush();
+            writeLatency.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = writer == writerUsers ? USER_FILE_NAME : writer == writerCredentials ? CREDENTIAL_FILE_NAME : WR_FILE_NAME;
+                event.size = s.length();
+                event.commit();
+            }
         } catch (IOException e) {
             Debug.debug("Exception while writing user: %s", e.getMessage());
         }
@@ -220,6 +251,23 @@ public class PersistentJsonFile extends PersistentJsonInterface {
         writeToFile(writerCredentials, toJson(c) + "\n");
     }
 
+    /**
+     * Gets every saved credential, like for copying them to a replica server
+     * @return the credentials
+     */
+    public List<Credential> getCredentials() {
+        return (credentialManager.getCredentials());
+    }
+
+    /**
+     * Checks if a credential is saved exactly like this already
+     * @param c The credential
+     * @return true if the user exists and has this password
+     */
+    public boolean hasCredential(Credential c) {
+        return (credentialManager.matchCredential(c));
+    }
+
     @Override
     public void deauthenticateUser(String username) {
         authenticator.logout(username);
@@ -286,4 +334,9 @@ public class PersistentJsonFile extends PersistentJsonInterface {
         ReportManager.deleteWaterReport(parent);
         saveWaterReport(parent);
     }
+
+    @Override
+    public void subscribeToRegion(Region region) {
+        //every report is local, so there is nothing to keep up to date
+    }
 }
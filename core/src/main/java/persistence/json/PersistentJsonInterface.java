@@ -0,0 +1,93 @@
+package persistence.json;
+
+import persistence.PersistenceInterface;
+import persistence.json.net.Command;
+import persistence.json.net.CompressedData;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lib.FlightEvents;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Dominic Pattison
+ */
+public abstract class PersistentJsonInterface implements PersistenceInterface {
+
+    private final Gson gson;
+
+    /**
+     * Default constructor. All sub-classes automatically call this when they are themselves created
+     */
+    public PersistentJsonInterface() {
+        gson = new GsonBuilder()
+                .excludeFieldsWithoutExposeAnnotation()
+                .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+                .create();
+    }
+
+    /**
+     * Function for converting object to json string
+     * @param o object to convert
+     * @return string of json representing the object o
+     */
+    public String toJson(Object o) {
+        FlightEvents.Json event = new FlightEvents.Json();
+        event.begin();
+        String res = gson.toJson(o);
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = o == null ? null : o.getClass().getName();
+            event.size = res.length();
+            event.commit();
+        }
+        return (res);
+    }
+
+    /**
+     * Generic function for converting a json string to an object
+     * @param <T> type of the object to be created from the given JSON string
+     * @param j string of json to convert
+     * @param c class of type T of the json string object
+     * @return object of type T parsed from the json string j
+     */
+    public <T> T fromJson(String j, Class<T> c) {
+        FlightEvents.Json event = new FlightEvents.Json();
+        event.begin();
+        T res = gson.fromJson(j, c);
+        event.end();
+        if (event.shouldCommit()) {
+            event.decode = true;
+            event.type = c.getName();
+            event.size = j == null ? 0 : j.length();
+            event.commit();
+        }
+        return (res);
+    }
+
+    /**
+     * Gets the model object carried by a command, whichever encoding it arrived in
+     * @param <T> type of the object carried by the command
+     * @param command the command to read
+     * @param c class of type T of the carried object
+     * @return the already decoded payload, or the object parsed from the command's json data
+     */
+    public <T> T readPayload(Command command, Class<T> c) {
+        if (c.isInstance(command.getPayload())) {
+            return (c.cast(command.getPayload()));
+        }
+        if (command.getData() == null) {
+            return (null);
+        }
+        if (!command.isCompressed()) {
+            return (fromJson(command.getData(), c));
+        }
+        try {
+            return (fromJson(CompressedData.decompress(command.getData()), c));
+        } catch (IOException e) {
+            throw (new JsonParseException("Failed to decompress command data", e));
+        }
+    }
+}
@@ -0,0 +1,643 @@
+package persistence.json.net;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import model.Credential;
+import model.QualityReport;
+import model.Region;
+import model.ReportQuery;
+import model.User;
+import model.UserLevel;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonInterface;
+
+/**
+ * Compact binary encoding for Commands and the model objects they carry.
+ * Every encoded command starts with a schema version byte; integers are varints (signed ones zigzag encoded),
+ * enums are written as ordinals and strings as length-prefixed UTF-8.
+ * Enum constants and fields may only ever be appended, or old peers will decode garbage. Peers tell each other
+ * the newest version they decode when switching to binary (see Command.getSchemaVersion()), and commands are
+ * written in the older of the two. Command types from newer peers decode as UNKNOWN
+ *
+ * @author tybrown
+ */
+public class BinaryCodec {
+
+    public static final int SCHEMA_VERSION = 5;
+    //oldest version we can still decode and write. version 1 had no change log sequence and no snapshot deltas, version 2 no request ids,
+    //version 3 no session tokens, version 4 no retry delays
+    public static final int MIN_SCHEMA_VERSION = 1;
+
+    private static final int FLAG_RESPONSE = 1;
+    private static final int FLAG_SUCCESS = 1 << 1;
+    private static final int FLAG_CREDENTIAL = 1 << 2;
+    private static final int FLAG_PAYLOAD = 1 << 3;
+    private static final int FLAG_DATA = 1 << 4;
+    private static final int FLAG_COMPRESSED = 1 << 5;
+    private static final int FLAG_ACCEPTS_COMPRESSION = 1 << 6;
+    private static final int FLAG_FRAME_COMPRESSION = 1 << 7;
+
+    private final PersistentJsonInterface json;
+
+    /**
+     * Constructs a codec
+     * @param json Used to parse JSON data of commands which were built without a payload object
+     */
+    public BinaryCodec(PersistentJsonInterface json) {
+        this.json = json;
+    }
+
+    /**
+     * Gets the model class carried in the data of the given command
+     * @param type The type of the command
+     * @param response Whether the command is a response
+     * @return The class of the payload, or null if this kind of command has no payload
+     */
+    public static Class<?> payloadClass(Command.CommandType type, boolean response) {
+        switch (type) {
+        case SAVE_USER:
+        case LOAD_USER:
+        case DELETE_USER:
+            return (User.class);
+        case SAVE_CREDENTIAL:
+            return (Credential.class);
+        case AUTHENTICATE:
+            return (response ? User.class : Credential.class);
+        case SAVE_WATER_REPORT:
+        case LOAD_WATER_REPORT:
+        case DELETE_WATER_REPORT:
+            return (WaterReport.class);
+        case SAVE_QUALITY_REPORT:
+        case LOAD_QUALITY_REPORT:
+        case DELETE_QUALITY_REPORT:
+            return (QualityReport.class);
+        case LOAD_SNAPSHOT:
+        case LOAD_REPORT_BATCH:
+            return (ReportBatch.class);
+        case SUBSCRIBE:
+            return (response ? null : Region.class);
+        case QUERY_WATER_REPORTS:
+        case QUERY_QUALITY_REPORTS:
+            return (response ? QueryPage.class : ReportQuery.class);
+        default:
+            return (null);
+        }
+    }
+
+    /**
+     * Encodes a command in the newest schema version
+     * @param c The command to encode
+     * @return The encoded bytes
+     */
+    public byte[] encode(Command c) {
+        return (encode(c, SCHEMA_VERSION));
+    }
+
+    /**
+     * Encodes a command so a peer which only knows the given schema version can decode it.
+     * Fields that version doesn't have are left out
+     * @param c The command to encode
+     * @param version The schema version, between MIN_SCHEMA_VERSION and SCHEMA_VERSION
+     * @return The encoded bytes
+     * @throws IllegalArgumentException If the version isn't one this codec can write
+     */
+    public byte[] encode(Command c, int version) {
+        if (version < MIN_SCHEMA_VERSION || version > SCHEMA_VERSION) {
+            throw (new IllegalArgumentException(String.format("Unsupported binary schema version %d", version)));
+        }
+        Output out = new Output(128);
+        out.version = version;
+        out.writeByte(version);
+        out.writeEnum(c.getCommand());
+
+        Class<?> payloadClass = payloadClass(c.getCommand(), c.isResponse());
+        Object payload = c.getPayload();
+        if (payload == null && payloadClass != null && c.getData() != null) {
+            payload = json.readPayload(c, payloadClass);
+        }
+        boolean writePayload = payload != null && payloadClass != null && payloadClass.isInstance(payload);
+
+        int flags = 0;
+        flags |= c.isResponse() ? FLAG_RESPONSE : 0;
+        flags |= c.isSuccessful() ? FLAG_SUCCESS : 0;
+        flags |= (c.getCredential() != null) ? FLAG_CREDENTIAL : 0;
+        flags |= writePayload ? FLAG_PAYLOAD : 0;
+        flags |= (!writePayload && c.getData() != null) ? FLAG_DATA : 0;
+        flags |= (!writePayload && c.isCompressed()) ? FLAG_COMPRESSED : 0;
+        flags |= c.acceptsCompression() ? FLAG_ACCEPTS_COMPRESSION : 0;
+        flags |= c.isFrameCompression() ? FLAG_FRAME_COMPRESSION : 0;
+        out.writeByte(flags);
+        out.writeString(c.getMessage());
+        out.writeEnum(c.getEncoding());
+        if (version >= 2) {
+            out.writeVarint(c.getSequence());
+            out.writeVarint(c.getEpoch());
+        }
+        if (version >= 3) {
+            out.writeVarint(c.getRequestId());
+        }
+        if (version >= 4) {
+            out.writeString(c.getSession());
+        }
+        if (version >= 5) {
+            out.writeVarint(c.getRetryAfter());
+        }
+        if (c.getCredential() != null) {
+            writeCredential(out, c.getCredential());
+        }
+        if (writePayload) {
+            writePayload(out, payload);
+        } else if (c.getData() != null) {
+            out.writeString(c.getData());
+        }
+        return (out.toByteArray());
+    }
+
+    /**
+     * Decodes a command. The decoded model object is available through Command.getPayload()
+     * @param buf The buffer holding the encoded command
+     * @param offset The offset of the command in buf
+     * @param length The number of bytes of the command
+     * @return The decoded command
+     * @throws IOException If the bytes were not a valid command of a known schema version
+     */
+    public Command decode(byte[] buf, int offset, int length) throws IOException {
+        Input in = new Input(buf, offset, length);
+        int version = in.readByte();
+        in.version = version;
+        if (version < MIN_SCHEMA_VERSION || version > SCHEMA_VERSION) {
+            throw (new ProtocolException(String.format("Unsupported binary schema version %d", version)));
+        }
+        Command c = new Command();
+        //a type added by a newer peer, which gets told it's unknown
+        c.setCommandType(in.readEnum(Command.CommandType.values(), Command.CommandType.UNKNOWN));
+        if (c.getCommand() == null) {
+            c.setCommandType(Command.CommandType.UNKNOWN);
+        }
+        int flags = in.readByte();
+        c.setResponse((flags & FLAG_RESPONSE) != 0);
+        c.setSuccess((flags & FLAG_SUCCESS) != 0);
+        c.setCompressed((flags & FLAG_COMPRESSED) != 0);
+        c.setAcceptsCompression((flags & FLAG_ACCEPTS_COMPRESSION) != 0);
+        c.setFrameCompression((flags & FLAG_FRAME_COMPRESSION) != 0);
+        c.setMessage(in.readString());
+        c.setEncoding(in.readEnum(Command.Encoding.values()));
+        if (version >= 2) {
+            c.setSequence(in.readVarint());
+            c.setEpoch(in.readVarint());
+        }
+        if (version >= 3) {
+            c.setRequestId(in.readVarint());
+        }
+        if (version >= 4) {
+            c.setSession(in.readString());
+        }
+        if (version >= 5) {
+            c.setRetryAfter(in.readVarint());
+        }
+        if ((flags & FLAG_CREDENTIAL) != 0) {
+            c.setCredential(readCredential(in));
+        }
+        if ((flags & FLAG_PAYLOAD) != 0 && c.getCommand() == Command.CommandType.UNKNOWN) {
+            //no way to read a payload we don't know, but it's the last thing in the frame
+            in.skipRest();
+        } else if ((flags & FLAG_PAYLOAD) != 0) {
+            Class<?> payloadClass = payloadClass(c.getCommand(), c.isResponse());
+            if (payloadClass == null) {
+                throw (new ProtocolException(String.format("Command %s cannot carry a payload", c.getCommand())));
+            }
+            c.setPayload(readPayload(in, payloadClass));
+        } else if ((flags & FLAG_DATA) != 0) {
+            c.setData(in.readString());
+        }
+        return (c);
+    }
+
+    private void writePayload(Output out, Object payload) {
+        if (payload instanceof WaterReport) {
+            writeWaterReport(out, (WaterReport) payload);
+        } else if (payload instanceof QualityReport) {
+            writeQualityReport(out, (QualityReport) payload);
+        } else if (payload instanceof User) {
+            writeUser(out, (User) payload);
+        } else if (payload instanceof Credential) {
+            writeCredential(out, (Credential) payload);
+        } else if (payload instanceof ReportBatch) {
+            writeReportBatch(out, (ReportBatch) payload);
+        } else if (payload instanceof Region) {
+            writeRegion(out, (Region) payload);
+        } else if (payload instanceof ReportQuery) {
+            writeReportQuery(out, (ReportQuery) payload);
+        } else if (payload instanceof QueryPage) {
+            writeQueryPage(out, (QueryPage) payload);
+        }
+    }
+
+    private Object readPayload(Input in, Class<?> c) throws IOException {
+        if (c == WaterReport.class) {
+            return (readWaterReport(in));
+        } else if (c == QualityReport.class) {
+            return (readQualityReport(in));
+        } else if (c == User.class) {
+            return (readUser(in));
+        } else if (c == Credential.class) {
+            return (readCredential(in));
+        } else if (c == ReportBatch.class) {
+            return (readReportBatch(in));
+        } else if (c == Region.class) {
+            return (readRegion(in));
+        } else if (c == ReportQuery.class) {
+            return (readReportQuery(in));
+        } else if (c == QueryPage.class) {
+            return (readQueryPage(in));
+        }
+        throw (new ProtocolException(String.format("No binary layout for %s", c.getName())));
+    }
+
+    private void writeCredential(Output out, Credential c) {
+        out.writeString(c.getUsername());
+        out.writeBoolean(c.getCredential() != null);
+        if (c.getCredential() != null) {
+            out.writeSignedVarint(c.getCredential());
+        }
+    }
+
+    private Credential readCredential(Input in) throws IOException {
+        String username = in.readString();
+        Integer credential = in.readBoolean() ? (int) in.readSignedVarint() : null;
+        return (new Credential(username, credential));
+    }
+
+    private void writeRegion(Output out, Region r) {
+        out.writeDouble(r.getSouth());
+        out.writeDouble(r.getWest());
+        out.writeDouble(r.getNorth());
+        out.writeDouble(r.getEast());
+    }
+
+    private Region readRegion(Input in) throws IOException {
+        return (new Region(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()));
+    }
+
+    private void writeUser(Output out, User u) {
+        out.writeString(u.getUsername());
+        out.writeString(u.getName());
+        out.writeString(u.getTitle());
+        out.writeString(u.getEmailAddress());
+        out.writeEnum(u.getUserLevel());
+        out.writeDouble(u.getLastCoordsLat());
+        out.writeDouble(u.getLastCoordsLng());
+    }
+
+    private User readUser(Input in) throws IOException {
+        String username = in.readString();
+        String name = in.readString();
+        String title = in.readString();
+        String email = in.readString();
+        UserLevel level = in.readEnum(UserLevel.values());
+        User u = new User(username, name, title, email, level);
+        u.setLastCoords(in.readDouble(), in.readDouble());
+        return (u);
+    }
+
+    private void writeWaterReport(Output out, WaterReport wr) {
+        out.writeVarint(wr.getReportNum());
+        out.writeDateTime(wr.getDateTime());
+        out.writeDouble(wr.getLatitude());
+        out.writeDouble(wr.getLongitude());
+        out.writeEnum(wr.getWaterType());
+        out.writeEnum(wr.getWaterCondition());
+        out.writeString(wr.getAuthor());
+        SortedSet<QualityReport> qrs = wr.getQualityReportList();
+        synchronized (qrs) {
+            out.writeVarint(qrs.size());
+            for (QualityReport qr : qrs) {
+                writeQualityReport(out, qr);
+            }
+        }
+    }
+
+    private WaterReport readWaterReport(Input in) throws IOException {
+        int reportNum = (int) in.readVarint();
+        LocalDateTime dateTime = in.readDateTime();
+        double lat = in.readDouble();
+        double lng = in.readDouble();
+        WaterType type = in.readEnum(WaterType.values());
+        WaterCondition condition = in.readEnum(WaterCondition.values());
+        String author = in.readString();
+        WaterReport wr = new WaterReport(reportNum, dateTime, lat, lng, type, condition, author);
+        int count = (int) in.readVarint();
+        for (int i = 0; i < count; i++) {
+            wr.addQualityReport(readQualityReport(in));
+        }
+        return (wr);
+    }
+
+    private void writeQualityReport(Output out, QualityReport qr) {
+        out.writeVarint(qr.getReportNum());
+        out.writeVarint(qr.getParentReportNum());
+        out.writeDateTime(qr.getDateTime());
+        out.writeString(qr.getAuthor());
+        out.writeEnum(qr.getWaterSafety());
+        out.writeDouble(qr.getVirusPPM());
+        out.writeDouble(qr.getContaminantPPM());
+    }
+
+    private QualityReport readQualityReport(Input in) throws IOException {
+        int reportNum = (int) in.readVarint();
+        int parentNum = (int) in.readVarint();
+        LocalDateTime dateTime = in.readDateTime();
+        String author = in.readString();
+        WaterSafety safety = in.readEnum(WaterSafety.values());
+        double vppm = in.readDouble();
+        double cppm = in.readDouble();
+        return (new QualityReport(dateTime, reportNum, author, safety, vppm, cppm, parentNum));
+    }
+
+    private void writeReportBatch(Output out, ReportBatch batch) {
+        out.writeVarint(batch.getChunk());
+        out.writeBoolean(batch.isLast());
+        List<WaterReport> reports = batch.getReports();
+        out.writeVarint(reports.size());
+        for (WaterReport wr : reports) {
+            writeWaterReport(out, wr);
+        }
+        if (out.version >= 2) {
+            out.writeBoolean(batch.isDelta());
+            List<Integer> deleted = batch.getDeleted();
+            out.writeVarint(deleted.size());
+            for (Integer num : deleted) {
+                out.writeVarint(num);
+            }
+        }
+    }
+
+    private ReportBatch readReportBatch(Input in) throws IOException {
+        int chunk = (int) in.readVarint();
+        boolean last = in.readBoolean();
+        int count = (int) in.readVarint();
+        List<WaterReport> reports = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            reports.add(readWaterReport(in));
+        }
+        boolean delta = false;
+        List<Integer> deleted = new ArrayList<>();
+        if (in.version >= 2) {
+            delta = in.readBoolean();
+            int deletedCount = (int) in.readVarint();
+            for (int i = 0; i < deletedCount; i++) {
+                deleted.add((int) in.readVarint());
+            }
+        }
+        return (new ReportBatch(chunk, last, reports, delta, deleted));
+    }
+
+    private void writeReportQuery(Output out, ReportQuery q) {
+        out.writeBoolean(q.getRegion() != null);
+        if (q.getRegion() != null) {
+            writeRegion(out, q.getRegion());
+        }
+        out.writeDateTime(q.getFrom());
+        out.writeDateTime(q.getTo());
+        out.writeString(q.getAuthor());
+        out.writeEnum(q.getWaterType());
+        out.writeEnum(q.getWaterCondition());
+        out.writeEnum(q.getWaterSafety());
+        out.writeVarint(q.getReportNum());
+        out.writeEnum(q.getProjection());
+        out.writeVarint(q.getCursor());
+        out.writeVarint(q.getLimit());
+    }
+
+    private ReportQuery readReportQuery(Input in) throws IOException {
+        ReportQuery q = new ReportQuery();
+        if (in.readBoolean()) {
+            q.setRegion(readRegion(in));
+        }
+        q.setTimeRange(in.readDateTime(), in.readDateTime());
+        q.setAuthor(in.readString());
+        q.setWaterType(in.readEnum(WaterType.values()));
+        q.setWaterCondition(in.readEnum(WaterCondition.values()));
+        q.setWaterSafety(in.readEnum(WaterSafety.values()));
+        q.setReportNum((int) in.readVarint());
+        q.setProjection(in.readEnum(ReportQuery.Projection.values()));
+        q.setCursor(in.readVarint());
+        q.setLimit((int) in.readVarint());
+        return (q);
+    }
+
+    private void writeQueryPage(Output out, QueryPage page) {
+        List<WaterReport> wrs = page.getWaterReports();
+        out.writeVarint(wrs.size());
+        for (WaterReport wr : wrs) {
+            writeWaterReport(out, wr);
+        }
+        List<QualityReport> qrs = page.getQualityReports();
+        out.writeVarint(qrs.size());
+        for (QualityReport qr : qrs) {
+            writeQualityReport(out, qr);
+        }
+        out.writeVarint(page.getNextCursor());
+    }
+
+    private QueryPage readQueryPage(Input in) throws IOException {
+        int count = (int) in.readVarint();
+        List<WaterReport> wrs = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            wrs.add(readWaterReport(in));
+        }
+        count = (int) in.readVarint();
+        List<QualityReport> qrs = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            qrs.add(readQualityReport(in));
+        }
+        return (new QueryPage(wrs, qrs, in.readVarint()));
+    }
+
+    /**
+     * Growable output buffer with the primitive encoders
+     */
+    static final class Output {
+        private byte[] buf;
+        private int size = 0;
+        private int version = SCHEMA_VERSION;
+
+        Output(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeBoolean(boolean b) {
+            writeByte(b ? 1 : 0);
+        }
+
+        void writeVarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        void writeSignedVarint(long v) {
+            writeVarint((v << 1) ^ (v >> 63));
+        }
+
+        void writeDouble(double d) {
+            long bits = Double.doubleToLongBits(d);
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[size++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        //0 is null, otherwise length + 1
+        void writeString(String s) {
+            if (s == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(b.length + 1L);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+        }
+
+        //0 is null, otherwise ordinal + 1
+        void writeEnum(Enum<?> e) {
+            writeVarint(e == null ? 0 : e.ordinal() + 1L);
+        }
+
+        //same resolution and zone as the JSON LocalDateTimeAdapter, so both encodings decode identically
+        void writeDateTime(LocalDateTime dt) {
+            writeBoolean(dt != null);
+            if (dt != null) {
+                writeSignedVarint(dt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+        }
+
+        byte[] toByteArray() {
+            return (Arrays.copyOf(buf, size));
+        }
+    }
+
+    /**
+     * Cursor over an encoded buffer with the primitive decoders
+     */
+    static final class Input {
+        private final byte[] buf;
+        private int pos;
+        private final int end;
+        private int version = SCHEMA_VERSION;
+
+        Input(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= end) {
+                throw (new ProtocolException("Truncated binary command"));
+            }
+            return (buf[pos++] & 0xFF);
+        }
+
+        boolean readBoolean() throws IOException {
+            return (readByte() != 0);
+        }
+
+        long readVarint() throws IOException {
+            long res = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                res |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (res);
+                }
+            }
+            throw (new ProtocolException("Malformed varint"));
+        }
+
+        long readSignedVarint() throws IOException {
+            long v = readVarint();
+            return ((v >>> 1) ^ -(v & 1));
+        }
+
+        double readDouble() throws IOException {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (long) readByte() << (i * 8);
+            }
+            return (Double.longBitsToDouble(bits));
+        }
+
+        String readString() throws IOException {
+            long len = readVarint();
+            if (len == 0) {
+                return (null);
+            }
+            int n = (int) (len - 1);
+            if (n < 0 || n > end - pos) {
+                throw (new ProtocolException("Truncated string"));
+            }
+            String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return (s);
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+            long v = readVarint();
+            if (v == 0) {
+                return (null);
+            }
+            if (v > values.length) {
+                throw (new ProtocolException(String.format("Unknown enum ordinal %d", v - 1)));
+            }
+            return (values[(int) v - 1]);
+        }
+
+        //for enums a newer peer may have appended to
+        <E extends Enum<E>> E readEnum(E[] values, E unknown) throws IOException {
+            long v = readVarint();
+            if (v == 0) {
+                return (null);
+            }
+            return (v > values.length ? unknown : values[(int) v - 1]);
+        }
+
+        void skipRest() {
+            pos = end;
+        }
+
+        LocalDateTime readDateTime() throws IOException {
+            if (!readBoolean()) {
+                return (null);
+            }
+            return (LocalDateTime.ofInstant(Instant.ofEpochMilli(readSignedVarint()), ZoneId.systemDefault()));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package persistence.json.net;
+
+import com.google.gson.annotations.Expose;
+import model.Credential;
+
+public class Command {
+    
+    public enum CommandType {
+        SAVE_USER, LOAD_USER, DELETE_USER,
+        SAVE_CREDENTIAL,
+        SAVE_WATER_REPORT, LOAD_WATER_REPORT, DELETE_WATER_REPORT,
+        SAVE_QUALITY_REPORT, LOAD_QUALITY_REPORT, DELETE_QUALITY_REPORT,
+        AUTHENTICATE, DEAUTHENTICATE, UNKNOWN,
+        //the binary encoding sends ordinals, so new types only ever go on the end
+        LOAD_SNAPSHOT, SUBSCRIBE, LOAD_REPORT_BATCH,
+        QUERY_WATER_REPORTS, QUERY_QUALITY_REPORTS,
+        HEARTBEAT, REPLICATE, ADMIN_STATS
+    }
+
+    /**
+     * Wire encodings a connection can use. Negotiated during AUTHENTICATE; JSON is always understood
+     */
+    public enum Encoding {
+        JSON, BINARY
+    }
+
+    @Expose
+    private CommandType command;
+    @Expose
+    private String data;
+    //only sent by old clients; everyone else authenticates once and then sends the session token
+    @Expose
+    private Credential credential;
+    //the opaque token handed out by a successful AUTHENTICATE (see server.SessionStore)
+    @Expose
+    private String session;
+
+
+    @Expose
+    private boolean response;
+    @Expose
+    private boolean success;
+    @Expose
+    private String message;
+    @Expose
+    private Encoding encoding;
+    //the fields below are mostly unset, so they're kept null instead of false or 0 to leave them out of JSON frames.
+    //the getters still answer false or 0
+    //data is CompressedData
+    @Expose
+    private Boolean compressed;
+    //on AUTHENTICATE: the sender accepts compressed data
+    @Expose
+    private Boolean acceptsCompression;
+    //on AUTHENTICATE: the sender can receive compressed frames (see MessageChannel.COMPRESSED_FRAME)
+    @Expose
+    private Boolean frameCompression;
+
+    //position in the server's change log (see server.ChangeLog) this command brings the client up to
+    @Expose
+    private Long sequence;
+    @Expose
+    private Long epoch;
+
+    //picked by the client; the response to a request carries the same id, whatever order responses come back in. 0 = none
+    @Expose
+    private Long requestId;
+
+    //set when a request was refused because the server is overloaded: milliseconds to wait before sending it again
+    @Expose
+    private Long retryAfter;
+
+    //when switching to binary: the newest BinaryCodec schema version the sender can decode. null from peers older than that
+    @Expose
+    private Integer schemaVersion;
+
+    //the decoded model object carried by this command, if it has already been decoded (binary frames)
+    private transient Object payload;
+
+    public Command(CommandType type, String data, Credential c, boolean response, boolean success, String message) {
+        this.command = type;
+        this.response = response;
+        this.data = data;
+        this.credential = c;
+        this.success = success;
+        this.message = message;
+    }
+
+    public Command(CommandType type, String data, Credential c) {
+        this(type, data, c, false, false, null);
+    }
+
+    public Command() {
+        this(CommandType.UNKNOWN, null, null);
+    }
+
+    public void setCommandType(CommandType command) {
+        this.command = command;
+    }
+
+    public CommandType getCommand() {
+        return command;
+    }
+
+    public void setData(String data) {
+        this.data = data;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public void setCredential(Credential credential) {
+        this.credential = credential;
+    }
+
+    public Credential getCredential() {
+        return credential;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public boolean isResponse() {
+        return response;
+    }
+
+    public void setResponse(boolean response) {
+        this.response = response;
+    }
+
+    public boolean isSuccessful() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    public boolean isCompressed() {
+        return compressed != null && compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed ? Boolean.TRUE : null;
+    }
+
+    public boolean acceptsCompression() {
+        return acceptsCompression != null && acceptsCompression;
+    }
+
+    public void setAcceptsCompression(boolean acceptsCompression) {
+        this.acceptsCompression = acceptsCompression ? Boolean.TRUE : null;
+    }
+
+    public boolean isFrameCompression() {
+        return frameCompression != null && frameCompression;
+    }
+
+    public void setFrameCompression(boolean frameCompression) {
+        this.frameCompression = frameCompression ? Boolean.TRUE : null;
+    }
+
+    public long getSequence() {
+        return sequence == null ? 0 : sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence == 0 ? null : sequence;
+    }
+
+    public long getEpoch() {
+        return epoch == null ? 0 : epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch == 0 ? null : epoch;
+    }
+
+    public long getRequestId() {
+        return requestId == null ? 0 : requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId == 0 ? null : requestId;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter == null ? 0 : retryAfter;
+    }
+
+    public void setRetryAfter(long retryAfter) {
+        this.retryAfter = retryAfter == 0 ? null : retryAfter;
+    }
+
+    public Integer getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public void setSchemaVersion(Integer schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+
+    /**
+     * Marks this command as the response to the given request, so the client can match it up
+     * @param request The command this responds to
+     * @return this command
+     */
+    public Command respondingTo(Command request) {
+        this.requestId = request.requestId;
+        return (this);
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Object payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public String toString() {
+        return (
+                String.format(""
+                        + "Command: [\n"
+                        + "  type: %s\n"
+                        + "  request: %d\n"
+                        + "  data: %s\n"
+                        + "  credential: %s\n"
+                        + "  session: %s\n"
+                        + "  response: %b\n"
+                        + "  success: %b\n"
+                        + "  message: %s\n"
+                        + "]",
+                        command,
+                        getRequestId(),
+                        data,
+                        credential,
+                        //the token is as good as a password, keep it out of the logs
+                        session == null ? null : "(set)",
+                        response,
+                        success,
+                        message
+                )
+        );
+    }
+}
@@ -0,0 +1,60 @@
+package persistence.json.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Packs command data as base64 encoded gzip, so it can still travel inside a JSON text frame
+ *
+ * @author tybrown
+ */
+public final class CompressedData {
+
+    private CompressedData() {
+    }
+
+    /**
+     * Compresses text
+     * @param text The text to compress
+     * @return The base64 of the gzipped UTF-8 bytes of text
+     */
+    public static String compress(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 4);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            //writing to memory can't fail
+            throw (new IllegalStateException(e));
+        }
+        return (Base64.getEncoder().encodeToString(bytes.toByteArray()));
+    }
+
+    /**
+     * Reverses compress()
+     * @param data The compressed data
+     * @return The original text
+     * @throws IOException If data was not valid compressed data
+     */
+    public static String decompress(String data) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = Base64.getDecoder().decode(data);
+        } catch (IllegalArgumentException e) {
+            throw (new IOException("Compressed data is not valid base64", e));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.length * 4);
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = gz.read(buf)) > 0) {
+                bytes.write(buf, 0, n);
+            }
+        }
+        return (new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,195 @@
+package persistence.json.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates and inflates whole frames for one connection.
+ * Both sides preset the same dictionary of the strings every report frame repeats (field names, enum values),
+ * so even a single small report compresses well. The Deflater, Inflater and their buffers are kept for the
+ * lifetime of the connection instead of being allocated per frame.
+ * Not thread safe: the sending side must be used under the connection's write lock
+ *
+ * @author tybrown
+ */
+public class FrameCompressor {
+
+    //zlib checks the dictionary's adler32 on inflate, so a peer with a different dictionary fails loudly instead of
+    //decoding garbage. Deflate looks back from the end, so the most common strings go last
+    private static final byte[] DICTIONARY = ("UNKNOWN\",\"WORKER\",\"MANAGER\",\"ADMINISTRATOR\",\"USER\","
+            + "\"BOTTLED\",\"WELL\",\"STREAM\",\"SPRING\",\"OTHER\",\"WASTE\",\"MUDDY\",\"POTABLE\","
+            + "\"lastCoordsLat\":,\"lastCoordsLng\":,\"name\":\"\",\"emailAddress\":\"\",\"title\":\"\",\"level\":\"\","
+            + "\"encoding\":null,\"compressed\":false,\"acceptsCompression\":false,\"sequence\":0,\"epoch\":0,"
+            + "\"requestId\":0,\"message\":null,\"response\":true,\"success\":true,\"credential\":{\"credential\":"
+            + ",\"username\":\"\"},\"command\":\"LOAD_WATER_REPORT\",\"command\":\"SAVE_WATER_REPORT\","
+            + "\"command\":\"LOAD_QUALITY_REPORT\",\"command\":\"LOAD_SNAPSHOT\",\"data\":\"{\\\"chunk\\\":0,"
+            + "\\\"last\\\":false,\\\"reports\\\":[{\\\"reportNumProperty\\\":,\\\"latitudeProperty\\\":"
+            + ",\\\"longitudeProperty\\\":-,\\\"dateTimeProperty\\\":1,\\\"typeProperty\\\":\\\"LAKE\\\","
+            + "\\\"conditionProperty\\\":\\\"CLEAR\\\",\\\"authorProperty\\\":\\\"\\\",\\\"qualityReports\\\":[]},"
+            + "{\\\"dateTimeProperty\\\":1,\\\"reportNumProperty\\\":,\\\"authorProperty\\\":\\\"\\\","
+            + "\\\"safetyProperty\\\":\\\"TREATABLE\\\",\\\"safetyProperty\\\":\\\"UNSAFE\\\","
+            + "\\\"safetyProperty\\\":\\\"SAFE\\\",\\\"virusPPMProperty\\\":,\\\"contaminantPPMProperty\\\":"
+            + ",\\\"parentReportNumProperty\\\":}]}").getBytes(StandardCharsets.UTF_8);
+
+    private static final AtomicLong FRAMES_COMPRESSED = new AtomicLong();
+    private static final AtomicLong FRAMES_NOT_SMALLER = new AtomicLong();
+    private static final AtomicLong RAW_BYTES = new AtomicLong();
+    private static final AtomicLong COMPRESSED_BYTES = new AtomicLong();
+    private static final AtomicLong COMPRESS_NANOS = new AtomicLong();
+    private static final AtomicLong FRAMES_INFLATED = new AtomicLong();
+    private static final AtomicLong INFLATE_NANOS = new AtomicLong();
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private byte[] deflated = new byte[1024];
+    private byte[] inflated = new byte[1024];
+    private final byte[] trailer = new byte[1];
+
+    /**
+     * Compresses a frame into this compressor's output buffer
+     * @param src The buffer holding the frame
+     * @param off The offset of the frame in src
+     * @param len The length of the frame
+     * @return The compressed length (read it from getDeflated()), or -1 if compressing didn't make it smaller
+     */
+    public int deflate(byte[] src, int off, int len) {
+        long start = System.nanoTime();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(src, off, len);
+        deflater.finish();
+        int n = 0;
+        //only worth it if it gets smaller, so never grow past len
+        if (deflated.length < len) {
+            deflated = new byte[Math.max(len, deflated.length * 2)];
+        }
+        while (!deflater.finished() && n < len) {
+            n += deflater.deflate(deflated, n, len - n);
+        }
+        boolean smaller = deflater.finished() && n < len;
+        COMPRESS_NANOS.addAndGet(System.nanoTime() - start);
+        if (!smaller) {
+            FRAMES_NOT_SMALLER.incrementAndGet();
+            return (-1);
+        }
+        FRAMES_COMPRESSED.incrementAndGet();
+        RAW_BYTES.addAndGet(len);
+        COMPRESSED_BYTES.addAndGet(n);
+        return (n);
+    }
+
+    /**
+     * Gets the buffer deflate() wrote to. Overwritten by the next call
+     * @return the output buffer
+     */
+    public byte[] getDeflated() {
+        return (deflated);
+    }
+
+    /**
+     * Decompresses a frame into this compressor's input buffer
+     * @param src The compressed frame
+     * @param len The length of the compressed frame
+     * @param rawLength The length of the frame before compression
+     * @return The buffer holding the frame in its first rawLength bytes. Overwritten by the next call
+     * @throws DataFormatException If the data was not a frame compressed with the same dictionary
+     */
+    public byte[] inflate(byte[] src, int len, int rawLength) throws DataFormatException {
+        long start = System.nanoTime();
+        if (inflated.length < rawLength) {
+            inflated = new byte[Math.max(rawLength, inflated.length * 2)];
+        }
+        inflater.reset();
+        inflater.setInput(src, 0, len);
+        int n = 0;
+        while (n < rawLength) {
+            int got = inflater.inflate(inflated, n, rawLength - n);
+            if (got == 0) {
+                if (inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY);
+                } else {
+                    throw (new DataFormatException(String.format("Frame inflated to %d bytes instead of %d", n, rawLength)));
+                }
+            }
+            n += got;
+        }
+        //the adler32 trailer is only checked once the inflater reads past the data, a corrupted frame fails there
+        if (!inflater.finished() && (inflater.inflate(trailer) != 0 || !inflater.finished())) {
+            throw (new DataFormatException(String.format("Frame is longer than %d bytes", rawLength)));
+        }
+        FRAMES_INFLATED.incrementAndGet();
+        INFLATE_NANOS.addAndGet(System.nanoTime() - start);
+        return (inflated);
+    }
+
+    /**
+     * Gets the number of frames sent compressed, by every connection of this process
+     * @return the number of compressed frames
+     */
+    public static long getFramesCompressed() {
+        return (FRAMES_COMPRESSED.get());
+    }
+
+    /**
+     * Gets the number of frames which were sent uncompressed because compressing didn't make them smaller
+     * @return the number of frames
+     */
+    public static long getFramesNotSmaller() {
+        return (FRAMES_NOT_SMALLER.get());
+    }
+
+    /**
+     * Gets the compression ratio of all compressed frames
+     * @return compressed bytes / raw bytes, 1 if nothing was compressed yet
+     */
+    public static double getCompressionRatio() {
+        long raw = RAW_BYTES.get();
+        return (raw == 0 ? 1 : (double) COMPRESSED_BYTES.get() / raw);
+    }
+
+    /**
+     * Gets the bytes compression saved so far
+     * @return raw bytes - compressed bytes of all compressed frames
+     */
+    public static long getBytesSaved() {
+        return (RAW_BYTES.get() - COMPRESSED_BYTES.get());
+    }
+
+    /**
+     * Gets the CPU time spent compressing, including attempts which didn't get smaller
+     * @return the time in nanoseconds
+     */
+    public static long getCompressNanos() {
+        return (COMPRESS_NANOS.get());
+    }
+
+    /**
+     * Gets the number of compressed frames received
+     * @return the number of inflated frames
+     */
+    public static long getFramesInflated() {
+        return (FRAMES_INFLATED.get());
+    }
+
+    /**
+     * Gets the CPU time spent decompressing
+     * @return the time in nanoseconds
+     */
+    public static long getInflateNanos() {
+        return (INFLATE_NANOS.get());
+    }
+
+    /**
+     * Summarizes the compression metrics for logging
+     * @return a one line summary
+     */
+    public static String summary() {
+        return (String.format("%d frames compressed (%d not smaller), ratio %.3f, %d bytes saved, "
+                + "%.1f ms compressing; %d frames inflated, %.1f ms inflating",
+                getFramesCompressed(), getFramesNotSmaller(), getCompressionRatio(), getBytesSaved(),
+                getCompressNanos() / 1e6, getFramesInflated(), getInflateNanos() / 1e6));
+    }
+}
@@ -0,0 +1,338 @@
+package persistence.json.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import lib.Debug;
+import persistence.json.PersistentJsonInterface;
+
+/**
+ * A framed Command connection over a socket, shared by the client and the server.
+ * Two kinds of frames can arrive at any time:
+ * JSON text followed by a blank line (the original protocol), or a BINARY_FRAME marker byte,
+ * a varint length and a BinaryCodec encoded command.
+ * Since receivers always understand both, switching the sending encoding after negotiation needs no handshake.
+ * Once the peer agreed to it, frames of COMPRESSION_THRESHOLD bytes or more are sent as a COMPRESSED_FRAME:
+ * the marker, the marker of the inner frame (BINARY_FRAME or 0 for JSON text), the varint raw length,
+ * the varint compressed length and the deflated frame (see FrameCompressor)
+ *
+ * @author tybrown
+ */
+public class MessageChannel implements AutoCloseable {
+
+    public static final int BINARY_FRAME = 0x01;
+    public static final int COMPRESSED_FRAME = 0x02;
+    private static final int JSON_FRAME = 0x00;
+    //below this, the deflate header and a round of zlib cost more than they save
+    public static final int COMPRESSION_THRESHOLD = 256;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final byte[] MESSAGE_END = {'\n', '\n'};
+
+    private final Socket sock;
+    private final PersistentJsonInterface json;
+    private final BinaryCodec codec;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private volatile Command.Encoding encoding = Command.Encoding.JSON;
+    private volatile boolean compressFrames = false;
+    private volatile int schemaVersion = BinaryCodec.SCHEMA_VERSION;
+    private final FrameCompressor compressor = new FrameCompressor();
+    //reused for the compressed bytes of incoming frames; only the receiving thread touches it
+    private byte[] compressedIn = new byte[1024];
+
+    /**
+     * Wraps a connected socket
+     * @param sock The connected socket
+     * @param json The JSON interface used to encode and decode JSON frames
+     * @throws IOException If the socket streams could not be opened
+     */
+    public MessageChannel(Socket sock, PersistentJsonInterface json) throws IOException {
+        this.sock = sock;
+        this.json = json;
+        this.codec = new BinaryCodec(json);
+        this.in = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+        this.out = new BufferedOutputStream(sock.getOutputStream());
+    }
+
+    /**
+     * Gets the encoding used for outgoing commands
+     * @return the encoding
+     */
+    public Command.Encoding getEncoding() {
+        return (encoding);
+    }
+
+    /**
+     * Sets the encoding used for outgoing commands. Incoming frames are always accepted in either encoding
+     * @param encoding the new encoding
+     */
+    public void setEncoding(Command.Encoding encoding) {
+        this.encoding = (encoding == null) ? Command.Encoding.JSON : encoding;
+    }
+
+    /**
+     * Gets the BinaryCodec schema version outgoing binary commands are written in
+     * @return the schema version
+     */
+    public int getSchemaVersion() {
+        return (schemaVersion);
+    }
+
+    /**
+     * Writes outgoing binary commands so the peer can decode them
+     * @param peerVersion The newest schema version the peer said it decodes (Command.getSchemaVersion()).
+     *      null for peers which don't say, which get the newest version as before
+     */
+    public void setSchemaVersion(Integer peerVersion) {
+        this.schemaVersion = peerVersion == null ? BinaryCodec.SCHEMA_VERSION
+                : Math.max(BinaryCodec.MIN_SCHEMA_VERSION, Math.min(BinaryCodec.SCHEMA_VERSION, peerVersion));
+    }
+
+    /**
+     * Checks if large outgoing frames are compressed
+     * @return true if frame compression is on
+     */
+    public boolean isFrameCompression() {
+        return (compressFrames);
+    }
+
+    /**
+     * Turns compression of large outgoing frames on or off. Only turn it on after the peer agreed to it.
+     * Incoming compressed frames are always accepted
+     * @param compressFrames true to compress
+     */
+    public void setFrameCompression(boolean compressFrames) {
+        this.compressFrames = compressFrames;
+    }
+
+    /**
+     * Checks if the underlying socket is closed
+     * @return true if the socket is closed
+     */
+    public boolean isClosed() {
+        return (sock.isClosed());
+    }
+
+    /**
+     * Receives the next command. Blocks until a full frame is received
+     * @return The command, or null if the peer closed the connection
+     * @throws IOException If there was a problem with the socket or the frame was malformed
+     */
+    public Command receiveCommand() throws IOException {
+        int first = in.read();
+        while (first == '\n' || first == '\r') {
+            first = in.read();
+        }
+        if (first < 0) {
+            Debug.debug("Peer closed the connection!");
+            sock.close();
+            return (null);
+        }
+        if (first == BINARY_FRAME) {
+            int length = readLength();
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            return (codec.decode(frame, 0, length));
+        }
+        if (first == COMPRESSED_FRAME) {
+            return (receiveCompressed());
+        }
+        String text = receiveMessage(first);
+        if (text == null) {
+            sock.close();
+            return (null);
+        }
+        Command c = json.fromJson(text, Command.class);
+        return (c);
+    }
+
+    /**
+     * Receives the rest of a text message, which ends with a blank line
+     * @param first The first byte of the message, which has already been read
+     * @return The text of the message, or null if the peer closed the connection mid-message
+     * @throws IOException If there was a problem with the socket
+     */
+    private String receiveMessage(int first) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream(256);
+        int prev = -1;
+        int b = first;
+        boolean lineEmpty = true;
+        while (b >= 0) {
+            if (b == '\n') {
+                if (lineEmpty && prev == '\n') {
+                    return (new String(text.toByteArray(), StandardCharsets.UTF_8));
+                }
+                text.write('\n');
+                lineEmpty = true;
+                prev = '\n';
+            } else if (b != '\r') {
+                text.write(b);
+                lineEmpty = false;
+                prev = b;
+            }
+            b = in.read();
+        }
+        return (null);
+    }
+
+    private Command receiveCompressed() throws IOException {
+        int kind = in.read();
+        int rawLength = readLength();
+        int length = readLength();
+        if (compressedIn.length < length) {
+            compressedIn = new byte[Math.max(length, compressedIn.length * 2)];
+        }
+        in.readFully(compressedIn, 0, length);
+        byte[] frame;
+        try {
+            frame = compressor.inflate(compressedIn, length, rawLength);
+        } catch (DataFormatException e) {
+            throw (new ProtocolException(String.format("Bad compressed frame: %s", e.getMessage())));
+        }
+        if (kind == BINARY_FRAME) {
+            return (codec.decode(frame, 0, rawLength));
+        } else if (kind == JSON_FRAME) {
+            return (json.fromJson(new String(frame, 0, rawLength, StandardCharsets.UTF_8), Command.class));
+        }
+        throw (new ProtocolException(String.format("Unknown compressed frame kind %d", kind)));
+    }
+
+    private int readLength() throws IOException {
+        int length = readVarint();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw (new ProtocolException(String.format("Bad frame length %d", length)));
+        }
+        return (length);
+    }
+
+    private int readVarint() throws IOException {
+        int res = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw (new EOFException("Connection closed inside a frame header"));
+            }
+            res |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (res);
+            }
+        }
+        throw (new ProtocolException("Malformed frame length"));
+    }
+
+    /**
+     * Sends a command using the current encoding
+     * @param c The command to send
+     * @return The size of the encoded command in bytes, before any compression
+     * @throws IOException If there was a problem with the socket. Connection must be re-established
+     */
+    public int sendCommand(Command c) throws IOException {
+        if (encoding == Command.Encoding.BINARY) {
+            byte[] frame = codec.encode(c, schemaVersion);
+            sendFrame(frame);
+            return (frame.length);
+        } else {
+            if (c.getData() == null && c.getPayload() != null) {
+                c.setData(json.toJson(c.getPayload()));
+            }
+            byte[] text = json.toJson(c).getBytes(StandardCharsets.UTF_8);
+            if (compressFrames && text.length >= COMPRESSION_THRESHOLD) {
+                writeCompressed(JSON_FRAME, text, MESSAGE_END);
+            } else {
+                write(text, MESSAGE_END);
+            }
+            return (text.length);
+        }
+    }
+
+    /**
+     * Sends the given text as a message (terminated with a blank line)
+     * @param text The text to send
+     * @throws IOException If there was a problem with the socket. Connection must be re-established
+     */
+    public void sendMessage(String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        write(text.getBytes(StandardCharsets.UTF_8), MESSAGE_END);
+    }
+
+    private void sendFrame(byte[] frame) throws IOException {
+        if (compressFrames && frame.length >= COMPRESSION_THRESHOLD) {
+            writeCompressed(BINARY_FRAME, frame, null);
+            return;
+        }
+        BinaryCodec.Output header = new BinaryCodec.Output(6);
+        header.writeByte(BINARY_FRAME);
+        header.writeVarint(frame.length);
+        write(header.toByteArray(), frame);
+    }
+
+    /**
+     * Sends a frame compressed, or as it is if compressing doesn't make it smaller
+     * @param kind JSON_FRAME or BINARY_FRAME
+     * @param frame The frame, without its header or terminator
+     * @param end The terminator to send after an uncompressed JSON frame
+     */
+    private void writeCompressed(int kind, byte[] frame, byte[] end) throws IOException {
+        checkOpen();
+        synchronized (out) {
+            //the compressor's buffers are shared by every sender of this connection, so use them under the lock
+            int length = compressor.deflate(frame, 0, frame.length);
+            BinaryCodec.Output header = new BinaryCodec.Output(12);
+            if (length < 0) {
+                if (kind == BINARY_FRAME) {
+                    header.writeByte(BINARY_FRAME);
+                    header.writeVarint(frame.length);
+                    out.write(header.toByteArray());
+                }
+                out.write(frame);
+                if (end != null) {
+                    out.write(end);
+                }
+            } else {
+                header.writeByte(COMPRESSED_FRAME);
+                header.writeByte(kind);
+                header.writeVarint(frame.length);
+                header.writeVarint(length);
+                out.write(header.toByteArray());
+                out.write(compressor.getDeflated(), 0, length);
+            }
+            out.flush();
+        }
+    }
+
+    private void write(byte[] first, byte[] second) throws IOException {
+        checkOpen();
+        synchronized (out) {
+            out.write(first);
+            out.write(second);
+            out.flush();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (sock.isClosed()) {
+            throw (new IOException("Socket Not connected!"));
+        }
+    }
+
+    /**
+     * Closes the underlying socket
+     * @throws IOException if there was some problem during socket closing
+     */
+    @Override
+    public void close() throws IOException {
+        if (!sock.isClosed()) {
+            sock.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package persistence.json.net;
+
+import com.google.gson.annotations.Expose;
+import java.util.ArrayList;
+import java.util.List;
+import model.QualityReport;
+import model.WaterReport;
+
+/**
+ * One page of the results of a QUERY_WATER_REPORTS or QUERY_QUALITY_REPORTS command
+ *
+ * @author tybrown
+ */
+public class QueryPage {
+
+    @Expose
+    private List<WaterReport> waterReports;
+    @Expose
+    private List<QualityReport> qualityReports;
+    //where the next page starts, 0 if this is the last page
+    @Expose
+    private long nextCursor;
+
+    /**
+     * Constructs a page
+     * @param waterReports The water reports on the page
+     * @param qualityReports The quality reports on the page
+     * @param nextCursor The cursor of the next page, 0 if this is the last one
+     */
+    public QueryPage(List<WaterReport> waterReports, List<QualityReport> qualityReports, long nextCursor) {
+        this.waterReports = waterReports;
+        this.qualityReports = qualityReports;
+        this.nextCursor = nextCursor;
+    }
+
+    public QueryPage() {
+        this(new ArrayList<>(), new ArrayList<>(), 0);
+    }
+
+    public List<WaterReport> getWaterReports() {
+        return (waterReports == null ? new ArrayList<>() : waterReports);
+    }
+
+    public List<QualityReport> getQualityReports() {
+        return (qualityReports == null ? new ArrayList<>() : qualityReports);
+    }
+
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return (nextCursor != 0);
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("QueryPage: [water reports: %d; quality reports: %d; next: %d]",
+                getWaterReports().size(), getQualityReports().size(), nextCursor));
+    }
+}
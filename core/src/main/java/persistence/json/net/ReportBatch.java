@@ -0,0 +1,82 @@
+package persistence.json.net;
+
+import com.google.gson.annotations.Expose;
+import java.util.ArrayList;
+import java.util.List;
+import model.WaterReport;
+
+/**
+ * One chunk of water reports streamed to a client in a single LOAD_SNAPSHOT command
+ *
+ * @author tybrown
+ */
+public class ReportBatch {
+
+    @Expose
+    private int chunk;
+    @Expose
+    private boolean last;
+    @Expose
+    private List<WaterReport> reports;
+    //a delta only holds changed reports; otherwise the snapshot is the whole report set
+    @Expose
+    private boolean delta;
+    @Expose
+    private List<Integer> deleted;
+
+    /**
+     * Constructs a batch
+     * @param chunk The index of this chunk within the snapshot, starting at 0
+     * @param last true if this is the final chunk of the snapshot
+     * @param reports The reports in this chunk
+     */
+    public ReportBatch(int chunk, boolean last, List<WaterReport> reports) {
+        this(chunk, last, reports, false, new ArrayList<>());
+    }
+
+    /**
+     * Constructs a batch
+     * @param chunk The index of this chunk within the snapshot, starting at 0
+     * @param last true if this is the final chunk of the snapshot
+     * @param reports The reports in this chunk
+     * @param delta true if the snapshot only holds changes since the client's last sequence
+     * @param deleted The numbers of reports deleted since the client's last sequence
+     */
+    public ReportBatch(int chunk, boolean last, List<WaterReport> reports, boolean delta, List<Integer> deleted) {
+        this.chunk = chunk;
+        this.last = last;
+        this.reports = reports;
+        this.delta = delta;
+        this.deleted = deleted;
+    }
+
+    public ReportBatch() {
+        this(0, true, new ArrayList<>());
+    }
+
+    public int getChunk() {
+        return chunk;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public List<WaterReport> getReports() {
+        return reports;
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public List<Integer> getDeleted() {
+        return (deleted == null ? new ArrayList<>() : deleted);
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("ReportBatch: [chunk: %d; last: %b; delta: %b; reports: %d; deleted: %d]", chunk, last,
+                delta, reports == null ? 0 : reports.size(), getDeleted().size()));
+    }
+}
@@ -0,0 +1,193 @@
+package persistence.json.net;
+
+import com.google.gson.annotations.Expose;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What a server is doing right now, the answer to an ADMIN_STATS command. Counts are totals since the server
+ * started, so a client polling it works out rates from the difference between two answers
+ *
+ * @author tybrown
+ */
+public class ServerStats {
+
+    @Expose
+    private long uptimeMillis;
+    @Expose
+    private int connections;
+    @Expose
+    private int replicas;
+    @Expose
+    private int sessions;
+    @Expose
+    private int queuedCommands;
+    @Expose
+    private int queueCapacity;
+    //reports waiting to be pushed to subscribers
+    @Expose
+    private int pendingPushes;
+    @Expose
+    private long changeLogSequence;
+    //command type -> how many the server has received
+    @Expose
+    private Map<String, Long> commands = new TreeMap<>();
+    //database file name -> its size in bytes
+    @Expose
+    private Map<String, Long> fileSizes = new TreeMap<>();
+    @Expose
+    private long heapUsed;
+    @Expose
+    private long heapMax;
+    @Expose
+    private int waterReports;
+    @Expose
+    private int qualityReports;
+
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+
+    public void setUptimeMillis(long uptimeMillis) {
+        this.uptimeMillis = uptimeMillis;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(int replicas) {
+        this.replicas = replicas;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(int sessions) {
+        this.sessions = sessions;
+    }
+
+    public int getQueuedCommands() {
+        return queuedCommands;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the command queue depth
+     * @param queued The commands waiting for the command thread
+     * @param capacity The most commands that can wait
+     */
+    public void setQueue(int queued, int capacity) {
+        this.queuedCommands = queued;
+        this.queueCapacity = capacity;
+    }
+
+    public int getPendingPushes() {
+        return pendingPushes;
+    }
+
+    public void setPendingPushes(int pendingPushes) {
+        this.pendingPushes = pendingPushes;
+    }
+
+    public long getChangeLogSequence() {
+        return changeLogSequence;
+    }
+
+    public void setChangeLogSequence(long changeLogSequence) {
+        this.changeLogSequence = changeLogSequence;
+    }
+
+    public Map<String, Long> getCommands() {
+        if (commands == null) {
+            commands = new TreeMap<>();
+        }
+        return (commands);
+    }
+
+    public Map<String, Long> getFileSizes() {
+        if (fileSizes == null) {
+            fileSizes = new TreeMap<>();
+        }
+        return (fileSizes);
+    }
+
+    public void setFileSizes(Map<String, Long> fileSizes) {
+        this.fileSizes = new TreeMap<>(fileSizes);
+    }
+
+    public long getHeapUsed() {
+        return heapUsed;
+    }
+
+    public long getHeapMax() {
+        return heapMax;
+    }
+
+    /**
+     * Sets the heap usage
+     * @param used The bytes of the heap in use
+     * @param max The most bytes the heap can grow to
+     */
+    public void setHeap(long used, long max) {
+        this.heapUsed = used;
+        this.heapMax = max;
+    }
+
+    public int getWaterReports() {
+        return waterReports;
+    }
+
+    public int getQualityReports() {
+        return qualityReports;
+    }
+
+    /**
+     * Sets the report counts
+     * @param water The number of water reports
+     * @param quality The number of quality reports, of all water reports
+     */
+    public void setReports(int water, int quality) {
+        this.waterReports = water;
+        this.qualityReports = quality;
+    }
+
+    /**
+     * Adds the stats of another server to these, like the shards behind a ShardRouter
+     * @param other The stats to add
+     */
+    public void add(ServerStats other) {
+        uptimeMillis = Math.max(uptimeMillis, other.uptimeMillis);
+        connections += other.connections;
+        replicas += other.replicas;
+        sessions += other.sessions;
+        queuedCommands += other.queuedCommands;
+        queueCapacity += other.queueCapacity;
+        pendingPushes += other.pendingPushes;
+        changeLogSequence += other.changeLogSequence;
+        other.getCommands().forEach((type, count) -> getCommands().merge(type, count, Long::sum));
+        other.getFileSizes().forEach((name, size) -> getFileSizes().merge(name, size, Long::sum));
+        heapUsed += other.heapUsed;
+        heapMax += other.heapMax;
+        waterReports += other.waterReports;
+        qualityReports += other.qualityReports;
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("ServerStats: [connections: %d; queued: %d/%d; water reports: %d; quality reports: %d]",
+                connections, queuedCommands, queueCapacity, waterReports, qualityReports));
+    }
+}
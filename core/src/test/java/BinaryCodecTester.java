@@ -0,0 +1,297 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import model.Credential;
+import model.QualityReport;
+import model.Region;
+import model.ReportQuery;
+import model.User;
+import model.UserLevel;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.BinaryCodec;
+import persistence.json.net.Command;
+import persistence.json.net.CompressedData;
+import persistence.json.net.QueryPage;
+import persistence.json.net.ReportBatch;
+import persistence.json.net.ServerStats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the binary wire encoding
+ * @author tybrown
+ */
+public class BinaryCodecTester {
+    public static final int TIMEOUT = 200;
+
+    private PersistentJsonFile json;
+    private BinaryCodec codec;
+
+    @Before
+    public void setup() {
+        json = new PersistentJsonFile("src/test/resources/db/");
+        codec = new BinaryCodec(json);
+    }
+
+    private Command roundTrip(Command c) throws IOException {
+        byte[] b = codec.encode(c);
+        return (codec.decode(b, 0, b.length));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCommandFields() throws IOException {
+        Command c = new Command(Command.CommandType.DEAUTHENTICATE, null, new Credential("user", "pass"),
+                true, true, "bye");
+        c.setRequestId(987654321L);
+        c.setSession("dGhpcy1pcy1hLXRva2Vu");
+        c.setRetryAfter(1500);
+        Command res = roundTrip(c);
+        assertEquals(987654321L, res.getRequestId());
+        assertEquals(1500, res.getRetryAfter());
+        assertEquals("dGhpcy1pcy1hLXRva2Vu", res.getSession());
+        assertEquals(Command.CommandType.DEAUTHENTICATE, res.getCommand());
+        assertTrue(res.isResponse());
+        assertTrue(res.isSuccessful());
+        assertEquals("bye", res.getMessage());
+        assertEquals(new Credential("user", "pass"), res.getCredential());
+        assertNull(res.getPayload());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testWaterReportPayload() throws IOException {
+        LocalDateTime when = LocalDateTime.of(2016, 11, 15, 12, 30, 15);
+        WaterReport wr = new WaterReport(42, when, 33.7756, -84.3963, WaterType.LAKE, WaterCondition.values()[0], "author");
+        wr.addQualityReport(new QualityReport(when.plusDays(1), 1, "worker", WaterSafety.TREATABLE, 1.25, 300.5, 42));
+        wr.addQualityReport(new QualityReport(when.plusDays(2), 2, "worker", WaterSafety.UNSAFE, 20, 900, 42));
+        Command c = new Command(Command.CommandType.LOAD_WATER_REPORT, null, null);
+        c.setPayload(wr);
+
+        WaterReport res = json.readPayload(roundTrip(c), WaterReport.class);
+        assertEquals(42, res.getReportNum());
+        assertEquals(when, res.getDateTime());
+        assertEquals(33.7756, res.getLatitude(), 0);
+        assertEquals(-84.3963, res.getLongitude(), 0);
+        assertEquals(WaterType.LAKE, res.getWaterType());
+        assertEquals("author", res.getAuthor());
+        assertEquals(2, res.getQualityReportList().size());
+        QualityReport qr = res.getMostRecentQualityReport();
+        assertEquals(2, qr.getReportNum());
+        assertEquals(WaterSafety.UNSAFE, qr.getWaterSafety());
+        assertEquals(42, qr.getParentReportNum());
+        assertEquals(900, qr.getContaminantPPM(), 0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testJsonDataIsTranscoded() throws IOException {
+        User u = new User("user", "Name", "Title", "a@b.c", UserLevel.MANAGER);
+        Command c = new Command(Command.CommandType.AUTHENTICATE, json.toJson(u), null, true, true, null);
+        c.setEncoding(Command.Encoding.BINARY);
+
+        Command res = roundTrip(c);
+        assertEquals(Command.Encoding.BINARY, res.getEncoding());
+        User resUser = json.readPayload(res, User.class);
+        assertEquals("user", resUser.getUsername());
+        assertEquals(UserLevel.MANAGER, resUser.getUserLevel());
+        assertEquals(u.getLastCoordsLat(), resUser.getLastCoordsLat(), 0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSnapshotBatch() throws IOException {
+        List<WaterReport> reports = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            reports.add(new WaterReport(i, LocalDateTime.of(2016, 11, i, 0, 0), i, -i, WaterType.WELL, WaterCondition.CLEAR, "a"));
+        }
+        Command c = new Command(Command.CommandType.LOAD_SNAPSHOT, null, null);
+        c.setPayload(new ReportBatch(7, true, reports));
+
+        ReportBatch res = json.readPayload(roundTrip(c), ReportBatch.class);
+        assertEquals(7, res.getChunk());
+        assertTrue(res.isLast());
+        assertEquals(3, res.getReports().size());
+        assertEquals(3, res.getReports().get(2).getReportNum());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testDeltaBatch() throws IOException {
+        List<Integer> deleted = new ArrayList<>();
+        deleted.add(4);
+        deleted.add(300);
+        Command c = new Command(Command.CommandType.LOAD_SNAPSHOT, null, null);
+        c.setPayload(new ReportBatch(0, true, new ArrayList<>(), true, deleted));
+        c.setSequence(1234567);
+        c.setEpoch(Long.MAX_VALUE);
+
+        Command res = roundTrip(c);
+        assertEquals(1234567, res.getSequence());
+        assertEquals(Long.MAX_VALUE, res.getEpoch());
+        ReportBatch batch = json.readPayload(res, ReportBatch.class);
+        assertTrue(batch.isDelta());
+        assertEquals(deleted, batch.getDeleted());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSubscribeRegion() throws IOException {
+        Command c = new Command(Command.CommandType.SUBSCRIBE, json.toJson(new Region(33.6, -84.5, 33.9, -84.2)), null);
+        Region res = json.readPayload(roundTrip(c), Region.class);
+        assertEquals(33.6, res.getSouth(), 0);
+        assertEquals(-84.2, res.getEast(), 0);
+        assertTrue(res.contains(33.7756, -84.3963));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCompressedJsonData() throws IOException {
+        Command c = new Command(Command.CommandType.LOAD_SNAPSHOT, null, null);
+        c.setData(CompressedData.compress(json.toJson(new ReportBatch(0, false, new ArrayList<>()))));
+        c.setCompressed(true);
+
+        ReportBatch res = json.readPayload(json.fromJson(json.toJson(c), Command.class), ReportBatch.class);
+        assertEquals(0, res.getChunk());
+        assertFalse(res.isLast());
+        res = json.readPayload(roundTrip(c), ReportBatch.class);
+        assertFalse(res.isLast());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testJsonLeavesOutDefaults() throws IOException {
+        Command c = new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null);
+        String text = json.toJson(c);
+        assertFalse(text, text.contains("requestId"));
+        assertFalse(text, text.contains("compressed"));
+        assertFalse(text, text.contains("sequence"));
+
+        c.setRequestId(17);
+        c.setFrameCompression(true);
+        Command res = json.fromJson(json.toJson(c), Command.class);
+        assertEquals(17, res.getRequestId());
+        assertTrue(res.isFrameCompression());
+        assertFalse(res.isCompressed());
+        assertEquals(0, res.getRetryAfter());
+
+        //what peers from before this send
+        res = json.fromJson("{\"command\":\"HEARTBEAT\",\"compressed\":false,\"requestId\":0,\"epoch\":3}", Command.class);
+        assertEquals(0, res.getRequestId());
+        assertEquals(3, res.getEpoch());
+        assertFalse(res.isCompressed());
+        assertEquals(0, roundTrip(res).getRequestId());
+    }
+
+    @Test(timeout = TIMEOUT, expected = IOException.class)
+    public void testUnknownSchemaVersion() throws IOException {
+        byte[] b = codec.encode(new Command(Command.CommandType.DEAUTHENTICATE, null, null));
+        b[0] = (byte) (BinaryCodec.SCHEMA_VERSION + 1);
+        codec.decode(b, 0, b.length);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testOlderVersion() throws IOException {
+        List<Integer> deleted = new ArrayList<>();
+        deleted.add(4);
+        Command c = new Command(Command.CommandType.LOAD_SNAPSHOT, null, null);
+        c.setPayload(new ReportBatch(0, true, new ArrayList<>(), true, deleted));
+        c.setSequence(1234567);
+        c.setRequestId(42);
+        c.setSession("dGhpcy1pcy1hLXRva2Vu");
+
+        byte[] b = codec.encode(c, 3);
+        assertEquals(3, b[0]);
+        Command res = codec.decode(b, 0, b.length);
+        assertEquals(1234567, res.getSequence());
+        assertEquals(42, res.getRequestId());
+        assertNull(res.getSession());
+        assertTrue(json.readPayload(res, ReportBatch.class).isDelta());
+
+        b = codec.encode(c, BinaryCodec.MIN_SCHEMA_VERSION);
+        res = codec.decode(b, 0, b.length);
+        assertEquals(0, res.getSequence());
+        assertFalse(json.readPayload(res, ReportBatch.class).isDelta());
+        assertTrue(json.readPayload(res, ReportBatch.class).isLast());
+    }
+
+    @Test(timeout = TIMEOUT, expected = IllegalArgumentException.class)
+    public void testNewerVersionNotWritten() {
+        codec.encode(new Command(Command.CommandType.DEAUTHENTICATE, null, null), BinaryCodec.SCHEMA_VERSION + 1);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testUnknownCommandType() throws IOException {
+        Command c = new Command(Command.CommandType.SAVE_CREDENTIAL, null, null);
+        c.setPayload(new Credential("user", "pass"));
+        c.setRequestId(7);
+        byte[] b = codec.encode(c);
+        //a type appended by a newer peer
+        b[1] = (byte) (Command.CommandType.values().length + 1);
+        Command res = codec.decode(b, 0, b.length);
+        assertEquals(Command.CommandType.UNKNOWN, res.getCommand());
+        assertEquals(7, res.getRequestId());
+        assertNull(res.getPayload());
+    }
+
+    @Test(timeout = TIMEOUT, expected = IOException.class)
+    public void testTruncated() throws IOException {
+        Command c = new Command(Command.CommandType.SAVE_CREDENTIAL, null, null);
+        c.setPayload(new Credential("user", "pass"));
+        byte[] b = codec.encode(c);
+        codec.decode(b, 0, b.length - 2);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testQuery() throws IOException {
+        LocalDateTime from = LocalDateTime.of(2016, 11, 1, 0, 0);
+        ReportQuery q = new ReportQuery().setRegion(new Region(33, -85, 34, -84)).setTimeRange(from, null)
+                .setAuthor("author").setWaterSafety(WaterSafety.UNSAFE).setProjection(ReportQuery.Projection.SUMMARY)
+                .setCursor(1L << 40).setLimit(50);
+        Command c = new Command(Command.CommandType.QUERY_WATER_REPORTS, null, null);
+        c.setPayload(q);
+        ReportQuery res = json.readPayload(roundTrip(c), ReportQuery.class);
+        assertEquals(33, res.getRegion().getSouth(), 0);
+        assertEquals(from, res.getFrom());
+        assertNull(res.getTo());
+        assertEquals("author", res.getAuthor());
+        assertNull(res.getWaterType());
+        assertEquals(WaterSafety.UNSAFE, res.getWaterSafety());
+        assertEquals(ReportQuery.Projection.SUMMARY, res.getProjection());
+        assertEquals(1L << 40, res.getCursor());
+        assertEquals(50, res.getLimit());
+
+        QualityReport qr = new QualityReport(from, 3, "worker", WaterSafety.SAFE, 1, 2, 9);
+        Command r = new Command(Command.CommandType.QUERY_QUALITY_REPORTS, null, null, true, true, null);
+        r.setPayload(new QueryPage(new ArrayList<>(), Collections.singletonList(qr), 77));
+        QueryPage page = json.readPayload(roundTrip(r), QueryPage.class);
+        assertEquals(0, page.getWaterReports().size());
+        assertEquals(9, page.getQualityReports().get(0).getParentReportNum());
+        assertEquals(77, page.getNextCursor());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testServerStats() throws IOException {
+        ServerStats a = new ServerStats();
+        a.setConnections(3);
+        a.setQueue(2, 100);
+        a.getCommands().put("SAVE_USER", 5L);
+        a.setReports(10, 20);
+        ServerStats b = new ServerStats();
+        b.setConnections(4);
+        b.getCommands().put("SAVE_USER", 1L);
+        b.getCommands().put("AUTHENTICATE", 7L);
+        a.add(b);
+        Command c = new Command(Command.CommandType.ADMIN_STATS, json.toJson(a), null, true, true, null);
+        ServerStats res = json.readPayload(roundTrip(c), ServerStats.class);
+        assertEquals(7, res.getConnections());
+        assertEquals(100, res.getQueueCapacity());
+        assertEquals(6L, (long) res.getCommands().get("SAVE_USER"));
+        assertEquals(7L, (long) res.getCommands().get("AUTHENTICATE"));
+        assertEquals(20, res.getQualityReports());
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import lib.Debug;
+
+/**
+ * Per call cost of logging: a disabled level, a level only enabled for another class (without and with passing
+ * the caller class), an enabled level (what the caller pays, and the total including the logging thread, again
+ * without and with the caller class), and the old synchronous logger for comparison. Output goes to a
+ * discarding stream.
+ * Run with: gradle logBenchmark
+ * @author tybrown
+ */
+public class DebugBenchmark {
+
+    private static final int CALLS = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        PrintStream stdout = System.out;
+        Object payload = new StringBuilder("Command: [command: SAVE_WATER_REPORT; requestId: 42]");
+        long disabled = Long.MAX_VALUE;
+        long otherClass = Long.MAX_VALUE;
+        long otherClassPassed = Long.MAX_VALUE;
+        long enabledCaller = Long.MAX_VALUE;
+        long enabledTotal = Long.MAX_VALUE;
+        long passedCaller = Long.MAX_VALUE;
+        long passedTotal = Long.MAX_VALUE;
+        long old = Long.MAX_VALUE;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        try {
+            //the first rounds warm up the JIT; keep the best round of each
+            for (int round = 0; round < ROUNDS; round++) {
+                Debug.setLogLevel(Debug.LOG);
+                long start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    Debug.debug("Got a command from inputCommands: %s (%d)", payload, i);
+                }
+                disabled = Math.min(disabled, System.nanoTime() - start);
+
+                //like -Dthirsty.logLevels=server=DEBUG, with this class left at LOG
+                Debug.setLogLevel("server", Debug.DEBUG);
+                start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    Debug.debug("Got a command from inputCommands: %s (%d)", payload, i);
+                }
+                Debug.flush();
+                otherClass = Math.min(otherClass, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    Debug.debug(DebugBenchmark.class, "Got a command from inputCommands: %s (%d)", payload, i);
+                }
+                Debug.flush();
+                otherClassPassed = Math.min(otherClassPassed, System.nanoTime() - start);
+                Debug.setLogLevel("server", Debug.LOG);
+
+                Debug.setLogLevel(Debug.DEBUG);
+                start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    Debug.debug("Got a command from inputCommands: %s (%d)", payload, i);
+                }
+                enabledCaller = Math.min(enabledCaller, System.nanoTime() - start);
+                Debug.flush();
+                enabledTotal = Math.min(enabledTotal, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    Debug.debug(DebugBenchmark.class, "Got a command from inputCommands: %s (%d)", payload, i);
+                }
+                passedCaller = Math.min(passedCaller, System.nanoTime() - start);
+                Debug.flush();
+                passedTotal = Math.min(passedTotal, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    oldPrintf("Got a command from inputCommands: %s (%d)", payload, i);
+                }
+                old = Math.min(old, System.nanoTime() - start);
+            }
+        } finally {
+            Debug.setLogLevel(Debug.LOG);
+            System.setOut(stdout);
+        }
+        System.out.printf("%d calls, best of %d rounds%n", CALLS, ROUNDS);
+        System.out.printf("%-36s %10s%n", "", "ns/call");
+        print("disabled level", disabled);
+        print("enabled for another class only", otherClass);
+        print("  passing the caller class", otherClassPassed);
+        print("enabled, caller", enabledCaller);
+        print("enabled, caller + logging thread", enabledTotal);
+        print("  passing the caller class", passedCaller);
+        print("  passing the caller class, total", passedTotal);
+        print("old synchronous logger", old);
+        System.out.println("(enabled calls may be dropped when the buffer fills faster than it's written)");
+    }
+
+    private static void print(String name, long nanos) {
+        System.out.printf("%-36s %10.1f%n", name, (double) nanos / CALLS);
+    }
+
+    /**
+     * What every call used to do before the logger was asynchronous
+     */
+    private static synchronized void oldPrintf(String format, Object... args) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+        String caller = null;
+        for (StackTraceElement ste : Thread.currentThread().getStackTrace()) {
+            if (!ste.getClassName().equals(DebugBenchmark.class.getName()) && ste.getClassName().indexOf("java.lang.Thread") != 0) {
+                caller = ste.getClassName() + "::" + ste.getMethodName();
+                break;
+            }
+        }
+        System.out.printf("[%s] [%s] %s: ", sdf.format(new Date()), "# DEBUG #", caller);
+        System.out.printf(format, args);
+        System.out.println();
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import lib.Debug;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the asynchronous logger
+ * @author tybrown
+ */
+public class DebugTester {
+    public static final int TIMEOUT = 2000;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private PrintStream stdout;
+
+    @Before
+    public void setup() throws Exception {
+        Debug.flush();
+        stdout = System.out;
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+    }
+
+    @After
+    public void teardown() {
+        Debug.flush();
+        System.setOut(stdout);
+        Debug.setLogLevel(Debug.LOG);
+        Debug.setLogLevel("DebugTester", Debug.LOG);
+    }
+
+    private String written() {
+        Debug.flush();
+        return (new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLevels() {
+        Debug.setLogLevel(Debug.LOG);
+        Debug.debug("hidden %d", 1);
+        Debug.log("shown %d", 2);
+        Debug.error("shown %s", "too");
+        String text = written();
+        assertFalse(text.contains("hidden"));
+        assertTrue(text.contains("[- LOG -] DebugTester::testLevels: shown 2"));
+        assertTrue(text.contains("[! ERROR !] DebugTester::testLevels: shown too"));
+        assertFalse(Debug.isEnabled(Debug.DEBUG));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testClassLevel() {
+        Debug.setLogLevel(Debug.ERROR);
+        Debug.setLogLevel("DebugTester", Debug.DEBUG);
+        assertTrue(Debug.isEnabled(Debug.DEBUG));
+        Debug.debug("mine");
+        Debug.setLogLevel("DebugTester", Debug.ERROR);
+        Debug.log("not anymore");
+        String text = written();
+        assertTrue(text.contains("DebugTester::testClassLevel: mine"));
+        assertFalse(text.contains("not anymore"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testClassEnabled() {
+        Debug.setLogLevel(Debug.LOG);
+        Debug.setLogLevel("java.lang", Debug.DEBUG);
+        assertTrue(Debug.isEnabled(Debug.DEBUG));
+        assertTrue(Debug.isEnabled(Debug.DEBUG, String.class));
+        assertFalse(Debug.isEnabled(Debug.DEBUG, DebugTester.class));
+        assertTrue(Debug.isEnabled(Debug.LOG, DebugTester.class));
+        Debug.setLogLevel("java.lang", Debug.LOG);
+        assertFalse(Debug.isEnabled(Debug.DEBUG, String.class));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCallerClassLevel() {
+        Debug.setLogLevel(Debug.LOG);
+        Debug.setLogLevel("DebugTester", Debug.DEBUG);
+        Debug.debug(String.class, "hidden");
+        for (int i = 0; i < 3; i++) {
+            Debug.debug(DebugTester.class, "mine %d", i);
+        }
+        String text = written();
+        assertFalse(text.contains("hidden"));
+        //the stack is only captured the first time, the method is still shown
+        assertTrue(text.contains("DebugTester::testCallerClassLevel: mine 0"));
+        assertTrue(text.contains("DebugTester::testCallerClassLevel: mine 2"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLoggedAsItWas() {
+        StringBuilder state = new StringBuilder("before");
+        Object thread = new Object() {
+            @Override
+            public String toString() {
+                return (Thread.currentThread().getName());
+            }
+        };
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw (new IllegalStateException("broken"));
+            }
+        };
+        Debug.log("state: %s, on %s, %s", state, thread, broken);
+        state.append(" after");
+        String text = written();
+        assertTrue(text.contains("state: before, on " + Thread.currentThread().getName() + ", (toString() failed: "));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFormattedInOrder() {
+        for (int i = 0; i < 100; i++) {
+            Debug.log("line %d", i);
+        }
+        //a bad format is written as it is instead of throwing at the caller
+        Debug.log("broken %d", "x");
+        String[] lines = written().split("\\R");
+        assertEquals(101, lines.length);
+        assertTrue(lines[99].endsWith("line 99"));
+        assertTrue(lines[100].endsWith("broken %d"));
+    }
+}
@@ -0,0 +1,47 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import model.Region;
+import persistence.json.PersistentJsonFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the flight recorder events
+ * @author tybrown
+ */
+public class FlightEventsTester {
+    //starting a recording takes a while
+    public static final int TIMEOUT = 10000;
+
+    @Test(timeout = TIMEOUT)
+    public void testJsonEvents() throws IOException {
+        PersistentJsonFile json = new PersistentJsonFile("src/test/resources/db/");
+        Path file = Files.createTempFile("thirsty", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("thirsty.Json").withThreshold(Duration.ZERO);
+            recording.start();
+            String text = json.toJson(new Region(1, 2, 3, 4));
+            json.fromJson(text, Region.class);
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(2, events.size());
+            assertFalse(events.get(0).getBoolean("decode"));
+            assertTrue(events.get(1).getBoolean("decode"));
+            assertEquals(Region.class.getName(), events.get(1).getString("type"));
+            assertEquals(text.length(), events.get(1).getLong("size"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.zip.DataFormatException;
+import model.QualityReport;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+import persistence.json.net.FrameCompressor;
+import persistence.json.net.MessageChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for compressed frames
+ * @author tybrown
+ */
+public class FrameCompressorTester {
+    public static final int TIMEOUT = 2000;
+
+    private PersistentJsonFile json;
+    private ServerSocket serverSocket;
+    private MessageChannel sender;
+    private MessageChannel receiver;
+
+    @Before
+    public void setup() throws IOException {
+        json = new PersistentJsonFile("src/test/resources/db/");
+        serverSocket = new ServerSocket(0);
+        sender = new MessageChannel(new Socket("localhost", serverSocket.getLocalPort()), json);
+        receiver = new MessageChannel(serverSocket.accept(), json);
+        sender.setFrameCompression(true);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        sender.close();
+        receiver.close();
+        serverSocket.close();
+    }
+
+    private WaterReport bigReport() {
+        LocalDateTime when = LocalDateTime.of(2016, 11, 15, 12, 30);
+        WaterReport wr = new WaterReport(42, when, 33.7756, -84.3963, WaterType.LAKE, WaterCondition.CLEAR, "author");
+        for (int i = 1; i <= 20; i++) {
+            wr.addQualityReport(new QualityReport(when.plusDays(i), i, "worker", WaterSafety.TREATABLE, i, 10 * i, 42));
+        }
+        return (wr);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRoundTrip() throws DataFormatException {
+        FrameCompressor c = new FrameCompressor();
+        byte[] raw = json.toJson(bigReport()).getBytes(StandardCharsets.UTF_8);
+        int length = c.deflate(raw, 0, raw.length);
+        assertTrue(length > 0 && length < raw.length / 2);
+        byte[] compressed = java.util.Arrays.copyOf(c.getDeflated(), length);
+        byte[] res = new FrameCompressor().inflate(compressed, length, raw.length);
+        assertArrayEquals(raw, java.util.Arrays.copyOf(res, raw.length));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testIncompressible() {
+        byte[] raw = new byte[300];
+        new java.util.Random(1).nextBytes(raw);
+        assertEquals(-1, new FrameCompressor().deflate(raw, 0, raw.length));
+    }
+
+    @Test(timeout = TIMEOUT, expected = DataFormatException.class)
+    public void testCorrupt() throws DataFormatException {
+        FrameCompressor c = new FrameCompressor();
+        byte[] raw = json.toJson(bigReport()).getBytes(StandardCharsets.UTF_8);
+        int length = c.deflate(raw, 0, raw.length);
+        byte[] compressed = java.util.Arrays.copyOf(c.getDeflated(), length);
+        compressed[length / 2] ^= 0x55;
+        compressed[length / 2 + 1] ^= 0x55;
+        new FrameCompressor().inflate(compressed, length, raw.length);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCompressedJsonFrame() throws IOException {
+        long before = FrameCompressor.getFramesCompressed();
+        Command c = new Command(Command.CommandType.LOAD_WATER_REPORT, null, null);
+        c.setPayload(bigReport());
+        sender.sendCommand(c);
+        //small commands stay uncompressed
+        sender.sendCommand(new Command(Command.CommandType.DEAUTHENTICATE, null, null));
+        Command res = receiver.receiveCommand();
+        assertEquals(20, json.readPayload(res, WaterReport.class).getQualityReportList().size());
+        assertEquals(Command.CommandType.DEAUTHENTICATE, receiver.receiveCommand().getCommand());
+        assertTrue(FrameCompressor.getFramesCompressed() > before);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCompressedBinaryFrame() throws IOException {
+        sender.setEncoding(Command.Encoding.BINARY);
+        Command c = new Command(Command.CommandType.LOAD_WATER_REPORT, null, null);
+        c.setPayload(bigReport());
+        sender.sendCommand(c);
+        sender.sendCommand(c);
+        for (int i = 0; i < 2; i++) {
+            WaterReport wr = json.readPayload(receiver.receiveCommand(), WaterReport.class);
+            assertEquals(42, wr.getReportNum());
+            assertEquals(20, wr.getQualityReportList().size());
+        }
+    }
+}
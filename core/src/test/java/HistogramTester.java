@@ -0,0 +1,77 @@
+import lib.Histogram;
+import lib.Metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the latency histogram and the metrics snapshot
+ * @author tybrown
+ */
+public class HistogramTester {
+    public static final int TIMEOUT = 200;
+
+    @Test(timeout = TIMEOUT)
+    public void testEmpty() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getMean(), 0);
+        assertEquals(0, h.getPercentile(99));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSmallValuesExact() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 20; i++) {
+            h.record(i);
+        }
+        assertEquals(10, h.getPercentile(50));
+        assertEquals(20, h.getPercentile(100));
+        assertEquals(1, h.getPercentile(0));
+        assertEquals(10.5, h.getMean(), 1e-9);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testPercentilesWithinError() {
+        Histogram h = new Histogram();
+        //1us to 10ms, like command latencies
+        for (long i = 1; i <= 10000; i++) {
+            h.record(i * 1000);
+        }
+        assertEquals(10000, h.getCount());
+        assertEquals(10000000, h.getMax());
+        for (double p : new double[] {50, 90, 99, 99.9}) {
+            double exact = p * 100 * 1000;
+            long got = h.getPercentile(p);
+            //the bucket's highest value, so never below the exact one
+            assertTrue(p + ": " + got, got >= exact && got <= exact * 1.07);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLargeAndNegative() {
+        Histogram h = new Histogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.getCount());
+        assertEquals(0, h.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, h.getPercentile(100));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSnapshot() {
+        Metrics.counter("test.counter").add(3);
+        Metrics.gauge("test.gauge", () -> 42);
+        Metrics.histogram("test.latency").record(2000);
+        Metrics.histogram("test.unused");
+        String snapshot = Metrics.snapshot();
+        assertTrue(snapshot, snapshot.contains("counter test.counter 3"));
+        assertTrue(snapshot, snapshot.contains("gauge test.gauge 42"));
+        assertTrue(snapshot, snapshot.contains("histogram test.latency count=1 "));
+        assertFalse(snapshot, snapshot.contains("test.unused"));
+    }
+}
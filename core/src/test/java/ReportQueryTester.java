@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import model.QualityReport;
+import model.Region;
+import model.ReportManager;
+import model.ReportQuery;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for report queries and their paging
+ * @author tybrown
+ */
+public class ReportQueryTester {
+    public static final int TIMEOUT = 200;
+    private static final LocalDateTime START = LocalDateTime.of(2016, 11, 1, 12, 0);
+
+    @Before
+    public void setup() throws IOException {
+        PersistentJsonFile persist = new PersistentJsonFile("src/test/resources/db/");
+        ReportManager.initialize(persist);
+        //odd reports in atlanta by alice, even ones in fiji by bob, one day apart
+        for (int i = 1; i <= 20; i++) {
+            boolean odd = i % 2 == 1;
+            WaterReport wr = new WaterReport(i, START.plusDays(i), odd ? 33.7 : -17.7, odd ? -84.4 : 178.0,
+                    odd ? WaterType.LAKE : WaterType.WELL, WaterCondition.values()[0], odd ? "alice" : "bob");
+            ReportManager.addWaterReport(wr);
+            for (int q = 1; q <= 3; q++) {
+                ReportManager.addQualityReport(wr, new QualityReport(START.plusDays(i).plusHours(q), q, "carol",
+                        q == 3 && i <= 4 ? WaterSafety.UNSAFE : WaterSafety.TREATABLE, q, q, i));
+            }
+        }
+        ReportManager.setMaxWaterReportNumber(20);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFilters() {
+        assertEquals(10, ReportManager.queryWaterReports(new ReportQuery().setAuthor("alice"), 100).size());
+        assertEquals(10, ReportManager.queryWaterReports(new ReportQuery().setWaterType(WaterType.WELL), 100).size());
+        assertEquals(10, ReportManager.queryWaterReports(
+                new ReportQuery().setRegion(new Region(-19, 177, -16, -179)), 100).size());
+        //days 5 to 9
+        assertEquals(5, ReportManager.queryWaterReports(
+                new ReportQuery().setTimeRange(START.plusDays(5), START.plusDays(10)), 100).size());
+        //the latest quality report decides
+        List<WaterReport> unsafe = ReportManager.queryWaterReports(new ReportQuery().setWaterSafety(WaterSafety.UNSAFE), 100);
+        assertEquals(4, unsafe.size());
+        assertEquals(7, ReportManager.queryWaterReports(new ReportQuery().setReportNum(7), 100).get(0).getReportNum());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testPaging() {
+        ReportQuery query = new ReportQuery().setAuthor("bob");
+        List<WaterReport> page = ReportManager.queryWaterReports(query, 4);
+        assertEquals(4, page.size());
+        assertEquals(2, page.get(0).getReportNum());
+        assertEquals(8, page.get(3).getReportNum());
+        page = ReportManager.queryWaterReports(query.setCursor(8), 4);
+        assertEquals(10, page.get(0).getReportNum());
+        page = ReportManager.queryWaterReports(query.setCursor(16), 4);
+        assertEquals(2, page.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testQualityReports() {
+        ReportQuery query = new ReportQuery().setWaterSafety(WaterSafety.UNSAFE);
+        assertEquals(4, ReportManager.queryQualityReports(query, 100).size());
+
+        //page through all 60 five at a time, without repeats or gaps
+        query = new ReportQuery().setAuthor("carol");
+        int seen = 0;
+        long last = -1;
+        List<QualityReport> page;
+        do {
+            page = ReportManager.queryQualityReports(query, 5);
+            for (QualityReport qr : page) {
+                long cursor = ReportManager.qualityCursor(qr);
+                assertTrue(cursor > last);
+                last = cursor;
+                seen++;
+            }
+            query.setCursor(last);
+        } while (page.size() == 5);
+        assertEquals(60, seen);
+
+        List<QualityReport> one = ReportManager.queryQualityReports(new ReportQuery().setReportNum(3), 100);
+        assertEquals(3, one.size());
+        assertEquals(3, one.get(0).getParentReportNum());
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import model.Credential;
+import model.QualityReport;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.BinaryCodec;
+import persistence.json.net.Command;
+
+/**
+ * Compares the JSON and binary wire encodings: encode/decode throughput and bytes per message.
+ * Run with: gradle codecBenchmark
+ * @author tybrown
+ */
+public class WireCodecBenchmark {
+
+    private static final int MESSAGES = 2000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int qualityReports = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        PersistentJsonFile json = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
+        BinaryCodec codec = new BinaryCodec(json);
+        List<Command> commands = sampleCommands(qualityReports);
+
+        long jsonBytes = 0;
+        long binaryBytes = 0;
+        long jsonEncode = Long.MAX_VALUE;
+        long jsonDecode = Long.MAX_VALUE;
+        long binaryEncode = Long.MAX_VALUE;
+        long binaryDecode = Long.MAX_VALUE;
+        //the first rounds warm up the JIT; keep the best round of each
+        for (int round = 0; round < ROUNDS; round++) {
+            List<byte[]> encoded = new ArrayList<>(commands.size());
+            long start = System.nanoTime();
+            for (Command c : commands) {
+                c.setData(json.toJson(c.getPayload()));
+                encoded.add(json.toJson(c).getBytes(StandardCharsets.UTF_8));
+            }
+            jsonEncode = Math.min(jsonEncode, System.nanoTime() - start);
+            jsonBytes = total(encoded);
+
+            start = System.nanoTime();
+            for (byte[] b : encoded) {
+                Command c = json.fromJson(new String(b, StandardCharsets.UTF_8), Command.class);
+                json.readPayload(c, WaterReport.class);
+            }
+            jsonDecode = Math.min(jsonDecode, System.nanoTime() - start);
+
+            encoded.clear();
+            start = System.nanoTime();
+            for (Command c : commands) {
+                c.setData(null);
+                encoded.add(codec.encode(c));
+            }
+            binaryEncode = Math.min(binaryEncode, System.nanoTime() - start);
+            binaryBytes = total(encoded);
+
+            start = System.nanoTime();
+            for (byte[] b : encoded) {
+                codec.decode(b, 0, b.length);
+            }
+            binaryDecode = Math.min(binaryDecode, System.nanoTime() - start);
+        }
+
+        System.out.printf("%d LOAD_WATER_REPORT commands, %d quality reports each%n", MESSAGES, qualityReports);
+        System.out.printf("%-8s %14s %14s %12s%n", "", "encode msg/s", "decode msg/s", "bytes/msg");
+        print("json", jsonEncode, jsonDecode, jsonBytes);
+        print("binary", binaryEncode, binaryDecode, binaryBytes);
+    }
+
+    private static void print(String name, long encodeNanos, long decodeNanos, long bytes) {
+        System.out.printf("%-8s %14.0f %14.0f %12.1f%n", name,
+                MESSAGES / (encodeNanos / 1e9), MESSAGES / (decodeNanos / 1e9), (double) bytes / MESSAGES);
+    }
+
+    private static long total(List<byte[]> encoded) {
+        long res = 0;
+        for (byte[] b : encoded) {
+            res += b.length;
+        }
+        return (res);
+    }
+
+    private static List<Command> sampleCommands(int qualityReports) {
+        Random rand = new Random(2340);
+        Credential cred = new Credential("fieldworker", "password");
+        LocalDateTime start = LocalDateTime.of(2016, 11, 1, 8, 0);
+        List<Command> res = new ArrayList<>(MESSAGES);
+        for (int i = 1; i <= MESSAGES; i++) {
+            WaterReport wr = new WaterReport(i, start.plusMinutes(i), 33.7 + rand.nextDouble(), -84.4 + rand.nextDouble(),
+                    WaterType.values()[rand.nextInt(WaterType.values().length)],
+                    WaterCondition.values()[rand.nextInt(WaterCondition.values().length)], "fieldworker");
+            for (int q = 1; q <= qualityReports; q++) {
+                wr.addQualityReport(new QualityReport(start.plusMinutes(i).plusHours(q), q, "fieldworker",
+                        WaterSafety.values()[rand.nextInt(WaterSafety.values().length)],
+                        rand.nextDouble() * 100, rand.nextDouble() * 1000, i));
+            }
+            Command c = new Command(Command.CommandType.LOAD_WATER_REPORT, null, cred);
+            c.setPayload(wr);
+            res.add(c);
+        }
+        return (res);
+    }
+}
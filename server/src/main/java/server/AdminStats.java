@@ -0,0 +1,150 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import model.Credential;
+import persistence.json.PersistentJsonFile;
+import persistence.json.PersistentJsonInterface;
+import persistence.json.net.Command;
+import persistence.json.net.MessageChannel;
+import persistence.json.net.ServerStats;
+
+/**
+ * A command line client which logs in as an administrator and prints the server's ADMIN_STATS every few seconds,
+ * with the commands per second since the last poll. Works against a ThirstyServer, a replica or a ShardRouter:
+ * java -Dthirsty.host=localhost -Dthirsty.port=9988 -Dthirsty.statsSeconds=5 server.AdminStats username [password]
+ * The password is asked for when it isn't given. -Dthirsty.statsSeconds=0 prints the stats once
+ *
+ * @author tybrown
+ */
+public class AdminStats {
+
+    private static final long POLL_SECONDS = 5;
+    private static final int TIMEOUT_MS = 10000;
+
+    //only used for its json
+    private final PersistentJsonInterface json = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
+    private MessageChannel channel;
+    private String session;
+    private long requestId = 0;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: AdminStats username [password]");
+            System.exit(2);
+        }
+        try {
+            new AdminStats().run(args[0], args.length > 1 ? args[1] : readPassword());
+        } catch (IOException e) {
+            System.err.printf("Failed to get the server stats: %s%n", e.toString());
+            System.exit(1);
+        }
+    }
+
+    private static String readPassword() throws IOException {
+        Console console = System.console();
+        if (console != null) {
+            char[] pw = console.readPassword("Password: ");
+            return (pw == null ? "" : new String(pw));
+        }
+        String line = new BufferedReader(new InputStreamReader(System.in)).readLine();
+        return (line == null ? "" : line);
+    }
+
+    private void run(String username, String password) throws IOException {
+        String host = System.getProperty("thirsty.host", "localhost");
+        int port = Integer.getInteger("thirsty.port", ThirstyServer.PORT);
+        long period = Long.getLong("thirsty.statsSeconds", POLL_SECONDS);
+        try (Socket sock = new Socket(host, port)) {
+            sock.setSoTimeout(TIMEOUT_MS);
+            channel = new MessageChannel(sock, json);
+            Command login = call(new Command(Command.CommandType.AUTHENTICATE, json.toJson(new Credential(username, password)), null));
+            if (!login.isSuccessful()) {
+                throw (new IOException("Login failed: " + login.getMessage()));
+            }
+            session = login.getSession();
+            ServerStats last = null;
+            while (true) {
+                Command resp = call(new Command(Command.CommandType.ADMIN_STATS, null, null));
+                ServerStats stats = resp.isSuccessful() ? json.readPayload(resp, ServerStats.class) : null;
+                if (stats == null) {
+                    throw (new IOException(resp.getMessage() == null ? "No stats in the answer" : resp.getMessage()));
+                }
+                print(stats, last);
+                last = stats;
+                if (period <= 0) {
+                    return;
+                }
+                try {
+                    TimeUnit.SECONDS.sleep(period);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a request and waits for its answer, answering heartbeats and skipping the pushes meanwhile
+     * @param c The request
+     * @return The answer
+     * @throws IOException if the connection closed or timed out
+     */
+    private Command call(Command c) throws IOException {
+        c.setRequestId(++requestId);
+        c.setSession(session);
+        channel.sendCommand(c);
+        while (true) {
+            Command in = channel.receiveCommand();
+            if (in == null) {
+                throw (new IOException("The server closed the connection"));
+            }
+            if (in.getCommand() == Command.CommandType.HEARTBEAT && !in.isResponse()) {
+                channel.sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(in));
+            } else if (in.isResponse() && in.getCommand() == c.getCommand() && in.getRequestId() == c.getRequestId()) {
+                return (in);
+            }
+        }
+    }
+
+    private static void print(ServerStats s, ServerStats last) {
+        long up = TimeUnit.MILLISECONDS.toSeconds(s.getUptimeMillis());
+        System.out.printf("[%s] up %dd %02d:%02d:%02d, %d connections (%d replicas), %d sessions%n",
+                new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date()), up / 86400, up / 3600 % 24, up / 60 % 60,
+                up % 60, s.getConnections(), s.getReplicas(), s.getSessions());
+        System.out.printf("  queue %d/%d, %d pushes pending, change log at %d%n", s.getQueuedCommands(), s.getQueueCapacity(),
+                s.getPendingPushes(), s.getChangeLogSequence());
+        System.out.printf("  heap %s of %s, %d water reports, %d quality reports%n", bytes(s.getHeapUsed()),
+                bytes(s.getHeapMax()), s.getWaterReports(), s.getQualityReports());
+        StringBuilder files = new StringBuilder("  files:");
+        for (Map.Entry<String, Long> e : s.getFileSizes().entrySet()) {
+            files.append(' ').append(e.getKey()).append(' ').append(bytes(e.getValue()));
+        }
+        System.out.println(files);
+        //since the last poll, or the average since the server started on the first one
+        double seconds = (s.getUptimeMillis() - (last == null ? 0 : last.getUptimeMillis())) / 1000.0;
+        Map<String, Long> before = last == null ? new TreeMap<>() : last.getCommands();
+        StringBuilder rates = new StringBuilder("  commands/s:");
+        for (Map.Entry<String, Long> e : s.getCommands().entrySet()) {
+            long count = e.getValue() - before.getOrDefault(e.getKey(), 0L);
+            rates.append(String.format(" %s %.1f", e.getKey(), seconds > 0 ? count / seconds : 0));
+        }
+        System.out.println(rates);
+    }
+
+    private static String bytes(long b) {
+        if (b < 1024) {
+            return (b + " B");
+        }
+        int unit = (63 - Long.numberOfLeadingZeros(b)) / 10;
+        return (String.format("%.1f %sB", b / (double) (1L << (unit * 10)), "KMGTPE".charAt(unit - 1)));
+    }
+}
@@ -0,0 +1,139 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Bounded log of report changes, numbered with a monotonically increasing sequence.
+ * Reconnecting clients send the last sequence they applied and get only the reports changed since,
+ * as long as the log still reaches back that far.
+ * Sequences restart with every server run, so each run gets a random epoch which clients must echo back.
+ * A replica follows the leader's log instead, so clients can move between them and still only get the changes
+ *
+ * @author tybrown
+ */
+public class ChangeLog {
+
+    private final int capacity;
+    private long epoch;
+    private final Deque<Change> changes;
+    private long sequence = 0;
+    //the sequence of the newest change which no longer fits in the log
+    private long truncatedThrough = 0;
+
+    /**
+     * Creates an empty change log
+     * @param capacity The maximum number of changes to remember
+     */
+    public ChangeLog(int capacity) {
+        this.capacity = capacity;
+        this.epoch = new Random().nextLong() & Long.MAX_VALUE;
+        this.changes = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    /**
+     * Gets the epoch of this log. Sequence numbers from another epoch mean nothing here
+     * @return the epoch
+     */
+    public synchronized long getEpoch() {
+        return (epoch);
+    }
+
+    /**
+     * Gets the sequence number of the newest change
+     * @return the sequence number, 0 if nothing changed yet
+     */
+    public synchronized long getSequence() {
+        return (sequence);
+    }
+
+    /**
+     * Records a change to a water report (including changes to its quality reports)
+     * @param reportNum The number of the water report which changed
+     * @param deleted true if the report was deleted
+     * @return The sequence number assigned to the change
+     */
+    public synchronized long record(int reportNum, boolean deleted) {
+        sequence++;
+        changes.addLast(new Change(sequence, reportNum, deleted));
+        while (changes.size() > capacity) {
+            truncatedThrough = changes.removeFirst().sequence;
+        }
+        return (sequence);
+    }
+
+    /**
+     * Records a change which got its sequence number elsewhere, like on the leader
+     * @param reportNum The number of the water report which changed
+     * @param deleted true if the report was deleted
+     * @param sequence The sequence number of the change. Several changes may share one, like the ones of a delta
+     * @throws IllegalArgumentException If the sequence is older than the newest change
+     */
+    public synchronized void record(int reportNum, boolean deleted, long sequence) {
+        if (sequence < this.sequence) {
+            throw (new IllegalArgumentException(String.format("Sequence %d is older than %d", sequence, this.sequence)));
+        }
+        this.sequence = sequence;
+        changes.addLast(new Change(sequence, reportNum, deleted));
+        while (changes.size() > capacity) {
+            truncatedThrough = changes.removeFirst().sequence;
+        }
+    }
+
+    /**
+     * Moves the sequence forward without a change, like after a delta from the leader which changed nothing
+     * @param sequence The new sequence, ignored if older than the newest change
+     */
+    public synchronized void skipTo(long sequence) {
+        this.sequence = Math.max(this.sequence, sequence);
+    }
+
+    /**
+     * Starts over in another epoch, like after copying a full snapshot from the leader.
+     * Clients which were up to date with the old epoch need a full snapshot again
+     * @param epoch The epoch to follow
+     * @param sequence The sequence the copy is up to
+     */
+    public synchronized void follow(long epoch, long sequence) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.truncatedThrough = sequence;
+        changes.clear();
+    }
+
+    /**
+     * Gets the reports which changed after the given sequence number
+     * @param since The last sequence number the client applied
+     * @return Map of report number to true if deleted (false if saved), the latest change winning,
+     *      in the order of their latest change.
+     *      null if the log no longer reaches back to since, or since is from the future
+     */
+    public synchronized Map<Integer, Boolean> changesSince(long since) {
+        if (since < truncatedThrough || since > sequence) {
+            return (null);
+        }
+        Map<Integer, Boolean> res = new LinkedHashMap<>();
+        for (Change c : changes) {
+            if (c.sequence > since) {
+                res.remove(c.reportNum);
+                res.put(c.reportNum, c.deleted);
+            }
+        }
+        return (res);
+    }
+
+    private static final class Change {
+        private final long sequence;
+        private final int reportNum;
+        private final boolean deleted;
+
+        private Change(long sequence, int reportNum, boolean deleted) {
+            this.sequence = sequence;
+            this.reportNum = reportNum;
+            this.deleted = deleted;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of when each connection was last heard from, so dead ones get noticed.
+ * A laptop which went to sleep leaves a half-open TCP connection behind which never errors on its own;
+ * a connection which has been quiet for the heartbeat interval is asked for a HEARTBEAT, and one which stayed
+ * quiet for the whole idle timeout is handed out for closing (reaped). Counts live and reaped connections
+ *
+ * @param <T> The type of the connections
+ * @author tybrown
+ */
+public class ConnectionReaper<T> {
+
+    private final long heartbeatNanos;
+    private final long timeoutNanos;
+    private final Map<T, Liveness> connections = new ConcurrentHashMap<>();
+    private long reaped = 0;
+
+    /**
+     * Constructs a reaper
+     * @param heartbeatNanos How long a connection may be quiet before it's sent a heartbeat, and how often after that
+     * @param timeoutNanos How long a connection may be quiet before it's considered dead
+     */
+    public ConnectionReaper(long heartbeatNanos, long timeoutNanos) {
+        this.heartbeatNanos = heartbeatNanos;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Starts keeping track of a new connection
+     * @param conn The connection
+     * @param now The current System.nanoTime()
+     */
+    public void add(T conn, long now) {
+        connections.put(conn, new Liveness(now));
+    }
+
+    /**
+     * Notes that something arrived on a connection. Called for every frame, so it doesn't lock
+     * @param conn The connection
+     * @param now The current System.nanoTime()
+     */
+    public void heard(T conn, long now) {
+        Liveness l = connections.get(conn);
+        if (l != null) {
+            l.lastHeard = now;
+        }
+    }
+
+    /**
+     * Stops keeping track of a connection which closed
+     * @param conn The connection
+     * @return true if it was still tracked
+     */
+    public boolean remove(T conn) {
+        return (connections.remove(conn) != null);
+    }
+
+    /**
+     * Finds the connections which need a heartbeat and the dead ones. Dead connections are no longer tracked
+     * @param now The current System.nanoTime()
+     * @return The connections to send a heartbeat to and the ones to close
+     */
+    public synchronized Sweep<T> sweep(long now) {
+        Sweep<T> res = new Sweep<>();
+        for (Iterator<Map.Entry<T, Liveness>> it = connections.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<T, Liveness> e = it.next();
+            Liveness l = e.getValue();
+            long quiet = now - l.lastHeard;
+            if (quiet >= timeoutNanos) {
+                it.remove();
+                reaped++;
+                res.dead.add(e.getKey());
+            } else if (quiet >= heartbeatNanos && now - l.lastPinged >= heartbeatNanos) {
+                l.lastPinged = now;
+                res.quiet.add(e.getKey());
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Gets the number of connections being tracked
+     * @return the number of live connections
+     */
+    public int liveCount() {
+        return (connections.size());
+    }
+
+    /**
+     * Gets the number of connections found dead since the server started
+     * @return the number of reaped connections
+     */
+    public synchronized long reapedCount() {
+        return (reaped);
+    }
+
+    private static class Liveness {
+        private volatile long lastHeard;
+        private long lastPinged;
+
+        private Liveness(long now) {
+            this.lastHeard = now;
+            this.lastPinged = now;
+        }
+    }
+
+    /**
+     * The result of one sweep over the connections
+     * @param <T> The type of the connections
+     */
+    public static class Sweep<T> {
+        private final List<T> quiet = new ArrayList<>();
+        private final List<T> dead = new ArrayList<>();
+
+        /**
+         * Gets the connections which were quiet for the heartbeat interval
+         * @return the connections to send a heartbeat to
+         */
+        public List<T> getQuiet() {
+            return (quiet);
+        }
+
+        /**
+         * Gets the connections which were quiet for the whole idle timeout
+         * @return the connections to close
+         */
+        public List<T> getDead() {
+            return (dead);
+        }
+    }
+}
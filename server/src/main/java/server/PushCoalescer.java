@@ -0,0 +1,177 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import model.WaterReport;
+
+/**
+ * Coalesces report pushes per connection.
+ * A connection which hasn't been pushed to for a whole window gets the next change right away, like before.
+ * Changes arriving within the window after that are held back, keeping only the latest state of each report,
+ * and go out together as one batch when the window ends. A burst of uploads then costs each client one frame
+ * (and one redraw) per window instead of one per change, while a lone change isn't delayed at all
+ *
+ * @param <T> The type of the connections
+ * @author tybrown
+ */
+public class PushCoalescer<T> {
+
+    private final long windowNanos;
+    private final Map<T, Long> lastSent = new HashMap<>();
+    private final Map<T, Batch> pending = new LinkedHashMap<>();
+
+    /**
+     * Constructs a coalescer
+     * @param windowNanos How long after a push further pushes to the same connection are held back. 0 never holds back
+     */
+    public PushCoalescer(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Offers a report change for a connection
+     * @param target The connection to push to
+     * @param reportNum The number of the changed report
+     * @param report The report as it is now, or null if it was deleted
+     * @param sequence The change log sequence of the change
+     * @param now The current System.nanoTime()
+     * @return true if the change should be pushed right away, false if it was queued for the next batch
+     */
+    public synchronized boolean offer(T target, int reportNum, WaterReport report, long sequence, long now) {
+        Batch batch = pending.get(target);
+        if (batch == null) {
+            Long last = lastSent.get(target);
+            if (last == null || now - last >= windowNanos) {
+                lastSent.put(target, now);
+                return (true);
+            }
+            batch = new Batch(last + windowNanos);
+            pending.put(target, batch);
+        }
+        //last write wins: re-putting moves nothing, so the batch keeps the order reports first changed in
+        batch.changes.put(reportNum, report);
+        batch.sequence = Math.max(batch.sequence, sequence);
+        batch.offered++;
+        return (false);
+    }
+
+    /**
+     * Gets how long until the next batch is due
+     * @param now The current System.nanoTime()
+     * @return The time in nanoseconds, 0 if a batch is already due, Long.MAX_VALUE if nothing is queued
+     */
+    public synchronized long nanosUntilDue(long now) {
+        long res = Long.MAX_VALUE;
+        for (Batch batch : pending.values()) {
+            res = Math.min(res, Math.max(0, batch.dueAt - now));
+        }
+        return (res);
+    }
+
+    /**
+     * Removes every batch which is due, starting a new window for its connection
+     * @param now The current System.nanoTime()
+     * @return The due batches by connection, empty if none are due
+     */
+    public synchronized Map<T, Batch> takeDue(long now) {
+        Map<T, Batch> res = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<T, Batch>> it = pending.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<T, Batch> e = it.next();
+            if (e.getValue().dueAt - now <= 0) {
+                res.put(e.getKey(), e.getValue());
+                lastSent.put(e.getKey(), now);
+                it.remove();
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Removes every batch, due or not, so nothing is left behind when shutting down
+     * @return The batches by connection, empty if nothing is queued
+     */
+    public synchronized Map<T, Batch> takeAll() {
+        Map<T, Batch> res = new LinkedHashMap<>(pending);
+        pending.clear();
+        return (res);
+    }
+
+    /**
+     * Forgets a connection and drops its queued changes
+     * @param target The connection to forget
+     */
+    public synchronized void remove(T target) {
+        lastSent.remove(target);
+        pending.remove(target);
+    }
+
+    /**
+     * Gets the number of connections with changes queued
+     * @return the number of pending batches
+     */
+    public synchronized int pendingCount() {
+        return (pending.size());
+    }
+
+    /**
+     * The changes held back for one connection
+     */
+    public static class Batch {
+        private final long dueAt;
+        private final Map<Integer, WaterReport> changes = new LinkedHashMap<>();
+        private long sequence;
+        private int offered;
+
+        private Batch(long dueAt) {
+            this.dueAt = dueAt;
+        }
+
+        /**
+         * Gets the latest state of every changed report which still exists
+         * @return the changed reports
+         */
+        public List<WaterReport> getReports() {
+            List<WaterReport> res = new ArrayList<>(changes.size());
+            for (WaterReport wr : changes.values()) {
+                if (wr != null) {
+                    res.add(wr);
+                }
+            }
+            return (res);
+        }
+
+        /**
+         * Gets the numbers of the reports whose last change was a delete
+         * @return the deleted report numbers
+         */
+        public List<Integer> getDeleted() {
+            List<Integer> res = new ArrayList<>();
+            for (Map.Entry<Integer, WaterReport> e : changes.entrySet()) {
+                if (e.getValue() == null) {
+                    res.add(e.getKey());
+                }
+            }
+            return (res);
+        }
+
+        /**
+         * Gets the highest change log sequence in the batch
+         * @return the sequence
+         */
+        public long getSequence() {
+            return (sequence);
+        }
+
+        /**
+         * Gets how many changes were offered into this batch, including ones replaced by later changes
+         * @return the number of coalesced changes
+         */
+        public int getOffered() {
+            return (offered);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lib.Debug;
+
+/**
+ * Starts and keeps track of every thread the server runs, either as one platform thread per task
+ * or as virtual threads (JDK 21+), so the blocking per-connection code style works at either scale.
+ * All threads started here are stopped together by shutdown()
+ *
+ * @author tybrown
+ */
+public class ServerThreads {
+
+    /**
+     * The kinds of threads the server can run on
+     */
+    public enum Mode {
+        PLATFORM, VIRTUAL
+    }
+
+    private final Mode mode;
+    //Thread.ofVirtual().unstarted(Runnable), found at runtime so the build still targets older JDKs
+    private final Object virtualBuilder;
+    private final Method unstarted;
+    private final Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Creates the thread tracker
+     * @param mode The kind of threads to start
+     * @throws UnsupportedOperationException If virtual threads were asked for but the JVM doesn't have them
+     */
+    public ServerThreads(Mode mode) {
+        this.mode = mode;
+        if (mode == Mode.VIRTUAL) {
+            try {
+                virtualBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+                //through the public interface; the builder class itself isn't accessible
+                unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw (new UnsupportedOperationException(String.format(
+                        "Virtual threads need JDK 21 or newer, this is %s", System.getProperty("java.version")), e));
+            }
+        } else {
+            virtualBuilder = null;
+            unstarted = null;
+        }
+    }
+
+    /**
+     * Gets the kind of threads this starts
+     * @return the mode
+     */
+    public Mode getMode() {
+        return (mode);
+    }
+
+    /**
+     * Starts a task on a new thread
+     * @param name The name of the thread, shows up in thread dumps
+     * @param task The task to run
+     * @return The started thread
+     */
+    public Thread start(String name, Runnable task) {
+        Thread t = newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+            }
+        });
+        t.setName(name);
+        threads.add(t);
+        t.start();
+        return (t);
+    }
+
+    /**
+     * Runs every task on its own thread and waits until all of them finished
+     * @param name The name prefix of the threads
+     * @param tasks The tasks to run
+     * @throws InterruptedException If interrupted while waiting. The tasks are interrupted too
+     */
+    public void runAll(String name, Collection<? extends Runnable> tasks) throws InterruptedException {
+        List<Thread> started = new ArrayList<>(tasks.size());
+        int i = 0;
+        for (Runnable task : tasks) {
+            started.add(start(name + "-" + i++, task));
+        }
+        try {
+            for (Thread t : started) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread t : started) {
+                t.interrupt();
+            }
+            throw (e);
+        }
+    }
+
+    /**
+     * Gets the number of threads started here which are still running
+     * @return the number of live threads
+     */
+    public int liveCount() {
+        return (threads.size());
+    }
+
+    /**
+     * Interrupts every running thread and waits for them to finish
+     * @param timeoutMillis How long to wait in total
+     * @return true if every thread finished in time
+     */
+    public boolean shutdown(long timeoutMillis) {
+        List<Thread> running;
+        synchronized (threads) {
+            running = new ArrayList<>(threads);
+        }
+        Thread self = Thread.currentThread();
+        for (Thread t : running) {
+            if (t != self) {
+                t.interrupt();
+            }
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            for (Thread t : running) {
+                long left = deadline - System.currentTimeMillis();
+                if (t != self && left > 0) {
+                    t.join(left);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = 0;
+        for (Thread t : running) {
+            if (t != self && t.isAlive()) {
+                left++;
+            }
+        }
+        if (left > 0) {
+            Debug.error("%d threads still running after shutdown", left);
+        }
+        return (left == 0);
+    }
+
+    private Thread newThread(Runnable task) {
+        if (mode == Mode.PLATFORM) {
+            return (new Thread(task));
+        }
+        try {
+            return ((Thread) unstarted.invoke(virtualBuilder, task));
+        } catch (ReflectiveOperationException e) {
+            throw (new IllegalStateException("Failed to create a virtual thread", e));
+        }
+    }
+}
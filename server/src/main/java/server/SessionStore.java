@@ -0,0 +1,178 @@
+package server;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import persistence.json.net.Command;
+
+/**
+ * The server's logged in sessions. AUTHENTICATE hands the client an opaque random token, which the client then
+ * sends with every command instead of its credential. Sessions expire after going unused for the idle timeout
+ * (the server uses them on every heartbeat of their connection, so only a disconnected one really goes unused),
+ * and can be revoked one at a time or all of a user's at once.
+ * Each session also remembers its latest responses to writes, which makes resending a request after a reconnect safe
+ *
+ * @author tybrown
+ */
+public class SessionStore {
+
+    private static final int TOKEN_BYTES = 16;
+    //how many responses to remember per session for requests which may be sent again after a reconnect
+    private static final int REMEMBERED_RESPONSES = 64;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleNanos;
+    private final LongSupplier clock;
+    private volatile long nextPurge;
+
+    /**
+     * Constructs a session store
+     * @param idleNanos How long a session may go unused before it expires
+     */
+    public SessionStore(long idleNanos) {
+        this(idleNanos, System::nanoTime);
+    }
+
+    /**
+     * Constructs a session store with its own clock
+     * @param idleNanos How long a session may go unused before it expires
+     * @param clock The current time in nanoseconds, like System.nanoTime()
+     */
+    public SessionStore(long idleNanos, LongSupplier clock) {
+        this.idleNanos = idleNanos;
+        this.clock = clock;
+        this.nextPurge = clock.getAsLong() + idleNanos;
+    }
+
+    /**
+     * Starts a session for a user who just authenticated
+     * @param username The user
+     * @return The session token to give to the client
+     */
+    public String open(String username) {
+        long now = clock.getAsLong();
+        if (now - nextPurge >= 0) {
+            nextPurge = now + idleNanos;
+            purgeExpired(now);
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(username, now));
+        return (token);
+    }
+
+    /**
+     * Looks up the user of a session, and keeps it alive
+     * @param token The session token the client sent, may be null
+     * @return The username, or null if the token is unknown, expired or revoked
+     */
+    public String resolve(String token) {
+        if (token == null) {
+            return (null);
+        }
+        Session s = sessions.get(token);
+        if (s == null) {
+            return (null);
+        }
+        long now = clock.getAsLong();
+        if (now - s.lastUsed >= idleNanos) {
+            sessions.remove(token, s);
+            return (null);
+        }
+        s.lastUsed = now;
+        return (s.username);
+    }
+
+    /**
+     * Ends a session
+     * @param token The session token, may be null
+     */
+    public void revoke(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Ends every session of a user, like after a password change
+     * @param username The user
+     * @param except A session to keep, like the one which changed the password. May be null
+     * @return The number of sessions ended
+     */
+    public int revokeUser(String username, String except) {
+        int res = 0;
+        for (Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Session> e = it.next();
+            if (e.getValue().username.equals(username) && !e.getKey().equals(except)) {
+                it.remove();
+                res++;
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Remembers the response to a request, so the request can be answered again instead of applied twice when
+     * a client resends it after a reconnect. The request id is the idempotency key within the session
+     * @param token The session the request was made in
+     * @param response The response, carrying the request's id
+     */
+    public void rememberResponse(String token, Command response) {
+        Session s = token == null ? null : sessions.get(token);
+        if (s != null && response.getRequestId() != 0) {
+            synchronized (s.responses) {
+                s.responses.put(response.getRequestId(), response);
+            }
+        }
+    }
+
+    /**
+     * Gets the remembered response to a request
+     * @param token The session the request was made in
+     * @param requestId The id of the request
+     * @return The response sent before, or null if the request is new (or too old to be remembered)
+     */
+    public Command rememberedResponse(String token, long requestId) {
+        Session s = token == null ? null : sessions.get(token);
+        if (s == null || requestId == 0) {
+            return (null);
+        }
+        synchronized (s.responses) {
+            return (s.responses.get(requestId));
+        }
+    }
+
+    /**
+     * Gets the number of sessions, including expired ones which weren't purged yet
+     * @return the number of sessions
+     */
+    public int size() {
+        return (sessions.size());
+    }
+
+    private void purgeExpired(long now) {
+        sessions.values().removeIf(s -> now - s.lastUsed >= idleNanos);
+    }
+
+    private static class Session {
+        private final String username;
+        private volatile long lastUsed;
+        private final Map<Long, Command> responses = new LinkedHashMap<Long, Command>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Command> eldest) {
+                return (size() > REMEMBERED_RESPONSES);
+            }
+        };
+
+        private Session(String username, long lastUsed) {
+            this.username = username;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import model.Region;
+
+/**
+ * Decides which shard owns a water report in a sharded deployment. The world is cut into a grid of
+ * CELL_DEGREES sized cells and each cell is given to one shard by a hash of its position, so reports close to
+ * each other live together and a region query only has to ask the shards owning the cells it touches.
+ * Every router and shard has to use the same number of shards, or reports end up where nobody looks for them
+ *
+ * @author tybrown
+ */
+public class ShardMap {
+
+    //coarse, so a city sized region query usually touches a single cell
+    public static final double CELL_DEGREES = 10.0;
+    private static final int LAT_CELLS = (int) Math.ceil(180 / CELL_DEGREES);
+    private static final int LNG_CELLS = (int) Math.ceil(360 / CELL_DEGREES);
+
+    private final int shards;
+
+    /**
+     * Constructs the map
+     * @param shards The number of shards
+     * @throws IllegalArgumentException If there isn't at least one shard
+     */
+    public ShardMap(int shards) {
+        if (shards < 1) {
+            throw (new IllegalArgumentException(String.format("Need at least one shard, not %d", shards)));
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Gets the number of shards
+     * @return the number of shards
+     */
+    public int size() {
+        return (shards);
+    }
+
+    /**
+     * Finds the shard owning a location
+     * @param lat The latitude
+     * @param lng The longitude
+     * @return The index of the shard, from 0 to size() - 1
+     */
+    public int shardOf(double lat, double lng) {
+        return (shardOfCell(latCell(lat), lngCell(lng)));
+    }
+
+    /**
+     * Finds the shards owning any part of a region
+     * @param region The region, or null for everywhere
+     * @return The indices of the shards, in order
+     */
+    public Set<Integer> shardsFor(Region region) {
+        Set<Integer> res = new TreeSet<>();
+        int south = region == null ? 0 : latCell(region.getSouth());
+        int north = region == null ? LAT_CELLS - 1 : latCell(region.getNorth());
+        int west = region == null ? 0 : lngCell(region.getWest());
+        int east = region == null ? LNG_CELLS - 1 : lngCell(region.getEast());
+        int lngSpan = ((east - west + LNG_CELLS) % LNG_CELLS) + 1;
+        if (region == null || (region.crossesAntimeridian() && east == west)) {
+            lngSpan = LNG_CELLS;
+        }
+        for (int lat = south; lat <= north && res.size() < shards; lat++) {
+            for (int i = 0; i < lngSpan && res.size() < shards; i++) {
+                res.add(shardOfCell(lat, (west + i) % LNG_CELLS));
+            }
+        }
+        return (Collections.unmodifiableSet(res));
+    }
+
+    private int shardOfCell(int latCell, int lngCell) {
+        //spread neighbouring cells over the shards, instead of giving a whole band of latitude to one
+        int h = (latCell * LNG_CELLS + lngCell) * 0x9E3779B1;
+        h ^= h >>> 16;
+        return (Math.floorMod(h, shards));
+    }
+
+    private static int latCell(double lat) {
+        return (Math.min(LAT_CELLS - 1, (int) Math.floor((Math.max(-90, Math.min(90, lat)) + 90) / CELL_DEGREES)));
+    }
+
+    private static int lngCell(double lng) {
+        double normalized = ((lng + 180) % 360 + 360) % 360;
+        return ((int) Math.floor(normalized / CELL_DEGREES) % LNG_CELLS);
+    }
+}
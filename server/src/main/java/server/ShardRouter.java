@@ -0,0 +1,646 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import lib.Debug;
+import model.Credential;
+import model.QualityReport;
+import model.ReportManager;
+import model.ReportQuery;
+import model.WaterReport;
+import persistence.json.PersistentJsonFile;
+import persistence.json.PersistentJsonInterface;
+import persistence.json.net.BinaryCodec;
+import persistence.json.net.Command;
+import persistence.json.net.MessageChannel;
+import persistence.json.net.QueryPage;
+import persistence.json.net.ReportBatch;
+import persistence.json.net.ServerStats;
+
+/**
+ * A lightweight router in front of the shards of a sharded deployment, each of them a ThirstyServer started with
+ * -Dthirsty.shard=index/count. Clients connect to the router like to a single server, and every client connection
+ * gets its own connection to each shard: saves and deletes of a water report go to the shard owning its location
+ * (see ShardMap), queries to the shards owning the queried region, and everything else, like users and logins,
+ * to all of them. The answers, pushes and snapshots of the shards are merged into one stream for the client.
+ * The router keeps no reports, so the reports only have to fit on the heaps of all shards together
+ *
+ * @author tybrown
+ */
+public class ShardRouter {
+
+    public static final int PORT = 9990;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long SESSION_IDLE_MINUTES = 30;
+
+    private ServerSocket serverSocket;
+    private ServerThreads threads;
+    private final List<InetSocketAddress> shards = new ArrayList<>();
+    private ShardMap shardMap;
+    //only used for its json, the router stores nothing
+    private final PersistentJsonInterface json = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
+    //router session -> the sessions on each shard, so a client can resume through any connection
+    private final Map<String, RoutedSession> sessions = new ConcurrentHashMap<>();
+    private long sessionIdleNanos;
+
+    public static void main(String[] args) {
+        new ShardRouter().doMain(args);
+    }
+
+    public void doMain(String[] args) {
+        //-Dthirsty.shards=host:port,host:port,... in the order of the shard indices
+        String list = System.getProperty("thirsty.shards");
+        if (list == null) {
+            Debug.fatal("The router needs -Dthirsty.shards=host:port,host:port,... in shard order");
+            System.exit(1);
+        }
+        for (String shard : list.split(",")) {
+            int colon = shard.lastIndexOf(':');
+            shards.add(colon < 0 ? new InetSocketAddress(shard.trim(), ThirstyServer.PORT)
+                    : new InetSocketAddress(shard.substring(0, colon).trim(), Integer.parseInt(shard.substring(colon + 1).trim())));
+        }
+        shardMap = new ShardMap(shards.size());
+        sessionIdleNanos = TimeUnit.MINUTES.toNanos(Long.getLong("thirsty.sessionIdleMinutes", SESSION_IDLE_MINUTES));
+        ServerThreads.Mode mode = ServerThreads.Mode.valueOf(System.getProperty("thirsty.threads", "platform").toUpperCase());
+        try {
+            threads = new ServerThreads(mode);
+        } catch (UnsupportedOperationException e) {
+            Debug.fatal("%s", e.getMessage());
+            System.exit(1);
+        }
+        try {
+            serverSocket = new ServerSocket(Integer.getInteger("thirsty.port", PORT));
+            Debug.log("Routing TCP port %d to %d shards: %s", serverSocket.getLocalPort(), shards.size(), shards);
+        } catch (IOException e) {
+            Debug.fatal("Failed to create new TCP ServerSocket! Reason: \"%s\"", e.toString());
+            System.exit(1);
+        }
+        threads.start("router", this::accept);
+    }
+
+    private void accept() {
+        int routeCount = 0;
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket sock = serverSocket.accept();
+                threads.start("route-" + (++routeCount), new Route(sock));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Debug.error("Failed to accept new connection on socket! Reason: \"%s\"", e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the sessions which have been idle for longer than the shards keep theirs
+     * @param now The current System.nanoTime()
+     */
+    private void pruneSessions(long now) {
+        for (Iterator<RoutedSession> it = sessions.values().iterator(); it.hasNext();) {
+            if (now - it.next().lastUsed > sessionIdleNanos) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Sorts merged query results and cuts them where the shards' pages stop being complete
+     * @param <T> The type of the results
+     * @param items The results of all shards, sorted and cut in place
+     * @param cursor The cursor of a result, see ReportQuery
+     * @param cutoff The smallest next cursor of the shards which have more, Long.MAX_VALUE if none has
+     * @param pageSize The most results to keep
+     * @return The cursor of the next page, 0 if this is the last one
+     */
+    public static <T> long cut(List<T> items, ToLongFunction<T> cursor, long cutoff, int pageSize) {
+        items.sort(Comparator.comparingLong(cursor));
+        //a shard which has more only sent the results up to its cursor, so nothing after it is complete
+        int end = 0;
+        while (end < items.size() && cursor.applyAsLong(items.get(end)) <= cutoff) {
+            end++;
+        }
+        boolean more = end < items.size() || cutoff != Long.MAX_VALUE;
+        end = Math.min(end, Math.max(1, pageSize));
+        more |= end < items.size();
+        items.subList(end, items.size()).clear();
+        return (more && !items.isEmpty() ? cursor.applyAsLong(items.get(items.size() - 1)) : 0);
+    }
+
+    private static class RoutedSession {
+        private final String[] shardSessions;
+        private volatile long lastUsed;
+
+        private RoutedSession(String[] shardSessions, long now) {
+            this.shardSessions = shardSessions;
+            this.lastUsed = now;
+        }
+    }
+
+    /**
+     * One client connection and its connections to the shards. Closing any of them closes all of them,
+     * and the client reconnects and resumes its session as it would with a single server
+     */
+    private class Route implements Runnable {
+        private final Socket sock;
+        private MessageChannel client;
+        private ShardLink[] links;
+        private final Map<Long, Gather> gathers = new ConcurrentHashMap<>();
+        private volatile String[] shardSessions;
+        private String session;
+        private volatile boolean closed = false;
+        //pushes are held back until the login is answered, see authenticate()
+        private boolean holding = false;
+        private final List<Command> held = new ArrayList<>();
+        //the shards' snapshots are sent on as one, see snapshotChunk()
+        private int snapshotChunk = 0;
+        private int snapshotsLeft = 0;
+
+        private Route(Socket sock) {
+            this.sock = sock;
+        }
+
+        @Override
+        public void run() {
+            try {
+                client = new MessageChannel(sock, json);
+                links = new ShardLink[shards.size()];
+                for (int i = 0; i < links.length; i++) {
+                    links[i] = new ShardLink(i);
+                }
+                for (ShardLink link : links) {
+                    threads.start("route-shard-" + link.shard, link);
+                }
+                Command c;
+                while ((c = client.receiveCommand()) != null) {
+                    route(c);
+                }
+            } catch (IOException e) {
+                Debug.debug("Route closed: %s", e.toString());
+            } finally {
+                close();
+            }
+        }
+
+        private void route(Command c) throws IOException {
+            switch (c.getCommand()) {
+                case HEARTBEAT:
+                    if (c.isResponse()) {
+                        //shard 0 asked, see received()
+                        forward(0, c);
+                    } else {
+                        toClient(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(c));
+                    }
+                    break;
+                case AUTHENTICATE:
+                    authenticate(c);
+                    break;
+                case SUBSCRIBE:
+                    //no answer; shards owning nothing in the region just won't push anything
+                    for (int i = 0; i < links.length; i++) {
+                        forward(i, c);
+                    }
+                    break;
+                case QUERY_WATER_REPORTS:
+                case QUERY_QUALITY_REPORTS:
+                    ReportQuery query = json.readPayload(c, ReportQuery.class);
+                    scatter(c, shardMap.shardsFor(query == null ? null : query.getRegion()), this::mergeQuery);
+                    break;
+                case SAVE_WATER_REPORT:
+                case DELETE_WATER_REPORT:
+                    WaterReport wr = json.readPayload(c, WaterReport.class);
+                    forward(wr == null ? 0 : shardMap.shardOf(wr.getLatitude(), wr.getLongitude()), c);
+                    break;
+                case SAVE_QUALITY_REPORT:
+                    //only the shard with the parent report can save it, the others refuse
+                    scatter(c, allShards(), this::anySucceeded);
+                    break;
+                case ADMIN_STATS:
+                    scatter(c, allShards(), this::sumStats);
+                    break;
+                case DEAUTHENTICATE:
+                    scatter(c, allShards(), g -> {
+                        Command resp = allSucceeded(g);
+                        if (resp.isSuccessful() && session != null) {
+                            sessions.remove(session);
+                            shardSessions = null;
+                        }
+                        return (resp);
+                    });
+                    break;
+                default:
+                    //users and credentials live on every shard
+                    scatter(c, allShards(), this::allSucceeded);
+                    break;
+            }
+        }
+
+        /**
+         * Logs the client in on every shard, resuming the shard sessions if it sends the router session.
+         * Always asks for full snapshots, since the change logs of the shards don't add up to one sequence
+         * @param c The client's AUTHENTICATE
+         * @throws IOException If there was a problem with a socket
+         */
+        private void authenticate(Command c) throws IOException {
+            long now = System.nanoTime();
+            RoutedSession resumed = c.getSession() == null ? null : sessions.get(c.getSession());
+            if (resumed == null && json.readPayload(c, Credential.class) == null) {
+                toClient(new Command(Command.CommandType.AUTHENTICATE, null, null, true, false,
+                        "Session expired, please log in again!").respondingTo(c));
+                return;
+            }
+            if (resumed != null) {
+                resumed.lastUsed = now;
+            }
+            boolean binary = c.getEncoding() == Command.Encoding.BINARY;
+            boolean frames = c.isFrameCompression();
+            Integer clientVersion = c.getSchemaVersion();
+            c.setEncoding(Command.Encoding.BINARY);
+            c.setSchemaVersion(BinaryCodec.SCHEMA_VERSION);
+            c.setFrameCompression(true);
+            c.setEpoch(0);
+            c.setSequence(0);
+            synchronized (this) {
+                holding = true;
+                snapshotChunk = 0;
+                snapshotsLeft = links.length;
+            }
+            Gather g = new Gather(c, allShards(), gg -> {
+                loggedIn(gg, c.getSession(), binary, clientVersion, frames);
+                return (null);
+            });
+            gathers.put(c.getRequestId(), g);
+            for (int i = 0; i < links.length; i++) {
+                c.setSession(resumed == null ? null : resumed.shardSessions[i]);
+                links[i].send(c);
+            }
+            if (sessions.size() > 1000) {
+                pruneSessions(now);
+            }
+        }
+
+        /**
+         * Answers the client's AUTHENTICATE once every shard has, then sends on the pushes held back meanwhile
+         * @param g The gathered answers of the shards
+         * @param resumedSession The router session the client resumed, null if it sent a credential
+         * @param binary true if the client asked for the binary encoding
+         * @param clientVersion The newest binary schema version the client decodes, null if it didn't say
+         * @param frames true if the client can receive compressed frames
+         */
+        private void loggedIn(Gather g, String resumedSession, boolean binary, Integer clientVersion, boolean frames) {
+            Command resp = allSucceeded(g);
+            Command out;
+            if (resp.isSuccessful()) {
+                String[] ss = new String[links.length];
+                for (int i = 0; i < ss.length; i++) {
+                    ss[i] = g.responses[i].getSession();
+                }
+                //the first shard's session is unique enough to name the routed one
+                session = ss[0];
+                shardSessions = ss;
+                sessions.put(session, new RoutedSession(ss, System.nanoTime()));
+                out = new Command(Command.CommandType.AUTHENTICATE, resp.getData(), null, true, true, null).respondingTo(g.request);
+                out.setPayload(resp.getPayload());
+                out.setSession(session);
+                out.setEncoding(binary ? Command.Encoding.BINARY : null);
+                out.setSchemaVersion(binary ? BinaryCodec.SCHEMA_VERSION : null);
+                out.setFrameCompression(frames);
+            } else {
+                if (resumedSession != null) {
+                    sessions.remove(resumedSession);
+                }
+                out = resp;
+                out.setSession(null);
+            }
+            try {
+                synchronized (this) {
+                    //the client still reads this response in the old encoding; everything after it is in the new one
+                    client.sendCommand(out);
+                    if (out.getEncoding() != null) {
+                        client.setEncoding(out.getEncoding());
+                        client.setSchemaVersion(clientVersion);
+                    }
+                    client.setFrameCompression(out.isFrameCompression());
+                    holding = false;
+                    for (Command c : held) {
+                        client.sendCommand(c);
+                    }
+                    held.clear();
+                }
+            } catch (IOException e) {
+                Debug.debug("Failed to answer the login: %s", e.toString());
+                close();
+            }
+        }
+
+        /**
+         * Sends a command to some shards and answers the client once all of them have answered
+         * @param c The command
+         * @param targets The indices of the shards
+         * @param combine Makes the answer for the client, or sends it itself and returns null
+         * @throws IOException If there was a problem with a socket
+         */
+        private void scatter(Command c, Collection<Integer> targets, Function<Gather, Command> combine) throws IOException {
+            if (targets.size() == 1) {
+                //answered straight through by received()
+                forward(targets.iterator().next(), c);
+                return;
+            }
+            gathers.put(c.getRequestId(), new Gather(c, targets, combine));
+            for (Integer i : targets) {
+                forward(i, c);
+            }
+        }
+
+        private void forward(int shard, Command c) throws IOException {
+            String[] ss = shardSessions;
+            c.setSession(ss == null ? null : ss[shard]);
+            links[shard].send(c);
+        }
+
+        private List<Integer> allShards() {
+            List<Integer> res = new ArrayList<>(links.length);
+            for (int i = 0; i < links.length; i++) {
+                res.add(i);
+            }
+            return (res);
+        }
+
+        /**
+         * Handles what a shard sent
+         * @param shard The index of the shard
+         * @param c The command
+         * @throws IOException If there was a problem with a socket
+         */
+        private void received(int shard, Command c) throws IOException {
+            if (c.getCommand() == Command.CommandType.HEARTBEAT && !c.isResponse()) {
+                if (shard == 0) {
+                    //the client answers, so the first shard notices when it's gone and the route closes
+                    toClient(c);
+                } else {
+                    links[shard].send(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(c));
+                }
+            } else if (c.isResponse()) {
+                if (c.getCommand() == Command.CommandType.AUTHENTICATE && c.isSuccessful()) {
+                    links[shard].loggedIn(c);
+                }
+                Gather g = gathers.get(c.getRequestId());
+                if (g == null) {
+                    toClient(unsequenced(c));
+                } else if (g.add(shard, c)) {
+                    gathers.remove(c.getRequestId());
+                    Command resp = g.combine.apply(g);
+                    if (resp != null) {
+                        toClient(resp);
+                    }
+                }
+            } else {
+                switch (c.getCommand()) {
+                    case LOAD_SNAPSHOT:
+                        snapshotChunk(c);
+                        break;
+                    case LOAD_WATER_REPORT:
+                    case LOAD_QUALITY_REPORT:
+                    case DELETE_WATER_REPORT:
+                    case LOAD_REPORT_BATCH:
+                        toClient(unsequenced(c));
+                        break;
+                    default:
+                        //every shard sends the same user changes
+                        if (shard == 0) {
+                            toClient(c);
+                        }
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Sends on a chunk of a shard's snapshot as the next chunk of one big snapshot, which ends with the
+         * last chunk of the last shard
+         * @param c The LOAD_SNAPSHOT
+         * @throws IOException If there was a problem with the client's socket
+         */
+        private synchronized void snapshotChunk(Command c) throws IOException {
+            ReportBatch batch = json.readPayload(c, ReportBatch.class);
+            if (batch == null) {
+                return;
+            }
+            boolean last = batch.isLast() && --snapshotsLeft == 0;
+            Command out = new Command(Command.CommandType.LOAD_SNAPSHOT, null, null);
+            out.setPayload(new ReportBatch(snapshotChunk++, last, batch.getReports(), false, batch.getDeleted()));
+            toClient(out);
+        }
+
+        private synchronized void toClient(Command c) throws IOException {
+            if (holding && !c.isResponse()) {
+                held.add(c);
+            } else {
+                client.sendCommand(c);
+            }
+        }
+
+        /**
+         * Takes the shard's change log position off a command; it means nothing next to the other shards',
+         * so the client always asks for a full snapshot after a reconnect
+         * @param c The command
+         * @return The command
+         */
+        private Command unsequenced(Command c) {
+            c.setEpoch(0);
+            c.setSequence(0);
+            return (c);
+        }
+
+        private Command allSucceeded(Gather g) {
+            for (Command c : g.responses()) {
+                if (!c.isSuccessful()) {
+                    return (unsequenced(c));
+                }
+            }
+            return (unsequenced(g.responses().get(0)));
+        }
+
+        private Command anySucceeded(Gather g) {
+            for (Command c : g.responses()) {
+                if (c.isSuccessful()) {
+                    return (unsequenced(c));
+                }
+            }
+            return (unsequenced(g.responses().get(0)));
+        }
+
+        /**
+         * Adds up the stats of every shard; if any shard refused, so does the router
+         * @param g The gathered answers
+         * @return The answer for the client
+         */
+        private Command sumStats(Gather g) {
+            ServerStats total = new ServerStats();
+            for (Command c : g.responses()) {
+                ServerStats stats = c.isSuccessful() ? json.readPayload(c, ServerStats.class) : null;
+                if (stats == null) {
+                    return (unsequenced(c));
+                }
+                total.add(stats);
+            }
+            return (new Command(Command.CommandType.ADMIN_STATS, json.toJson(total), null, true, true, null).respondingTo(g.request));
+        }
+
+        /**
+         * Merges the pages the shards answered a query with into one page, in cursor order
+         * @param g The gathered answers
+         * @return The answer for the client
+         */
+        private Command mergeQuery(Gather g) {
+            List<WaterReport> wrs = new ArrayList<>();
+            List<QualityReport> qrs = new ArrayList<>();
+            long cutoff = Long.MAX_VALUE;
+            int pageSize = 0;
+            for (Command c : g.responses()) {
+                if (!c.isSuccessful()) {
+                    return (c);
+                }
+                QueryPage page = json.readPayload(c, QueryPage.class);
+                if (page == null) {
+                    continue;
+                }
+                wrs.addAll(page.getWaterReports());
+                qrs.addAll(page.getQualityReports());
+                pageSize = Math.max(pageSize, page.getWaterReports().size() + page.getQualityReports().size());
+                if (page.hasMore()) {
+                    cutoff = Math.min(cutoff, page.getNextCursor());
+                }
+            }
+            long next = g.request.getCommand() == Command.CommandType.QUERY_WATER_REPORTS
+                    ? cut(wrs, WaterReport::getReportNum, cutoff, pageSize)
+                    : cut(qrs, ReportManager::qualityCursor, cutoff, pageSize);
+            Command resp = new Command(g.request.getCommand(), null, null, true, true, null).respondingTo(g.request);
+            resp.setPayload(new QueryPage(wrs, qrs, next));
+            return (resp);
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                sock.close();
+            } catch (IOException e) {
+            }
+            if (links != null) {
+                for (ShardLink link : links) {
+                    if (link != null) {
+                        link.close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * The answers of the shards to one command of the client
+         */
+        private class Gather {
+            private final Command request;
+            private final Function<Gather, Command> combine;
+            private final Command[] responses;
+            private int remaining;
+
+            private Gather(Command request, Collection<Integer> targets, Function<Gather, Command> combine) {
+                this.request = request;
+                this.combine = combine;
+                this.responses = new Command[links.length];
+                this.remaining = targets.size();
+            }
+
+            /**
+             * Adds a shard's answer
+             * @param shard The index of the shard
+             * @param c The answer
+             * @return true if it was the last one missing
+             */
+            private synchronized boolean add(int shard, Command c) {
+                responses[shard] = c;
+                return (--remaining == 0);
+            }
+
+            private synchronized List<Command> responses() {
+                List<Command> res = new ArrayList<>();
+                for (Command c : responses) {
+                    if (c != null) {
+                        res.add(c);
+                    }
+                }
+                return (res);
+            }
+        }
+
+        /**
+         * The route's connection to one shard
+         */
+        private class ShardLink implements Runnable {
+            private final int shard;
+            private final Socket sock;
+            private final MessageChannel channel;
+
+            private ShardLink(int shard) throws IOException {
+                this.shard = shard;
+                this.sock = new Socket();
+                sock.connect(shards.get(shard), CONNECT_TIMEOUT_MS);
+                this.channel = new MessageChannel(sock, json);
+            }
+
+            @Override
+            public void run() {
+                try {
+                    Command c;
+                    while ((c = channel.receiveCommand()) != null) {
+                        received(shard, c);
+                    }
+                } catch (IOException e) {
+                    if (!closed) {
+                        Debug.debug("Lost shard %d: %s", shard, e.toString());
+                    }
+                } finally {
+                    Route.this.close();
+                }
+            }
+
+            private synchronized void send(Command c) throws IOException {
+                channel.sendCommand(c);
+            }
+
+            /**
+             * Switches to what the shard agreed to in its AUTHENTICATE answer
+             * @param resp The answer
+             */
+            private synchronized void loggedIn(Command resp) {
+                if (resp.getEncoding() != null) {
+                    channel.setEncoding(resp.getEncoding());
+                    channel.setSchemaVersion(resp.getSchemaVersion());
+                }
+                channel.setFrameCompression(resp.isFrameCompression());
+            }
+
+            private void close() {
+                try {
+                    sock.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import model.Region;
+
+/**
+ * Spatial index of which subscribers are interested in which part of the map.
+ * The world is cut into a grid of CELL_DEGREES sized cells and each subscriber is filed under every cell its region touches,
+ * so finding the subscribers of a location only looks at the subscribers near it.
+ * Subscribers without a region get everything
+ *
+ * @param <T> The type of the subscribers
+ * @author tybrown
+ */
+public class SubscriptionIndex<T> {
+
+    public static final double CELL_DEGREES = 1.0;
+    //a region spanning more cells than this is cheaper to treat as "everything"
+    private static final int MAX_CELLS = 4096;
+    private static final int LNG_CELLS = (int) Math.ceil(360 / CELL_DEGREES);
+
+    private final Set<T> everywhere = new HashSet<>();
+    private final Map<T, Region> regions = new HashMap<>();
+    private final Map<Long, Set<T>> cells = new HashMap<>();
+
+    /**
+     * Adds a subscriber which wants everything
+     * @param subscriber The subscriber to add
+     */
+    public synchronized void add(T subscriber) {
+        subscribe(subscriber, null);
+    }
+
+    /**
+     * Sets the region a subscriber is interested in, replacing its previous one
+     * @param subscriber The subscriber
+     * @param region The region, or null for everything
+     */
+    public synchronized void subscribe(T subscriber, Region region) {
+        remove(subscriber);
+        List<Long> keys = region == null ? null : cellKeys(region);
+        if (keys == null) {
+            everywhere.add(subscriber);
+            return;
+        }
+        regions.put(subscriber, region);
+        for (Long key : keys) {
+            cells.computeIfAbsent(key, k -> new HashSet<>()).add(subscriber);
+        }
+    }
+
+    /**
+     * Removes a subscriber completely
+     * @param subscriber The subscriber to remove
+     */
+    public synchronized void remove(T subscriber) {
+        everywhere.remove(subscriber);
+        Region region = regions.remove(subscriber);
+        if (region == null) {
+            return;
+        }
+        for (Long key : cellKeys(region)) {
+            Set<T> cell = cells.get(key);
+            if (cell != null) {
+                cell.remove(subscriber);
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets every subscriber interested in a location
+     * @param lat The latitude of the location
+     * @param lng The longitude of the location
+     * @return A copy of the interested subscribers, safe to iterate while subscriptions change
+     */
+    public synchronized Collection<T> interestedIn(double lat, double lng) {
+        List<T> res = new ArrayList<>(everywhere);
+        Set<T> cell = cells.get(cellKey(latCell(lat), lngCell(lng)));
+        if (cell != null) {
+            for (T subscriber : cell) {
+                //the cell is coarser than the region, so check the region itself
+                if (regions.get(subscriber).contains(lat, lng)) {
+                    res.add(subscriber);
+                }
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Gets the number of subscribers, scoped or not
+     * @return the number of subscribers
+     */
+    public synchronized int size() {
+        return (everywhere.size() + regions.size());
+    }
+
+    private static List<Long> cellKeys(Region region) {
+        int south = latCell(region.getSouth());
+        int north = latCell(region.getNorth());
+        int west = lngCell(region.getWest());
+        int east = lngCell(region.getEast());
+        int lngSpan = ((east - west + LNG_CELLS) % LNG_CELLS) + 1;
+        if (region.crossesAntimeridian() && east == west) {
+            lngSpan = LNG_CELLS;
+        }
+        long count = (long) (north - south + 1) * lngSpan;
+        if (north < south || count > MAX_CELLS) {
+            return (null);
+        }
+        List<Long> res = new ArrayList<>((int) count);
+        for (int lat = south; lat <= north; lat++) {
+            for (int i = 0; i < lngSpan; i++) {
+                res.add(cellKey(lat, (west + i) % LNG_CELLS));
+            }
+        }
+        return (res);
+    }
+
+    private static int latCell(double lat) {
+        return ((int) Math.floor((Math.max(-90, Math.min(90, lat)) + 90) / CELL_DEGREES));
+    }
+
+    private static int lngCell(double lng) {
+        double normalized = ((lng + 180) % 360 + 360) % 360;
+        return ((int) Math.floor(normalized / CELL_DEGREES) % LNG_CELLS);
+    }
+
+    private static long cellKey(int latCell, int lngCell) {
+        return (((long) latCell << 32) | lngCell);
+    }
+}
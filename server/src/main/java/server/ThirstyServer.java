@@ -0,0 +1,1892 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package server;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import lib.Debug;
+import lib.FlightEvents;
+import lib.Histogram;
+import lib.Metrics;
+import model.Credential;
+import model.QualityReport;
+import model.Region;
+import model.ReportManager;
+import model.ReportQuery;
+import model.User;
+import model.UserLevel;
+import model.UserManager;
+import model.WaterReport;
+import persistence.PersistenceInterface;
+import persistence.json.PersistentJsonFile;
+import persistence.json.PersistentJsonInterface;
+import persistence.json.net.BinaryCodec;
+import persistence.json.net.Command;
+import persistence.json.net.CompressedData;
+import persistence.json.net.MessageChannel;
+import persistence.json.net.QueryPage;
+import persistence.json.net.ReportBatch;
+import persistence.json.net.ServerStats;
+
+/**
+ *
+ * @author tybrown
+ */
+public class ThirstyServer {
+
+    public static final int PORT = 9988;
+    public static final String DB_PATH = PersistentJsonFile.DEFAULT_PATH;
+    private static final int SNAPSHOT_CHUNK_SIZE = 500;
+    private static final int QUERY_PAGE_SIZE = 100;
+    private static final int CHANGE_LOG_CAPACITY = 10000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+    private static final long PUSH_WINDOW_MS = 50;
+    private static final long SESSION_IDLE_MINUTES = 30;
+    private static final long HEARTBEAT_SECONDS = 20;
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+    private static final int COMMAND_QUEUE_CAPACITY = 10000;
+    //how long a client waits for room in the full command queue before it's told the server is busy
+    private static final long ADMIT_WAIT_MS = 500;
+    //waiting for room is done in slices this long, so shutdown() never has to wait for a full queue, see offer()
+    private static final long ADMIT_SLICE_MS = 50;
+    private static final long BUSY_RETRY_MS = 1000;
+    //saves and deletes; the burst lets an offline client send its queued writes at once
+    private static final double CONNECTION_SAVES_PER_SECOND = 10;
+    private static final double USER_SAVES_PER_SECOND = 20;
+    private static final double SAVE_BURST_SECONDS = 5;
+    //local only, see AdminPort
+    private static final int ADMIN_PORT = 9987;
+    //the default of 50 resets connections when thousands of clients connect at once, like after a restart
+    private static final int ACCEPT_BACKLOG = 1024;
+    private static final long METRICS_LOG_SECONDS = 60;
+
+    private ServerSocket serverSocket;
+
+    private BlockingQueue<WorkerCommand> inputCommands;
+    private ChangeLog changeLog;
+    private SubscriptionIndex<Worker> subscriptions;
+    private PushCoalescer<Worker> pushes;
+    private SessionStore sessions;
+    private ConnectionReaper<Worker> liveness;
+    private double connectionSaveRate;
+    private double userSaveRate;
+    private final Map<String, TokenBucket> userSaveLimits = new ConcurrentHashMap<>();
+    //see shutdown()
+    private final ReentrantReadWriteLock admission = new ReentrantReadWriteLock();
+    private volatile boolean draining = false;
+    private final AtomicBoolean shuttingDown = new AtomicBoolean();
+    private volatile int drainedPushes = 0;
+    //set by the command thread when it gets to shutdown()'s drain marker, so a command thread which died doesn't count
+    private volatile boolean drained = false;
+    private ConnectionHandler handler;
+    private Thread handlerThread;
+    private ServerThreads threads;
+    private PersistentJsonFile db;
+    //followers connect with this, see addReplica()
+    private String replicationKey;
+    private final Set<Worker> replicas = Collections.synchronizedSet(new HashSet<>());
+    //only on a follower
+    private LeaderLink leaderLink;
+    //only on a shard, see ShardRouter
+    private ShardMap shardMap;
+    private int shardIndex;
+    private ServerSocket adminSocket;
+    //by Command.CommandType ordinal: handled by the worker itself, and by the command thread
+    private final Histogram[] workerLatency = commandHistograms("worker.");
+    private final Histogram[] commandLatency = commandHistograms("command.");
+    private final Histogram queueWait = Metrics.histogram("command.queueWait");
+    private final Histogram deliverLatency = Metrics.histogram("push.deliver");
+    private final LongAdder pushesSent = Metrics.counter("push.sent");
+    private final LongAdder pushesFailed = Metrics.counter("push.failed");
+    private final LongAdder busyAnswers = Metrics.counter("command.busy");
+    private final long startedMillis = System.currentTimeMillis();
+
+    public static void main(String[] args) throws InterruptedException {
+        ThirstyServer server = new ThirstyServer();
+        server.doMain(args);
+        //virtual threads are daemons, so with -Dthirsty.threads=virtual the JVM would exit as soon as this returns
+        server.handlerThread.join();
+    }
+        
+    public void doMain(String[] args) {
+        //-Dthirsty.threads=virtual runs every connection, the command stage and broadcasts on virtual threads (JDK 21+)
+        ServerThreads.Mode mode = ServerThreads.Mode.valueOf(System.getProperty("thirsty.threads", "platform").toUpperCase());
+        try {
+            threads = new ServerThreads(mode);
+        } catch (UnsupportedOperationException e) {
+            Debug.fatal(ThirstyServer.class, "%s", e.getMessage());
+            System.exit(1);
+        }
+        Debug.log(ThirstyServer.class, "Running on %s threads", mode);
+        int port = Integer.getInteger("thirsty.port", PORT);
+        //-Dthirsty.leader=host:port runs this server as a read-only replica of that one; both need the same key
+        String leader = System.getProperty("thirsty.leader");
+        replicationKey = System.getProperty("thirsty.replicationKey");
+        if (leader != null && replicationKey == null) {
+            Debug.fatal(ThirstyServer.class, "A replica needs -Dthirsty.replicationKey, the same as its leader's");
+            System.exit(1);
+        }
+        //-Dthirsty.shard=index/count makes this one shard of a ShardRouter deployment, counting from 0
+        String shard = System.getProperty("thirsty.shard");
+        if (shard != null) {
+            try {
+                String[] parts = shard.split("/");
+                shardMap = new ShardMap(Integer.parseInt(parts[1]));
+                shardIndex = Integer.parseInt(parts[0]);
+            } catch (RuntimeException e) {
+                Debug.fatal(ThirstyServer.class, "Bad -Dthirsty.shard=%s, expected index/count like 0/3", shard);
+                System.exit(1);
+            }
+            Debug.log(ThirstyServer.class, "Serving shard %d of %d", shardIndex, shardMap.size());
+        }
+        //a replica keeps its own copy, so it can serve reads right away after a restart
+        String dbPath = System.getProperty("thirsty.dbPath", leader == null ? DB_PATH : DB_PATH + "replica-" + port);
+        dbPath = dbPath.endsWith("/") ? dbPath : dbPath + "/";
+        new File(dbPath).mkdirs();
+        try {
+            serverSocket = new ServerSocket(port, Integer.getInteger("thirsty.acceptBacklog", ACCEPT_BACKLOG));
+            Debug.log(ThirstyServer.class, "Listening for connections on TCP port %d...", serverSocket.getLocalPort());
+        } catch (IOException e) {
+            Debug.fatal(ThirstyServer.class, "Failed to create new TCP ServerSocket! Reason: \"%s\"", e.toString());
+            System.exit(1);
+        }
+
+        db = new PersistentJsonFile(dbPath);
+        handler = new ConnectionHandler(serverSocket, db);
+        handlerThread = threads.start("connection-handler", handler);
+        if (leader != null) {
+            int colon = leader.lastIndexOf(':');
+            leaderLink = colon < 0 ? new LeaderLink(leader, PORT)
+                    : new LeaderLink(leader.substring(0, colon), Integer.parseInt(leader.substring(colon + 1)));
+            threads.start("leader-link", leaderLink);
+        }
+        startMetrics(port);
+        //SIGTERM from a rolling restart, or ^C
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
+    }
+
+    private static Histogram[] commandHistograms(String prefix) {
+        Command.CommandType[] types = Command.CommandType.values();
+        Histogram[] res = new Histogram[types.length];
+        for (Command.CommandType type : types) {
+            res[type.ordinal()] = Metrics.histogram(prefix + type);
+        }
+        return (res);
+    }
+
+    /**
+     * Registers the gauges, opens the admin port and starts logging the metrics now and then
+     * @param port The port clients connect to. Only the default port gets an admin port without
+     *      -Dthirsty.adminPort, so servers sharing a machine don't fight over it
+     */
+    private void startMetrics(int port) {
+        Metrics.gauge("commands.queued", () -> inputCommands.size());
+        Metrics.gauge("connections", () -> handler.workers.size());
+        Metrics.gauge("connections.replicas", () -> replicas.size());
+        Metrics.gauge("connections.reaped", () -> liveness.reapedCount());
+        Metrics.gauge("changeLog.sequence", () -> changeLog.getSequence());
+        Metrics.gauge("threads", () -> threads.liveCount());
+        //-Dthirsty.adminPort=0 turns it off
+        int adminPort = Integer.getInteger("thirsty.adminPort", port == PORT ? ADMIN_PORT : 0);
+        if (adminPort > 0) {
+            try {
+                adminSocket = new ServerSocket(adminPort, 50, InetAddress.getLoopbackAddress());
+                threads.start("admin-port", new AdminPort(adminSocket));
+                Debug.log(ThirstyServer.class, "Serving metrics on localhost:%d", adminPort);
+            } catch (IOException e) {
+                Debug.error(ThirstyServer.class, "Failed to open the admin port %d: %s", adminPort, e.toString());
+            }
+        }
+        long period = Long.getLong("thirsty.metricsLogSeconds", METRICS_LOG_SECONDS);
+        if (period > 0) {
+            threads.start("metrics-log", () -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        TimeUnit.SECONDS.sleep(period);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    Debug.log(ThirstyServer.class, "Metrics:%n%s", Metrics.snapshot());
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes a metrics snapshot to every connection and closes it, like: nc localhost 9987.
+     * Only listens on the loopback address
+     */
+    private class AdminPort implements Runnable {
+        private final ServerSocket socket;
+
+        public AdminPort(ServerSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try (Socket sock = socket.accept()) {
+                    sock.getOutputStream().write(Metrics.snapshot().getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    if (!socket.isClosed()) {
+                        Debug.debug(AdminPort.class, "Admin connection failed: %s", e.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Shuts the server down without losing accepted writes: stops accepting connections, refuses new commands,
+     * lets the command thread finish the queued ones and send the held back pushes, then closes every connection
+     * and the database files. Gives up waiting for the drain after -Dthirsty.shutdownTimeoutMs
+     * @return true if every queued command was handled before the connections were closed
+     */
+    public boolean shutdown() {
+        return (handler != null && handler.shutdown());
+    }
+
+    private class ConnectionHandler implements Runnable {
+        private final ServerSocket serverSocket;
+        private CommandThread commandThread;
+        private Thread commandThreadHandle;
+        private Set<Worker> workers;
+        private int workerCount = 0;
+        private PersistentJsonInterface persist;
+
+        public ConnectionHandler(ServerSocket sock, PersistentJsonInterface persist) {
+            this.serverSocket = sock;
+            this.persist = persist;
+            this.workers = Collections.synchronizedSet(new HashSet<>());
+            //bounded, so a flood of commands slows its senders down instead of filling the heap
+            inputCommands = new LinkedBlockingQueue<>(Integer.getInteger("thirsty.commandQueueCapacity", COMMAND_QUEUE_CAPACITY));
+            //-Dthirsty.connectionSavesPerSecond=0 (or userSavesPerSecond) turns that limit off
+            connectionSaveRate = Double.parseDouble(System.getProperty("thirsty.connectionSavesPerSecond",
+                    Double.toString(CONNECTION_SAVES_PER_SECOND)));
+            userSaveRate = Double.parseDouble(System.getProperty("thirsty.userSavesPerSecond",
+                    Double.toString(USER_SAVES_PER_SECOND)));
+            changeLog = new ChangeLog(CHANGE_LOG_CAPACITY);
+            subscriptions = new SubscriptionIndex<>();
+            //-Dthirsty.pushWindowMs=0 pushes every change on its own
+            sessions = new SessionStore(TimeUnit.MINUTES.toNanos(Long.getLong("thirsty.sessionIdleMinutes", SESSION_IDLE_MINUTES)));
+            pushes = new PushCoalescer<>(TimeUnit.MILLISECONDS.toNanos(Long.getLong("thirsty.pushWindowMs", PUSH_WINDOW_MS)));
+            //-Dthirsty.idleTimeoutSeconds=0 keeps quiet connections open forever
+            long timeout = TimeUnit.SECONDS.toNanos(Long.getLong("thirsty.idleTimeoutSeconds", IDLE_TIMEOUT_SECONDS));
+            long heartbeat = TimeUnit.SECONDS.toNanos(Long.getLong("thirsty.heartbeatSeconds", HEARTBEAT_SECONDS));
+            liveness = new ConnectionReaper<>(Math.min(heartbeat, timeout), timeout);
+            this.commandThread = new CommandThread(persist, workers);
+            commandThreadHandle = threads.start("command-thread", commandThread);
+            if (timeout > 0) {
+                //often enough that a connection is pinged soon after going quiet, and reaped soon after its timeout
+                long period = Math.max(TimeUnit.SECONDS.toNanos(1), Math.min(heartbeat, timeout) / 2);
+                threads.start("connection-reaper", new ReaperThread(serverSocket, period));
+            }
+            UserManager.initialize(persist);
+            ReportManager.initialize(persist);
+            try {
+                persist.initialize();
+            } catch (IOException e) {
+                Debug.fatal(ConnectionHandler.class, "Failed to load the database! Reason: \"%s\"", e.toString());
+                System.exit(1);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Debug.debug(ConnectionHandler.class, "Spawning new worker...");
+                        Worker w = new Worker(serverSocket.accept(), ++workerCount, persist);
+                        workers.add(w);
+                        subscriptions.add(w);
+                        liveness.add(w, System.nanoTime());
+                        w.start();
+                    } catch (IOException e) {
+                        if (!serverSocket.isClosed()) {
+                            Debug.error(ConnectionHandler.class,
+                                    "Failed to accept new connection on socket! Reason: \"%s\"", e.toString());
+                        }
+                    }
+                }
+            } finally {
+                //nothing to do if the server socket was closed by shutdown() itself
+                shutdown();
+            }
+        }
+
+        /**
+         * See ThirstyServer.shutdown()
+         * @return true if the queue was drained
+         */
+        public boolean shutdown() {
+            if (!shuttingDown.compareAndSet(false, true)) {
+                return (drained);
+            }
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(Long.getLong("thirsty.shutdownTimeoutMs", SHUTDOWN_TIMEOUT_MS));
+            Debug.log(ConnectionHandler.class, "Shutting down...");
+            try {
+                if (!serverSocket.isClosed()) {
+                    serverSocket.close();
+                }
+            } catch (IOException e) {
+                Debug.error(ConnectionHandler.class, "Failed to close socket! Reason: \"%s\"", e.toString());
+            }
+            if (leaderLink != null) {
+                leaderLink.close();
+            }
+            try {
+                if (adminSocket != null) {
+                    adminSocket.close();
+                }
+            } catch (IOException e) {
+            }
+            //waits for workers which are putting a command in the queue right now; they hold the lock for one slice at most
+            try {
+                if (admission.writeLock().tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    try {
+                        draining = true;
+                    } finally {
+                        admission.writeLock().unlock();
+                    }
+                } else {
+                    draining = true;
+                    Debug.error(ConnectionHandler.class,
+                            "Timed out waiting for workers to finish queueing, commands may follow the drain marker");
+                }
+            } catch (InterruptedException e) {
+                draining = true;
+                Debug.error(ConnectionHandler.class, "Interrupted while waiting for workers to finish queueing");
+            }
+            int queuedAtStart = inputCommands.size();
+            try {
+                //goes in behind everything admitted; the command thread stops when it gets to it
+                if (inputCommands.offer(new WorkerCommand(null, null), deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    commandThreadHandle.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                }
+            } catch (InterruptedException e) {
+                Debug.error(ConnectionHandler.class, "Interrupted while draining the command queue");
+            }
+            int left = 0;
+            for (WorkerCommand wc : inputCommands) {
+                left += wc.getCommand() != null ? 1 : 0;
+            }
+            int connections = workers.size();
+            for (Worker w : new ArrayList<>(workers)) {
+                try {
+                    w.close();
+                } catch (IOException e) {
+                }
+            }
+            //stops whatever is still running, like the command thread if the drain took too long
+            threads.shutdown(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            try {
+                persist.terminate();
+            } catch (IOException e) {
+                Debug.error(ConnectionHandler.class, "Failed to close the database! Reason: \"%s\"", e.toString());
+            }
+            if (!drained) {
+                Debug.error(ConnectionHandler.class,
+                        "The command thread didn't get to the end of the queue before the shutdown timeout, "
+                        + "%d queued commands were not handled", left);
+            }
+            Debug.log(ConnectionHandler.class,
+                    "Shut down in %d ms: handled %d queued commands, sent %d held back push batches, closed %d connections",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), queuedAtStart - left, drainedPushes, connections);
+            //Debug's own shutdown hook runs alongside this one, and may be done before these lines were logged
+            Debug.flush();
+            return (drained);
+        }
+
+        public void workerStopped(Worker w) {
+            workers.remove(w);
+        }
+
+    }
+
+    private class WorkerCommand {
+        private Worker worker;
+        private Command command;
+        //a response from the leader to hand to the worker
+        private boolean relay;
+        private final long enqueued = System.nanoTime();
+
+        public WorkerCommand(Worker worker, Command command) {
+            this(worker, command, false);
+        }
+
+        public WorkerCommand(Worker worker, Command command, boolean relay) {
+            this.worker = worker;
+            this.command = command;
+            this.relay = relay;
+        }
+
+        public boolean isRelay() {
+            return relay;
+        }
+
+        public Worker getWorker() {
+            return worker;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+    }
+
+    /**
+     * Sends heartbeats to quiet connections and closes the ones which stopped answering
+     */
+    private class ReaperThread implements Runnable {
+        private final ServerSocket serverSocket;
+        private final long periodNanos;
+        private Thread pinger;
+
+        public ReaperThread(ServerSocket serverSocket, long periodNanos) {
+            this.serverSocket = serverSocket;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(periodNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ConnectionReaper.Sweep<Worker> sweep = liveness.sweep(System.nanoTime());
+                //closing first also unblocks a heartbeat stuck writing to one of them
+                for (Worker w : sweep.getDead()) {
+                    Debug.debug(ReaperThread.class, "Client %d stopped answering, closing it", w.id);
+                    try {
+                        w.close();
+                    } catch (IOException e) {
+                    }
+                }
+                if (!sweep.getDead().isEmpty()) {
+                    Debug.log(ReaperThread.class, "Reaped %d dead connections (%d live, %d reaped since start)",
+                            sweep.getDead().size(), liveness.liveCount(), liveness.reapedCount());
+                }
+                //sent from another thread: writing to a half-open connection can block once its buffer is full
+                if (!sweep.getQuiet().isEmpty() && (pinger == null || !pinger.isAlive())) {
+                    List<Worker> quiet = sweep.getQuiet();
+                    pinger = threads.start("heartbeat", () -> {
+                        for (Worker w : quiet) {
+                            try {
+                                w.sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null));
+                            } catch (IOException e) {
+                                Debug.debug(ReaperThread.class, "Heartbeat to client %d failed: %s", w.id, e.toString());
+                                try {
+                                    w.close();
+                                } catch (IOException ee) {
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * A follower's connection to its leader. Asks for everything changed since our copy, then hands the leader's
+     * changes to the command thread as they come, where they're applied, pushed and replicated further like any other.
+     * Writes of our clients are sent on to the leader, and its answers back to them after the change itself.
+     * Reconnects with backoff whenever the leader goes away
+     */
+    private class LeaderLink implements Runnable {
+        private static final long RECONNECT_MIN_MS = 1000;
+        private static final long RECONNECT_MAX_MS = 30000;
+
+        private final String host;
+        private final int port;
+        private volatile Socket sock;
+        private volatile MessageChannel channel;
+        private volatile boolean closed = false;
+        //set when our copy can't be trusted anymore, so the next connection asks for all of it
+        private volatile boolean fullResync = false;
+        private final AtomicLong nextRequestId = new AtomicLong();
+        private final Map<Long, Forwarded> forwarded = new ConcurrentHashMap<>();
+
+        public LeaderLink(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void run() {
+            long delay = RECONNECT_MIN_MS;
+            while (!closed) {
+                try {
+                    sock = new Socket(host, port);
+                    //the leader sends a heartbeat when it has nothing else to say
+                    sock.setSoTimeout((int) TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS + HEARTBEAT_SECONDS));
+                    MessageChannel ch = new MessageChannel(sock, db);
+                    Command req = new Command(Command.CommandType.REPLICATE, replicationKey, null);
+                    req.setEpoch(fullResync ? 0 : changeLog.getEpoch());
+                    req.setSequence(fullResync ? 0 : changeLog.getSequence());
+                    req.setEncoding(Command.Encoding.BINARY);
+                    req.setSchemaVersion(BinaryCodec.SCHEMA_VERSION);
+                    req.setFrameCompression(true);
+                    fullResync = false;
+                    ch.sendCommand(req);
+                    Command resp = ch.receiveCommand();
+                    if (resp == null || !resp.isSuccessful()) {
+                        throw (new IOException("The leader refused to replicate: " + (resp == null ? "closed" : resp.getMessage())));
+                    }
+                    if (resp.getEncoding() != null) {
+                        ch.setEncoding(resp.getEncoding());
+                        ch.setSchemaVersion(resp.getSchemaVersion());
+                    }
+                    ch.setFrameCompression(resp.isFrameCompression());
+                    channel = ch;
+                    Debug.log(LeaderLink.class, "Replicating %s:%d from %d:%d", host, port, req.getEpoch(), req.getSequence());
+                    delay = RECONNECT_MIN_MS;
+                    Command c;
+                    while ((c = ch.receiveCommand()) != null) {
+                        received(c);
+                    }
+                    throw (new IOException("The leader closed the connection"));
+                } catch (IOException e) {
+                    if (!closed) {
+                        Debug.error(LeaderLink.class,
+                                "Lost the leader %s:%d, retrying in %d ms: %s", host, port, delay, e.toString());
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    channel = null;
+                    closeSocket();
+                    failForwarded();
+                }
+                try {
+                    Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delay = Math.min(delay * 2, RECONNECT_MAX_MS);
+            }
+        }
+
+        private void received(Command c) throws IOException, InterruptedException {
+            if (c.getCommand() == Command.CommandType.HEARTBEAT) {
+                if (!c.isResponse()) {
+                    channel.sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(c));
+                }
+            } else if (c.isResponse()) {
+                Forwarded f = forwarded.remove(c.getRequestId());
+                if (f != null) {
+                    c.setRequestId(f.requestId);
+                    inputCommands.put(new WorkerCommand(f.worker, c, true));
+                }
+            } else {
+                inputCommands.put(new WorkerCommand(null, c));
+            }
+        }
+
+        /**
+         * Sends a client's write on to the leader. The answer comes back through the command thread
+         * @param w The worker of the client
+         * @param command The write
+         * @throws IOException If there was a problem with the client's socket
+         */
+        public void forward(Worker w, Command command) throws IOException {
+            MessageChannel ch = channel;
+            long requestId = command.getRequestId();
+            if (ch == null) {
+                Command resp = new Command(command.getCommand(), null, null, true, false,
+                        "The main server can't be reached right now, try again later!").respondingTo(command);
+                resp.setRetryAfter(BUSY_RETRY_MS);
+                w.sendCommand(resp);
+                return;
+            }
+            long id = nextRequestId.incrementAndGet();
+            w.queued.incrementAndGet();
+            forwarded.put(id, new Forwarded(w, requestId));
+            command.setRequestId(id);
+            command.setSession(null);
+            try {
+                ch.sendCommand(command);
+            } catch (IOException e) {
+                //the reader notices too, and answers it like every other forwarded write
+                Debug.debug(LeaderLink.class, "Failed to forward a write to the leader: %s", e.toString());
+                closeSocket();
+            }
+        }
+
+        /**
+         * Drops the connection and asks for a full copy on the next one
+         */
+        public void resync() {
+            fullResync = true;
+            closeSocket();
+        }
+
+        public void close() {
+            closed = true;
+            closeSocket();
+        }
+
+        private void closeSocket() {
+            try {
+                if (sock != null) {
+                    sock.close();
+                }
+            } catch (IOException e) {
+            }
+        }
+
+        /**
+         * Answers every write which was sent on, but not answered before the connection broke
+         */
+        private void failForwarded() {
+            for (Long id : new ArrayList<>(forwarded.keySet())) {
+                Forwarded f = forwarded.remove(id);
+                if (f == null) {
+                    continue;
+                }
+                //it may or may not have been applied; no retry delay, so the client doesn't blindly send it again
+                Command resp = new Command(Command.CommandType.UNKNOWN, null, null, true, false,
+                        "Lost the connection to the main server, the change may not have been saved!");
+                resp.setRequestId(f.requestId);
+                try {
+                    inputCommands.put(new WorkerCommand(f.worker, resp, true));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A write sent on to the leader
+     */
+    private static class Forwarded {
+        private final Worker worker;
+        private final long requestId;
+
+        private Forwarded(Worker worker, long requestId) {
+            this.worker = worker;
+            this.requestId = requestId;
+        }
+    }
+
+    private class CommandThread implements Runnable {
+        private PersistentJsonInterface persist;
+        private Set<Worker> workers;
+        //while a copy from the leader comes in: the reports it changed, and the ones it didn't mention yet
+        private List<WaterReport> syncing;
+        private Set<Integer> stale;
+
+        public CommandThread(PersistentJsonInterface persist, Set<Worker> workers) {
+            this.persist = persist;
+            this.workers = workers;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Debug.debug(CommandThread.class, "Taking from inputCommands...");
+                    //wake up in time to send the held back pushes
+                    WorkerCommand commandW = inputCommands.poll(pushes.nanosUntilDue(System.nanoTime()), TimeUnit.NANOSECONDS);
+                    flushPushes(pushes.takeDue(System.nanoTime()));
+                    if (commandW == null) {
+                        continue;
+                    }
+                    if (commandW.getCommand() == null) {
+                        //shutdown()'s drain marker: everything admitted before it is done, so send what's held back and stop
+                        drainedPushes = flushPushes(pushes.takeAll());
+                        drained = true;
+                        Debug.debug(CommandThread.class, "Command queue drained");
+                        return;
+                    }
+                    Command commandIn = commandW.getCommand();
+                    if (commandW.isRelay()) {
+                        //the leader's answer to a write a client of ours made; the change itself was applied before it
+                        try {
+                            respond(commandW, commandIn);
+                        } finally {
+                            commandW.getWorker().commandDone();
+                        }
+                        continue;
+                    }
+                    handle(commandW);
+                } catch (InterruptedException e) {
+                    Debug.debug(CommandThread.class, "Interrupted: %s", e.toString());
+                    break;
+                } catch (RuntimeException e) {
+                    //handle() already answered; this is the pushes or a relay. either way, the next command must still run
+                    Debug.error(CommandThread.class, "Command thread failed: %s", e.toString());
+                }
+            }
+        }
+
+        /**
+         * Carries out a command and answers it. The client counts as done with it however that goes,
+         * so its queries don't wait behind a command which failed
+         * @param commandW The command
+         * @throws InterruptedException If interrupted while waiting for the pushes to be sent
+         */
+        private void handle(WorkerCommand commandW) throws InterruptedException {
+            Command commandIn = commandW.getCommand();
+            long started = System.nanoTime();
+            queueWait.record(started - commandW.enqueued);
+            FlightEvents.CommandRun event = new FlightEvents.CommandRun();
+            event.begin();
+            //a change the leader made, or part of the copy of its reports
+            boolean replicated = commandW.getWorker() == null;
+            try {
+                Debug.debug(CommandThread.class, "Got a command from inputCommands: %s", commandIn);
+                //got a message from a client. push the message out to all other clients
+                switch (commandIn.getCommand()) {
+                    case SAVE_USER:
+                        User newUser = persist.readPayload(commandIn, User.class);
+                        Debug.debug(CommandThread.class, "User wants to save a user: %s", newUser);
+                        if (newUser != null && replicated && isCurrent(UserManager.getUser(newUser.getUsername()), newUser)) {
+                            //copied again when reconnecting to the leader, but nothing changed
+                            break;
+                        }
+                        if (newUser != null) {
+                            newUser = persist.saveUser(newUser);
+                            String data = null;
+                            if (newUser != null) {
+                                data = persist.toJson(newUser);
+                                replicate(Command.CommandType.SAVE_USER, data, newUser, 0);
+                                respond(commandW, new Command(Command.CommandType.SAVE_USER, data, null, true, true, null).respondingTo(commandIn));
+                                Debug.debug(CommandThread.class,
+                                        "User saved! Now let's let all other clients connected know about this user...");
+                                //a copy, the accept thread keeps adding to it
+                                broadcast(new ArrayList<>(workers), Command.CommandType.LOAD_USER, data, newUser, 0);
+                            } else {
+                                respond(commandW, new Command(Command.CommandType.SAVE_USER, data, null, true, false, "Failed to save user!").respondingTo(commandIn));
+                            }
+                        }
+                        break;
+                    case SAVE_WATER_REPORT:
+                        WaterReport newReport = persist.readPayload(commandIn, WaterReport.class);
+                        Debug.debug(CommandThread.class, "User wants to save a water report: %s", newReport);
+                        if (newReport != null && !replicated && shardMap != null
+                                && shardMap.shardOf(newReport.getLatitude(), newReport.getLongitude()) != shardIndex) {
+                            //the router sent it to the wrong place, so the shards disagree on the count
+                            respond(commandW, new Command(Command.CommandType.SAVE_WATER_REPORT, null, null, true, false, "This report belongs on another shard!").respondingTo(commandIn));
+                            break;
+                        }
+                        if (newReport != null) {
+                            newReport = persist.saveWaterReport(newReport);
+                            String data = null;
+                            if (newReport != null) {
+                                long seq = record(commandW, newReport.getReportNum(), false);
+                                data = persist.toJson(newReport);
+                                replicate(Command.CommandType.SAVE_WATER_REPORT, data, newReport, seq);
+                                respond(commandW, sequenced(new Command(Command.CommandType.SAVE_WATER_REPORT, data, null, true, true, null).respondingTo(commandIn), seq));
+                                Debug.debug(CommandThread.class,
+                                        "Report saved! Now let's let all other clients connected know about this user...");
+                                pushReportChange(newReport, newReport.getReportNum(), false, Command.CommandType.LOAD_WATER_REPORT, data, newReport, seq);
+                            } else {
+                                respond(commandW, new Command(Command.CommandType.SAVE_WATER_REPORT, data, null, true, false, "Failed to save water report!").respondingTo(commandIn));
+                            }
+                        }
+                        break;
+                    case SAVE_QUALITY_REPORT:
+                        QualityReport newQualityReport = persist.readPayload(commandIn, QualityReport.class);
+                        Debug.debug(CommandThread.class, "User wants to save a quality report: %s", newQualityReport);
+                        if (newQualityReport != null) {
+                            newQualityReport = persist.saveQualityReport(newQualityReport);
+                            String data = null;
+                            if (newQualityReport != null) {
+                                //quality reports travel inside their water report, so the parent is what changed
+                                long seq = record(commandW, newQualityReport.getParentReportNum(), false);
+                                data = persist.toJson(newQualityReport);
+                                replicate(Command.CommandType.SAVE_QUALITY_REPORT, data, newQualityReport, seq);
+                                respond(commandW, sequenced(new Command(Command.CommandType.SAVE_QUALITY_REPORT, data, null, true, true, null).respondingTo(commandIn), seq));
+                                Debug.debug(CommandThread.class,
+                                        "Report saved! Now let's let all other clients connected know about this user...");
+                                WaterReport parent = ReportManager.filterWaterReportByNumber(newQualityReport.getParentReportNum());
+                                pushReportChange(parent, newQualityReport.getParentReportNum(), false, Command.CommandType.LOAD_QUALITY_REPORT, data, newQualityReport, seq);
+                            } else {
+                                respond(commandW, new Command(Command.CommandType.SAVE_QUALITY_REPORT, data, null, true, false, "Failed to save water report!").respondingTo(commandIn));
+                            }
+                        }
+                        break;
+                    case SAVE_CREDENTIAL:
+                        Credential newCredential = persist.readPayload(commandIn, Credential.class);
+                        Debug.debug(CommandThread.class, "User wants to save a credential: %s", newCredential);
+                        if (newCredential != null && replicated && db.hasCredential(newCredential)) {
+                            break;
+                        }
+                        if (newCredential != null) {
+                            persist.saveUserCredential(newCredential);
+                            Debug.debug(CommandThread.class, "Credential saved!");
+                            Worker w = commandW.getWorker();
+                            //the old password shouldn't keep anyone else logged in
+                            int revoked = sessions.revokeUser(newCredential.getUsername(), w == null ? null : w.getSession());
+                            Debug.debug(CommandThread.class,
+                                    "Revoked %d other sessions of %s", revoked, newCredential.getUsername());
+                            replicate(Command.CommandType.SAVE_CREDENTIAL, persist.toJson(newCredential), newCredential, 0);
+                            respond(commandW, new Command(Command.CommandType.SAVE_CREDENTIAL, null, null, true, true, null).respondingTo(commandIn));
+                        }
+                        break;
+                    case DELETE_USER:
+                        Debug.debug(CommandThread.class,
+                                "User wants to delete a user: %s", persist.readPayload(commandIn, User.class));
+                        //not supported yet, but answer so a client waiting on the request id isn't stuck forever
+                        respond(commandW, new Command(Command.CommandType.DELETE_USER, null, null, true, false, "Deleting users is not supported!").respondingTo(commandIn));
+                        break;
+                    case DELETE_WATER_REPORT:
+                        WaterReport deleteReport = persist.readPayload(commandIn, WaterReport.class);
+                        Debug.debug(CommandThread.class, "User wants to delete a water report: %s", deleteReport);
+                        if (deleteReport != null) {
+                            WaterReport existing = ReportManager.filterWaterReportByNumber(deleteReport.getReportNum());
+                            if (existing != null) {
+                                ReportManager.deleteWaterReport(existing);
+                                long seq = record(commandW, existing.getReportNum(), true);
+                                String data = persist.toJson(existing);
+                                replicate(Command.CommandType.DELETE_WATER_REPORT, data, existing, seq);
+                                respond(commandW, sequenced(new Command(Command.CommandType.DELETE_WATER_REPORT, null, null, true, true, null).respondingTo(commandIn), seq));
+                                pushReportChange(existing, existing.getReportNum(), true, Command.CommandType.DELETE_WATER_REPORT, data, existing, seq);
+                            } else {
+                                respond(commandW, new Command(Command.CommandType.DELETE_WATER_REPORT, null, null, true, false, "No such water report!").respondingTo(commandIn));
+                            }
+                        }
+                        break;
+                    case DELETE_QUALITY_REPORT:
+                        respond(commandW, new Command(Command.CommandType.DELETE_QUALITY_REPORT, null, null, true, false, "Deleting quality reports is not supported!").respondingTo(commandIn));
+                        break;
+                    case QUERY_WATER_REPORTS:
+                    case QUERY_QUALITY_REPORTS:
+                        //only queued when the client still had saves in line, so it sees its own writes
+                        respond(commandW, commandW.getWorker().answerQuery(commandIn));
+                        break;
+                    case REPLICATE:
+                        addReplica(commandW.getWorker(), commandIn);
+                        break;
+                    case LOAD_SNAPSHOT:
+                        //only ever sent by the leader
+                        if (replicated) {
+                            applySnapshot(persist.readPayload(commandIn, ReportBatch.class), commandIn);
+                        }
+                        break;
+                }
+            } catch (IOException e) {
+                //saving failed; a client which went away is already taken care of by respond()
+                Debug.error(CommandThread.class, "Failed to handle %s: %s", commandIn.getCommand(), e.toString());
+            } catch (RuntimeException e) {
+                //a bug or a malformed payload: only this command fails, the thread goes on with the next one
+                Debug.error(CommandThread.class, "Failed to handle %s: %s", commandIn.getCommand(), e.toString());
+                respond(commandW, new Command(commandIn.getCommand(), null, null, true, false,
+                        "The server failed to handle this!").respondingTo(commandIn));
+            } finally {
+                if (!replicated) {
+                    commandW.getWorker().commandDone();
+                }
+                commandLatency[commandIn.getCommand().ordinal()].recordSince(started);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.command = commandIn.getCommand().toString();
+                    event.queueWait = started - commandW.enqueued;
+                    event.payloadSize = commandIn.getData() == null ? 0 : commandIn.getData().length();
+                    event.replicated = replicated;
+                    event.commit();
+                }
+            }
+        }
+
+        /**
+         * Answers the worker a command came from. A worker which fails to receive it is disconnected, like in
+         * deliver(), so a client which went away while its change was queued doesn't stop the change's pushes
+         * @param commandW The command
+         * @param response The response
+         */
+        private void respond(WorkerCommand commandW, Command response) {
+            Worker w = commandW.getWorker();
+            //nobody waits for the answer to a replicated change
+            if (w == null) {
+                return;
+            }
+            try {
+                w.sendCommand(response);
+            } catch (IOException e) {
+                Debug.debug(CommandThread.class, "Client %d went away before its answer: %s", w.id, e.toString());
+                try {
+                    w.close();
+                } catch (IOException ee) {
+                }
+            }
+        }
+
+        /**
+         * Records a report change in the change log
+         * @param commandW The command which made the change
+         * @param reportNum The number of the changed report
+         * @param deleted true if the report was deleted
+         * @return The sequence of the change
+         */
+        private long record(WorkerCommand commandW, int reportNum, boolean deleted) {
+            if (commandW.getWorker() != null) {
+                return (changeLog.record(reportNum, deleted));
+            }
+            //a replicated change keeps the leader's sequence, so clients can move between the servers
+            Command c = commandW.getCommand();
+            if (c.getEpoch() != changeLog.getEpoch() || c.getSequence() != changeLog.getSequence() + 1) {
+                Debug.error(CommandThread.class, "Replicated change %d:%d doesn't follow %d:%d, copying everything again",
+                        c.getEpoch(), c.getSequence(), changeLog.getEpoch(), changeLog.getSequence());
+                leaderLink.resync();
+            }
+            long seq = Math.max(c.getSequence(), changeLog.getSequence());
+            changeLog.record(reportNum, deleted, seq);
+            return (seq);
+        }
+
+        /**
+         * Sends a change to every replica
+         * @param type The type of the change
+         * @param data The json data of the change
+         * @param payload The model object the data was made from
+         * @param sequence The change log sequence of the change, 0 if it isn't a report change
+         * @throws InterruptedException If interrupted while waiting for the sends to finish
+         */
+        private void replicate(Command.CommandType type, String data, Object payload, long sequence) throws InterruptedException {
+            if (!replicas.isEmpty()) {
+                broadcast(new ArrayList<>(replicas), type, data, payload, sequence);
+            }
+        }
+
+        /**
+         * Checks if a model object we have is the same as one which was sent to us
+         * @param ours Our copy, may be null
+         * @param theirs The copy which was sent
+         * @return true if they serialize the same
+         */
+        private boolean isCurrent(Object ours, Object theirs) {
+            return (ours != null && persist.toJson(ours).equals(persist.toJson(theirs)));
+        }
+
+        /**
+         * Starts replicating to a follower server: sends it every user, credential and report (or the reports changed
+         * since its copy, like for clients), then adds it to the replicas. Done on the command thread, so no change
+         * can fall in between the copy and the stream of changes after it
+         * @param w The worker of the follower, refused unless it gave the replication key
+         * @param request Its REPLICATE command, with the epoch and sequence of its copy
+         * @throws IOException If there was a problem with the socket
+         */
+        private void addReplica(Worker w, Command request) throws IOException {
+            if (w == null || !w.replica) {
+                //the worker only queues it after checking the replication key, but the copy has every credential
+                Debug.error(CommandThread.class, "Refused to replicate to a connection which didn't give the replication key");
+                if (w != null) {
+                    w.sendCommand(new Command(Command.CommandType.REPLICATE, null, null, true, false, "Replication refused!").respondingTo(request));
+                }
+                return;
+            }
+            Command resp = new Command(Command.CommandType.REPLICATE, null, null, true, true, null).respondingTo(request);
+            if (request.getEncoding() == Command.Encoding.BINARY) {
+                resp.setEncoding(Command.Encoding.BINARY);
+                resp.setSchemaVersion(BinaryCodec.SCHEMA_VERSION);
+                w.channel.setSchemaVersion(request.getSchemaVersion());
+            }
+            resp.setFrameCompression(request.isFrameCompression());
+            w.sendCommand(resp);
+            if (resp.getEncoding() != null) {
+                w.channel.setEncoding(resp.getEncoding());
+            }
+            w.channel.setFrameCompression(resp.isFrameCompression());
+            for (User u : UserManager.getUserList()) {
+                Command c = new Command(Command.CommandType.SAVE_USER, persist.toJson(u), null);
+                c.setPayload(u);
+                w.sendCommand(c);
+            }
+            for (Credential cred : db.getCredentials()) {
+                Command c = new Command(Command.CommandType.SAVE_CREDENTIAL, persist.toJson(cred), null);
+                c.setPayload(cred);
+                w.sendCommand(c);
+            }
+            w.sendSnapshot(false, request.getEpoch(), request.getSequence());
+            replicas.add(w);
+            Debug.log(CommandThread.class,
+                    "Replica %d is in sync up to sequence %d (%d replicas)", w.id, changeLog.getSequence(), replicas.size());
+        }
+
+        /**
+         * Applies a chunk of the leader's reports. A full copy replaces ours once the last chunk is in, and since
+         * our clients may have missed any part of that, they're disconnected to load it again. A delta is applied
+         * and pushed like any other change
+         * @param batch The chunk
+         * @param c The LOAD_SNAPSHOT command, the last one carries the epoch and sequence the copy is up to
+         * @throws IOException If there was a problem saving a report
+         * @throws InterruptedException If interrupted while waiting for the pushes to be sent
+         */
+        private void applySnapshot(ReportBatch batch, Command c) throws IOException, InterruptedException {
+            if (batch == null) {
+                return;
+            }
+            if (batch.getChunk() == 0) {
+                syncing = new ArrayList<>();
+                stale = new HashSet<>();
+                if (!batch.isDelta()) {
+                    for (WaterReport wr : ReportManager.getWaterReportList()) {
+                        stale.add(wr.getReportNum());
+                    }
+                }
+            }
+            for (WaterReport wr : batch.getReports()) {
+                stale.remove(wr.getReportNum());
+                if (!isCurrent(ReportManager.filterWaterReportByNumber(wr.getReportNum()), wr)) {
+                    persist.saveWaterReport(wr);
+                    syncing.add(wr);
+                }
+            }
+            if (!batch.isLast()) {
+                return;
+            }
+            long seq = c.getSequence();
+            if (!batch.isDelta()) {
+                for (Integer num : stale) {
+                    WaterReport existing = ReportManager.filterWaterReportByNumber(num);
+                    if (existing != null) {
+                        ReportManager.deleteWaterReport(existing);
+                    }
+                }
+                changeLog.follow(c.getEpoch(), seq);
+                int dropped = workers.size();
+                for (Worker w : new ArrayList<>(workers)) {
+                    try {
+                        w.close();
+                    } catch (IOException e) {
+                    }
+                }
+                Debug.log(CommandThread.class,
+                        "Copied the leader's reports up to %d:%d, %d changed and %d removed, reconnecting %d clients",
+                        c.getEpoch(), seq, syncing.size(), stale.size(), dropped);
+            } else {
+                for (WaterReport wr : syncing) {
+                    changeLog.record(wr.getReportNum(), false, seq);
+                    pushReportChange(wr, wr.getReportNum(), false, Command.CommandType.LOAD_WATER_REPORT, persist.toJson(wr), wr, seq);
+                }
+                int deleted = 0;
+                for (Integer num : batch.getDeleted()) {
+                    WaterReport existing = ReportManager.filterWaterReportByNumber(num);
+                    if (existing != null) {
+                        ReportManager.deleteWaterReport(existing);
+                        changeLog.record(num, true, seq);
+                        pushReportChange(existing, num, true, Command.CommandType.DELETE_WATER_REPORT, persist.toJson(existing), existing, seq);
+                        deleted++;
+                    }
+                }
+                //even if nothing changed, we're now as far as the leader
+                changeLog.skipTo(seq);
+                Debug.log(CommandThread.class, "Caught up with the leader to %d:%d, %d changed and %d deleted reports",
+                        c.getEpoch(), seq, syncing.size(), deleted);
+            }
+            syncing = null;
+            stale = null;
+        }
+
+        /**
+         * Pushes a report change to the workers subscribed to it. Workers which were pushed to within the last
+         * window get it in their next batch instead
+         * @param wr The changed report, the parent for quality reports. Null if unknown
+         * @param reportNum The number of the changed report
+         * @param deleted true if the report was deleted
+         * @param type The type of the pushed command
+         * @param data The json data of the command
+         * @param payload The model object the data was made from
+         * @param sequence The change log sequence of the change
+         * @throws InterruptedException If interrupted while waiting for the sends to finish
+         */
+        private void pushReportChange(WaterReport wr, int reportNum, boolean deleted, Command.CommandType type,
+                String data, Object payload, long sequence) throws InterruptedException {
+            Collection<Worker> targets = subscribersOf(wr);
+            List<Worker> now = new ArrayList<>(targets.size());
+            long time = System.nanoTime();
+            for (Worker ww : targets) {
+                //without the report there's nothing to batch
+                if (wr == null || pushes.offer(ww, reportNum, deleted ? null : wr, sequence, time)) {
+                    now.add(ww);
+                }
+            }
+            broadcast(now, type, data, payload, sequence);
+        }
+
+        /**
+         * Sends batches of held back pushes, one LOAD_REPORT_BATCH per worker
+         * @param due The batches to send, like the ones whose window ended
+         * @return The number of batches sent
+         * @throws InterruptedException If interrupted while waiting for the sends to finish
+         */
+        private int flushPushes(Map<Worker, PushCoalescer.Batch> due) throws InterruptedException {
+            if (due.isEmpty()) {
+                return (0);
+            }
+            deliver(due.keySet(), Command.CommandType.LOAD_REPORT_BATCH, ww -> {
+                PushCoalescer.Batch batch = due.get(ww);
+                Command push = new Command(Command.CommandType.LOAD_REPORT_BATCH, null, null);
+                push.setPayload(new ReportBatch(0, true, batch.getReports(), true, batch.getDeleted()));
+                return (sequenced(push, batch.getSequence()));
+            });
+            Debug.debug(CommandThread.class, "Flushed push batches to %d clients", due.size());
+            return (due.size());
+        }
+
+        /**
+         * Pushes a command to every target worker. Workers which fail to receive it are disconnected.
+         * On virtual threads every worker is sent to concurrently, so one slow client doesn't hold up the rest
+         * @param targets The workers to send to
+         * @param type The type of the pushed command
+         * @param data The json data of the command
+         * @param payload The model object the data was made from
+         * @param sequence The change log sequence of the change, 0 if it isn't a report change
+         * @throws InterruptedException If interrupted while waiting for the sends to finish
+         */
+        private void broadcast(Collection<Worker> targets, Command.CommandType type, String data, Object payload,
+                long sequence) throws InterruptedException {
+            deliver(targets, type, ww -> {
+                Command push = new Command(type, data, null);
+                push.setPayload(payload);
+                if (sequence != 0) {
+                    sequenced(push, sequence);
+                }
+                return (push);
+            });
+        }
+
+        /**
+         * Sends each target worker its own command. Workers which fail to receive it are disconnected
+         * @param targets The workers to send to
+         * @param type The type of the commands, for the flight recorder
+         * @param commands Makes the command for a worker
+         * @throws InterruptedException If interrupted while waiting for the sends to finish
+         */
+        private void deliver(Collection<Worker> targets, Command.CommandType type, Function<Worker, Command> commands)
+                throws InterruptedException {
+            long start = System.nanoTime();
+            FlightEvents.Broadcast event = new FlightEvents.Broadcast();
+            event.begin();
+            LongAdder sent = new LongAdder();
+            LongAdder errors = new LongAdder();
+            List<Worker> removes = Collections.synchronizedList(new ArrayList<>());
+            List<Runnable> sends = new ArrayList<>(targets.size());
+            for (Worker ww : targets) {
+                sends.add(() -> {
+                    try {
+                        sent.add(ww.sendCommand(commands.apply(ww)));
+                    } catch (IOException e) {
+                        Debug.debug(CommandThread.class, "Client had an IOEXception: %s", e.toString());
+                        try {
+                            ww.close();
+                        } catch (IOException ee) {
+                        }
+                        removes.add(ww);
+                    } catch (Throwable t) {
+                        //our bug, not the client's: the others still get theirs
+                        Debug.error(CommandThread.class, "Failed to push %s to client %d: %s", type, ww.id, t.toString());
+                        errors.increment();
+                    }
+                });
+            }
+            if (threads.getMode() == ServerThreads.Mode.VIRTUAL) {
+                threads.runAll("broadcast", sends);
+            } else {
+                for (Runnable send : sends) {
+                    send.run();
+                }
+            }
+            for (Worker ww : removes) {
+                workers.remove(ww);
+            }
+            deliverLatency.recordSince(start);
+            pushesSent.add(targets.size() - removes.size() - errors.sum());
+            pushesFailed.add(removes.size() + errors.sum());
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = type.toString();
+                event.targets = targets.size();
+                event.failed = removes.size() + (int) errors.sum();
+                event.payloadSize = sent.sum();
+                event.commit();
+            }
+        }
+
+        /**
+         * Gets the workers which should be told about a change to a report
+         * @param wr The changed report
+         * @return The workers whose subscribed region contains the report, all of them if the report is unknown
+         */
+        private Collection<Worker> subscribersOf(WaterReport wr) {
+            if (wr == null) {
+                return (new ArrayList<>(workers));
+            }
+            return (subscriptions.interestedIn(wr.getLatitude(), wr.getLongitude()));
+        }
+
+        private Command sequenced(Command c, long sequence) {
+            c.setSequence(sequence);
+            c.setEpoch(changeLog.getEpoch());
+            return (c);
+        }
+    }
+
+    private class Worker implements Runnable, AutoCloseable {
+        private Socket sock;
+        private Thread thread;
+        private MessageChannel channel;
+        private int id;
+        private boolean authenticated = false;
+        private boolean creatingUser = false;
+        private String creatingUserName = null;
+        private PersistentJsonInterface persist;
+        private volatile String session;
+        //commands of this client the command thread hasn't finished yet
+        private final AtomicInteger queued = new AtomicInteger();
+        //the logged in user, for the per user save limit
+        private volatile String username;
+        //a follower server getting our changes, see addReplica()
+        private volatile boolean replica = false;
+        private final TokenBucket saveLimit = new TokenBucket(connectionSaveRate, connectionSaveRate * SAVE_BURST_SECONDS, System.nanoTime());
+
+        public Worker(Socket sock, int id, PersistentJsonInterface persist) throws IOException {
+            this.sock = sock;
+            this.id = id;
+            this.persist = persist;
+            this.channel = new MessageChannel(sock, persist);
+        }
+        
+        @Override
+        public void run() {
+            Debug.debug(Worker.class, "Client connected from %s", sock.getRemoteSocketAddress().toString());
+            Command.CommandType handling = null;
+            long received = 0;
+            while (!sock.isClosed()) {
+                try {
+                    Command command = channel.receiveCommand();
+                    Debug.debug(Worker.class, "client says: %s", command);
+                    if (command == null) {
+                        close();
+                        continue;
+                    }
+                    handling = command.getCommand();
+                    received = System.nanoTime();
+                    liveness.heard(this, System.nanoTime());
+                    if (command.getCommand() == Command.CommandType.HEARTBEAT) {
+                        //answered logged in or not. the session stays alive as long as its connection does, so a client
+                        //which is only looking at the map isn't logged out under it; the idle timeout is for sessions
+                        //waiting to be resumed after a disconnect
+                        if (authenticated) {
+                            sessions.resolve(session);
+                        }
+                        if (!command.isResponse()) {
+                            sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(command));
+                        }
+                        continue;
+                    }
+                    if (replica) {
+                        //a replica only sends on the writes of its clients, and answers whatever it gets
+                        if (isWrite(command.getCommand()) && !command.isResponse()) {
+                            admit(command);
+                        }
+                        continue;
+                    }
+                    if (command.getCommand() == Command.CommandType.UNKNOWN) {
+                        Debug.debug(Worker.class, "Unknown command type!");
+                        continue;
+                    }
+                    if (!authenticated) {
+                        if (leaderLink != null && (command.getCommand() == Command.CommandType.SAVE_USER
+                                || command.getCommand() == Command.CommandType.SAVE_CREDENTIAL)) {
+                            sendCommand(new Command(command.getCommand(), null, null, true, false,
+                                    "This is a read-only replica, sign up on the main server!").respondingTo(command));
+                            continue;
+                        }
+                        switch (command.getCommand()) {
+                            case REPLICATE:
+                                if (replicationKey == null || command.getData() == null || !MessageDigest.isEqual(
+                                        replicationKey.getBytes(StandardCharsets.UTF_8), command.getData().getBytes(StandardCharsets.UTF_8))) {
+                                    Debug.error(Worker.class, "Refused to replicate to %s", sock.getRemoteSocketAddress());
+                                    sendCommand(new Command(Command.CommandType.REPLICATE, null, null, true, false, "Replication refused!").respondingTo(command));
+                                    break;
+                                }
+                                Debug.log(Worker.class, "Replica connected from %s", sock.getRemoteSocketAddress());
+                                replica = true;
+                                //replicate() sends it every change, instead of the pushes for clients
+                                handler.workerStopped(this);
+                                subscriptions.remove(this);
+                                pushes.remove(this);
+                                enqueue(command);
+                                break;
+                            case AUTHENTICATE:
+                                if (creatingUser) {
+                                    break;
+                                }
+                                //a client which still has a live session logs back in without its credential
+                                String resumedUser = sessions.resolve(command.getSession());
+                                Credential userCred = resumedUser == null ? persist.readPayload(command, Credential.class) : null;
+                                Debug.debug(Worker.class,
+                                        "User wants to authenticate with credential: %s (resuming: %s)", userCred, resumedUser);
+                                if (userCred != null || resumedUser != null) {
+                                    //do authentication
+                                    User authedUser = resumedUser != null ? UserManager.getUser(resumedUser) : persist.authenticateUser(userCred);
+                                    String data = null;
+                                    String message = null;
+                                    if (authedUser != null) {
+                                        data = persist.toJson(authedUser);
+                                        authenticated = true;
+                                        username = authedUser.getUsername();
+                                        session = resumedUser != null ? command.getSession() : sessions.open(username);
+                                    } else {
+                                        message = "Invalid username/password!";
+                                    }
+                                    Command resp = new Command(Command.CommandType.AUTHENTICATE, data, null, true, authenticated, message).respondingTo(command);
+                                    resp.setSession(session);
+                                    if (authenticated && command.getEncoding() == Command.Encoding.BINARY) {
+                                        resp.setEncoding(Command.Encoding.BINARY);
+                                        resp.setSchemaVersion(BinaryCodec.SCHEMA_VERSION);
+                                        channel.setSchemaVersion(command.getSchemaVersion());
+                                    }
+                                    //we can always receive compressed frames, so just say so when the client can too
+                                    resp.setFrameCompression(authenticated && command.isFrameCompression());
+                                    sendCommand(resp);
+                                    if (resp.getEncoding() != null) {
+                                        //the client still reads this response as JSON; everything after it is binary
+                                        channel.setEncoding(resp.getEncoding());
+                                    }
+                                    channel.setFrameCompression(resp.isFrameCompression());
+                                    if (authenticated) {
+                                        sendSnapshot(command.acceptsCompression(), command.getEpoch(), command.getSequence());
+                                    }
+                                }
+                                break;
+                            case SAVE_USER:
+                                if (creatingUser) {
+                                    break;
+                                }
+                                User newUser = persist.readPayload(command, User.class);
+                                Debug.debug(Worker.class, "User wants to create a new user: %s", newUser);
+                                if (newUser != null) {
+                                    String data = null;
+                                    String message = null;
+                                    String username = null;
+                                    if (persist.userExists(newUser.getUsername())) {
+                                        message = "User already exists!";
+                                        Debug.debug(Worker.class, "%s", message);
+                                        sendCommand(new Command(Command.CommandType.SAVE_USER, data, null, true, creatingUser, message).respondingTo(command));
+                                    } else {
+                                        Debug.debug(Worker.class, "Saving user...");
+                                        newUser = persist.saveUser(newUser);
+                                        if (newUser != null) {
+                                            creatingUser = true;
+                                            Debug.debug(Worker.class, "notifying command thread of new user: %s", newUser);
+                                            username = newUser.getUsername();
+                                            data = persist.toJson(newUser);
+                                            Command save = new Command(Command.CommandType.SAVE_USER, data, null);
+                                            //the command thread answers, so it needs the client's request id
+                                            save.setRequestId(command.getRequestId());
+                                            enqueue(save);
+                                        } else {
+                                            message = "Error while saving user!";
+                                            Debug.debug(Worker.class, "%s", message);
+                                            sendCommand(new Command(Command.CommandType.SAVE_USER, data, null, true, creatingUser, message).respondingTo(command));
+                                        }
+                                    }
+                                    creatingUserName = username;
+                                }
+                                break;
+                            case SAVE_CREDENTIAL:
+                                if (!creatingUser) {
+                                    break;
+                                }
+                                Credential newCredential = persist.readPayload(command, Credential.class);
+                                Debug.debug(Worker.class, "User wants to create a new credential: %s", newCredential);
+                                if (newCredential != null) {
+                                    String data = null;
+                                    String message = null;
+                                    String username = null;
+                                    if (creatingUserName.equals(newCredential.getUsername())) {
+                                        Debug.debug(Worker.class, "notifying command thread of new credential...");
+                                        data = persist.toJson(newCredential);
+                                        Command save = new Command(Command.CommandType.SAVE_CREDENTIAL, data, null);
+                                        save.setRequestId(command.getRequestId());
+                                        enqueue(save);
+                                    } else {
+                                        Debug.debug(Worker.class,
+                                                "User did not match previous! (\"%s\" != \"%s\")", creatingUserName, newCredential.getUsername());
+                                        message = "Username error!";
+                                        sendCommand(new Command(Command.CommandType.SAVE_CREDENTIAL, data, null, true, false, message).respondingTo(command));
+                                    }
+                                    creatingUser = false;
+                                    creatingUserName = null;
+                                }
+                                break;
+                        }
+                    } else {
+                        if (!session.equals(command.getSession()) || sessions.resolve(session) == null) {
+                            String message = "Invalid session!";
+                            if (sessions.resolve(session) == null) {
+                                //expired or revoked since the client logged in
+                                Debug.debug(Worker.class, "Session of the client ended, logging it out");
+                                authenticated = false;
+                                session = null;
+                                message = "Session expired, please log in again!";
+                            }
+                            if (command.getCommand() != Command.CommandType.SUBSCRIBE) {
+                                sendCommand(new Command(command.getCommand(), null, null, true, false, message).respondingTo(command));
+                            }
+                        } else if (command.getCommand() == Command.CommandType.DEAUTHENTICATE) {
+                            authenticated = false;
+                            sessions.revoke(session);
+                            session = null;
+                            sendCommand(new Command(Command.CommandType.DEAUTHENTICATE, null, null, true, true, null).respondingTo(command));
+                        } else if (command.getCommand() == Command.CommandType.SUBSCRIBE) {
+                            //no response: clients send these whenever the map moves and don't wait for them
+                            Region region = persist.readPayload(command, Region.class);
+                            Debug.debug(Worker.class, "Client subscribed to region %s", region);
+                            subscriptions.subscribe(this, region);
+                        } else if (command.getCommand() == Command.CommandType.REPLICATE) {
+                            //only ever allowed with the replication key, before logging in
+                            Debug.error(Worker.class, "Refused to replicate to logged in client %d (%s)", id, username);
+                            sendCommand(new Command(Command.CommandType.REPLICATE, null, null, true, false, "Replication refused!").respondingTo(command));
+                        } else if (command.getCommand() == Command.CommandType.ADMIN_STATS) {
+                            //read only and must work while the command queue is stuck, so never queued
+                            sendCommand(adminStats(command));
+                        } else if ((command.getCommand() == Command.CommandType.QUERY_WATER_REPORTS
+                                || command.getCommand() == Command.CommandType.QUERY_QUALITY_REPORTS) && queued.get() == 0) {
+                            //read only, so answered right here instead of waiting in line behind everyone's saves
+                            sendCommand(answerQuery(command));
+                        } else {
+                            Command earlier = sessions.rememberedResponse(session, command.getRequestId());
+                            if (earlier != null) {
+                                //sent again after a reconnect, but we already did it; just answer again
+                                Debug.debug(Worker.class,
+                                        "Request %d was already handled, answering again", command.getRequestId());
+                                sendCommand(earlier);
+                            } else if (leaderLink != null && isWrite(command.getCommand())) {
+                                if (underSaveLimit(command)) {
+                                    leaderLink.forward(this, command);
+                                }
+                            } else if (!isWrite(command.getCommand()) || underSaveLimit(command)) {
+                                admit(command);
+                            }
+                        }
+                    }
+                } catch (JsonParseException e) {
+                    Debug.debug(Worker.class, "Failed to decode json: %s", e.toString());
+                } catch (IOException e) {
+                    Debug.debug(Worker.class, "Worker encountered exception: %s", e.toString());
+                    try {
+                        close();
+                    } catch (IOException ee) {
+                    }
+                } catch (InterruptedException e) {
+                    Debug.debug(Worker.class, "Worker encountered exception: %s", e.toString());
+                } finally {
+                    //only the worker's part; what waits for the command thread is timed there
+                    if (handling != null) {
+                        workerLatency[handling.ordinal()].recordSince(received);
+                        handling = null;
+                    }
+                }
+            }
+            Debug.debug(Worker.class, "Client closed");
+        }
+
+        /**
+         * Gets the session the client is logged in with
+         * @return the session token, null if not logged in
+         */
+        public String getSession() {
+            return (session);
+        }
+
+        /**
+         * Starts serving the client on its own thread
+         */
+        public void start() {
+            thread = threads.start("worker-" + id, this);
+        }
+
+        /**
+         * Streams the water reports to the client in LOAD_SNAPSHOT chunks, so the client can apply them in bulk.
+         * A client which already has the reports up to some sequence only gets the ones changed since then,
+         * unless the change log no longer reaches back that far
+         * @param compress true if the client accepts compressed data. Only used for JSON connections without frame compression
+         * @param epoch The change log epoch the client's sequence belongs to, 0 if the client has nothing yet
+         * @param since The last sequence the client applied
+         * @throws IOException If there was a problem with the socket
+         */
+        private void sendSnapshot(boolean compress, long epoch, long since) throws IOException {
+            //read the sequence first: anything saved while copying is sent again later, never missed
+            long sequence = changeLog.getSequence();
+            Map<Integer, Boolean> changes = null;
+            if (epoch == changeLog.getEpoch() && since > 0) {
+                changes = changeLog.changesSince(since);
+            }
+            List<WaterReport> reports;
+            List<Integer> deleted = new ArrayList<>();
+            if (changes == null) {
+                reports = ReportManager.getWaterReportList();
+            } else {
+                reports = new ArrayList<>();
+                for (Map.Entry<Integer, Boolean> e : changes.entrySet()) {
+                    WaterReport wr = ReportManager.filterWaterReportByNumber(e.getKey());
+                    if (e.getValue() || wr == null) {
+                        deleted.add(e.getKey());
+                    } else {
+                        reports.add(wr);
+                    }
+                }
+            }
+            boolean delta = changes != null;
+            //compressed frames already cover this, and also work for binary
+            boolean compressData = compress && channel.getEncoding() == Command.Encoding.JSON && !channel.isFrameCompression();
+            int chunks = Math.max(1, (reports.size() + SNAPSHOT_CHUNK_SIZE - 1) / SNAPSHOT_CHUNK_SIZE);
+            long start = System.nanoTime();
+            for (int i = 0; i < chunks; i++) {
+                List<WaterReport> chunk = reports.subList(i * SNAPSHOT_CHUNK_SIZE,
+                        Math.min(reports.size(), (i + 1) * SNAPSHOT_CHUNK_SIZE));
+                boolean last = i == chunks - 1;
+                ReportBatch batch = new ReportBatch(i, last, chunk, delta, last ? deleted : null);
+                Command c = new Command(Command.CommandType.LOAD_SNAPSHOT, null, null);
+                if (last) {
+                    c.setSequence(sequence);
+                    c.setEpoch(changeLog.getEpoch());
+                }
+                if (compressData) {
+                    c.setData(CompressedData.compress(persist.toJson(batch)));
+                    c.setCompressed(true);
+                } else {
+                    c.setPayload(batch);
+                }
+                channel.sendCommand(c);
+            }
+            Debug.debug(Worker.class,
+                    "Sent %s of %d reports (%d deleted) in %d chunks up to sequence %d (%s, compressed: %b) in %d ms",
+                    delta ? "delta" : "snapshot", reports.size(), deleted.size(), chunks, sequence,
+                    channel.getEncoding(), compressData, (System.nanoTime() - start) / 1000000);
+        }
+
+        /**
+         * Checks if a command changes data, so applying it twice could be harmful
+         * @param type The type of the command
+         * @return true for the SAVE_ and DELETE_ commands
+         */
+        private boolean isWrite(Command.CommandType type) {
+            switch (type) {
+                case SAVE_USER:
+                case SAVE_CREDENTIAL:
+                case SAVE_WATER_REPORT:
+                case SAVE_QUALITY_REPORT:
+                case DELETE_USER:
+                case DELETE_WATER_REPORT:
+                case DELETE_QUALITY_REPORT:
+                    return (true);
+                default:
+                    return (false);
+            }
+        }
+
+        /**
+         * Hands a command to the command thread, waiting for room in the queue as long as it takes.
+         * Only refused while shutting down
+         * @param command The command
+         * @throws IOException If there was a problem with the socket
+         * @throws InterruptedException If interrupted while waiting for room in the queue
+         */
+        private void enqueue(Command command) throws IOException, InterruptedException {
+            if (!offer(command, Long.MAX_VALUE)) {
+                sendCommand(busy(command, "Server is restarting, try again later!", BUSY_RETRY_MS));
+            }
+        }
+
+        /**
+         * Hands a command to the command thread if there is room in the queue within a short wait,
+         * otherwise answers that the server is busy
+         * @param command The command
+         * @throws IOException If there was a problem with the socket
+         * @throws InterruptedException If interrupted while waiting for room in the queue
+         */
+        private void admit(Command command) throws IOException, InterruptedException {
+            if (!offer(command, ADMIT_WAIT_MS)) {
+                Debug.debug(Worker.class,
+                        "Command queue is full or draining, refusing %s of client %d", command.getCommand(), id);
+                sendCommand(busy(command, draining ? "Server is restarting, try again later!" : "Server busy, try again later!",
+                        BUSY_RETRY_MS));
+            }
+        }
+
+        /**
+         * Puts a command in the queue, unless the server is draining it for shutdown
+         * @param command The command
+         * @param waitMs How long to wait for room in the queue
+         * @return true if the command thread will handle it
+         * @throws InterruptedException If interrupted while waiting for room in the queue
+         */
+        private boolean offer(Command command, long waitMs) throws InterruptedException {
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMs);
+            long start = System.nanoTime();
+            while (true) {
+                //shutdown() takes the write lock, so nothing slips in behind its drain marker. it's only held for
+                //one slice of the wait, so shutdown() gets it soon even while the queue stays full
+                admission.readLock().lock();
+                try {
+                    if (draining) {
+                        return (false);
+                    }
+                    long left = waitNanos - (System.nanoTime() - start);
+                    long slice = Math.max(0, Math.min(left, TimeUnit.MILLISECONDS.toNanos(ADMIT_SLICE_MS)));
+                    queued.incrementAndGet();
+                    if (inputCommands.offer(new WorkerCommand(this, command), slice, TimeUnit.NANOSECONDS)) {
+                        return (true);
+                    }
+                    queued.decrementAndGet();
+                    if (left <= slice) {
+                        return (false);
+                    }
+                } finally {
+                    admission.readLock().unlock();
+                }
+            }
+        }
+
+        /**
+         * Checks a save or delete against the save limits of the connection and of the user, and answers it
+         * when over either of them
+         * @param command The save or delete
+         * @return true if the command may go ahead
+         * @throws IOException If there was a problem with the socket
+         */
+        private boolean underSaveLimit(Command command) throws IOException {
+            long now = System.nanoTime();
+            long wait = saveLimit.tryTake(now);
+            if (wait == 0 && username != null) {
+                wait = userSaveLimits.computeIfAbsent(username,
+                        u -> new TokenBucket(userSaveRate, userSaveRate * SAVE_BURST_SECONDS, now)).tryTake(now);
+            }
+            if (wait == 0) {
+                return (true);
+            }
+            Debug.debug(Worker.class, "Client %d (%s) is over its save limit, refusing %s", id, username, command.getCommand());
+            sendCommand(busy(command, "Too many changes at once, slow down!", Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait))));
+            return (false);
+        }
+
+        /**
+         * Builds the answer to a command which was refused because of load
+         * @param command The refused command
+         * @param message Why
+         * @param retryAfterMs How long the client should wait before sending it again
+         * @return The response
+         */
+        private Command busy(Command command, String message, long retryAfterMs) {
+            busyAnswers.increment();
+            Command resp = new Command(command.getCommand(), null, null, true, false, message).respondingTo(command);
+            resp.setRetryAfter(retryAfterMs);
+            return (resp);
+        }
+
+        /**
+         * Called by the command thread when it finished one of this client's commands
+         */
+        public void commandDone() {
+            queued.decrementAndGet();
+        }
+
+        /**
+         * Answers an ADMIN_STATS command, if the logged in user is an administrator
+         * @param command The ADMIN_STATS command
+         * @return The response to send, carrying a ServerStats
+         */
+        private Command adminStats(Command command) {
+            User user = UserManager.getUser(username);
+            if (user == null || user.getUserLevel() != UserLevel.ADMINISTRATOR) {
+                Debug.log(Worker.class, "%s asked for the server stats but isn't an administrator", username);
+                return (new Command(Command.CommandType.ADMIN_STATS, null, null, true, false,
+                        "Only administrators can see the server stats!").respondingTo(command));
+            }
+            ServerStats stats = new ServerStats();
+            stats.setUptimeMillis(System.currentTimeMillis() - startedMillis);
+            stats.setConnections(handler.workers.size());
+            stats.setReplicas(replicas.size());
+            stats.setSessions(sessions.size());
+            stats.setQueue(inputCommands.size(), inputCommands.size() + inputCommands.remainingCapacity());
+            stats.setPendingPushes(pushes.pendingCount());
+            stats.setChangeLogSequence(changeLog.getSequence());
+            for (Command.CommandType type : Command.CommandType.values()) {
+                long count = workerLatency[type.ordinal()].getCount();
+                if (count > 0) {
+                    stats.getCommands().put(type.toString(), count);
+                }
+            }
+            stats.setFileSizes(db.getFileSizes());
+            Runtime rt = Runtime.getRuntime();
+            stats.setHeap(rt.totalMemory() - rt.freeMemory(), rt.maxMemory());
+            List<WaterReport> wrs = ReportManager.getWaterReportList();
+            int quality = 0;
+            for (WaterReport wr : wrs) {
+                quality += wr.getQualityReportList().size();
+            }
+            stats.setReports(wrs.size(), quality);
+            return (new Command(Command.CommandType.ADMIN_STATS, persist.toJson(stats), null, true, true, null).respondingTo(command));
+        }
+
+        /**
+         * Answers a QUERY_WATER_REPORTS or QUERY_QUALITY_REPORTS command with one page of results
+         * @param command The query command
+         * @return The response to send
+         */
+        private Command answerQuery(Command command) {
+            ReportQuery query = persist.readPayload(command, ReportQuery.class);
+            if (query == null) {
+                return (new Command(command.getCommand(), null, null, true, false, "Missing query!").respondingTo(command));
+            }
+            int limit = query.getLimit() <= 0 ? QUERY_PAGE_SIZE : Math.min(query.getLimit(), SNAPSHOT_CHUNK_SIZE);
+            long start = System.nanoTime();
+            QueryPage page;
+            //ask for one more than fits, to know whether there is a next page
+            if (command.getCommand() == Command.CommandType.QUERY_WATER_REPORTS) {
+                List<WaterReport> found = ReportManager.queryWaterReports(query, limit + 1);
+                List<WaterReport> wrs = new ArrayList<>(Math.min(found.size(), limit));
+                for (WaterReport wr : found.subList(0, Math.min(found.size(), limit))) {
+                    wrs.add(project(wr, query.getProjection()));
+                }
+                long next = found.size() > limit ? wrs.get(limit - 1).getReportNum() : 0;
+                page = new QueryPage(wrs, new ArrayList<>(), next);
+            } else {
+                List<QualityReport> found = ReportManager.queryQualityReports(query, limit + 1);
+                List<QualityReport> qrs = new ArrayList<>(found.subList(0, Math.min(found.size(), limit)));
+                long next = found.size() > limit ? ReportManager.qualityCursor(qrs.get(limit - 1)) : 0;
+                page = new QueryPage(new ArrayList<>(), qrs, next);
+            }
+            Debug.debug(Worker.class, "Answered %s with %s in %d us", query, page, (System.nanoTime() - start) / 1000);
+            Command resp = new Command(command.getCommand(), null, null, true, true, null).respondingTo(command);
+            resp.setPayload(page);
+            return (resp);
+        }
+
+        /**
+         * Cuts a water report down to what a query asked for
+         * @param wr The report
+         * @param projection How much of it to keep
+         * @return The report itself for FULL, otherwise a copy with fewer quality reports
+         */
+        private WaterReport project(WaterReport wr, ReportQuery.Projection projection) {
+            if (projection == ReportQuery.Projection.FULL) {
+                return (wr);
+            }
+            WaterReport res = new WaterReport(wr.getReportNum(), wr.getDateTime(), wr.getLatitude(), wr.getLongitude(),
+                    wr.getWaterType(), wr.getWaterCondition(), wr.getAuthor());
+            QualityReport latest = ReportQuery.latestQualityReport(wr);
+            if (projection == ReportQuery.Projection.LATEST_QUALITY && latest != null) {
+                res.addQualityReport(latest);
+            }
+            return (res);
+        }
+
+        /**
+         * Disconnects from the server.
+         * @throws IOException If there was a problem during disconnection
+         */
+        public void disconnect() throws IOException {
+            if (sock != null && !sock.isClosed()) {
+                sock.close();
+            }
+            subscriptions.remove(this);
+            pushes.remove(this);
+            liveness.remove(this);
+            replicas.remove(this);
+            handler.workerStopped(this);
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Sends the given text to the client as a single message
+         * @param text The text to send
+         * @throws IOException If there was a problem with the socket. Connection must be re-established
+         */
+        public void sendMessage(String text) throws IOException {
+            Debug.debug(Worker.class, "Sending message:\n%s", text);
+            channel.sendMessage(text);
+        }
+
+        private int sendCommand(Command c) throws IOException {
+            Debug.debug(Worker.class, "Sending %s command", c.getCommand());
+            if (c.isResponse() && isWrite(c.getCommand()) && c.getRetryAfter() == 0) {
+                //before sending: the response is lost exactly when sending fails. refusals because of load
+                //aren't kept, so the request can go through when sent again
+                sessions.rememberResponse(session, c);
+            }
+            return (channel.sendCommand(c));
+        }
+
+
+        /**
+         * Override of autocloseable interface (lets the try-with-resources automatically close the socket when done)
+         * @throws IOException if there was some problem during socket closing
+         */
+        @Override
+        public void close() throws IOException {
+            disconnect();
+        }
+        
+        public int getWorkerId() {
+            return id;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 5;
+            hash = 79 * hash + this.id;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final Worker other = (Worker) obj;
+            if (this.id != other.id) {
+                return false;
+            }
+            return true;
+        }
+        
+    }
+}
@@ -0,0 +1,46 @@
+package server;
+
+/**
+ * A token bucket rate limiter. Tokens trickle in at a steady rate up to the burst size, and every
+ * admitted action takes one, so short bursts go through while the long term average stays at the rate
+ *
+ * @author tybrown
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long last;
+
+    /**
+     * Constructs a full bucket
+     * @param perSecond How many actions are allowed per second in the long run. 0 or less never limits
+     * @param burst How many actions are allowed at once after a quiet period
+     * @param now The current System.nanoTime()
+     */
+    public TokenBucket(double perSecond, double burst, long now) {
+        this.tokensPerNano = perSecond / 1e9;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.last = now;
+    }
+
+    /**
+     * Takes a token if there is one
+     * @param now The current System.nanoTime()
+     * @return 0 if a token was taken, otherwise how many nanoseconds until the next one comes in
+     */
+    public synchronized long tryTake(long now) {
+        if (tokensPerNano <= 0) {
+            return (0);
+        }
+        tokens = Math.min(burst, tokens + (now - last) * tokensPerNano);
+        last = now;
+        if (tokens >= 1) {
+            tokens--;
+            return (0);
+        }
+        return ((long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+}
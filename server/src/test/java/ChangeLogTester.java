@@ -0,0 +1,84 @@
+import java.util.Map;
+import server.ChangeLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the server's report change log
+ * @author tybrown
+ */
+public class ChangeLogTester {
+    public static final int TIMEOUT = 200;
+
+    private ChangeLog log;
+
+    @Before
+    public void setup() {
+        log = new ChangeLog(3);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSequence() {
+        assertEquals(0, log.getSequence());
+        assertEquals(1, log.record(5, false));
+        assertEquals(2, log.record(6, false));
+        assertEquals(2, log.getSequence());
+        assertTrue(log.getEpoch() > 0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testChangesSince() {
+        log.record(5, false);
+        log.record(6, false);
+        log.record(5, true);
+        Map<Integer, Boolean> changes = log.changesSince(1);
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(6));
+        assertTrue(changes.get(5));
+        //latest change decides the order
+        assertEquals(Integer.valueOf(6), changes.keySet().iterator().next());
+        assertTrue(log.changesSince(3).isEmpty());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testTruncated() {
+        for (int i = 1; i <= 5; i++) {
+            log.record(i, false);
+        }
+        assertNull(log.changesSince(1));
+        assertEquals(3, log.changesSince(2).size());
+        assertNull(log.changesSince(6));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFollowLeader() {
+        log.record(1, false);
+        log.follow(42, 10);
+        assertEquals(42, log.getEpoch());
+        assertEquals(10, log.getSequence());
+        //clients of the old copy can't get a delta
+        assertNull(log.changesSince(1));
+        assertTrue(log.changesSince(10).isEmpty());
+        log.record(7, false, 11);
+        log.record(8, true, 11);
+        assertEquals(11, log.getSequence());
+        assertEquals(2, log.changesSince(10).size());
+        log.skipTo(15);
+        assertEquals(15, log.getSequence());
+        log.skipTo(12);
+        assertEquals(15, log.getSequence());
+        assertEquals(2, log.changesSince(10).size());
+    }
+
+    @Test(timeout = TIMEOUT, expected = IllegalArgumentException.class)
+    public void testFollowLeaderBackwards() {
+        log.follow(42, 10);
+        log.record(7, false, 9);
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import server.ConnectionReaper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the server's heartbeat and dead connection tracking
+ * @author tybrown
+ */
+public class ConnectionReaperTester {
+    public static final int TIMEOUT = 200;
+    private static final long HEARTBEAT = 20;
+    private static final long IDLE_TIMEOUT = 60;
+
+    private ConnectionReaper<String> reaper;
+
+    @Before
+    public void setup() {
+        reaper = new ConnectionReaper<>(HEARTBEAT, IDLE_TIMEOUT);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testBusyConnectionLeftAlone() {
+        reaper.add("a", 0);
+        for (long now = 10; now < 200; now += 10) {
+            reaper.heard("a", now);
+            ConnectionReaper.Sweep<String> sweep = reaper.sweep(now);
+            assertTrue(sweep.getQuiet().isEmpty());
+            assertTrue(sweep.getDead().isEmpty());
+        }
+        assertEquals(1, reaper.liveCount());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testQuietConnectionPingedOncePerInterval() {
+        reaper.add("a", 0);
+        reaper.add("b", 0);
+        reaper.heard("b", 15);
+        assertEquals(Collections.singletonList("a"), reaper.sweep(HEARTBEAT).getQuiet());
+        assertTrue(reaper.sweep(HEARTBEAT + 10).getQuiet().isEmpty());
+        assertEquals(Arrays.asList("a", "b"), sortedQuiet(HEARTBEAT * 2));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testAnsweredConnectionSurvives() {
+        reaper.add("a", 0);
+        assertEquals(1, reaper.sweep(HEARTBEAT).getQuiet().size());
+        reaper.heard("a", HEARTBEAT + 1);
+        assertTrue(reaper.sweep(IDLE_TIMEOUT).getDead().isEmpty());
+        assertEquals(1, reaper.liveCount());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testDeadConnectionReaped() {
+        reaper.add("a", 0);
+        reaper.add("b", 0);
+        reaper.heard("b", IDLE_TIMEOUT - 1);
+        ConnectionReaper.Sweep<String> sweep = reaper.sweep(IDLE_TIMEOUT);
+        assertEquals(Collections.singletonList("a"), sweep.getDead());
+        assertFalse(sweep.getQuiet().contains("a"));
+        assertEquals(1, reaper.liveCount());
+        assertEquals(1, reaper.reapedCount());
+        //reaped once only
+        assertEquals(Collections.singletonList("b"), reaper.sweep(IDLE_TIMEOUT * 2).getDead());
+        assertEquals(2, reaper.reapedCount());
+        assertEquals(0, reaper.liveCount());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testClosedConnectionNotReaped() {
+        reaper.add("a", 0);
+        assertTrue(reaper.remove("a"));
+        assertFalse(reaper.remove("a"));
+        reaper.heard("a", 10);
+        assertTrue(reaper.sweep(IDLE_TIMEOUT).getDead().isEmpty());
+        assertEquals(0, reaper.liveCount());
+        assertEquals(0, reaper.reapedCount());
+    }
+
+    private List<String> sortedQuiet(long now) {
+        List<String> res = reaper.sweep(now).getQuiet();
+        Collections.sort(res);
+        return (res);
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import model.Credential;
+import model.User;
+import model.UserLevel;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+import persistence.json.net.MessageChannel;
+import persistence.json.net.ReportBatch;
+import server.ServerThreads;
+
+/**
+ * Opens many concurrent client connections to a running ThirstyServer, then saves one report and measures
+ * how long it takes to reach every client. Run the server once with the default platform threads and once with
+ * -Dthirsty.threads=virtual (JDK 21+) to compare the two.
+ * Run with: gradle connectionBenchmark -Pclients=10000 (server on localhost:9988, needs ulimit -n above 2x clients)
+ * @author tybrown
+ */
+public class ConnectionScaleBenchmark {
+
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "benchmark";
+    private static final int REPORT_NUM = 900000001;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String host = args.length > 1 ? args[1] : "localhost";
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9988;
+        //the simulated clients block just like the server does, so they run on the same kind of threads
+        ServerThreads threads = new ServerThreads(
+                ServerThreads.Mode.valueOf(System.getProperty("thirsty.threads", "platform").toUpperCase()));
+        PersistentJsonFile json = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
+
+        register(json, host, port);
+
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch received = new CountDownLatch(clients);
+        AtomicInteger failed = new AtomicInteger();
+        AtomicReference<Exception> firstFailure = new AtomicReference<>();
+        long[] receivedAt = new long[clients];
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            threads.start("client-" + i, () -> {
+                try (Socket s = new Socket(host, port)) {
+                    MessageChannel channel = new MessageChannel(s, json);
+                    authenticate(json, channel);
+                    connected.countDown();
+                    Command c;
+                    while ((c = receive(channel)) != null) {
+                        if (c.getCommand() == Command.CommandType.LOAD_WATER_REPORT
+                                && json.readPayload(c, WaterReport.class).getReportNum() == REPORT_NUM) {
+                            receivedAt[client] = System.nanoTime();
+                            received.countDown();
+                            break;
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed.incrementAndGet();
+                    firstFailure.compareAndSet(null, e);
+                    connected.countDown();
+                    received.countDown();
+                }
+            });
+        }
+        connected.await();
+        long connectNanos = System.nanoTime() - start;
+
+        long sentAt;
+        try (Socket s = new Socket(host, port)) {
+            MessageChannel channel = new MessageChannel(s, json);
+            String session = authenticate(json, channel);
+            Command save = new Command(Command.CommandType.SAVE_WATER_REPORT, null, null);
+            save.setSession(session);
+            save.setPayload(new WaterReport(REPORT_NUM, 33.7756, -84.3963, WaterType.LAKE, WaterCondition.CLEAR, USERNAME));
+            sentAt = System.nanoTime();
+            channel.sendCommand(save);
+            if (!received.await(5, TimeUnit.MINUTES)) {
+                System.out.printf("Gave up waiting, %d clients never got the report%n", received.getCount());
+            }
+        }
+
+        long[] latencies = new long[clients];
+        int count = 0;
+        for (long at : receivedAt) {
+            if (at != 0) {
+                latencies[count++] = at - sentAt;
+            }
+        }
+        Arrays.sort(latencies, 0, count);
+        System.out.printf("%s client threads, %d clients (%d failed)%n", threads.getMode(), clients, failed.get());
+        if (firstFailure.get() != null) {
+            System.out.printf("first failure: %s%n", firstFailure.get());
+        }
+        System.out.printf("connect + authenticate + snapshot: %d ms total%n", connectNanos / 1000000);
+        if (count > 0) {
+            System.out.printf("broadcast to all: p50 %d ms, p99 %d ms, max %d ms%n", latencies[count / 2] / 1000000,
+                    latencies[Math.min(count - 1, count * 99 / 100)] / 1000000, latencies[count - 1] / 1000000);
+        }
+        threads.shutdown(1000);
+        System.exit(0);
+    }
+
+    /**
+     * Creates the benchmark user. Fails harmlessly if it already exists
+     */
+    private static void register(PersistentJsonFile json, String host, int port) throws IOException {
+        try (Socket s = new Socket(host, port)) {
+            MessageChannel channel = new MessageChannel(s, json);
+            User u = new User(USERNAME, "Benchmark", "Load", "bench@mark", UserLevel.WORKER);
+            channel.sendCommand(new Command(Command.CommandType.SAVE_USER, json.toJson(u), null));
+            Command resp = channel.receiveCommand();
+            if (resp != null && resp.isSuccessful()) {
+                channel.sendCommand(new Command(Command.CommandType.SAVE_CREDENTIAL,
+                        json.toJson(new Credential(USERNAME, PASSWORD)), null));
+                while ((resp = channel.receiveCommand()) != null && resp.getCommand() != Command.CommandType.SAVE_CREDENTIAL) {
+                    //skip the LOAD_USER push
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs in over binary and reads the whole snapshot
+     * @return The session token to send commands with
+     */
+    private static String authenticate(PersistentJsonFile json, MessageChannel channel) throws IOException {
+        Command auth = new Command(Command.CommandType.AUTHENTICATE, json.toJson(new Credential(USERNAME, PASSWORD)), null);
+        auth.setEncoding(Command.Encoding.BINARY);
+        channel.sendCommand(auth);
+        Command resp = receive(channel);
+        if (resp == null || !resp.isSuccessful()) {
+            throw (new IOException("Authentication failed: " + (resp == null ? "closed" : resp.getMessage())));
+        }
+        channel.setEncoding(resp.getEncoding());
+        Command c;
+        while ((c = receive(channel)) != null) {
+            if (c.getCommand() == Command.CommandType.LOAD_SNAPSHOT && json.readPayload(c, ReportBatch.class).isLast()) {
+                return (resp.getSession());
+            }
+        }
+        throw (new IOException("Closed during snapshot"));
+    }
+
+    /**
+     * Reads the next command, answering heartbeats on the way like a real client does. Connecting
+     * them all can take longer than the server's idle timeout
+     * @return The next command which isn't a heartbeat, or null when closed
+     */
+    private static Command receive(MessageChannel channel) throws IOException {
+        Command c;
+        while ((c = channel.receiveCommand()) != null && c.getCommand() == Command.CommandType.HEARTBEAT) {
+            if (!c.isResponse()) {
+                channel.sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(c));
+            }
+        }
+        return (c);
+    }
+}
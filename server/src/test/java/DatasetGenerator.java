@@ -0,0 +1,367 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Random;
+import model.Credential;
+import model.QualityReport;
+import model.ReportManager;
+import model.User;
+import model.UserLevel;
+import model.UserManager;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+
+/**
+ * Writes a database (users.json, credentials.json and waterReports.json) of made up but realistic looking data, for
+ * trying the map, the history graph and server startup at scale. The same settings and seed always write the same
+ * files. Water sources are clustered around towns near real cities, the bigger clusters much bigger than the rest,
+ * with a few in the countryside between them; most sources have a handful of quality reports and a few are monitored
+ * sites with long series. Each series wanders around the source's own level, worse in summer, with the occasional
+ * contamination spike, and the safety follows from the measurements. Settings:
+ *   -Dthirsty.gen.seed=1
+ *   -Dthirsty.gen.users=1000           every user's password is -Dthirsty.gen.password=password
+ *   -Dthirsty.gen.reports=1000000      water reports
+ *   -Dthirsty.gen.clusters=500
+ *   -Dthirsty.gen.quality=3            average quality reports of an ordinary source
+ *   -Dthirsty.gen.monitored=0.01       share of the sources which are monitored
+ *   -Dthirsty.gen.series=300           average quality reports of a monitored source
+ *   -Dthirsty.gen.start=2012-01-01 -Dthirsty.gen.years=5
+ *   -Dthirsty.gen.load=false           afterwards, time loading the files like the server does when it starts
+ * Run with: gradle generateDataset -Pdir=/tmp/thirsty-db -Preports=5000000, then start the server on it with
+ * -Dthirsty.dbPath=/tmp/thirsty-db/. Users the load generator needs are added by it when they're missing
+ * @author tybrown
+ */
+public class DatasetGenerator {
+
+    //latitude, longitude of cities the clusters are spread around
+    private static final double[][] CITIES = {
+        {33.749, -84.388}, {40.713, -74.006}, {34.052, -118.244}, {41.878, -87.630}, {29.760, -95.370},
+        {39.739, -104.990}, {47.606, -122.332}, {25.762, -80.192}, {51.507, -0.128}, {48.857, 2.352},
+        {52.520, 13.405}, {41.903, 12.496}, {40.417, -3.704}, {19.433, -99.133}, {-23.551, -46.633},
+        {-34.604, -58.382}, {-1.292, 36.822}, {6.524, 3.379}, {30.044, 31.236}, {-26.204, 28.047},
+        {28.614, 77.209}, {19.076, 72.878}, {23.810, 90.413}, {13.756, 100.502}, {-6.209, 106.846},
+        {14.600, 120.984}, {39.904, 116.407}, {31.230, 121.474}, {35.690, 139.692}, {-33.869, 151.209},
+    };
+    private static final double KM_PER_DEGREE = 111.32;
+    //how far from its city a cluster can be, and how far the countryside reaches
+    private static final double CLUSTER_SPREAD_KM = 150;
+    private static final double RURAL_SPREAD_KM = 400;
+    private static final double RURAL_SHARE = 0.05;
+    //cluster sizes fall off like town sizes do
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    //how common each WaterType is, in their order
+    private static final double[] TYPE_WEIGHTS = cumulate(new double[] {0.08, 0.27, 0.2, 0.2, 0.15, 0.1});
+    //median contaminant PPM of each WaterType, a source's own level is spread around it
+    private static final double[] TYPE_CONTAMINANT = {4, 30, 120, 70, 15, 150};
+    private static final double SITE_SPREAD = 0.8;
+    //virus PPM are roughly this part of the contaminant PPM
+    private static final double VIRUS_RATIO = 0.2;
+
+    //day to day variation of a series: how much of yesterday's level is kept, and how much it changes
+    private static final double PERSISTENCE = 0.85;
+    private static final double NOISE = 0.25;
+    private static final double SEASONAL = 0.3;
+    private static final double SPIKE_CHANCE = 0.01;
+    private static final double SPIKE = 1.8;
+    private static final double UNKNOWN_CHANCE = 0.03;
+    private static final double SAFE_CONTAMINANT = 50;
+    private static final double SAFE_VIRUS = 10;
+    private static final double TREATABLE_CONTAMINANT = 250;
+    private static final double TREATABLE_VIRUS = 60;
+    private static final long ORDINARY_INTERVAL_HOURS = 24 * 30;
+    private static final long MONITORED_INTERVAL_HOURS = 24;
+
+    private static final int PROGRESS_EVERY = 100000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final long seed;
+    private final int users;
+    private final int reports;
+    private final int clusters;
+    private final double quality;
+    private final double monitored;
+    private final double series;
+    private final LocalDateTime start;
+    private final long spanMillis;
+    private final String password;
+
+    private Random random;
+    private double[][] clusterCenter;
+    private double[] clusterRadiusKm;
+    private double[] clusterWeights;
+    private String[] usernames;
+    private double[] authorWeights;
+    private String[] workers;
+    private double[] workerWeights;
+    private long qualityReports;
+    private long lastMillis;
+
+    /**
+     * Makes a generator
+     * @param seed The seed of everything random
+     * @param users How many users to write
+     * @param reports How many water reports to write
+     * @param clusters How many clusters the water sources are in
+     * @param quality The average number of quality reports of an ordinary source
+     * @param monitored The share of the sources which are monitored
+     * @param series The average number of quality reports of a monitored source
+     * @param start When the first water report was made
+     * @param years The years over which the water reports were made
+     * @param password The password of every user
+     */
+    public DatasetGenerator(long seed, int users, int reports, int clusters, double quality, double monitored,
+                            double series, LocalDate start, int years, String password) {
+        this.seed = seed;
+        this.users = Math.max(users, 2);
+        this.reports = reports;
+        this.clusters = Math.max(clusters, 1);
+        this.quality = quality;
+        this.monitored = monitored;
+        this.series = series;
+        this.start = start.atStartOfDay();
+        this.spanMillis = ChronoUnit.MILLIS.between(this.start, this.start.plusYears(years));
+        this.password = password;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: DatasetGenerator directory");
+            System.exit(2);
+        }
+        DatasetGenerator gen = new DatasetGenerator(Long.getLong("thirsty.gen.seed", 1),
+                Integer.getInteger("thirsty.gen.users", 1000), Integer.getInteger("thirsty.gen.reports", 1000000),
+                Integer.getInteger("thirsty.gen.clusters", 500),
+                Double.parseDouble(System.getProperty("thirsty.gen.quality", "3")),
+                Double.parseDouble(System.getProperty("thirsty.gen.monitored", "0.01")),
+                Double.parseDouble(System.getProperty("thirsty.gen.series", "300")),
+                LocalDate.parse(System.getProperty("thirsty.gen.start", "2012-01-01")),
+                Integer.getInteger("thirsty.gen.years", 5), System.getProperty("thirsty.gen.password", "password"));
+        File dir = new File(args[0]);
+        long begin = System.nanoTime();
+        gen.generate(dir);
+        System.out.printf("Wrote %d users, %d water reports and %d quality reports to %s in %.1f s%n", gen.users,
+                gen.reports, gen.qualityReports, dir, (System.nanoTime() - begin) / 1e9);
+        if (Boolean.getBoolean("thirsty.gen.load")) {
+            load(dir);
+        }
+    }
+
+    /**
+     * Writes the database files
+     * @param dir The directory to write them to, which must not have any of them yet
+     * @return the number of quality reports written
+     * @throws IOException if the files couldn't be written, or already exist
+     */
+    public long generate(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw (new IOException("Can't create " + dir));
+        }
+        for (String name : new String[] {PersistentJsonFile.USER_FILE_NAME, PersistentJsonFile.CREDENTIAL_FILE_NAME,
+                PersistentJsonFile.WR_FILE_NAME}) {
+            if (new File(dir, name).length() > 0) {
+                throw (new IOException(new File(dir, name) + " already exists, not overwriting it"));
+            }
+        }
+        random = new Random(seed);
+        qualityReports = 0;
+        lastMillis = -1;
+        //only used for its json, it never opens its files
+        PersistentJsonFile json = new PersistentJsonFile(dir.getPath());
+        makeClusters();
+        writeUsers(json, dir);
+        try (Writer out = new BufferedWriter(new FileWriter(new File(dir, PersistentJsonFile.WR_FILE_NAME)), BUFFER_SIZE)) {
+            for (int num = 1; num <= reports; num++) {
+                out.append(json.toJson(waterReport(num))).append('\n');
+                if (num % PROGRESS_EVERY == 0) {
+                    System.out.printf("%d water reports, %d quality reports%n", num, qualityReports);
+                }
+            }
+        }
+        return (qualityReports);
+    }
+
+    private void makeClusters() {
+        clusterCenter = new double[clusters][];
+        clusterRadiusKm = new double[clusters];
+        clusterWeights = new double[clusters];
+        for (int i = 0; i < clusters; i++) {
+            double[] city = CITIES[random.nextInt(CITIES.length)];
+            //the first clusters are the cities themselves
+            clusterCenter[i] = i < CITIES.length ? CITIES[i] : offset(city, random.nextDouble() * CLUSTER_SPREAD_KM);
+            clusterRadiusKm[i] = 1 + random.nextDouble() * (i < CITIES.length ? 20 : 5);
+            clusterWeights[i] = 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+        }
+        cumulate(clusterWeights);
+    }
+
+    private void writeUsers(PersistentJsonFile json, File dir) throws IOException {
+        usernames = new String[users];
+        authorWeights = new double[users];
+        String[] canReport = new String[users];
+        int workerCount = 0;
+        try (Writer userOut = new BufferedWriter(new FileWriter(new File(dir, PersistentJsonFile.USER_FILE_NAME)), BUFFER_SIZE);
+             Writer credentialOut = new BufferedWriter(new FileWriter(new File(dir, PersistentJsonFile.CREDENTIAL_FILE_NAME)),
+                     BUFFER_SIZE)) {
+            for (int i = 0; i < users; i++) {
+                String username = "user" + i;
+                double r = random.nextDouble();
+                //one administrator and at least one worker, then mostly users
+                UserLevel level = i == 0 ? UserLevel.ADMINISTRATOR : i == 1 || r < 0.15 ? UserLevel.WORKER
+                        : r < 0.19 ? UserLevel.MANAGER : r < 0.2 ? UserLevel.ADMINISTRATOR : UserLevel.USER;
+                User u = new User(username, "User " + i, username + "@example.com", level);
+                u.setLastCoords(clusterCenter[i % clusters][0], clusterCenter[i % clusters][1]);
+                userOut.append(json.toJson(u)).append('\n');
+                credentialOut.append(json.toJson(new Credential(username, password))).append('\n');
+                usernames[i] = username;
+                //a few users make most of the reports
+                authorWeights[i] = 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+                if (level.compareTo(UserLevel.WORKER) >= 0) {
+                    canReport[workerCount++] = username;
+                }
+            }
+        }
+        cumulate(authorWeights);
+        workers = Arrays.copyOf(canReport, workerCount);
+        workerWeights = new double[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workerWeights[i] = 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+        }
+        cumulate(workerWeights);
+    }
+
+    /**
+     * Makes a water report with its quality reports
+     * @param num The report number, reports are made more and more often over the years
+     * @return the report
+     */
+    private WaterReport waterReport(int num) {
+        //the server keeps water reports in date order and takes two at the same time for the same report, and the
+        //files only keep milliseconds
+        long millis = Math.max((long) (spanMillis * Math.sqrt((num - random.nextDouble()) / reports)), lastMillis + 1);
+        lastMillis = millis;
+        LocalDateTime made = start.plus(millis, ChronoUnit.MILLIS);
+        double[] where;
+        if (random.nextDouble() < RURAL_SHARE) {
+            where = offset(CITIES[random.nextInt(CITIES.length)], random.nextDouble() * RURAL_SPREAD_KM);
+        } else {
+            int c = pick(clusterWeights);
+            where = offset(clusterCenter[c], Math.abs(random.nextGaussian()) * clusterRadiusKm[c]);
+        }
+        WaterType type = WaterType.values()[pick(TYPE_WEIGHTS)];
+        //a source's own contaminant level, log PPM
+        double level = Math.log(TYPE_CONTAMINANT[type.ordinal()]) + random.nextGaussian() * SITE_SPREAD;
+        WaterReport wr = new WaterReport(num, made, round(where[0], 1e6), round(where[1], 1e6), type,
+                condition(Math.exp(level)), usernames[pick(authorWeights)]);
+        boolean isMonitored = random.nextDouble() < monitored;
+        int count = geometric(isMonitored ? series : quality);
+        long interval = isMonitored ? MONITORED_INTERVAL_HOURS : ORDINARY_INTERVAL_HOURS;
+        double contaminant = level;
+        double virus = level + Math.log(VIRUS_RATIO);
+        LocalDateTime when = made;
+        for (int q = 1; q <= count; q++) {
+            when = when.plusMinutes((long) (-Math.log(1 - random.nextDouble()) * interval * 60) + 1);
+            double season = SEASONAL * Math.sin(2 * Math.PI * (when.getDayOfYear() - 80) / 365.0)
+                    * Math.signum(where[0]);
+            double spike = random.nextDouble() < SPIKE_CHANCE ? SPIKE : 0;
+            contaminant = level + PERSISTENCE * (contaminant - level) + NOISE * random.nextGaussian() + spike;
+            virus = level + Math.log(VIRUS_RATIO) + PERSISTENCE * (virus - level - Math.log(VIRUS_RATIO))
+                    + NOISE * random.nextGaussian() + spike;
+            double cppm = round(Math.exp(contaminant + season), 10);
+            double vppm = round(Math.exp(virus + season), 10);
+            wr.addQualityReport(new QualityReport(when, q, workers[pick(workerWeights)], safety(vppm, cppm), vppm, cppm, num));
+        }
+        qualityReports += count;
+        return (wr);
+    }
+
+    private WaterCondition condition(double contaminant) {
+        //mostly what the water's like, sometimes not
+        if (random.nextDouble() < 0.1) {
+            return (WaterCondition.values()[random.nextInt(WaterCondition.values().length)]);
+        }
+        return (contaminant < 20 ? WaterCondition.POTABLE : contaminant < 80 ? WaterCondition.CLEAR
+                : contaminant < 300 ? WaterCondition.MUDDY : WaterCondition.WASTE);
+    }
+
+    private WaterSafety safety(double virus, double contaminant) {
+        if (random.nextDouble() < UNKNOWN_CHANCE) {
+            return (WaterSafety.UNKNOWN);
+        }
+        if (contaminant < SAFE_CONTAMINANT && virus < SAFE_VIRUS) {
+            return (WaterSafety.SAFE);
+        }
+        return (contaminant < TREATABLE_CONTAMINANT && virus < TREATABLE_VIRUS ? WaterSafety.TREATABLE : WaterSafety.UNSAFE);
+    }
+
+    /**
+     * Moves a point in a random direction
+     * @param from latitude, longitude
+     * @param km How far to move it
+     * @return the new latitude, longitude
+     */
+    private double[] offset(double[] from, double km) {
+        double angle = random.nextDouble() * 2 * Math.PI;
+        double lat = Math.max(-85, Math.min(85, from[0] + km * Math.cos(angle) / KM_PER_DEGREE));
+        double lon = from[1] + km * Math.sin(angle) / (KM_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+        return (new double[] {lat, lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon});
+    }
+
+    private int geometric(double mean) {
+        if (mean <= 0) {
+            return (0);
+        }
+        //number of failures before a success, which averages mean
+        return ((int) (Math.log(1 - random.nextDouble()) / Math.log(mean / (mean + 1))));
+    }
+
+    /**
+     * Turns weights into running totals, for pick()
+     * @param weights The weights, which are replaced
+     * @return the weights
+     */
+    private static double[] cumulate(double[] weights) {
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        return (weights);
+    }
+
+    private int pick(double[] cumulative) {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        return (Math.min(i < 0 ? -i - 1 : i, cumulative.length - 1));
+    }
+
+    private static double round(double d, double scale) {
+        return (Math.round(d * scale) / scale);
+    }
+
+    /**
+     * Loads the files the way the server does when it starts, and prints how long that took and the heap it needs
+     * @param dir The database directory
+     */
+    private static void load(File dir) {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heap = rt.totalMemory() - rt.freeMemory();
+        long begin = System.nanoTime();
+        PersistentJsonFile db = new PersistentJsonFile(dir.getPath() + "/");
+        UserManager.initialize(db);
+        ReportManager.initialize(db);
+        db.initialize();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.gc();
+        System.out.printf("Loaded %d users and %d water reports in %.1f s, %.0f MB of heap%n", UserManager.getUserList().size(),
+                ReportManager.getWaterReportList().size(), seconds, (rt.totalMemory() - rt.freeMemory() - heap) / 1e6);
+        db.terminate();
+    }
+}
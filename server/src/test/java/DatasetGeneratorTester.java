@@ -0,0 +1,82 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import model.WaterReport;
+import persistence.json.PersistentJsonFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A JUnit test class for the scale test data generator
+ * @author tybrown
+ */
+public class DatasetGeneratorTester {
+    //writes a few thousand reports
+    public static final int TIMEOUT = 10000;
+    private static final int REPORTS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PersistentJsonFile json = new PersistentJsonFile("/tmp/none/");
+
+    private static DatasetGenerator generator(long seed) {
+        return (new DatasetGenerator(seed, 50, REPORTS, 20, 3, 0.01, 100, LocalDate.of(2015, 1, 1), 2, "pw"));
+    }
+
+    private static byte[] read(File dir, String name) throws IOException {
+        return (Files.readAllBytes(new File(dir, name).toPath()));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSameSeedSameFiles() throws IOException {
+        File a = folder.newFolder("a");
+        File b = folder.newFolder("b");
+        File c = folder.newFolder("c");
+        long quality = generator(7).generate(a);
+        assertEquals(quality, generator(7).generate(b));
+        generator(8).generate(c);
+        for (String name : new String[] {PersistentJsonFile.USER_FILE_NAME, PersistentJsonFile.CREDENTIAL_FILE_NAME,
+                PersistentJsonFile.WR_FILE_NAME}) {
+            assertTrue(name, Arrays.equals(read(a, name), read(b, name)));
+        }
+        assertFalse(Arrays.equals(read(a, PersistentJsonFile.WR_FILE_NAME), read(c, PersistentJsonFile.WR_FILE_NAME)));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testReportsAreLoadable() throws IOException {
+        File dir = folder.newFolder();
+        long quality = generator(1).generate(dir);
+        List<String> lines = Files.readAllLines(new File(dir, PersistentJsonFile.WR_FILE_NAME).toPath());
+        assertEquals(REPORTS, lines.size());
+        WaterReport last = null;
+        long qualityRead = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            WaterReport wr = json.fromJson(lines.get(i), WaterReport.class);
+            assertEquals(i + 1, wr.getReportNum());
+            //the server keeps them in date order, so none may be at the same time
+            assertTrue(last == null || wr.getDateTime().isAfter(last.getDateTime()));
+            assertTrue(Math.abs(wr.getLatitude()) <= 90 && Math.abs(wr.getLongitude()) <= 180);
+            qualityRead += wr.getQualityReportList().size();
+            last = wr;
+        }
+        assertEquals(quality, qualityRead);
+        assertEquals(50, Files.readAllLines(new File(dir, PersistentJsonFile.USER_FILE_NAME).toPath()).size());
+    }
+
+    @Test(timeout = TIMEOUT, expected = IOException.class)
+    public void testDoesNotOverwrite() throws IOException {
+        File dir = folder.newFolder();
+        generator(1).generate(dir);
+        generator(1).generate(dir);
+    }
+}
@@ -0,0 +1,480 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lib.Histogram;
+import model.Credential;
+import model.QualityReport;
+import model.User;
+import model.UserLevel;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterSafety;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+import persistence.json.net.MessageChannel;
+import persistence.json.net.ReportBatch;
+import persistence.json.net.ServerStats;
+import server.ServerThreads;
+
+/**
+ * Simulates many clients against a running ThirstyServer (or a ShardRouter) over the normal protocol, and reports
+ * the latency of every kind of command, how long pushes take to reach the other clients, and the server's heap.
+ * Active clients send commands at random (Poisson) times, picked from the mix; idle clients only log in, answer
+ * heartbeats and receive pushes. AUTHENTICATE in the mix logs out and back in on the same connection, snapshot
+ * and all. Settings:
+ *   -Dthirsty.host=localhost -Dthirsty.port=9988
+ *   -Dthirsty.load.clients=1000          connections
+ *   -Dthirsty.load.idle=0.5              share of the connections which stay idle
+ *   -Dthirsty.load.rate=0.5              commands per second of each active client
+ *   -Dthirsty.load.mix=AUTHENTICATE:1,SAVE_WATER_REPORT:6,SAVE_QUALITY_REPORT:3
+ *   -Dthirsty.load.seconds=60
+ *   -Dthirsty.load.users=100             accounts the clients share, created if they don't exist
+ * Saves above the server's limits (-Dthirsty.connectionSavesPerSecond, -Dthirsty.userSavesPerSecond) are refused;
+ * refusals are counted, not timed. Server memory comes from ADMIN_STATS, as the "load-admin" user.
+ * Run with: gradle loadTest -Pclients=2000 -Pseconds=120 (needs ulimit -n above 2x clients)
+ * @author tybrown
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "load";
+    private static final String ADMIN = "load-admin";
+    private static final int REPORT_SECONDS = 5;
+
+    private final String host = System.getProperty("thirsty.host", "localhost");
+    private final int port = Integer.getInteger("thirsty.port", 9988);
+    private final int clients = Integer.getInteger("thirsty.load.clients", 1000);
+    private final double idle = Double.parseDouble(System.getProperty("thirsty.load.idle", "0.5"));
+    private final double rate = Double.parseDouble(System.getProperty("thirsty.load.rate", "0.5"));
+    private final long seconds = Long.getLong("thirsty.load.seconds", 60);
+    private final int users = Integer.getInteger("thirsty.load.users", 100);
+    private final Map<Command.CommandType, Integer> mix = parseMix(System.getProperty("thirsty.load.mix",
+            "AUTHENTICATE:1,SAVE_WATER_REPORT:6,SAVE_QUALITY_REPORT:3"));
+
+    private final PersistentJsonFile json = new PersistentJsonFile(PersistentJsonFile.DEFAULT_PATH);
+    private final Map<Command.CommandType, Histogram> latency = new EnumMap<>(Command.CommandType.class);
+    private final Map<Command.CommandType, LongAdder> refused = new EnumMap<>(Command.CommandType.class);
+    private final Map<Command.CommandType, LongAdder> failed = new EnumMap<>(Command.CommandType.class);
+    //from a save until another client got the push of it
+    private final Histogram pushLag = new Histogram();
+    //water report number -> when it last changed, for pushLag
+    private final Map<Integer, Long> changedAt = new ConcurrentHashMap<>();
+    //saved water reports, parents for the quality reports
+    private final List<Integer> saved = new ArrayList<>();
+    //starts after the highest report number in the snapshots, so saves never replace existing reports
+    private final AtomicInteger nextReport = new AtomicInteger();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final AtomicLong heapPeak = new AtomicLong();
+    private volatile ServerStats lastStats;
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator().run();
+        System.exit(0);
+    }
+
+    private static Map<Command.CommandType, Integer> parseMix(String text) {
+        Map<Command.CommandType, Integer> res = new EnumMap<>(Command.CommandType.class);
+        for (String part : text.split(",")) {
+            String[] kv = part.split(":");
+            Command.CommandType type = Command.CommandType.valueOf(kv[0].trim().toUpperCase());
+            if (type != Command.CommandType.AUTHENTICATE && type != Command.CommandType.SAVE_WATER_REPORT
+                    && type != Command.CommandType.SAVE_QUALITY_REPORT) {
+                throw (new IllegalArgumentException("The mix can only have AUTHENTICATE, SAVE_WATER_REPORT and SAVE_QUALITY_REPORT"));
+            }
+            res.put(type, kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1);
+        }
+        return (res);
+    }
+
+    private void run() throws Exception {
+        for (Command.CommandType type : mix.keySet()) {
+            latency.put(type, new Histogram());
+            refused.put(type, new LongAdder());
+            failed.put(type, new LongAdder());
+        }
+        ServerThreads threads = new ServerThreads(
+                ServerThreads.Mode.valueOf(System.getProperty("thirsty.threads", "platform").toUpperCase()));
+        for (int i = 0; i < users; i++) {
+            register("load" + i, UserLevel.WORKER);
+        }
+        register(ADMIN, UserLevel.ADMINISTRATOR);
+
+        int active = (int) Math.round(clients * (1 - idle));
+        System.out.printf("%d clients (%d active at %.2f/s, %d idle), mix %s, %d s against %s:%d%n", clients, active,
+                rate, clients - active, mix, seconds, host, port);
+        List<Client> all = new ArrayList<>();
+        CountDownLatch connected = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Client c = new Client("load" + i % users, i < active);
+            all.add(c);
+            threads.start("load-" + i, () -> {
+                try {
+                    c.connect();
+                } catch (IOException e) {
+                    disconnects.increment();
+                    return;
+                } finally {
+                    connected.countDown();
+                }
+                c.read();
+            });
+        }
+        connected.await();
+        System.out.printf("Connected and logged in in %d ms, %d failed%n",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), disconnects.sum());
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        for (Client c : all) {
+            if (c.active && c.session != null) {
+                c.schedule(scheduler);
+            }
+        }
+        threads.start("load-stats", this::pollStats);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long runStart = System.nanoTime();
+        while (System.nanoTime() < end) {
+            TimeUnit.SECONDS.sleep(Math.min(REPORT_SECONDS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(end - System.nanoTime()))));
+            long done = 0;
+            for (Histogram h : latency.values()) {
+                done += h.getCount();
+            }
+            System.out.printf("  %3d s: %d commands answered, push lag p99 %.1f ms, %d disconnected%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - runStart), done, pushLag.getPercentile(99) / 1e6,
+                    disconnects.sum());
+        }
+        running = false;
+        scheduler.shutdownNow();
+        double elapsed = (System.nanoTime() - runStart) / 1e9;
+        report(elapsed);
+        for (Client c : all) {
+            c.close();
+        }
+        threads.shutdown(1000);
+    }
+
+    private void report(double elapsed) {
+        System.out.printf("%n%-20s %9s %9s %9s %9s %9s %9s %9s %9s%n", "Command", "done", "per s", "refused", "failed",
+                "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<Command.CommandType, Histogram> e : latency.entrySet()) {
+            Histogram h = e.getValue();
+            System.out.printf("%-20s %9d %9.1f %9d %9d %9.2f %9.2f %9.2f %9.2f%n", e.getKey(), h.getCount(),
+                    h.getCount() / elapsed, refused.get(e.getKey()).sum(), failed.get(e.getKey()).sum(),
+                    h.getPercentile(50) / 1e6, h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6);
+        }
+        System.out.printf("%-20s %9d %9.1f %9s %9s %9.2f %9.2f %9.2f %9.2f%n", "push lag", pushLag.getCount(),
+                pushLag.getCount() / elapsed, "", "", pushLag.getPercentile(50) / 1e6, pushLag.getPercentile(90) / 1e6,
+                pushLag.getPercentile(99) / 1e6, pushLag.getMax() / 1e6);
+        System.out.printf("%d commands skipped while logging back in, %d connections lost%n", skipped.sum(), disconnects.sum());
+        ServerStats stats = lastStats;
+        if (stats != null) {
+            System.out.printf("Server heap: %.1f MB at the end, %.1f MB peak, of %.1f MB; %d connections, %d water reports%n",
+                    stats.getHeapUsed() / 1048576.0, heapPeak.get() / 1048576.0, stats.getHeapMax() / 1048576.0,
+                    stats.getConnections(), stats.getWaterReports());
+        } else {
+            System.out.println("No server stats, ADMIN_STATS was refused");
+        }
+    }
+
+    /**
+     * Asks the server for its stats every second, for the heap peak
+     */
+    private void pollStats() {
+        Client admin = new Client(ADMIN, false);
+        try {
+            admin.connect();
+            while (running) {
+                Command req = new Command(Command.CommandType.ADMIN_STATS, null, null);
+                req.setRequestId(admin.requests.incrementAndGet());
+                req.setSession(admin.session);
+                admin.channel.sendCommand(req);
+                Command resp;
+                while ((resp = admin.channel.receiveCommand()) != null && !(resp.isResponse()
+                        && resp.getCommand() == Command.CommandType.ADMIN_STATS)) {
+                    admin.handlePing(resp);
+                }
+                ServerStats stats = resp != null && resp.isSuccessful() ? json.readPayload(resp, ServerStats.class) : null;
+                if (stats == null) {
+                    return;
+                }
+                lastStats = stats;
+                heapPeak.accumulateAndGet(stats.getHeapUsed(), Math::max);
+                TimeUnit.SECONDS.sleep(1);
+            }
+        } catch (IOException | InterruptedException e) {
+            //no stats then
+        } finally {
+            admin.close();
+        }
+    }
+
+    /**
+     * Creates a user. Fails harmlessly if it already exists
+     */
+    private void register(String username, UserLevel level) throws IOException {
+        try (Socket s = new Socket(host, port)) {
+            MessageChannel channel = new MessageChannel(s, json);
+            User u = new User(username, "Load", "Test", "load@test", level);
+            channel.sendCommand(new Command(Command.CommandType.SAVE_USER, json.toJson(u), null));
+            Command resp = channel.receiveCommand();
+            if (resp != null && resp.isSuccessful()) {
+                channel.sendCommand(new Command(Command.CommandType.SAVE_CREDENTIAL,
+                        json.toJson(new Credential(username, PASSWORD)), null));
+                while ((resp = channel.receiveCommand()) != null && resp.getCommand() != Command.CommandType.SAVE_CREDENTIAL) {
+                    //skip the LOAD_USER push
+                }
+            }
+        }
+    }
+
+    /**
+     * One simulated client connection
+     */
+    private class Client {
+        private final String username;
+        private final boolean active;
+        private final AtomicLong requests = new AtomicLong();
+        //request id -> when it was sent
+        private final Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+        private Socket sock;
+        private MessageChannel channel;
+        //null while logging back in
+        private volatile String session;
+
+        Client(String username, boolean active) {
+            this.username = username;
+            this.active = active;
+        }
+
+        /**
+         * Connects and logs in over binary, reading the whole snapshot
+         */
+        void connect() throws IOException {
+            sock = new Socket(host, port);
+            channel = new MessageChannel(sock, json);
+            Command auth = login();
+            channel.sendCommand(auth);
+            Command resp = channel.receiveCommand();
+            if (resp == null || !resp.isSuccessful()) {
+                throw (new IOException("Authentication failed"));
+            }
+            channel.setEncoding(resp.getEncoding());
+            Command c;
+            while ((c = channel.receiveCommand()) != null) {
+                if (c.getCommand() != Command.CommandType.LOAD_SNAPSHOT) {
+                    continue;
+                }
+                ReportBatch batch = json.readPayload(c, ReportBatch.class);
+                for (WaterReport wr : batch.getReports()) {
+                    nextReport.accumulateAndGet(wr.getReportNum(), Math::max);
+                }
+                if (batch.isLast()) {
+                    session = resp.getSession();
+                    return;
+                }
+            }
+            throw (new IOException("Closed during snapshot"));
+        }
+
+        private Command login() {
+            Command auth = new Command(Command.CommandType.AUTHENTICATE, json.toJson(new Credential(username, PASSWORD)), null);
+            auth.setEncoding(Command.Encoding.BINARY);
+            auth.setRequestId(requests.incrementAndGet());
+            return (auth);
+        }
+
+        void schedule(ScheduledExecutorService scheduler) {
+            //exponential gaps make a Poisson process, so clients don't send in lockstep
+            long delay = (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate * 1e6);
+            scheduler.schedule(() -> {
+                if (!running) {
+                    return;
+                }
+                try {
+                    send(pick());
+                } catch (IOException e) {
+                    return;
+                }
+                schedule(scheduler);
+            }, delay, TimeUnit.MICROSECONDS);
+        }
+
+        private Command.CommandType pick() {
+            int total = 0;
+            for (int w : mix.values()) {
+                total += w;
+            }
+            int r = ThreadLocalRandom.current().nextInt(total);
+            for (Map.Entry<Command.CommandType, Integer> e : mix.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return (e.getKey());
+                }
+            }
+            return (Command.CommandType.SAVE_WATER_REPORT);
+        }
+
+        private void send(Command.CommandType type) throws IOException {
+            String s = session;
+            if (s == null) {
+                skipped.increment();
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Command c;
+            if (type == Command.CommandType.AUTHENTICATE) {
+                session = null;
+                Command logout = new Command(Command.CommandType.DEAUTHENTICATE, null, null);
+                logout.setSession(s);
+                channel.sendCommand(logout);
+                c = login();
+            } else {
+                int parent = -1;
+                if (type == Command.CommandType.SAVE_QUALITY_REPORT) {
+                    synchronized (saved) {
+                        parent = saved.isEmpty() ? -1 : saved.get(random.nextInt(saved.size()));
+                    }
+                    if (parent < 0) {
+                        //nothing to add a quality report to yet
+                        type = Command.CommandType.SAVE_WATER_REPORT;
+                    }
+                }
+                c = new Command(type, null, null);
+                if (type == Command.CommandType.SAVE_WATER_REPORT) {
+                    int num = nextReport.incrementAndGet();
+                    c.setPayload(new WaterReport(num, random.nextDouble(-80, 80), random.nextDouble(-180, 180),
+                            WaterType.values()[random.nextInt(WaterType.values().length)], WaterCondition.CLEAR, username));
+                    changedAt.put(num, System.nanoTime());
+                } else {
+                    c.setPayload(new QualityReport(nextReport.incrementAndGet(), username,
+                            WaterSafety.values()[random.nextInt(WaterSafety.values().length)], random.nextDouble(100),
+                            random.nextDouble(100), parent));
+                    changedAt.put(parent, System.nanoTime());
+                }
+                c.setSession(s);
+                c.setRequestId(requests.incrementAndGet());
+            }
+            sentAt.put(c.getRequestId(), System.nanoTime());
+            channel.sendCommand(c);
+        }
+
+        /**
+         * Reads until the connection closes: answers, pushes and heartbeats
+         */
+        void read() {
+            try {
+                Command c;
+                while ((c = channel.receiveCommand()) != null) {
+                    long now = System.nanoTime();
+                    if (handlePing(c)) {
+                        continue;
+                    }
+                    if (c.isResponse()) {
+                        answered(c, now);
+                    } else {
+                        pushed(c, now);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                //closed
+            }
+            if (running) {
+                disconnects.increment();
+            }
+        }
+
+        boolean handlePing(Command c) throws IOException {
+            if (c.getCommand() == Command.CommandType.HEARTBEAT) {
+                if (!c.isResponse()) {
+                    channel.sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null, true, true, null).respondingTo(c));
+                }
+                return (true);
+            }
+            return (false);
+        }
+
+        private void answered(Command c, long now) {
+            Long sent = sentAt.remove(c.getRequestId());
+            if (sent == null || !latency.containsKey(c.getCommand())) {
+                //like the answer to DEAUTHENTICATE
+                return;
+            }
+            if (c.isSuccessful()) {
+                latency.get(c.getCommand()).record(now - sent);
+                if (c.getCommand() == Command.CommandType.AUTHENTICATE) {
+                    session = c.getSession();
+                } else if (c.getCommand() == Command.CommandType.SAVE_WATER_REPORT) {
+                    WaterReport wr = json.readPayload(c, WaterReport.class);
+                    if (wr != null) {
+                        synchronized (saved) {
+                            saved.add(wr.getReportNum());
+                        }
+                    }
+                }
+            } else if (c.getRetryAfter() > 0) {
+                refused.get(c.getCommand()).increment();
+            } else {
+                failed.get(c.getCommand()).increment();
+                if (c.getCommand() == Command.CommandType.AUTHENTICATE) {
+                    //shouldn't happen, but don't stop sending for good
+                    session = "";
+                }
+            }
+        }
+
+        private void pushed(Command c, long now) {
+            switch (c.getCommand()) {
+                case LOAD_WATER_REPORT:
+                    WaterReport wr = json.readPayload(c, WaterReport.class);
+                    lag(wr == null ? 0 : wr.getReportNum(), now);
+                    break;
+                case LOAD_QUALITY_REPORT:
+                    QualityReport qr = json.readPayload(c, QualityReport.class);
+                    lag(qr == null ? 0 : qr.getParentReportNum(), now);
+                    break;
+                case LOAD_REPORT_BATCH:
+                    ReportBatch batch = json.readPayload(c, ReportBatch.class);
+                    if (batch != null) {
+                        for (WaterReport r : batch.getReports()) {
+                            lag(r.getReportNum(), now);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void lag(int reportNum, long now) {
+            //from its last change, so a batch carrying two changes of a report counts the newer one
+            Long changed = changedAt.get(reportNum);
+            if (changed != null) {
+                pushLag.record(now - changed);
+            }
+        }
+
+        void close() {
+            try {
+                if (sock != null) {
+                    sock.close();
+                }
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterType;
+import server.PushCoalescer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the server's push coalescing
+ * @author tybrown
+ */
+public class PushCoalescerTester {
+    public static final int TIMEOUT = 200;
+    private static final long WINDOW = 50;
+
+    private PushCoalescer<String> pushes;
+
+    @Before
+    public void setup() {
+        pushes = new PushCoalescer<>(WINDOW);
+    }
+
+    private static WaterReport report(int num) {
+        return (new WaterReport(num, 33.7756, -84.3963, WaterType.LAKE, WaterCondition.CLEAR, "author"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLoneChangeGoesOutNow() {
+        assertTrue(pushes.offer("a", 1, report(1), 1, 0));
+        assertTrue(pushes.offer("b", 1, report(1), 1, 10));
+        assertTrue(pushes.offer("a", 2, report(2), 2, WINDOW));
+        assertEquals(0, pushes.pendingCount());
+        assertEquals(Long.MAX_VALUE, pushes.nanosUntilDue(WINDOW));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testBurstIsCoalesced() {
+        WaterReport latest = report(1);
+        assertTrue(pushes.offer("a", 1, report(1), 1, 0));
+        assertFalse(pushes.offer("a", 1, report(1), 2, 10));
+        assertFalse(pushes.offer("a", 2, report(2), 3, 20));
+        assertFalse(pushes.offer("a", 1, latest, 4, 30));
+        assertEquals(1, pushes.pendingCount());
+        assertEquals(WINDOW - 30, pushes.nanosUntilDue(30));
+        assertTrue(pushes.takeDue(WINDOW - 1).isEmpty());
+
+        Map<String, PushCoalescer.Batch> due = pushes.takeDue(WINDOW);
+        PushCoalescer.Batch batch = due.get("a");
+        assertEquals(2, batch.getReports().size());
+        assertSame(latest, batch.getReports().get(0));
+        assertEquals(4, batch.getSequence());
+        assertEquals(3, batch.getOffered());
+        assertEquals(0, pushes.pendingCount());
+        //the flush starts a new window
+        assertFalse(pushes.offer("a", 3, report(3), 5, WINDOW + 1));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testDeleteWins() {
+        pushes.offer("a", 1, report(1), 1, 0);
+        pushes.offer("a", 2, report(2), 2, 1);
+        pushes.offer("a", 2, null, 3, 2);
+        PushCoalescer.Batch batch = pushes.takeDue(WINDOW).get("a");
+        assertEquals(Collections.emptyList(), batch.getReports());
+        assertEquals(Arrays.asList(2), batch.getDeleted());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testTakeAllBeforeDue() {
+        pushes.offer("a", 1, report(1), 1, 0);
+        pushes.offer("a", 2, report(2), 2, 1);
+        pushes.offer("b", 1, report(1), 1, 0);
+        pushes.offer("b", 3, report(3), 3, 2);
+        assertTrue(pushes.takeDue(2).isEmpty());
+        Map<String, PushCoalescer.Batch> all = pushes.takeAll();
+        assertEquals(2, all.size());
+        assertEquals(3, all.get("b").getSequence());
+        assertEquals(0, pushes.pendingCount());
+        assertEquals(Long.MAX_VALUE, pushes.nanosUntilDue(2));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRemove() {
+        pushes.offer("a", 1, report(1), 1, 0);
+        pushes.offer("a", 2, report(2), 2, 1);
+        pushes.remove("a");
+        assertEquals(0, pushes.pendingCount());
+        assertTrue(pushes.offer("a", 3, report(3), 3, 2));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testNoWindow() {
+        PushCoalescer<String> direct = new PushCoalescer<>(0);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(direct.offer("a", 1, report(1), i, 0));
+        }
+    }
+}
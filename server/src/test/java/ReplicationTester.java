@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDate;
+import model.Credential;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+import persistence.json.net.MessageChannel;
+import persistence.json.net.ReportBatch;
+import server.ThirstyServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A JUnit test class for who a server agrees to replicate to
+ * @author tybrown
+ */
+public class ReplicationTester {
+    //starts a whole server
+    public static final int TIMEOUT = 10000;
+    private static final String KEY = "replication-key";
+    private static final int USERS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PersistentJsonFile json = new PersistentJsonFile("/tmp/none/");
+    private ThirstyServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        File dir = folder.newFolder();
+        new DatasetGenerator(1, USERS, 20, 2, 1, 0, 10, LocalDate.of(2015, 1, 1), 1, "pw").generate(dir);
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        System.setProperty("thirsty.port", Integer.toString(port));
+        System.setProperty("thirsty.dbPath", dir.getPath());
+        System.setProperty("thirsty.replicationKey", KEY);
+        System.setProperty("thirsty.metricsLogSeconds", "0");
+        server = new ThirstyServer();
+        server.doMain(new String[0]);
+    }
+
+    @After
+    public void tearDown() {
+        server.shutdown();
+        System.clearProperty("thirsty.port");
+        System.clearProperty("thirsty.dbPath");
+        System.clearProperty("thirsty.replicationKey");
+        System.clearProperty("thirsty.metricsLogSeconds");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testReplicaWithKeyGetsCopy() throws IOException {
+        try (Socket s = new Socket("localhost", port)) {
+            MessageChannel channel = new MessageChannel(s, json);
+            channel.sendCommand(new Command(Command.CommandType.REPLICATE, KEY, null));
+            Command resp = channel.receiveCommand();
+            assertEquals(Command.CommandType.REPLICATE, resp.getCommand());
+            assertTrue(resp.isSuccessful());
+            int users = 0;
+            int credentials = 0;
+            Command c;
+            while ((c = channel.receiveCommand()) != null) {
+                if (c.getCommand() == Command.CommandType.SAVE_USER) {
+                    users++;
+                } else if (c.getCommand() == Command.CommandType.SAVE_CREDENTIAL) {
+                    credentials++;
+                } else if (c.getCommand() == Command.CommandType.LOAD_SNAPSHOT
+                        && json.readPayload(c, ReportBatch.class).isLast()) {
+                    break;
+                }
+            }
+            assertEquals(USERS, users);
+            assertEquals(USERS, credentials);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testWrongKeyRefused() throws IOException {
+        try (Socket s = new Socket("localhost", port)) {
+            MessageChannel channel = new MessageChannel(s, json);
+            channel.sendCommand(new Command(Command.CommandType.REPLICATE, "guess", null));
+            Command resp = channel.receiveCommand();
+            assertEquals(Command.CommandType.REPLICATE, resp.getCommand());
+            assertFalse(resp.isSuccessful());
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLoggedInClientRefused() throws IOException {
+        try (Socket s = new Socket("localhost", port)) {
+            MessageChannel channel = new MessageChannel(s, json);
+            channel.sendCommand(new Command(Command.CommandType.AUTHENTICATE, json.toJson(new Credential("user0", "pw")), null));
+            Command auth = channel.receiveCommand();
+            assertTrue(auth.isSuccessful());
+            Command c;
+            while ((c = channel.receiveCommand()) != null) {
+                if (c.getCommand() == Command.CommandType.LOAD_SNAPSHOT && json.readPayload(c, ReportBatch.class).isLast()) {
+                    break;
+                }
+            }
+            //even with the right key: being logged in must not skip the check
+            Command replicate = new Command(Command.CommandType.REPLICATE, KEY, null);
+            replicate.setSession(auth.getSession());
+            channel.sendCommand(replicate);
+            //anything the server sends because of it comes before the answer to this
+            channel.sendCommand(new Command(Command.CommandType.HEARTBEAT, null, null));
+            Command refused = null;
+            while ((c = channel.receiveCommand()) != null && c.getCommand() != Command.CommandType.HEARTBEAT) {
+                assertNotEquals(Command.CommandType.SAVE_CREDENTIAL, c.getCommand());
+                assertNotEquals(Command.CommandType.SAVE_USER, c.getCommand());
+                if (c.getCommand() == Command.CommandType.REPLICATE) {
+                    refused = c;
+                }
+            }
+            assertNotNull(refused);
+            assertFalse(refused.isSuccessful());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.TimeUnit;
+import persistence.json.net.Command;
+import server.SessionStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the server's session store
+ * @author tybrown
+ */
+public class SessionStoreTester {
+    public static final int TIMEOUT = 200;
+    private static final long IDLE = TimeUnit.MINUTES.toNanos(30);
+
+    private long now;
+    private SessionStore sessions;
+
+    @Before
+    public void setup() {
+        now = 0;
+        sessions = new SessionStore(IDLE, () -> now);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testOpenAndResolve() {
+        String a = sessions.open("user1");
+        String b = sessions.open("user1");
+        assertNotEquals(a, b);
+        assertEquals("user1", sessions.resolve(a));
+        assertEquals("user1", sessions.resolve(b));
+        assertNull(sessions.resolve("made-up"));
+        assertNull(sessions.resolve(null));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testIdleExpiry() {
+        String a = sessions.open("user1");
+        now += IDLE - 1;
+        //using a session keeps it alive
+        assertEquals("user1", sessions.resolve(a));
+        now += IDLE - 1;
+        assertEquals("user1", sessions.resolve(a));
+        now += IDLE;
+        assertNull(sessions.resolve(a));
+        assertEquals(0, sessions.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testExpiredArePurged() {
+        sessions.open("user1");
+        sessions.open("user2");
+        now += 2 * IDLE;
+        sessions.open("user3");
+        assertEquals(1, sessions.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRevoke() {
+        String a = sessions.open("user1");
+        sessions.revoke(a);
+        assertNull(sessions.resolve(a));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRevokeUser() {
+        String a = sessions.open("user1");
+        String b = sessions.open("user1");
+        String c = sessions.open("user2");
+        assertEquals(1, sessions.revokeUser("user1", a));
+        assertEquals("user1", sessions.resolve(a));
+        assertNull(sessions.resolve(b));
+        assertEquals("user2", sessions.resolve(c));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRememberedResponses() {
+        String a = sessions.open("user1");
+        String b = sessions.open("user1");
+        Command resp = new Command(Command.CommandType.SAVE_WATER_REPORT, null, null);
+        resp.setRequestId(7);
+        sessions.rememberResponse(a, resp);
+        assertSame(resp, sessions.rememberedResponse(a, 7));
+        assertNull(sessions.rememberedResponse(a, 8));
+        //request ids are only unique within a session
+        assertNull(sessions.rememberedResponse(b, 7));
+        sessions.revoke(a);
+        assertNull(sessions.rememberedResponse(a, 7));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testOldResponsesForgotten() {
+        String a = sessions.open("user1");
+        for (int i = 1; i <= 100; i++) {
+            Command resp = new Command(Command.CommandType.SAVE_QUALITY_REPORT, null, null);
+            resp.setRequestId(i);
+            sessions.rememberResponse(a, resp);
+        }
+        assertNull(sessions.rememberedResponse(a, 1));
+        assertNull(sessions.rememberedResponse(a, 36));
+        assertEquals(37, sessions.rememberedResponse(a, 37).getRequestId());
+        assertEquals(100, sessions.rememberedResponse(a, 100).getRequestId());
+    }
+}
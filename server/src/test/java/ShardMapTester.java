@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import model.Region;
+import server.ShardMap;
+import server.ShardRouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the shard map and the router's merging of the shards' query pages
+ * @author tybrown
+ */
+public class ShardMapTester {
+    public static final int TIMEOUT = 200;
+
+    private final ShardMap map = new ShardMap(4);
+
+    @Test(timeout = TIMEOUT)
+    public void testEveryShardUsed() {
+        Set<Integer> used = new HashSet<>();
+        for (double lat = -85; lat < 90; lat += 10) {
+            for (double lng = -175; lng < 180; lng += 10) {
+                int shard = map.shardOf(lat, lng);
+                assertTrue(shard >= 0 && shard < 4);
+                used.add(shard);
+            }
+        }
+        assertEquals(4, used.size());
+        assertEquals(used, map.shardsFor(null));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testNearbyReportsTogether() {
+        assertEquals(map.shardOf(33.7756, -84.3963), map.shardOf(33.749, -84.388));
+        //the poles and the antimeridian are inside the grid too
+        assertEquals(map.shardOf(90, 180), map.shardOf(89.9, -180));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRegionShards() {
+        Region city = new Region(33.6, -84.5, 33.9, -84.2);
+        assertEquals(new HashSet<>(Arrays.asList(map.shardOf(33.7, -84.3))), map.shardsFor(city));
+        Region across = new Region(-5, 175, 5, -175);
+        Set<Integer> shards = map.shardsFor(across);
+        assertTrue(shards.contains(map.shardOf(0, 179)));
+        assertTrue(shards.contains(map.shardOf(0, -179)));
+        assertTrue(shards.contains(map.shardOf(-1, 179)));
+        assertEquals(new HashSet<>(Arrays.asList(0)), new ShardMap(1).shardsFor(across));
+    }
+
+    @Test(timeout = TIMEOUT, expected = IllegalArgumentException.class)
+    public void testNoShards() {
+        new ShardMap(0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMergeLastPages() {
+        List<Long> items = new ArrayList<>(Arrays.asList(7L, 2L, 9L, 4L));
+        assertEquals(0, ShardRouter.cut(items, Long::longValue, Long.MAX_VALUE, 5));
+        assertEquals(Arrays.asList(2L, 4L, 7L, 9L), items);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMergeStopsAtIncompleteShard() {
+        //one shard sent 3, 5 and has more after 5; the other sent everything it has
+        List<Long> items = new ArrayList<>(Arrays.asList(3L, 5L, 4L, 6L, 8L));
+        assertEquals(5, ShardRouter.cut(items, Long::longValue, 5, 3));
+        assertEquals(Arrays.asList(3L, 4L, 5L), items);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMergeKeepsPageSize() {
+        List<Long> items = new ArrayList<>(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L));
+        assertEquals(3, ShardRouter.cut(items, Long::longValue, Long.MAX_VALUE, 3));
+        assertEquals(Arrays.asList(1L, 2L, 3L), items);
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import model.Credential;
+import model.User;
+import model.UserLevel;
+import model.WaterCondition;
+import model.WaterReport;
+import model.WaterType;
+import persistence.json.PersistentJsonFile;
+import persistence.json.net.Command;
+import persistence.json.net.MessageChannel;
+import server.ThirstyServer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A JUnit test class for shutting the server down while it's stuck
+ * @author tybrown
+ */
+public class ShutdownTester {
+    //starts a whole server and waits out its shutdown timeout
+    public static final int TIMEOUT = 20000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PersistentJsonFile json = new PersistentJsonFile("/tmp/none/");
+    private final List<Socket> clients = new ArrayList<>();
+    private ThirstyServer server;
+    private Thread commandThread;
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        System.setProperty("thirsty.port", Integer.toString(port));
+        System.setProperty("thirsty.dbPath", folder.newFolder().getPath());
+        System.setProperty("thirsty.metricsLogSeconds", "0");
+        System.setProperty("thirsty.commandQueueCapacity", "1");
+        System.setProperty("thirsty.shutdownTimeoutMs", Long.toString(SHUTDOWN_TIMEOUT_MS));
+        Set<Thread> before = commandThreads();
+        server = new ThirstyServer();
+        server.doMain(new String[0]);
+        for (Thread t : commandThreads()) {
+            if (!before.contains(t)) {
+                commandThread = t;
+            }
+        }
+        assertNotNull(commandThread);
+    }
+
+    private static Set<Thread> commandThreads() {
+        Set<Thread> res = new HashSet<>();
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("command-thread")) {
+                res.add(t);
+            }
+        }
+        return (res);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket s : clients) {
+            s.close();
+        }
+        System.clearProperty("thirsty.port");
+        System.clearProperty("thirsty.dbPath");
+        System.clearProperty("thirsty.metricsLogSeconds");
+        System.clearProperty("thirsty.commandQueueCapacity");
+        System.clearProperty("thirsty.shutdownTimeoutMs");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testShutdownWithFullQueueKeepsTimeout() throws Exception {
+        //never reads, so the command thread gets stuck telling it about the new users
+        Socket stuck = new Socket();
+        clients.add(stuck);
+        stuck.setReceiveBufferSize(1024);
+        stuck.connect(new InetSocketAddress("localhost", port));
+        Random random = new Random(1);
+        for (int i = 0; i < 12; i++) {
+            char[] name = new char[1 << 20];
+            for (int j = 0; j < name.length; j++) {
+                name[j] = (char) ('a' + random.nextInt(26));
+            }
+            User u = new User("user" + i, new String(name), "Title", "user@example.com", UserLevel.USER);
+            Socket s = new Socket("localhost", port);
+            clients.add(s);
+            MessageChannel channel = new MessageChannel(s, json);
+            //signing up waits for room in the queue, unlike commands of logged in clients
+            new Thread(() -> {
+                try {
+                    channel.sendCommand(new Command(Command.CommandType.SAVE_USER, json.toJson(u), null));
+                    while (channel.receiveCommand() != null) {
+                        //whatever the server says
+                    }
+                } catch (IOException e) {
+                }
+            }).start();
+        }
+        Thread.sleep(2000);
+        //stuck sending, not dead: a dead command thread would also let shutdown() return in time
+        assertTrue(commandThread.isAlive());
+        Thread shutdown = new Thread(server::shutdown);
+        shutdown.start();
+        shutdown.join(SHUTDOWN_TIMEOUT_MS + TimeUnit.SECONDS.toMillis(5));
+        assertFalse("shutdown() didn't keep to its timeout", shutdown.isAlive());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testBadCommandOnlyFailsItself() throws Exception {
+        Socket s = new Socket("localhost", port);
+        clients.add(s);
+        MessageChannel channel = new MessageChannel(s, json);
+        channel.sendCommand(new Command(Command.CommandType.SAVE_USER,
+                json.toJson(new User("alice", "Alice", "Title", "alice@example.com", UserLevel.WORKER)), null));
+        assertTrue(receive(channel, Command.CommandType.SAVE_USER).isSuccessful());
+        channel.sendCommand(new Command(Command.CommandType.SAVE_CREDENTIAL, json.toJson(new Credential("alice", "pw")), null));
+        assertTrue(receive(channel, Command.CommandType.SAVE_CREDENTIAL).isSuccessful());
+        channel.sendCommand(new Command(Command.CommandType.AUTHENTICATE, json.toJson(new Credential("alice", "pw")), null));
+        Command auth = receive(channel, Command.CommandType.AUTHENTICATE);
+        assertTrue(auth.isSuccessful());
+
+        //throws on the command thread while it's parsed
+        Command bad = new Command(Command.CommandType.SAVE_WATER_REPORT, "{\"reportNumProperty\":[", null);
+        bad.setSession(auth.getSession());
+        bad.setRequestId(1);
+        channel.sendCommand(bad);
+        assertFalse(receive(channel, Command.CommandType.SAVE_WATER_REPORT).isSuccessful());
+
+        Command good = new Command(Command.CommandType.SAVE_WATER_REPORT, null, null);
+        good.setData(json.toJson(new WaterReport(1, 33.7756, -84.3963, WaterType.LAKE, WaterCondition.CLEAR, "alice")));
+        good.setSession(auth.getSession());
+        good.setRequestId(2);
+        channel.sendCommand(good);
+        assertTrue(receive(channel, Command.CommandType.SAVE_WATER_REPORT).isSuccessful());
+        assertTrue(commandThread.isAlive());
+        assertTrue("the queue wasn't drained", server.shutdown());
+    }
+
+    /**
+     * Reads up to the answer to a command of the given type, skipping snapshots and pushes
+     */
+    private Command receive(MessageChannel channel, Command.CommandType type) throws IOException {
+        Command c;
+        while ((c = channel.receiveCommand()) != null) {
+            if (c.getCommand() == type && c.isResponse()) {
+                return (c);
+            }
+        }
+        throw (new IOException("Closed before the answer to " + type));
+    }
+}
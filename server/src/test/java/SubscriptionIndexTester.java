@@ -0,0 +1,66 @@
+import java.util.Collection;
+import model.Region;
+import server.SubscriptionIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the server's region subscription index
+ * @author tybrown
+ */
+public class SubscriptionIndexTester {
+    public static final int TIMEOUT = 200;
+
+    private SubscriptionIndex<String> index;
+
+    @Before
+    public void setup() {
+        index = new SubscriptionIndex<>();
+        index.add("all");
+        index.subscribe("atlanta", new Region(33.6, -84.5, 33.9, -84.2));
+        index.subscribe("fiji", new Region(-19, 177, -16, -179));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testInterested() {
+        Collection<String> res = index.interestedIn(33.7756, -84.3963);
+        assertEquals(2, res.size());
+        assertTrue(res.contains("all"));
+        assertTrue(res.contains("atlanta"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSameCellOutsideRegion() {
+        Collection<String> res = index.interestedIn(33.1, -84.9);
+        assertEquals(1, res.size());
+        assertTrue(res.contains("all"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testAntimeridian() {
+        assertTrue(index.interestedIn(-17, 179.5).contains("fiji"));
+        assertTrue(index.interestedIn(-17, -179.5).contains("fiji"));
+        assertFalse(index.interestedIn(-17, -178.5).contains("fiji"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testResubscribeAndRemove() {
+        index.subscribe("atlanta", new Region(40, -75, 41, -73));
+        assertFalse(index.interestedIn(33.7756, -84.3963).contains("atlanta"));
+        assertTrue(index.interestedIn(40.7, -74).contains("atlanta"));
+        index.remove("atlanta");
+        assertFalse(index.interestedIn(40.7, -74).contains("atlanta"));
+        assertEquals(2, index.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testHugeRegionMeansEverywhere() {
+        index.subscribe("atlanta", new Region(-80, -170, 80, 170));
+        assertTrue(index.interestedIn(0, 179).contains("atlanta"));
+    }
+}
@@ -0,0 +1,50 @@
+import server.TokenBucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * A JUnit test class for the server's rate limiting
+ * @author tybrown
+ */
+public class TokenBucketTester {
+    public static final int TIMEOUT = 200;
+    private static final long SECOND = 1000000000L;
+
+    @Test(timeout = TIMEOUT)
+    public void testBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryTake(0));
+        }
+        long wait = bucket.tryTake(0);
+        assertEquals(SECOND / 10, wait);
+        assertTrue(bucket.tryTake(wait / 2) > 0);
+        assertEquals(0, bucket.tryTake(wait));
+        assertTrue(bucket.tryTake(wait) > 0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRefillStopsAtBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryTake(0));
+        }
+        //a long quiet period only refills up to the burst
+        long later = 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryTake(later));
+        }
+        assertTrue(bucket.tryTake(later) > 0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testZeroRateNeverLimits() {
+        TokenBucket bucket = new TokenBucket(0, 1, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, bucket.tryTake(0));
+        }
+    }
+}